@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.codec.tiff;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.xmlgraphics.image.codec.util.ByteBufferSeekableStream;
+import org.apache.xmlgraphics.image.loader.BenchmarkCorpus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the CCITT decoding of the fax pages of the
+ * {@link BenchmarkCorpus}: every strip of the page is decoded with
+ * {@link TIFFImage#getTile(int, int)}, without the tile cache, so the result
+ * is dominated by the run-length decoding and the filling of the rows.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FaxDecodeBenchmark {
+
+    /** The fax page */
+    @Param({ "ccitt" })
+    public String format;
+
+    private TIFFImage image;
+
+    @Setup
+    public void setUp() throws IOException {
+        this.image = new TIFFImage(new ByteBufferSeekableStream(
+                ByteBuffer.wrap(BenchmarkCorpus.getData(this.format))), null, 0);
+    }
+
+    @Benchmark
+    public void decodePage(final Blackhole blackhole) {
+        for (int y = 0; y < this.image.getNumYTiles(); y++) {
+            for (int x = 0; x < this.image.getNumXTiles(); x++) {
+                blackhole.consume(this.image.getTile(x, y));
+            }
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.loader;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.xml.transform.Source;
+import javax.xml.transform.stream.StreamSource;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.xmlgraphics.image.loader.impl.AbstractImageSessionContext;
+import org.apache.xmlgraphics.util.MimeConstants;
+
+/**
+ * The sample images used by the benchmarks. The files are checked in under
+ * <code>org/apache/xmlgraphics/image/loader/corpus</code> and are served from
+ * memory, so the benchmarks measure the loader stack rather than the disk.
+ * Images are addressed by format name ("png", "jpeg", "tiff" (RGB, deflate),
+ * "ccitt" (CCITT Group 4 TIFF), "gif", "eps"),
+ * which is also the URI used with {@link #newSessionContext(ImageContext)}.
+ */
+public final class BenchmarkCorpus {
+
+    private static final String[][] FILES = {
+            { "png", "asf-logo.png", MimeConstants.MIME_PNG },
+            { "jpeg", "bgimg300dpi.jpg", MimeConstants.MIME_JPEG },
+            { "tiff", "asf-logo.tif", MimeConstants.MIME_TIFF },
+            { "ccitt", "tiff_group4.tif", MimeConstants.MIME_TIFF },
+            { "gif", "bgimg72dpi.gif", MimeConstants.MIME_GIF },
+            { "eps", "barcode.eps", MimeConstants.MIME_EPS } };
+
+    private static final Map<String, byte[]> DATA;
+    private static final Map<String, String> MIME_TYPES;
+
+    static {
+        final Map<String, byte[]> data = new LinkedHashMap<>();
+        final Map<String, String> mimeTypes = new LinkedHashMap<>();
+        for (final String[] file : FILES) {
+            data.put(file[0], read(file[1]));
+            mimeTypes.put(file[0], file[2]);
+        }
+        DATA = Collections.unmodifiableMap(data);
+        MIME_TYPES = Collections.unmodifiableMap(mimeTypes);
+    }
+
+    private BenchmarkCorpus() {
+    }
+
+    private static byte[] read(final String name) {
+        final InputStream in = BenchmarkCorpus.class
+                .getResourceAsStream("corpus/" + name);
+        if (in == null) {
+            throw new IllegalStateException("Missing corpus file: " + name);
+        }
+        try {
+            return IOUtils.toByteArray(in);
+        } catch (final IOException ioe) {
+            throw new IllegalStateException("Cannot read corpus file: "
+                    + name, ioe);
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    /**
+     * Returns the content of a sample image.
+     *
+     * @param format
+     *            the format name
+     * @return the image data
+     */
+    public static byte[] getData(final String format) {
+        final byte[] data = DATA.get(format);
+        if (data == null) {
+            throw new IllegalArgumentException("Unknown format: " + format);
+        }
+        return data;
+    }
+
+    /**
+     * Returns the MIME type of a sample image.
+     *
+     * @param format
+     *            the format name
+     * @return the MIME type
+     */
+    public static String getMimeType(final String format) {
+        return MIME_TYPES.get(format);
+    }
+
+    /**
+     * Returns a simple image context with a source resolution of 72 dpi.
+     *
+     * @return the image context
+     */
+    public static ImageContext newImageContext() {
+        return new ImageContext() {
+            @Override
+            public float getSourceResolution() {
+                return 72;
+            }
+        };
+    }
+
+    /**
+     * Creates a session context which resolves format names to the sample
+     * images. The sources are not local files, so they take the same path as
+     * images loaded from URLs.
+     *
+     * @param context
+     *            the parent image context
+     * @return the session context
+     */
+    public static ImageSessionContext newSessionContext(
+            final ImageContext context) {
+        return new AbstractImageSessionContext() {
+
+            @Override
+            protected Source resolveURI(final String uri) {
+                final byte[] data = DATA.get(uri);
+                return data != null ? new StreamSource(
+                        new ByteArrayInputStream(data), "corpus:" + uri)
+                        : null;
+            }
+
+            @Override
+            public ImageContext getParentContext() {
+                return context;
+            }
+
+            @Override
+            public float getTargetResolution() {
+                return 300;
+            }
+        };
+    }
+}
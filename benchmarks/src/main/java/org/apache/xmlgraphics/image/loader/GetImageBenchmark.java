@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.loader;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.xmlgraphics.image.loader.impl.ImageRawStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures end-to-end {@link ImageManager#getImage} calls with an empty image
+ * cache: pipeline selection, loading and conversion. Raw images are also
+ * written to a null stream, as an output format would do.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GetImageBenchmark {
+
+    /** The image format and the requested flavor ("raw" or "rendered") */
+    @Param({ "png/raw", "png/rendered", "jpeg/raw", "jpeg/rendered",
+            "tiff/rendered", "ccitt/raw", "gif/rendered", "eps/raw" })
+    public String request;
+
+    private ImageManager manager;
+    private ImageSessionContext session;
+    private ImageInfo info;
+    private ImageFlavor flavor;
+
+    @Setup
+    public void setUp() throws ImageException, IOException {
+        final ImageContext context = BenchmarkCorpus.newImageContext();
+        this.manager = new ImageManager(context);
+        this.session = BenchmarkCorpus.newSessionContext(context);
+        final String format = this.request.substring(0,
+                this.request.indexOf('/'));
+        this.info = this.manager.getImageInfo(format, this.session);
+        this.flavor = this.request.endsWith("/raw") ? rawFlavor(format)
+                : ImageFlavor.RENDERED_IMAGE;
+    }
+
+    private static ImageFlavor rawFlavor(final String format) {
+        if ("png".equals(format)) {
+            return ImageFlavor.RAW_PNG;
+        } else if ("jpeg".equals(format)) {
+            return ImageFlavor.RAW_JPEG;
+        } else if ("ccitt".equals(format)) {
+            return ImageFlavor.RAW_CCITTFAX;
+        } else if ("eps".equals(format)) {
+            return ImageFlavor.RAW_EPS;
+        }
+        throw new IllegalArgumentException("No raw flavor for " + format);
+    }
+
+    @Benchmark
+    public Image getImage() throws ImageException, IOException {
+        this.manager.getCache().clearCache();
+        final Image img = this.manager.getImage(this.info, this.flavor,
+                this.session);
+        if (img instanceof ImageRawStream) {
+            ((ImageRawStream) img)
+                    .writeTo(NullOutputStream.NULL_OUTPUT_STREAM);
+        }
+        return img;
+    }
+}
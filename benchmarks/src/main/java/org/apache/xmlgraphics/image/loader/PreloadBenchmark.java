@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.loader;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.transform.Source;
+
+import org.apache.xmlgraphics.image.loader.util.ImageUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link ImageManager#preloadImage(String, Source)} for each format
+ * of the {@link BenchmarkCorpus}, i.e. preloader selection plus header
+ * parsing, without the image cache.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PreloadBenchmark {
+
+    /** The image format */
+    @Param({ "png", "jpeg", "tiff", "ccitt", "gif", "eps" })
+    public String format;
+
+    private ImageManager manager;
+    private ImageSessionContext session;
+
+    @Setup
+    public void setUp() {
+        final ImageContext context = BenchmarkCorpus.newImageContext();
+        this.manager = new ImageManager(context);
+        this.session = BenchmarkCorpus.newSessionContext(context);
+    }
+
+    @Benchmark
+    public ImageInfo preloadImage() throws ImageException, IOException {
+        final Source src = this.session.needSource(this.format);
+        try {
+            return this.manager.preloadImage(this.format, src);
+        } finally {
+            ImageUtil.closeQuietly(src);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.loader.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.transform.Source;
+import javax.xml.transform.stream.StreamSource;
+
+import org.apache.xmlgraphics.image.loader.ImageContext;
+import org.apache.xmlgraphics.image.loader.ImageException;
+import org.apache.xmlgraphics.image.loader.ImageInfo;
+import org.apache.xmlgraphics.image.loader.ImageManager;
+import org.apache.xmlgraphics.image.loader.ImageSessionContext;
+import org.apache.xmlgraphics.image.loader.spi.ImageImplRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the throughput of {@link ImageCache#needImageInfo} when 64 threads
+ * preload an overlapping set of URIs. A shared sequence hands out URIs so
+ * that every URI is requested by {@code overlap} threads at about the same
+ * time, and only the first of them should actually preload it. The
+ * {@code legacy} variant uses the former locking on interned URI strings for
+ * comparison.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(64)
+@State(Scope.Benchmark)
+public class ImageCacheContentionBenchmark {
+
+    /** Number of threads requesting the same URI */
+    @Param({ "8", "64" })
+    public int overlap;
+
+    /** Simulated preloading cost (JMH CPU tokens) */
+    @Param({ "2000" })
+    public long preloadCost;
+
+    /** Whether to use the former String.intern() based locking */
+    @Param({ "false", "true" })
+    public boolean legacy;
+
+    private final AtomicLong sequence = new AtomicLong();
+    private ImageManager manager;
+    private ImageCache cache;
+    private ImageSessionContext session;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        final ImageContext context = new ImageContext() {
+            @Override
+            public float getSourceResolution() {
+                return 72;
+            }
+        };
+        this.cache = this.legacy ? new InternLockingImageCache()
+                : new ImageCache();
+        this.manager = new ImageManager(new ImageImplRegistry(false), context,
+                this.cache) {
+            @Override
+            public ImageInfo preloadImage(final String uri, final Source src) {
+                Blackhole.consumeCPU(ImageCacheContentionBenchmark.this.preloadCost);
+                return new ImageInfo(uri, "image/png");
+            }
+        };
+        this.session = new NullSourceSessionContext(context);
+    }
+
+    /**
+     * Every call requests the next URI of the shared sequence. Each URI is
+     * requested {@code overlap} times in a row (mostly concurrently).
+     */
+    @Benchmark
+    public ImageInfo preloadOverlapping() throws ImageException, IOException {
+        final long seq = this.sequence.getAndIncrement();
+        return this.cache.needImageInfo("image-" + seq / this.overlap + ".png",
+                this.session, this.manager);
+    }
+
+    /**
+     * Simple session context that provides an empty Source for every URI.
+     */
+    private static class NullSourceSessionContext implements
+            ImageSessionContext {
+
+        private final ImageContext context;
+
+        NullSourceSessionContext(final ImageContext context) {
+            this.context = context;
+        }
+
+        @Override
+        public ImageContext getParentContext() {
+            return this.context;
+        }
+
+        @Override
+        public float getTargetResolution() {
+            return 72;
+        }
+
+        @Override
+        public Source newSource(final String uri) {
+            return new StreamSource(new ByteArrayInputStream(new byte[0]), uri);
+        }
+
+        @Override
+        public Source getSource(final String uri) {
+            return null;
+        }
+
+        @Override
+        public Source needSource(final String uri) {
+            return newSource(uri);
+        }
+
+        @Override
+        public void returnSource(final String uri, final Source src) {
+            // nop
+        }
+    }
+
+    /**
+     * ImageCache using the former locking strategy (a monitor on the interned
+     * URI string) for comparison.
+     */
+    private static class InternLockingImageCache extends ImageCache {
+
+        @Override
+        public ImageInfo needImageInfo(final String uri,
+                final ImageSessionContext session, final ImageManager manager)
+                throws ImageException, IOException {
+            if (isInvalidURI(uri)) {
+                throw new FileNotFoundException("Image not found: " + uri);
+            }
+            final String lockURI = uri.intern();
+            synchronized (lockURI) {
+                ImageInfo info = getImageInfo(uri);
+                if (info == null) {
+                    final Source src = session.needSource(uri);
+                    info = manager.preloadImage(uri, src);
+                    session.returnSource(uri, src);
+                    putImageInfo(info);
+                }
+                return info;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.loader.cache;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.xmlgraphics.image.loader.BenchmarkCorpus;
+import org.apache.xmlgraphics.image.loader.Image;
+import org.apache.xmlgraphics.image.loader.ImageContext;
+import org.apache.xmlgraphics.image.loader.ImageException;
+import org.apache.xmlgraphics.image.loader.ImageFlavor;
+import org.apache.xmlgraphics.image.loader.ImageInfo;
+import org.apache.xmlgraphics.image.loader.ImageManager;
+import org.apache.xmlgraphics.image.loader.ImageSessionContext;
+import org.apache.xmlgraphics.image.loader.spi.ImageImplRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the hit paths of {@link ImageCache} with 1 to 64 threads: the
+ * ImageInfo lookup in {@link ImageCache#needImageInfo}, the image lookup and
+ * a complete {@link ImageManager#getImage} call served from the cache.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ImageCacheHitBenchmark {
+
+    /** The formats, those which can be rendered first */
+    private static final String[] FORMATS = { "png", "jpeg", "tiff", "gif",
+            "ccitt", "eps" };
+
+    private static final int RENDERED_COUNT = 4;
+
+    private ImageManager manager;
+    private ImageSessionContext session;
+    private ImageInfo[] infos;
+
+    @Setup
+    public void setUp() throws ImageException, IOException {
+        final ImageContext context = BenchmarkCorpus.newImageContext();
+        // A bounded backend holds its images strongly, so no hit turns into a
+        // miss because of garbage collection
+        this.manager = new ImageManager(ImageImplRegistry.getDefaultInstance(),
+                context, new ImageCache(new BoundedImageCacheBackend(
+                        64 * 1024 * 1024)));
+        this.session = BenchmarkCorpus.newSessionContext(context);
+        this.infos = new ImageInfo[FORMATS.length];
+        for (int i = 0; i < FORMATS.length; i++) {
+            this.infos[i] = this.manager.getImageInfo(FORMATS[i], this.session);
+        }
+        for (int i = 0; i < RENDERED_COUNT; i++) {
+            this.manager.getImage(this.infos[i], ImageFlavor.RENDERED_IMAGE,
+                    this.session);
+        }
+    }
+
+    /** Per-thread position in the list of rendered images. */
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private int index;
+
+        int next() {
+            this.index = (this.index + 1) % RENDERED_COUNT;
+            return this.index;
+        }
+    }
+
+    private ImageInfo imageInfoHit(final Cursor cursor) throws ImageException,
+            IOException {
+        return this.manager.getCache().needImageInfo(
+                FORMATS[cursor.next()], this.session, this.manager);
+    }
+
+    private Image imageHit(final Cursor cursor) {
+        return this.manager.getCache().getImage(this.infos[cursor.next()],
+                ImageFlavor.RENDERED_IMAGE);
+    }
+
+    private Image getImageHit(final Cursor cursor) throws ImageException,
+            IOException {
+        return this.manager.getImage(this.infos[cursor.next()],
+                ImageFlavor.RENDERED_IMAGE, this.session);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public ImageInfo imageInfoHit01(final Cursor cursor)
+            throws ImageException, IOException {
+        return imageInfoHit(cursor);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public ImageInfo imageInfoHit08(final Cursor cursor)
+            throws ImageException, IOException {
+        return imageInfoHit(cursor);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public ImageInfo imageInfoHit64(final Cursor cursor)
+            throws ImageException, IOException {
+        return imageInfoHit(cursor);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Image imageHit01(final Cursor cursor) {
+        return imageHit(cursor);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Image imageHit08(final Cursor cursor) {
+        return imageHit(cursor);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public Image imageHit64(final Cursor cursor) {
+        return imageHit(cursor);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Image getImageHit01(final Cursor cursor) throws ImageException,
+            IOException {
+        return getImageHit(cursor);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Image getImageHit08(final Cursor cursor) throws ImageException,
+            IOException {
+        return getImageHit(cursor);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public Image getImageHit64(final Cursor cursor) throws ImageException,
+            IOException {
+        return getImageHit(cursor);
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.loader.pipeline;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.xmlgraphics.image.loader.BenchmarkCorpus;
+import org.apache.xmlgraphics.image.loader.ImageContext;
+import org.apache.xmlgraphics.image.loader.ImageException;
+import org.apache.xmlgraphics.image.loader.ImageFlavor;
+import org.apache.xmlgraphics.image.loader.ImageInfo;
+import org.apache.xmlgraphics.image.loader.ImageManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link PipelineFactory#determineCandidatePipelines} for the flavor
+ * list a PDF-like output format requests. The {@code coldPlan} variant uses a
+ * new factory for every call, so no memoized plan is available.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PipelineFactoryBenchmark {
+
+    private static final ImageFlavor[] FLAVORS = { ImageFlavor.RAW_JPEG,
+            ImageFlavor.RAW_CCITTFAX, ImageFlavor.RAW_PNG,
+            ImageFlavor.RAW_EPS, ImageFlavor.GRAPHICS2D,
+            ImageFlavor.BUFFERED_IMAGE, ImageFlavor.RENDERED_IMAGE,
+            ImageFlavor.XML_DOM };
+
+    /** The image format */
+    @Param({ "png", "jpeg", "tiff", "ccitt", "gif", "eps" })
+    public String format;
+
+    private ImageManager manager;
+    private ImageInfo info;
+
+    @Setup
+    public void setUp() throws ImageException, IOException {
+        final ImageContext context = BenchmarkCorpus.newImageContext();
+        this.manager = new ImageManager(context);
+        this.info = this.manager.getImageInfo(this.format,
+                BenchmarkCorpus.newSessionContext(context));
+    }
+
+    @Benchmark
+    public ImageProviderPipeline[] flavorList() {
+        return this.manager.getPipelineFactory().determineCandidatePipelines(
+                this.info, FLAVORS);
+    }
+
+    @Benchmark
+    public ImageProviderPipeline[] singleFlavor() {
+        return this.manager.getPipelineFactory().determineCandidatePipelines(
+                this.info, ImageFlavor.RENDERED_IMAGE);
+    }
+
+    @Benchmark
+    public ImageProviderPipeline[] coldPlan() {
+        return new PipelineFactory(this.manager).determineCandidatePipelines(
+                this.info, FLAVORS);
+    }
+}
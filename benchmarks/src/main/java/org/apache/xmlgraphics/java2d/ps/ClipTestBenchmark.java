@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.java2d.ps;
+
+import java.awt.BasicStroke;
+import java.awt.Font;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.font.FontRenderContext;
+import java.awt.geom.Area;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.GeneralPath;
+import java.awt.geom.Line2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.geom.RoundRectangle2D;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.xmlgraphics.java2d.GraphicContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures {@link PSGraphics2D#shouldBeClipped(Shape, Shape)} over the shapes
+ * of a typical page: table cells and their stroked borders, text painted as
+ * glyph outlines, and a few ellipses and curves, some of them crossing the
+ * clip. As in PSGraphics2D the clip is fetched with getClip() for every
+ * shape. "area" is the former implementation, which intersected two
+ * {@link Area}s for every shape.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ClipTestBenchmark {
+
+    /** The clip: a viewport rectangle or a rounded SVG clip path */
+    @Param({ "rectangle", "rounded" })
+    public String clip;
+
+    private PSGraphics2D g2d;
+
+    private final List<Shape> shapes = new ArrayList<Shape>();
+
+    @Setup
+    public void setUp() {
+        this.g2d = new PSGraphics2D(false);
+        this.g2d.setGraphicContext(new GraphicContext());
+        this.g2d.translate(20, 30);
+        if ("rectangle".equals(this.clip)) {
+            this.g2d.setClip(new Rectangle(0, 0, 500, 700));
+        } else {
+            this.g2d.setClip(new RoundRectangle2D.Double(0, 0, 500, 700, 40,
+                    40));
+        }
+
+        final BasicStroke border = new BasicStroke(0.5f);
+        for (int row = 0; row < 20; row++) {
+            for (int col = 0; col < 5; col++) {
+                final Rectangle2D cell = new Rectangle2D.Double(col * 110 - 20,
+                        row * 36, 110, 36);
+                this.shapes.add(cell);
+                this.shapes.add(border.createStrokedShape(new Line2D.Double(
+                        cell.getMinX(), cell.getMaxY(), cell.getMaxX(), cell
+                                .getMaxY())));
+            }
+        }
+        final FontRenderContext frc = new FontRenderContext(null, true, true);
+        final Font font = new Font("serif", Font.PLAIN, 11);
+        for (int line = 0; line < 40; line++) {
+            this.shapes.add(font.createGlyphVector(frc,
+                    "The quick brown fox jumps over the lazy dog")
+                    .getOutline(-10 + line % 3 * 5, 15 + line * 17));
+        }
+        for (int i = 0; i < 20; i++) {
+            this.shapes.add(new Ellipse2D.Double(i * 26, 650, 40, 40));
+            final GeneralPath curve = new GeneralPath();
+            curve.moveTo(i * 26, 600);
+            curve.curveTo(i * 26 + 10, 560, i * 26 + 30, 640, i * 26 + 40, 600);
+            curve.closePath();
+            this.shapes.add(curve);
+        }
+    }
+
+    @Benchmark
+    public void area(final Blackhole blackhole) {
+        for (final Shape s : this.shapes) {
+            final Area as = new Area(s);
+            final Area imclip = new Area(this.g2d.getClip());
+            imclip.intersect(as);
+            blackhole.consume(!imclip.equals(as));
+        }
+    }
+
+    @Benchmark
+    public void tiered(final Blackhole blackhole) {
+        this.g2d.setExactClipTest(true);
+        for (final Shape s : this.shapes) {
+            blackhole.consume(this.g2d.shouldBeClipped(this.g2d.getClip(), s));
+        }
+    }
+
+    @Benchmark
+    public void tieredWithoutFallback(final Blackhole blackhole) {
+        this.g2d.setExactClipTest(false);
+        for (final Shape s : this.shapes) {
+            blackhole.consume(this.g2d.shouldBeClipped(this.g2d.getClip(), s));
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.ps;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.Raster;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the encoding of an 800x600 image with {@link ImageEncodingHelper}
+ * into a stream that discards the data. "perPixel" is the former RGB
+ * conversion, which copied the raster and converted each pixel through the
+ * color model; "encodeAsRGB" is the current conversion and "encode" writes
+ * the native samples where the layout allows it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ImageEncodingBenchmark {
+
+    /** The BufferedImage type */
+    @Param({ "INT_RGB", "INT_ARGB", "3BYTE_BGR", "BYTE_GRAY", "BYTE_INDEXED" })
+    public String layout;
+
+    private BufferedImage image;
+
+    @Setup
+    public void setUp() throws ReflectiveOperationException {
+        final int type = BufferedImage.class.getField("TYPE_" + this.layout)
+                .getInt(null);
+        this.image = new BufferedImage(800, 600, type);
+        final Random random = new Random(42);
+        for (int y = 0; y < this.image.getHeight(); y++) {
+            for (int x = 0; x < this.image.getWidth(); x++) {
+                this.image.setRGB(x, y, random.nextInt());
+            }
+        }
+    }
+
+    @Benchmark
+    public void perPixel(final Blackhole blackhole) throws IOException {
+        final OutputStream out = sink(blackhole);
+        final Raster raster = this.image.getData();
+        final ColorModel colorModel = this.image.getColorModel();
+        final int w = this.image.getWidth();
+        final byte[] buf = new byte[w * 3];
+        Object data = null;
+        for (int y = 0; y < this.image.getHeight(); y++) {
+            int idx = -1;
+            for (int x = 0; x < w; x++) {
+                data = raster.getDataElements(x, y, data);
+                final int rgb = colorModel.getRGB(data);
+                buf[++idx] = (byte) (rgb >> 16);
+                buf[++idx] = (byte) (rgb >> 8);
+                buf[++idx] = (byte) rgb;
+            }
+            out.write(buf);
+        }
+    }
+
+    @Benchmark
+    public void encodeAsRGB(final Blackhole blackhole) throws IOException {
+        ImageEncodingHelper.encodeRenderedImageAsRGB(this.image,
+                sink(blackhole));
+    }
+
+    @Benchmark
+    public void encode(final Blackhole blackhole) throws IOException {
+        new ImageEncodingHelper(this.image).encode(sink(blackhole));
+    }
+
+    private static OutputStream sink(final Blackhole blackhole) {
+        return new OutputStream() {
+
+            @Override
+            public void write(final int b) {
+                blackhole.consume(b);
+            }
+
+            @Override
+            public void write(final byte[] b, final int off, final int len) {
+                blackhole.consume(b);
+            }
+        };
+    }
+}
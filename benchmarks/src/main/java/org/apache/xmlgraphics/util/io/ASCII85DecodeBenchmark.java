@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.util.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.output.ByteArrayOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures {@link ASCII85InputStream} on the ASCII85 encoding of the data of
+ * {@link FilterStreamBenchmark}, read in 4 KB blocks and one byte at a time.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ASCII85DecodeBenchmark {
+
+    private byte[] encoded;
+    private final byte[] block = new byte[4096];
+
+    @Setup
+    public void setUp() throws IOException {
+        final ByteArrayOutputStream baout = new ByteArrayOutputStream();
+        try (final OutputStream out = new ASCII85OutputStream(baout)) {
+            out.write(FilterStreamBenchmark.createData());
+        }
+        this.encoded = baout.toByteArray();
+    }
+
+    @Benchmark
+    public void decodeBlocks(final Blackhole blackhole) throws IOException {
+        final InputStream in = new ASCII85InputStream(new ByteArrayInputStream(
+                this.encoded));
+        int n;
+        while ((n = in.read(this.block)) != -1) {
+            blackhole.consume(n);
+        }
+    }
+
+    @Benchmark
+    public void decodeBytes(final Blackhole blackhole) throws IOException {
+        final InputStream in = new ASCII85InputStream(new ByteArrayInputStream(
+                this.encoded));
+        int b;
+        while ((b = in.read()) != -1) {
+            blackhole.consume(b);
+        }
+    }
+}
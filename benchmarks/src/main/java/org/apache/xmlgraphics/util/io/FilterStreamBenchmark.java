@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.util.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the PostScript encoding filters on 256 KB of bitmap-like data
+ * (noise interleaved with runs of equal bytes). "encodeBlocks" writes 4 KB
+ * blocks, as the image encoders do; "encodeBytes" writes one byte at a time,
+ * which is how the streams used to see all their data.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FilterStreamBenchmark {
+
+    /** The encoding filter */
+    @Param({ "ASCII85", "ASCIIHex", "RunLength" })
+    public String filter;
+
+    private byte[] data;
+
+    @Setup
+    public void setUp() {
+        this.data = createData();
+    }
+
+    static byte[] createData() {
+        final byte[] data = new byte[256 * 1024];
+        final Random random = new Random(42);
+        for (int i = 0; i < data.length;) {
+            final int length = Math.min(data.length - i,
+                    random.nextInt(64) + 1);
+            if (random.nextBoolean()) {
+                final byte b = (byte) random.nextInt();
+                for (int j = 0; j < length; j++) {
+                    data[i++] = b;
+                }
+            } else {
+                for (int j = 0; j < length; j++) {
+                    data[i++] = (byte) random.nextInt();
+                }
+            }
+        }
+        return data;
+    }
+
+    private OutputStream createEncoder(final Blackhole blackhole) {
+        final OutputStream sink = new OutputStream() {
+
+            @Override
+            public void write(final int b) {
+                blackhole.consume(b);
+            }
+
+            @Override
+            public void write(final byte[] b, final int off, final int len) {
+                blackhole.consume(b);
+            }
+        };
+        switch (this.filter) {
+        case "ASCII85":
+            return new ASCII85OutputStream(sink);
+        case "ASCIIHex":
+            return new ASCIIHexOutputStream(sink);
+        default:
+            return new RunLengthEncodeOutputStream(sink);
+        }
+    }
+
+    @Benchmark
+    public void encodeBlocks(final Blackhole blackhole) throws IOException {
+        try (final OutputStream out = createEncoder(blackhole)) {
+            for (int off = 0; off < this.data.length; off += 4096) {
+                out.write(this.data, off, 4096);
+            }
+        }
+    }
+
+    @Benchmark
+    public void encodeBytes(final Blackhole blackhole) throws IOException {
+        try (final OutputStream out = createEncoder(blackhole)) {
+            for (final byte b : this.data) {
+                out.write(b & 0xff);
+            }
+        }
+    }
+}
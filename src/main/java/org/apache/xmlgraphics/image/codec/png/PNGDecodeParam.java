@@ -372,4 +372,97 @@ public class PNGDecodeParam implements ImageDecodeParam {
     public void setEncodeParam(final PNGEncodeParam encodeParam) {
         this.encodeParam = encodeParam;
     }
+
+    /**
+     * The approximate size in bytes of the row-band tiles of a non-interlaced
+     * image when no tile height has been set.
+     */
+    public static final int DEFAULT_TILE_SIZE = 256 * 1024;
+
+    /** The default number of decoded tiles kept in memory. */
+    public static final int DEFAULT_TILE_CACHE_SIZE = 4;
+
+    private int tileHeight = 0;
+
+    /**
+     * Returns the height of the tiles of a non-interlaced image, or 0 if it is
+     * chosen automatically.
+     */
+    public int getTileHeight() {
+        return this.tileHeight;
+    }
+
+    /**
+     * Sets the height of the tiles of a decoded non-interlaced image. Such an
+     * image is exposed as a column of full-width tiles of this many rows,
+     * which are only decoded when they are requested. The default, 0, chooses
+     * a height giving tiles of about <code>DEFAULT_TILE_SIZE</code> bytes.
+     *
+     * <p>
+     * Interlaced images are always decoded into a single tile.
+     *
+     * @throws IllegalArgumentException
+     *             if <code>tileHeight</code> is negative.
+     */
+    public void setTileHeight(final int tileHeight) {
+        if (tileHeight < 0) {
+            throw new IllegalArgumentException(
+                    PropertyUtil.getString("PNGDecodeParam2"));
+        }
+        this.tileHeight = tileHeight;
+    }
+
+    private int tileCacheSize = DEFAULT_TILE_CACHE_SIZE;
+
+    /**
+     * Returns the maximum number of decoded tiles kept by an image.
+     */
+    public int getTileCacheSize() {
+        return this.tileCacheSize;
+    }
+
+    /**
+     * Sets the maximum number of decoded tiles of a non-interlaced image kept
+     * in memory. The image data can only be inflated from the start, so a
+     * tile that has been dropped from the cache and is requested again after
+     * a later tile is decoded again from the first row.
+     *
+     * @throws IllegalArgumentException
+     *             if <code>tileCacheSize</code> is not positive.
+     */
+    public void setTileCacheSize(final int tileCacheSize) {
+        if (tileCacheSize <= 0) {
+            throw new IllegalArgumentException(
+                    PropertyUtil.getString("PNGDecodeParam3"));
+        }
+        this.tileCacheSize = tileCacheSize;
+    }
+
+    private int subsampling = 1;
+
+    /**
+     * Returns the source subsampling factor.
+     */
+    public int getSubsampling() {
+        return this.subsampling;
+    }
+
+    /**
+     * Sets the source subsampling factor. With a factor <i>n</i> greater than
+     * 1 only every <i>n</i>-th pixel of every <i>n</i>-th row is kept, starting
+     * with the top left pixel, so the decoded image is about <i>n</i> times
+     * smaller in each direction. The image data still has to be inflated and
+     * unfiltered completely but the pixels that are left out are never
+     * converted or stored. The default is 1, which decodes every pixel.
+     *
+     * @throws IllegalArgumentException
+     *             if <code>subsampling</code> is not positive.
+     */
+    public void setSubsampling(final int subsampling) {
+        if (subsampling <= 0) {
+            throw new IllegalArgumentException(
+                    PropertyUtil.getString("PNGDecodeParam4"));
+        }
+        this.subsampling = subsampling;
+    }
 }
@@ -26,6 +26,8 @@ import java.awt.image.SampleModel;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.zip.Deflater;
 
 import org.apache.xmlgraphics.image.codec.util.ImageEncodeParam;
 import org.apache.xmlgraphics.image.codec.util.PropertyUtil;
@@ -656,6 +658,329 @@ public abstract class PNGEncodeParam implements ImageEncodeParam {
         return this.useInterlacing;
     }
 
+    // Filter selection and compression
+
+    /** Constant for use with <code>setFilterSelection</code>. */
+    public static final int FILTER_SELECTION_ADAPTIVE = 0;
+
+    /** Constant for use with <code>setFilterSelection</code>. */
+    public static final int FILTER_SELECTION_SAMPLED = 1;
+
+    /** Constant for use with <code>setFilterSelection</code>. */
+    public static final int FILTER_SELECTION_FIXED = 2;
+
+    /** The default pixel interval of the sampled filter selection. */
+    public static final int DEFAULT_FILTER_SAMPLE_INTERVAL = 8;
+
+    /** Constant for use with <code>setCompressionStrategy</code>. */
+    public static final int STRATEGY_DEFAULT = 0;
+
+    /** Constant for use with <code>setCompressionStrategy</code>. */
+    public static final int STRATEGY_FILTERED = 1;
+
+    /** Constant for use with <code>setCompressionStrategy</code>. */
+    public static final int STRATEGY_HUFFMAN_ONLY = 2;
+
+    /** Constant for use with <code>setCompressionStrategy</code>. */
+    public static final int STRATEGY_RLE = 3;
+
+    /**
+     * Constant for use with <code>setEncodeProfile</code>: adaptive filtering
+     * and maximum compression.
+     */
+    public static final int PROFILE_DEFAULT = 0;
+
+    /**
+     * Constant for use with <code>setEncodeProfile</code>: sampled filter
+     * selection and the fastest compression level, for images that are
+     * encoded on the fly and where throughput matters more than size.
+     */
+    public static final int PROFILE_SPEED = 1;
+
+    private int filterSelection = FILTER_SELECTION_ADAPTIVE;
+
+    private int fixedFilter = PNG_FILTER_NONE;
+
+    private int filterSampleInterval = DEFAULT_FILTER_SAMPLE_INTERVAL;
+
+    private int compressionLevel = Deflater.BEST_COMPRESSION;
+
+    private int compressionStrategy = STRATEGY_DEFAULT;
+
+    /**
+     * Sets how the default <code>filterRow</code> chooses the filter for each
+     * row: <code>FILTER_SELECTION_ADAPTIVE</code> (the default) tries every
+     * filter on every row, <code>FILTER_SELECTION_SAMPLED</code> only
+     * estimates the filters on every n-th pixel and
+     * <code>FILTER_SELECTION_FIXED</code> always uses the filter set with
+     * <code>setFixedFilter</code>.
+     */
+    public void setFilterSelection(final int filterSelection) {
+        if (filterSelection < FILTER_SELECTION_ADAPTIVE
+                || filterSelection > FILTER_SELECTION_FIXED) {
+            throw new IllegalArgumentException(
+                    PropertyUtil.getString("PNGEncodeParam32"));
+        }
+        this.filterSelection = filterSelection;
+    }
+
+    /**
+     * Returns the filter selection mode.
+     */
+    public int getFilterSelection() {
+        return this.filterSelection;
+    }
+
+    /**
+     * Uses the given filter for every row. This also sets the filter selection
+     * mode to <code>FILTER_SELECTION_FIXED</code>.
+     *
+     * @param filterType
+     *            one of the <code>PNG_FILTER_*</code> constants.
+     */
+    public void setFixedFilter(final int filterType) {
+        if (filterType < PNG_FILTER_NONE || filterType > PNG_FILTER_PAETH) {
+            throw new IllegalArgumentException(
+                    PropertyUtil.getString("PNGEncodeParam31"));
+        }
+        this.fixedFilter = filterType;
+        this.filterSelection = FILTER_SELECTION_FIXED;
+    }
+
+    /**
+     * Returns the filter used in <code>FILTER_SELECTION_FIXED</code> mode.
+     */
+    public int getFixedFilter() {
+        return this.fixedFilter;
+    }
+
+    /**
+     * Sets the pixel interval at which the filters are evaluated in
+     * <code>FILTER_SELECTION_SAMPLED</code> mode.
+     *
+     * @param interval
+     *            the interval in pixels, greater than 0.
+     */
+    public void setFilterSampleInterval(final int interval) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException(
+                    PropertyUtil.getString("PNGEncodeParam33"));
+        }
+        this.filterSampleInterval = interval;
+    }
+
+    /**
+     * Returns the pixel interval of the sampled filter selection.
+     */
+    public int getFilterSampleInterval() {
+        return this.filterSampleInterval;
+    }
+
+    /**
+     * Sets the deflate compression level, from 0 (no compression) to 9 (best
+     * compression, the default), or -1 for the zlib default.
+     */
+    public void setCompressionLevel(final int level) {
+        if (level < Deflater.DEFAULT_COMPRESSION
+                || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException(
+                    PropertyUtil.getString("PNGEncodeParam34"));
+        }
+        this.compressionLevel = level;
+    }
+
+    /**
+     * Returns the deflate compression level.
+     */
+    public int getCompressionLevel() {
+        return this.compressionLevel;
+    }
+
+    /**
+     * Sets the deflate strategy, one of <code>STRATEGY_DEFAULT</code>,
+     * <code>STRATEGY_FILTERED</code>, <code>STRATEGY_HUFFMAN_ONLY</code> or
+     * <code>STRATEGY_RLE</code>.
+     *
+     * <p>
+     * <code>java.util.zip.Deflater</code> does not give access to zlib's
+     * run-length strategy, so <code>STRATEGY_RLE</code> is approximated by the
+     * fastest compression level with the default strategy, which also finds
+     * the runs that dominate filtered image data.
+     */
+    public void setCompressionStrategy(final int strategy) {
+        if (strategy < STRATEGY_DEFAULT || strategy > STRATEGY_RLE) {
+            throw new IllegalArgumentException(
+                    PropertyUtil.getString("PNGEncodeParam35"));
+        }
+        this.compressionStrategy = strategy;
+    }
+
+    /**
+     * Returns the deflate strategy.
+     */
+    public int getCompressionStrategy() {
+        return this.compressionStrategy;
+    }
+
+    /**
+     * Configures filtering and compression for one of the predefined
+     * profiles, <code>PROFILE_DEFAULT</code> or <code>PROFILE_SPEED</code>.
+     * The individual settings can still be changed afterwards.
+     */
+    public void setEncodeProfile(final int profile) {
+        switch (profile) {
+        case PROFILE_DEFAULT:
+            this.filterSelection = FILTER_SELECTION_ADAPTIVE;
+            this.compressionLevel = Deflater.BEST_COMPRESSION;
+            this.compressionStrategy = STRATEGY_DEFAULT;
+            break;
+        case PROFILE_SPEED:
+            this.filterSelection = FILTER_SELECTION_SAMPLED;
+            this.compressionLevel = Deflater.BEST_SPEED;
+            this.compressionStrategy = STRATEGY_DEFAULT;
+            break;
+        default:
+            throw new IllegalArgumentException(
+                    PropertyUtil.getString("PNGEncodeParam36"));
+        }
+    }
+
+    /**
+     * Creates a <code>Deflater</code> for the configured level and strategy.
+     *
+     * @param nowrap
+     *            true for raw deflate data without zlib header and checksum.
+     */
+    Deflater createDeflater(final boolean nowrap) {
+        final Deflater deflater;
+        if (this.compressionStrategy == STRATEGY_RLE) {
+            deflater = new Deflater(Deflater.BEST_SPEED, nowrap);
+        } else {
+            deflater = new Deflater(this.compressionLevel, nowrap);
+            deflater.setStrategy(this.compressionStrategy);
+        }
+        return deflater;
+    }
+
+    /**
+     * Returns the level actually used by <code>createDeflater</code>.
+     */
+    int getDeflaterLevel() {
+        return this.compressionStrategy == STRATEGY_RLE ? Deflater.BEST_SPEED
+                : this.compressionLevel;
+    }
+
+    // Parallel IDAT compression
+
+    /**
+     * The default amount of filtered image data, in bytes, compressed by a
+     * single task when parallel deflate is enabled.
+     */
+    public static final int DEFAULT_DEFLATE_BLOCK_SIZE = 128 * 1024;
+
+    private int deflateThreads = 1;
+
+    private transient Executor deflateExecutor = null;
+
+    private int deflateBlockSize = DEFAULT_DEFLATE_BLOCK_SIZE;
+
+    /**
+     * Sets the number of threads used to filter and compress the image data.
+     * A value of 1 (the default) encodes on the calling thread; a value of 0
+     * uses one thread per available processor. When more than one thread is
+     * used the rows are split into bands of roughly
+     * {@link #getDeflateBlockSize()} bytes which are filtered and deflated
+     * concurrently and then concatenated into a single zlib stream.
+     *
+     * <p>
+     * In parallel mode the <code>filterRow</code> method is called
+     * concurrently and may be called more than once for the same row, so an
+     * overriding implementation must be thread-safe and must only depend on
+     * its arguments.
+     *
+     * @param threads
+     *            the number of threads, or 0 for the number of processors.
+     */
+    public void setDeflateThreads(final int threads) {
+        if (threads < 0) {
+            throw new IllegalArgumentException(
+                    PropertyUtil.getString("PNGEncodeParam29"));
+        }
+        this.deflateThreads = threads;
+    }
+
+    /**
+     * Returns the number of threads set by <code>setDeflateThreads</code>.
+     */
+    public int getDeflateThreads() {
+        return this.deflateThreads;
+    }
+
+    /**
+     * Sets an <code>Executor</code> on which the band compression tasks are
+     * run, enabling parallel deflate. If no executor is set and more than one
+     * thread is requested, a private thread pool is created for each encoded
+     * image. The thread count still bounds the number of bands in flight.
+     *
+     * @param executor
+     *            the executor to use, or <code>null</code>.
+     */
+    public void setDeflateExecutor(final Executor executor) {
+        this.deflateExecutor = executor;
+    }
+
+    /**
+     * Returns the <code>Executor</code> set by
+     * <code>setDeflateExecutor</code>, or <code>null</code>.
+     */
+    public Executor getDeflateExecutor() {
+        return this.deflateExecutor;
+    }
+
+    /**
+     * Sets the approximate number of filtered bytes compressed by one task in
+     * parallel mode. Smaller blocks give more parallelism at the expense of
+     * compression ratio.
+     *
+     * @param blockSize
+     *            the block size in bytes, greater than 0.
+     */
+    public void setDeflateBlockSize(final int blockSize) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException(
+                    PropertyUtil.getString("PNGEncodeParam30"));
+        }
+        this.deflateBlockSize = blockSize;
+    }
+
+    /**
+     * Returns the block size set by <code>setDeflateBlockSize</code>.
+     */
+    public int getDeflateBlockSize() {
+        return this.deflateBlockSize;
+    }
+
+    /**
+     * Returns the number of bands that may be compressed concurrently: the
+     * configured thread count, the number of available processors if it is 0,
+     * or if only an executor has been set.
+     */
+    public int getDeflateParallelism() {
+        if (this.deflateThreads == 0 || this.deflateThreads == 1
+                && this.deflateExecutor != null) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+        return this.deflateThreads;
+    }
+
+    /**
+     * Returns <code>true</code> if the image data will be compressed by
+     * several tasks concurrently.
+     */
+    public boolean isParallelDeflate() {
+        return this.deflateExecutor != null || getDeflateParallelism() > 1;
+    }
+
     // bKGD chunk - delegate to subclasses
 
     // In JAI 1.0, 'backgroundSet' was private. The JDK 1.2 compiler
@@ -1391,7 +1716,8 @@ public abstract class PNGEncodeParam implements ImageEncodeParam {
      * An abs() function for use by the Paeth predictor.
      */
     private static int abs(final int x) {
-        return x < 0 ? -x : x;
+        final int sign = x >> 31;
+        return (x ^ sign) - sign;
     }
 
     /**
@@ -1431,11 +1757,14 @@ public abstract class PNGEncodeParam implements ImageEncodeParam {
      * data. The return value will also be used as the filter type.
      *
      * <p>
-     * The default implementation of the method performs a trial encoding with
-     * each of the filter types, and computes the sum of absolute values of the
+     * The default implementation depends on the filter selection mode. In
+     * adaptive mode (the default) it performs a trial encoding with each of
+     * the filter types, and computes the sum of absolute values of the
      * differences between the raw bytes of the current row and the predicted
      * values. The index of the filter producing the smallest result is
-     * returned.
+     * returned. In sampled mode the same sums are only computed for every
+     * n-th pixel and only the chosen filter is applied to the whole row. In
+     * fixed mode the configured filter is always used.
      *
      * <p>
      * As an example, to perform only 'sub' filtering, this method could be
@@ -1481,133 +1810,201 @@ public abstract class PNGEncodeParam implements ImageEncodeParam {
     public int filterRow(final byte[] currRow, final byte[] prevRow,
             final byte[][] scratchRows, final int bytesPerRow,
             final int bytesPerPixel) {
+        final int filterType;
+        switch (this.filterSelection) {
+        case FILTER_SELECTION_FIXED:
+            filterType = this.fixedFilter;
+            break;
+        case FILTER_SELECTION_SAMPLED:
+            filterType = selectFilter(currRow, prevRow, bytesPerRow,
+                    bytesPerPixel, this.filterSampleInterval);
+            break;
+        default:
+            return filterRowAdaptive(currRow, prevRow, scratchRows,
+                    bytesPerRow, bytesPerPixel);
+        }
+        applyFilter(filterType, currRow, prevRow, scratchRows[filterType],
+                bytesPerRow, bytesPerPixel);
+        return filterType;
+    }
 
-        final int[] badness = { 0, 0, 0, 0, 0 };
-        int curr, left, up, upleft, diff;
-        int pa, pb, pc;
-        for (int i = bytesPerPixel; i < bytesPerRow + bytesPerPixel; ++i) {
-            curr = currRow[i] & 0xff;
-            left = currRow[i - bytesPerPixel] & 0xff;
-            up = prevRow[i] & 0xff;
-            upleft = prevRow[i - bytesPerPixel] & 0xff;
+    /**
+     * Computes all four filters in a single pass and returns the one with
+     * the smallest sum of absolute differences.
+     */
+    private static int filterRowAdaptive(final byte[] currRow,
+            final byte[] prevRow, final byte[][] scratchRows,
+            final int bytesPerRow, final int bytesPerPixel) {
+        final byte[] subRow = scratchRows[PNG_FILTER_SUB];
+        final byte[] upRow = scratchRows[PNG_FILTER_UP];
+        final byte[] averageRow = scratchRows[PNG_FILTER_AVERAGE];
+        final byte[] paethRow = scratchRows[PNG_FILTER_PAETH];
+        int badness0 = 0;
+        int badness1 = 0;
+        int badness2 = 0;
+        int badness3 = 0;
+        int badness4 = 0;
+        final int end = bytesPerRow + bytesPerPixel;
+        for (int i = bytesPerPixel; i < end; ++i) {
+            final int curr = currRow[i] & 0xff;
+            final int left = currRow[i - bytesPerPixel] & 0xff;
+            final int up = prevRow[i] & 0xff;
+            final int upleft = prevRow[i - bytesPerPixel] & 0xff;
 
-            // no filter
-            badness[0] += curr;
+            badness0 += curr;
 
-            // sub filter
-            diff = curr - left;
-            scratchRows[1][i] = (byte) diff;
-            badness[1] += diff > 0 ? diff : -diff;
+            int diff = curr - left;
+            subRow[i] = (byte) diff;
+            badness1 += abs(diff);
 
-            // up filter
             diff = curr - up;
-            scratchRows[2][i] = (byte) diff;
-            badness[2] += diff >= 0 ? diff : -diff;
+            upRow[i] = (byte) diff;
+            badness2 += abs(diff);
 
-            // average filter
             diff = curr - (left + up >> 1);
-            scratchRows[3][i] = (byte) diff;
-            badness[3] += diff >= 0 ? diff : -diff;
-
-            // paeth filter
-
-            // Original code much simplier but doesn't take full
-            // advantage of relationship between pa/b/c and
-            // information gleaned in abs operations.
-            // / pa = up -upleft;
-            // / pb = left-upleft;
-            // / pc = pa+pb;
-            // / pa = abs(pa);
-            // / pb = abs(pb);
-            // / pc = abs(pc);
-            // / if ((pa <= pb) && (pa <= pc))
-            // / diff = curr-left;
-            // / else if (pb <= pc)
-            // / diff = curr-up;
-            // / else
-            // / diff = curr-upleft;
-
-            pa = up - upleft;
-            pb = left - upleft;
-            if (pa < 0) {
-                if (pb < 0) {
-                    // both pa & pb neg so pc is always greater than or
-                    // equal to pa or pb;
-                    if (pa >= pb) {
-                        diff = curr - left;
-                    } else {
-                        diff = curr - up;
-                    }
-                } else {
-                    // pa neg pb pos so we must compute pc...
-                    pc = pa + pb;
-                    pa = -pa;
-                    if (pa <= pb) {
-                        if (pa <= pc) {
-                            diff = curr - left;
-                        } else {
-                            diff = curr - upleft;
-                        }
-                    } else
-                        // pc is negative and less than or equal to pa,
-                        // but since pa is greater than pb this isn't an issue...
-                        if (pb <= -pc) {
-                            diff = curr - up;
-                        } else {
-                            diff = curr - upleft;
-                        }
-                }
-            } else {
-                if (pb < 0) {
-                    pb = -pb; // make it positive...
-                    if (pa <= pb) {
-                        // pc would be negative and less than or equal to pb
-                        pc = pb - pa;
-                        if (pa <= pc) {
-                            diff = curr - left;
-                        } else if (pb == pc) {
-                            // if pa is zero then pc==pb otherwise
-                            // pc must be less than pb.
-                            diff = curr - up;
-                        } else {
-                            diff = curr - upleft;
-                        }
-                    } else {
-                        // pc would be positive and less than pa.
-                        pc = pa - pb;
-                        if (pb <= pc) {
-                            diff = curr - up;
-                        } else {
-                            diff = curr - upleft;
-                        }
-                    }
-                } else {
-                    // both pos so pa+pb is always greater than pa/pb
-                    if (pa <= pb) {
-                        diff = curr - left;
-                    } else {
-                        diff = curr - up;
-                    }
-                }
-            }
-            scratchRows[4][i] = (byte) diff;
-            badness[4] += diff >= 0 ? diff : -diff;
+            averageRow[i] = (byte) diff;
+            badness3 += abs(diff);
+
+            diff = curr - paeth(left, up, upleft);
+            paethRow[i] = (byte) diff;
+            badness4 += abs(diff);
         }
-        int filterType = 0;
-        int minBadness = badness[0];
 
-        for (int i = 1; i < 5; ++i) {
-            if (badness[i] < minBadness) {
-                minBadness = badness[i];
-                filterType = i;
-            }
+        final int filterType = minBadness(badness0, badness1, badness2,
+                badness3, badness4);
+        if (filterType == PNG_FILTER_NONE) {
+            System.arraycopy(currRow, bytesPerPixel,
+                    scratchRows[PNG_FILTER_NONE], bytesPerPixel, bytesPerRow);
         }
+        return filterType;
+    }
 
-        if (filterType == 0) {
-            System.arraycopy(currRow, bytesPerPixel, scratchRows[0],
-                    bytesPerPixel, bytesPerRow);
+    /**
+     * Chooses a filter with the adaptive heuristic, evaluated only for every
+     * <code>interval</code>-th pixel of the row.
+     */
+    private static int selectFilter(final byte[] currRow,
+            final byte[] prevRow, final int bytesPerRow,
+            final int bytesPerPixel, final int interval) {
+        int badness0 = 0;
+        int badness1 = 0;
+        int badness2 = 0;
+        int badness3 = 0;
+        int badness4 = 0;
+        final int end = bytesPerRow + bytesPerPixel;
+        final int step = interval * bytesPerPixel;
+        for (int p = bytesPerPixel; p < end; p += step) {
+            final int pixelEnd = Math.min(p + bytesPerPixel, end);
+            for (int i = p; i < pixelEnd; ++i) {
+                final int curr = currRow[i] & 0xff;
+                final int left = currRow[i - bytesPerPixel] & 0xff;
+                final int up = prevRow[i] & 0xff;
+                final int upleft = prevRow[i - bytesPerPixel] & 0xff;
+
+                badness0 += curr;
+                badness1 += abs(curr - left);
+                badness2 += abs(curr - up);
+                badness3 += abs(curr - (left + up >> 1));
+                badness4 += abs(curr - paeth(left, up, upleft));
+            }
         }
+        return minBadness(badness0, badness1, badness2, badness3, badness4);
+    }
 
+    private static int minBadness(final int badness0, final int badness1,
+            final int badness2, final int badness3, final int badness4) {
+        int filterType = PNG_FILTER_NONE;
+        int min = badness0;
+        if (badness1 < min) {
+            min = badness1;
+            filterType = PNG_FILTER_SUB;
+        }
+        if (badness2 < min) {
+            min = badness2;
+            filterType = PNG_FILTER_UP;
+        }
+        if (badness3 < min) {
+            min = badness3;
+            filterType = PNG_FILTER_AVERAGE;
+        }
+        if (badness4 < min) {
+            filterType = PNG_FILTER_PAETH;
+        }
         return filterType;
     }
+
+    /**
+     * The Paeth predictor on unsigned sample values, without the branches
+     * of <code>paethPredictor</code> on the absolute values.
+     */
+    private static int paeth(final int left, final int up, final int upleft) {
+        final int pb = left - upleft;
+        final int pa = up - upleft;
+        final int pc = abs(pa + pb);
+        final int absA = abs(pa);
+        final int absB = abs(pb);
+        if (absA <= absB && absA <= pc) {
+            return left;
+        }
+        return absB <= pc ? up : upleft;
+    }
+
+    /**
+     * Applies a single filter to a row.
+     *
+     * @param filterType
+     *            one of the <code>PNG_FILTER_*</code> constants
+     * @param currRow
+     *            the current row, pixel data starting at
+     *            <code>bytesPerPixel</code>
+     * @param prevRow
+     *            the previous row, pixel data starting at
+     *            <code>bytesPerPixel</code>
+     * @param filteredRow
+     *            receives the filtered data, starting at
+     *            <code>bytesPerPixel</code>
+     * @param bytesPerRow
+     *            the number of bytes in the row
+     * @param bytesPerPixel
+     *            the number of bytes per pixel, rounded up
+     */
+    public static void applyFilter(final int filterType, final byte[] currRow,
+            final byte[] prevRow, final byte[] filteredRow,
+            final int bytesPerRow, final int bytesPerPixel) {
+        final int end = bytesPerRow + bytesPerPixel;
+        switch (filterType) {
+        case PNG_FILTER_NONE:
+            System.arraycopy(currRow, bytesPerPixel, filteredRow,
+                    bytesPerPixel, bytesPerRow);
+            break;
+        case PNG_FILTER_SUB:
+            for (int i = bytesPerPixel; i < end; ++i) {
+                filteredRow[i] = (byte) (currRow[i] - currRow[i
+                        - bytesPerPixel]);
+            }
+            break;
+        case PNG_FILTER_UP:
+            for (int i = bytesPerPixel; i < end; ++i) {
+                filteredRow[i] = (byte) (currRow[i] - prevRow[i]);
+            }
+            break;
+        case PNG_FILTER_AVERAGE:
+            for (int i = bytesPerPixel; i < end; ++i) {
+                filteredRow[i] = (byte) (currRow[i]
+                        - ((currRow[i - bytesPerPixel] & 0xff)
+                                + (prevRow[i] & 0xff) >> 1));
+            }
+            break;
+        case PNG_FILTER_PAETH:
+            for (int i = bytesPerPixel; i < end; ++i) {
+                filteredRow[i] = (byte) (currRow[i] - paeth(
+                        currRow[i - bytesPerPixel] & 0xff, prevRow[i] & 0xff,
+                        prevRow[i - bytesPerPixel] & 0xff));
+            }
+            break;
+        default:
+            throw new IllegalArgumentException(
+                    PropertyUtil.getString("PNGEncodeParam31"));
+        }
+    }
 }
@@ -43,9 +43,10 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.GregorianCalendar;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.TimeZone;
-import java.util.zip.Inflater;
 import java.util.zip.InflaterInputStream;
 
 import lombok.extern.slf4j.Slf4j;
@@ -223,7 +224,7 @@ class PNGImage extends SimpleRenderedImage implements PNGConstants {
     private static final int POST_ADD_GRAY_TRANS_EXP = POST_ADD_GRAY_TRANS
             | POST_EXP_MASK;
 
-    private final List<InputStream> streamVec = new ArrayList<>();
+    private final List<byte[]> idatChunks = new ArrayList<>();
     private DataInputStream dataStream;
 
     private int bytesPerPixel; // number of bytes per input pixel
@@ -241,6 +242,32 @@ class PNGImage extends SimpleRenderedImage implements PNGConstants {
 
     private WritableRaster theTile;
 
+    private int outputDepth;
+    private int outputScanlineStride;
+
+    /**
+     * The decoded row bands of a non-interlaced image, least recently used
+     * first.
+     */
+    private Map<Integer, WritableRaster> tileCache;
+
+    /**
+     * Decodes the rows of a non-interlaced image in sequence. It is kept
+     * between calls to getTile so that consecutive bands are decoded without
+     * inflating the data again from the start.
+     */
+    private PassDecoder rowDecoder;
+    private int nextRow;
+
+    /**
+     * Only every subsampling-th pixel of every subsampling-th row of the
+     * source image is decoded; width and height are those of the subsampled
+     * image.
+     */
+    private int subsampling = 1;
+    private int sourceWidth;
+    private int sourceHeight;
+
     private int[] gammaLut = null;
 
     private void initGammaLut(final int bits) {
@@ -320,6 +347,7 @@ class PNGImage extends SimpleRenderedImage implements PNGConstants {
                 this.output8BitGray = true;
             }
             this.generateEncodeParam = decodeParam.getGenerateEncodeParam();
+            this.subsampling = decodeParam.getSubsampling();
 
             if (this.emitProperties) {
                 this.properties.put("file_type", "PNG v. 1.0");
@@ -351,8 +379,7 @@ class PNGImage extends SimpleRenderedImage implements PNGConstants {
                         parse_PLTE_chunk(chunk);
                     } else if (chunkType.equals(PNGChunk.ChunkType.IDAT.name())) {
                         chunk = PNGChunk.readChunk(distream);
-                        this.streamVec.add(new ByteArrayInputStream(chunk
-                                .getData()));
+                        this.idatChunks.add(chunk.getData());
                     } else if (chunkType.equals(PNGChunk.ChunkType.IEND.name())) {
                         chunk = PNGChunk.readChunk(distream);
                         parse_IEND_chunk(chunk);
@@ -435,8 +462,11 @@ class PNGImage extends SimpleRenderedImage implements PNGConstants {
     }
 
     private void parse_IHDR_chunk(final PNGChunk chunk) {
-        this.tileWidth = this.width = chunk.getInt4(0);
-        this.tileHeight = this.height = chunk.getInt4(4);
+        this.sourceWidth = chunk.getInt4(0);
+        this.sourceHeight = chunk.getInt4(4);
+        final int s = this.subsampling;
+        this.tileWidth = this.width = (this.sourceWidth + s - 1) / s;
+        this.tileHeight = this.height = (this.sourceHeight + s - 1) / s;
 
         this.bitDepth = chunk.getInt1(8);
 
@@ -662,13 +692,6 @@ class PNGImage extends SimpleRenderedImage implements PNGConstants {
             this.encodeParam.setCompressedText(ztextArray);
         }
 
-        // Parse prior IDAT chunks
-        final InputStream seqStream = new SequenceInputStream(
-                Collections.enumeration(this.streamVec));
-        final InputStream infStream = new InflaterInputStream(seqStream,
-                new Inflater());
-        this.dataStream = new DataInputStream(infStream);
-
         // Create an empty WritableRaster
         int depth = this.bitDepth;
         if (this.colorType == PNG_COLOR_GRAY && this.bitDepth < 8
@@ -680,9 +703,8 @@ class PNGImage extends SimpleRenderedImage implements PNGConstants {
         }
         final int bytesPerRow = (this.outputBands * this.width * depth + 7) / 8;
         final int scanlineStride = depth == 16 ? bytesPerRow / 2 : bytesPerRow;
-
-        this.theTile = createRaster(this.width, this.height, this.outputBands,
-                scanlineStride, depth);
+        this.outputDepth = depth;
+        this.outputScanlineStride = scanlineStride;
 
         if (this.performGammaCorrection && this.gammaLut == null) {
             initGammaLut(this.bitDepth);
@@ -693,8 +715,42 @@ class PNGImage extends SimpleRenderedImage implements PNGConstants {
             initGrayLut(this.bitDepth);
         }
 
-        decodeImage(this.interlaceMethod == 1);
-        this.sampleModel = this.theTile.getSampleModel();
+        if (this.interlaceMethod == 1) {
+            // Adam7 spreads every band over seven passes: decode it all now
+            this.theTile = createRaster(this.width, this.height,
+                    this.outputBands, scanlineStride, depth);
+            this.dataStream = openDataStream();
+            try {
+                decodeImage(true);
+            } finally {
+                IOUtils.closeQuietly(this.dataStream);
+                this.dataStream = null;
+                this.idatChunks.clear();
+            }
+            this.sampleModel = this.theTile.getSampleModel();
+        } else {
+            // Decode bands of rows on demand, see getTile
+            int rows = this.decodeParam.getTileHeight();
+            if (rows == 0) {
+                rows = PNGDecodeParam.DEFAULT_TILE_SIZE
+                        / Math.max(1, bytesPerRow);
+            }
+            this.tileHeight = Math.max(1, Math.min(rows, this.height));
+            this.sampleModel = createRaster(this.width, this.tileHeight,
+                    this.outputBands, scanlineStride, depth).getSampleModel();
+            final int cacheSize = this.decodeParam.getTileCacheSize();
+            this.tileCache = new LinkedHashMap<Integer, WritableRaster>(16,
+                    0.75f, true) {
+
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(
+                        final Map.Entry<Integer, WritableRaster> eldest) {
+                    return size() > cacheSize;
+                }
+            };
+        }
 
         if (this.colorType == PNG_COLOR_PALETTE && !this.expandPalette) {
             if (this.outputHasAlphaPalette) {
@@ -1252,10 +1308,16 @@ class PNGImage extends SimpleRenderedImage implements PNGConstants {
 
     private WritableRaster createRaster(final int width, final int height,
             final int bands, final int scanlineStride, final int bitDepth) {
+        return createRaster(width, height, bands, scanlineStride, bitDepth,
+                new Point(0, 0));
+    }
+
+    private WritableRaster createRaster(final int width, final int height,
+            final int bands, final int scanlineStride, final int bitDepth,
+            final Point origin) {
 
         DataBuffer dataBuffer;
         WritableRaster ras = null;
-        final Point origin = new Point(0, 0);
         if (bitDepth < 8 && bands == 1) {
             dataBuffer = new DataBufferByte(height * scanlineStride);
             ras = Raster.createPackedRaster(dataBuffer, width, height,
@@ -1340,18 +1402,19 @@ class PNGImage extends SimpleRenderedImage implements PNGConstants {
     }
 
     private void processPixels(final int process, final Raster src,
-            final WritableRaster dst, final int xOffset, final int step,
-            final int y, final int width) {
+            final WritableRaster dst, final int srcOffset, final int srcStep,
+            final int xOffset, final int step, final int y, final int width) {
         int srcX, dstX;
 
         // Create an array suitable for holding one pixel
         final int[] ps = src.getPixel(0, 0, (int[]) null);
-        final int[] pd = dst.getPixel(0, 0, (int[]) null);
+        final int[] pd = dst.getPixel(dst.getMinX(), dst.getMinY(),
+                (int[]) null);
 
         dstX = xOffset;
         switch (process) {
         case POST_NONE:
-            for (srcX = 0; srcX < width; srcX++) {
+            for (srcX = srcOffset; srcX < width; srcX += srcStep) {
                 src.getPixel(srcX, 0, ps);
                 dst.setPixel(dstX, y, ps);
                 dstX += step;
@@ -1359,7 +1422,7 @@ class PNGImage extends SimpleRenderedImage implements PNGConstants {
             break;
 
         case POST_GAMMA:
-            for (srcX = 0; srcX < width; srcX++) {
+            for (srcX = srcOffset; srcX < width; srcX += srcStep) {
                 src.getPixel(srcX, 0, ps);
 
                 for (int i = 0; i < this.inputBands; ++i) {
@@ -1373,7 +1436,7 @@ class PNGImage extends SimpleRenderedImage implements PNGConstants {
             break;
 
         case POST_GRAY_LUT:
-            for (srcX = 0; srcX < width; srcX++) {
+            for (srcX = srcOffset; srcX < width; srcX += srcStep) {
                 src.getPixel(srcX, 0, ps);
 
                 pd[0] = this.grayLut[ps[0]];
@@ -1384,7 +1447,7 @@ class PNGImage extends SimpleRenderedImage implements PNGConstants {
             break;
 
         case POST_GRAY_LUT_ADD_TRANS:
-            for (srcX = 0; srcX < width; srcX++) {
+            for (srcX = srcOffset; srcX < width; srcX += srcStep) {
                 src.getPixel(srcX, 0, ps);
 
                 final int val = ps[0];
@@ -1401,7 +1464,7 @@ class PNGImage extends SimpleRenderedImage implements PNGConstants {
             break;
 
         case POST_PALETTE_TO_RGB:
-            for (srcX = 0; srcX < width; srcX++) {
+            for (srcX = srcOffset; srcX < width; srcX += srcStep) {
                 src.getPixel(srcX, 0, ps);
 
                 final int val = ps[0];
@@ -1415,7 +1478,7 @@ class PNGImage extends SimpleRenderedImage implements PNGConstants {
             break;
 
         case POST_PALETTE_TO_RGBA:
-            for (srcX = 0; srcX < width; srcX++) {
+            for (srcX = srcOffset; srcX < width; srcX += srcStep) {
                 src.getPixel(srcX, 0, ps);
 
                 final int val = ps[0];
@@ -1430,7 +1493,7 @@ class PNGImage extends SimpleRenderedImage implements PNGConstants {
             break;
 
         case POST_ADD_GRAY_TRANS:
-            for (srcX = 0; srcX < width; srcX++) {
+            for (srcX = srcOffset; srcX < width; srcX += srcStep) {
                 src.getPixel(srcX, 0, ps);
 
                 int val = ps[0];
@@ -1450,7 +1513,7 @@ class PNGImage extends SimpleRenderedImage implements PNGConstants {
             break;
 
         case POST_ADD_RGB_TRANS:
-            for (srcX = 0; srcX < width; srcX++) {
+            for (srcX = srcOffset; srcX < width; srcX += srcStep) {
                 src.getPixel(srcX, 0, ps);
 
                 final int r = ps[0];
@@ -1479,7 +1542,7 @@ class PNGImage extends SimpleRenderedImage implements PNGConstants {
             break;
 
         case POST_REMOVE_GRAY_TRANS:
-            for (srcX = 0; srcX < width; srcX++) {
+            for (srcX = srcOffset; srcX < width; srcX += srcStep) {
                 src.getPixel(srcX, 0, ps);
 
                 final int g = ps[0];
@@ -1495,7 +1558,7 @@ class PNGImage extends SimpleRenderedImage implements PNGConstants {
             break;
 
         case POST_REMOVE_RGB_TRANS:
-            for (srcX = 0; srcX < width; srcX++) {
+            for (srcX = srcOffset; srcX < width; srcX += srcStep) {
                 src.getPixel(srcX, 0, ps);
 
                 final int r = ps[0];
@@ -1517,7 +1580,7 @@ class PNGImage extends SimpleRenderedImage implements PNGConstants {
             break;
 
         case POST_GAMMA_EXP:
-            for (srcX = 0; srcX < width; srcX++) {
+            for (srcX = srcOffset; srcX < width; srcX += srcStep) {
                 src.getPixel(srcX, 0, ps);
 
                 final int val = ps[0];
@@ -1534,7 +1597,7 @@ class PNGImage extends SimpleRenderedImage implements PNGConstants {
             break;
 
         case POST_GRAY_ALPHA_EXP:
-            for (srcX = 0; srcX < width; srcX++) {
+            for (srcX = srcOffset; srcX < width; srcX += srcStep) {
                 src.getPixel(srcX, 0, ps);
 
                 final int val = ps[0];
@@ -1550,7 +1613,7 @@ class PNGImage extends SimpleRenderedImage implements PNGConstants {
             break;
 
         case POST_ADD_GRAY_TRANS_EXP:
-            for (srcX = 0; srcX < width; srcX++) {
+            for (srcX = srcOffset; srcX < width; srcX += srcStep) {
                 src.getPixel(srcX, 0, ps);
 
                 int val = ps[0];
@@ -1572,7 +1635,7 @@ class PNGImage extends SimpleRenderedImage implements PNGConstants {
             break;
 
         case POST_GRAY_LUT_ADD_TRANS_EXP:
-            for (srcX = 0; srcX < width; srcX++) {
+            for (srcX = srcOffset; srcX < width; srcX += srcStep) {
                 src.getPixel(srcX, 0, ps);
 
                 final int val = ps[0];
@@ -1603,33 +1666,90 @@ class PNGImage extends SimpleRenderedImage implements PNGConstants {
             return;
         }
 
-        final int bytesPerRow = (this.inputBands * passWidth * this.bitDepth + 7) / 8;
-        final int eltsPerRow = this.bitDepth == 16 ? bytesPerRow / 2
-                : bytesPerRow;
-        byte[] curr = new byte[bytesPerRow];
-        byte[] prior = new byte[bytesPerRow];
-
-        // Create a 1-row tall Raster to hold the data
-        final WritableRaster passRow = createRaster(passWidth, 1,
-                this.inputBands, eltsPerRow, this.bitDepth);
-        final DataBuffer dataBuffer = passRow.getDataBuffer();
-        final int type = dataBuffer.getDataType();
-        byte[] byteData = null;
-        short[] shortData = null;
-        if (type == DataBuffer.TYPE_BYTE) {
-            byteData = ((DataBufferByte) dataBuffer).getData();
-        } else {
-            shortData = ((DataBufferUShort) dataBuffer).getData();
-        }
+        final PassDecoder decoder = new PassDecoder(this.dataStream,
+                passWidth, xOffset, xStep);
 
         // Decode the (sub)image row-by-row
         int srcY, dstY;
         for (srcY = 0, dstY = yOffset; srcY < passHeight; srcY++, dstY += yStep) {
+            decoder.decodeRow(imRas, dstY);
+        }
+    }
+
+    /**
+     * Decodes consecutive rows of one pass from the inflated image data.
+     */
+    private final class PassDecoder {
+
+        private final DataInputStream stream;
+        private final int passWidth;
+        private final int bytesPerRow;
+        private final int eltsPerRow;
+        private byte[] curr;
+        private byte[] prior;
+        private final WritableRaster passRow;
+        private byte[] byteData = null;
+        private short[] shortData = null;
+
+        /**
+         * The first pass pixel that is kept, the step between kept pass
+         * pixels, and their position and step in the output image; the first
+         * pixel is negative if no pixel of the pass is kept.
+         */
+        private int srcOffset = -1;
+        private int srcStep;
+        private int dstOffset;
+        private int dstStep;
+
+        PassDecoder(final DataInputStream stream, final int passWidth,
+                final int xOffset, final int xStep) {
+            this.stream = stream;
+            this.passWidth = passWidth;
+
+            // Pass pixel i lies in image column xOffset + i * xStep
+            final int s = PNGImage.this.subsampling;
+            for (int i = 0; i < s && i < passWidth; i++) {
+                if ((xOffset + i * xStep) % s == 0) {
+                    this.srcOffset = i;
+                    this.srcStep = s / gcd(xStep, s);
+                    this.dstOffset = (xOffset + i * xStep) / s;
+                    this.dstStep = xStep * this.srcStep / s;
+                    break;
+                }
+            }
+            this.bytesPerRow = (PNGImage.this.inputBands * passWidth
+                    * PNGImage.this.bitDepth + 7) / 8;
+            this.eltsPerRow = PNGImage.this.bitDepth == 16 ? this.bytesPerRow / 2
+                    : this.bytesPerRow;
+            this.curr = new byte[this.bytesPerRow];
+            this.prior = new byte[this.bytesPerRow];
+
+            // Create a 1-row tall Raster to hold the data
+            this.passRow = createRaster(passWidth, 1,
+                    PNGImage.this.inputBands, this.eltsPerRow,
+                    PNGImage.this.bitDepth);
+            final DataBuffer dataBuffer = this.passRow.getDataBuffer();
+            if (dataBuffer.getDataType() == DataBuffer.TYPE_BYTE) {
+                this.byteData = ((DataBufferByte) dataBuffer).getData();
+            } else {
+                this.shortData = ((DataBufferUShort) dataBuffer).getData();
+            }
+        }
+
+        /**
+         * Decodes the next row of the pass, which is row <code>srcY</code> of
+         * the source image, into <code>imRas</code> if subsampling keeps it.
+         */
+        void decodeRow(final WritableRaster imRas, final int srcY) {
+            final int bytesPerRow = this.bytesPerRow;
+            final byte[] curr = this.curr;
+            final byte[] prior = this.prior;
+
             // Read the filter type byte and a row of data
             int filter = 0;
             try {
-                filter = this.dataStream.read();
-                this.dataStream.readFully(curr, 0, bytesPerRow);
+                filter = this.stream.read();
+                this.stream.readFully(curr, 0, bytesPerRow);
             } catch (final Exception e) {
                 log.error("Exception", e);
             }
@@ -1638,17 +1758,18 @@ class PNGImage extends SimpleRenderedImage implements PNGConstants {
             case PNG_FILTER_NONE:
                 break;
             case PNG_FILTER_SUB:
-                decodeSubFilter(curr, bytesPerRow, this.bytesPerPixel);
+                decodeSubFilter(curr, bytesPerRow, PNGImage.this.bytesPerPixel);
                 break;
             case PNG_FILTER_UP:
                 decodeUpFilter(curr, prior, bytesPerRow);
                 break;
             case PNG_FILTER_AVERAGE:
                 decodeAverageFilter(curr, prior, bytesPerRow,
-                        this.bytesPerPixel);
+                        PNGImage.this.bytesPerPixel);
                 break;
             case PNG_FILTER_PAETH:
-                decodePaethFilter(curr, prior, bytesPerRow, this.bytesPerPixel);
+                decodePaethFilter(curr, prior, bytesPerRow,
+                        PNGImage.this.bytesPerPixel);
                 break;
             default:
                 // Error -- uknown filter type
@@ -1656,56 +1777,127 @@ class PNGImage extends SimpleRenderedImage implements PNGConstants {
                 throw new RuntimeException(msg);
             }
 
-            // Copy data into passRow byte by byte
-            if (this.bitDepth < 16) {
-                System.arraycopy(curr, 0, byteData, 0, bytesPerRow);
-            } else {
-                int idx = 0;
-                for (int j = 0; j < eltsPerRow; j++) {
-                    shortData[j] = (short) (curr[idx] << 8 | curr[idx + 1] & 0xff);
-                    idx += 2;
+            final int s = PNGImage.this.subsampling;
+            if (this.srcOffset >= 0 && srcY % s == 0) {
+                // Copy data into passRow byte by byte
+                if (PNGImage.this.bitDepth < 16) {
+                    System.arraycopy(curr, 0, this.byteData, 0, bytesPerRow);
+                } else {
+                    int idx = 0;
+                    for (int j = 0; j < this.eltsPerRow; j++) {
+                        this.shortData[j] = (short) (curr[idx] << 8 | curr[idx + 1] & 0xff);
+                        idx += 2;
+                    }
                 }
-            }
 
-            processPixels(this.postProcess, passRow, imRas, xOffset, xStep,
-                    dstY, passWidth);
+                processPixels(PNGImage.this.postProcess, this.passRow, imRas,
+                        this.srcOffset, this.srcStep, this.dstOffset,
+                        this.dstStep, srcY / s, this.passWidth);
+            }
 
             // Swap curr and prior
-            final byte[] tmp = prior;
-            prior = curr;
-            curr = tmp;
+            this.prior = curr;
+            this.curr = prior;
         }
     }
 
+    /**
+     * Opens a new stream inflating the image data from the beginning.
+     */
+    private DataInputStream openDataStream() {
+        final List<InputStream> streams = new ArrayList<>(
+                this.idatChunks.size());
+        for (final byte[] chunk : this.idatChunks) {
+            streams.add(new ByteArrayInputStream(chunk));
+        }
+        return new DataInputStream(new InflaterInputStream(
+                new SequenceInputStream(Collections.enumeration(streams))));
+    }
+
+    private static int gcd(final int a, final int b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+
     private void decodeImage(final boolean useInterlacing) {
+        final int width = this.sourceWidth;
+        final int height = this.sourceHeight;
         if (!useInterlacing) {
-            decodePass(this.theTile, 0, 0, 1, 1, this.width, this.height);
+            decodePass(this.theTile, 0, 0, 1, 1, width, height);
         } else {
-            decodePass(this.theTile, 0, 0, 8, 8, (this.width + 7) / 8,
-                    (this.height + 7) / 8);
-            decodePass(this.theTile, 4, 0, 8, 8, (this.width + 3) / 8,
-                    (this.height + 7) / 8);
-            decodePass(this.theTile, 0, 4, 4, 8, (this.width + 3) / 4,
-                    (this.height + 3) / 8);
-            decodePass(this.theTile, 2, 0, 4, 4, (this.width + 1) / 4,
-                    (this.height + 3) / 4);
-            decodePass(this.theTile, 0, 2, 2, 4, (this.width + 1) / 2,
-                    (this.height + 1) / 4);
-            decodePass(this.theTile, 1, 0, 2, 2, this.width / 2,
-                    (this.height + 1) / 2);
-            decodePass(this.theTile, 0, 1, 1, 2, this.width, this.height / 2);
+            decodePass(this.theTile, 0, 0, 8, 8, (width + 7) / 8,
+                    (height + 7) / 8);
+            decodePass(this.theTile, 4, 0, 8, 8, (width + 3) / 8,
+                    (height + 7) / 8);
+            decodePass(this.theTile, 0, 4, 4, 8, (width + 3) / 4,
+                    (height + 3) / 8);
+            decodePass(this.theTile, 2, 0, 4, 4, (width + 1) / 4,
+                    (height + 3) / 4);
+            decodePass(this.theTile, 0, 2, 2, 4, (width + 1) / 2,
+                    (height + 1) / 4);
+            decodePass(this.theTile, 1, 0, 2, 2, width / 2,
+                    (height + 1) / 2);
+            decodePass(this.theTile, 0, 1, 1, 2, width, height / 2);
         }
     }
 
     // RenderedImage stuff
 
     @Override
-    public Raster getTile(final int tileX, final int tileY) {
-        if (tileX != 0 || tileY != 0) {
+    public synchronized Raster getTile(final int tileX, final int tileY) {
+        if (tileX != 0 || tileY < 0 || tileY >= getNumYTiles()
+                || this.theTile != null && tileY != 0) {
             // Error -- bad tile requested
             final String msg = PropertyUtil.getString("PNGImageDecoder17");
             throw new IllegalArgumentException(msg);
         }
-        return this.theTile;
+        if (this.theTile != null) {
+            return this.theTile;
+        }
+        final WritableRaster tile = this.tileCache.get(tileY);
+        if (tile != null) {
+            return tile;
+        }
+        return decodeTiles(tileY);
+    }
+
+    /**
+     * Decodes the bands of a non-interlaced image up to and including the
+     * given one. The inflater cannot seek backwards, so decoding restarts from
+     * the first row if the band lies before the current position.
+     */
+    private WritableRaster decodeTiles(final int tileY) {
+        final int y = tileY * this.tileHeight;
+        if (this.rowDecoder == null || this.nextRow > y) {
+            closeRowDecoder();
+            this.dataStream = openDataStream();
+            this.rowDecoder = new PassDecoder(this.dataStream,
+                    this.sourceWidth, 0, 1);
+            this.nextRow = 0;
+        }
+        final int s = this.subsampling;
+        WritableRaster tile;
+        do {
+            tile = createRaster(this.width, this.tileHeight,
+                    this.outputBands, this.outputScanlineStride,
+                    this.outputDepth, new Point(0, this.nextRow));
+            final int end = Math.min(this.nextRow + this.tileHeight,
+                    this.height);
+            final int srcEnd = Math.min(end * s, this.sourceHeight);
+            for (int srcRow = this.nextRow * s; srcRow < srcEnd; srcRow++) {
+                this.rowDecoder.decodeRow(tile, srcRow);
+            }
+            this.tileCache.put(this.nextRow / this.tileHeight, tile);
+            this.nextRow = end;
+        } while (this.nextRow <= y);
+        if (this.nextRow >= this.height) {
+            closeRowDecoder();
+        }
+        return tile;
+    }
+
+    private void closeRowDecoder() {
+        IOUtils.closeQuietly(this.dataStream);
+        this.dataStream = null;
+        this.rowDecoder = null;
     }
 }
@@ -360,17 +360,19 @@ public class PNGImageEncoder extends ImageEncoderImpl {
 
     private byte[][] filteredRows = null;
 
+    private PNGParallelIDATWriter parallelWriter = null;
+
     private static int clamp(final int val, final int maxValue) {
         return val > maxValue ? maxValue : val;
     }
 
-    private void encodePass(final OutputStream os, final Raster ras,
+    private void encodePass(final OutputStream os, final RowReader ras,
             int xOffset, final int yOffset, int xSkip, final int ySkip)
                     throws IOException {
-        final int minX = ras.getMinX();
-        final int minY = ras.getMinY();
-        final int width = ras.getWidth();
-        final int height = ras.getHeight();
+        final int minX = ras.minX;
+        final int minY = ras.minY;
+        final int width = ras.width;
+        final int height = ras.height;
 
         xOffset *= this.numBands;
         xSkip *= this.numBands;
@@ -393,14 +395,17 @@ public class PNGImageEncoder extends ImageEncoderImpl {
         }
 
         this.currRow = new byte[bytesPerRow + this.bpp];
-        this.prevRow = new byte[bytesPerRow + this.bpp];
-
-        this.filteredRows = new byte[5][bytesPerRow + this.bpp];
+        if (this.parallelWriter != null) {
+            this.parallelWriter.startPass(bytesPerRow);
+        } else {
+            this.prevRow = new byte[bytesPerRow + this.bpp];
+            this.filteredRows = new byte[5][bytesPerRow + this.bpp];
+        }
 
         final int maxValue = (1 << this.bitDepth) - 1;
 
         for (int row = minY + yOffset; row < minY + height; row += ySkip) {
-            ras.getPixels(minX, row, width, 1, samples);
+            ras.getPixels(row, samples);
 
             if (this.compressGray) {
                 final int shift = 8 - this.bitDepth;
@@ -459,6 +464,13 @@ public class PNGImageEncoder extends ImageEncoderImpl {
                 break;
             }
 
+            if (this.parallelWriter != null) {
+                // The writer filters the row later, on another thread
+                this.parallelWriter.addRow(this.currRow);
+                this.currRow = new byte[bytesPerRow + this.bpp];
+                continue;
+            }
+
             // Perform filtering
             final int filterType = this.param.filterRow(this.currRow,
                     this.prevRow, this.filteredRows, bytesPerRow, this.bpp);
@@ -475,63 +487,95 @@ public class PNGImageEncoder extends ImageEncoderImpl {
 
     private void writeIDAT() throws IOException {
         final IDATOutputStream ios = new IDATOutputStream(this.dataOutput, 8192);
-        final DeflaterOutputStream dos = new DeflaterOutputStream(ios,
-                new Deflater(9));
-
-        // Future work - don't convert entire image to a Raster It
-        // might seem that you could just call image.getData() but
-        // 'BufferedImage.subImage' doesn't appear to set the Width
-        // and height properly of the Child Raster, so the Raster
-        // you get back here appears larger than it should.
-        // This solves that problem by bounding the raster to the
-        // image's bounds...
-        Raster ras = this.image.getData(new Rectangle(this.image.getMinX(),
-                this.image.getMinY(), this.image.getWidth(), this.image
-                .getHeight()));
-        // log.info("Image: [" +
-        // image.getMinY() + ", " +
-        // image.getMinX() + ", " +
-        // image.getWidth() + ", " +
-        // image.getHeight() + "]");
-        // log.info("Ras: [" +
-        // ras.getMinX() + ", " +
-        // ras.getMinY() + ", " +
-        // ras.getWidth() + ", " +
-        // ras.getHeight() + "]");
+        final Deflater deflater;
+        final DeflaterOutputStream dos;
+        if (this.param.isParallelDeflate()) {
+            this.parallelWriter = new PNGParallelIDATWriter(ios, this.param,
+                    this.bpp);
+            deflater = null;
+            dos = null;
+        } else {
+            deflater = this.param.createDeflater(false);
+            dos = new DeflaterOutputStream(ios, deflater, 8192);
+        }
 
+        final int[] bandList;
         if (this.skipAlpha) {
-            final int numBands = ras.getNumBands() - 1;
-            final int[] bandList = new int[numBands];
-            for (int i = 0; i < numBands; ++i) {
+            bandList = new int[this.numBands];
+            for (int i = 0; i < this.numBands; ++i) {
                 bandList[i] = i;
             }
-            ras = ras.createChild(0, 0, ras.getWidth(), ras.getHeight(), 0, 0,
-                    bandList);
+        } else {
+            bandList = null;
         }
 
+        final RowReader ras;
+        if (this.interlace) {
+            // The Adam7 passes visit every row seven times, so read the
+            // whole image once rather than computing each tile repeatedly.
+            // It might seem that you could just call image.getData() but
+            // 'BufferedImage.subImage' doesn't appear to set the Width
+            // and height properly of the Child Raster, so the Raster
+            // you get back here appears larger than it should.
+            // This solves that problem by bounding the raster to the
+            // image's bounds...
+            Raster raster = this.image.getData(new Rectangle(
+                    this.image.getMinX(), this.image.getMinY(),
+                    this.image.getWidth(), this.image.getHeight()));
+            if (bandList != null) {
+                raster = raster.createChild(raster.getMinX(),
+                        raster.getMinY(), raster.getWidth(),
+                        raster.getHeight(), raster.getMinX(),
+                        raster.getMinY(), bandList);
+            }
+            ras = new RasterRowReader(raster);
+        } else {
+            // Stream the image one row of tiles at a time
+            ras = new TileRowReader(this.image, bandList);
+        }
+
+        try {
+            encodePasses(dos, ras);
+            if (this.parallelWriter != null) {
+                this.parallelWriter.finish();
+            } else {
+                dos.finish();
+                dos.close();
+            }
+        } finally {
+            ras.dispose();
+            if (deflater != null) {
+                deflater.end();
+            }
+            if (this.parallelWriter != null) {
+                this.parallelWriter.dispose();
+                this.parallelWriter = null;
+            }
+        }
+        ios.flush();
+        ios.close();
+    }
+
+    private void encodePasses(final OutputStream os, final RowReader ras)
+            throws IOException {
         if (this.interlace) {
             // Interlacing pass 1
-            encodePass(dos, ras, 0, 0, 8, 8);
+            encodePass(os, ras, 0, 0, 8, 8);
             // Interlacing pass 2
-            encodePass(dos, ras, 4, 0, 8, 8);
+            encodePass(os, ras, 4, 0, 8, 8);
             // Interlacing pass 3
-            encodePass(dos, ras, 0, 4, 4, 8);
+            encodePass(os, ras, 0, 4, 4, 8);
             // Interlacing pass 4
-            encodePass(dos, ras, 2, 0, 4, 4);
+            encodePass(os, ras, 2, 0, 4, 4);
             // Interlacing pass 5
-            encodePass(dos, ras, 0, 2, 2, 4);
+            encodePass(os, ras, 0, 2, 2, 4);
             // Interlacing pass 6
-            encodePass(dos, ras, 1, 0, 2, 2);
+            encodePass(os, ras, 1, 0, 2, 2);
             // Interlacing pass 7
-            encodePass(dos, ras, 0, 1, 1, 2);
+            encodePass(os, ras, 0, 1, 1, 2);
         } else {
-            encodePass(dos, ras, 0, 0, 1, 1);
+            encodePass(os, ras, 0, 0, 1, 1);
         }
-
-        dos.finish();
-        dos.close();
-        ios.flush();
-        ios.close();
     }
 
     private void writeIEND() throws IOException {
@@ -1069,4 +1113,158 @@ public class PNGImageEncoder extends ImageEncoderImpl {
         this.dataOutput.flush();
         this.dataOutput.close();
     }
+
+    /**
+     * Supplies the samples of the image one row at a time.
+     */
+    private abstract static class RowReader {
+
+        protected final int minX;
+        protected final int minY;
+        protected final int width;
+        protected final int height;
+
+        RowReader(final int minX, final int minY, final int width,
+                final int height) {
+            this.minX = minX;
+            this.minY = minY;
+            this.width = width;
+            this.height = height;
+        }
+
+        /**
+         * Reads the samples of one full row, pixel interleaved.
+         */
+        abstract void getPixels(final int row, final int[] samples);
+
+        /**
+         * Releases any data held by this reader.
+         */
+        void dispose() {
+        }
+    }
+
+    /**
+     * Reads rows from a Raster holding the whole image.
+     */
+    private static final class RasterRowReader extends RowReader {
+
+        private Raster raster;
+
+        RasterRowReader(final Raster raster) {
+            super(raster.getMinX(), raster.getMinY(), raster.getWidth(),
+                    raster.getHeight());
+            this.raster = raster;
+        }
+
+        @Override
+        void getPixels(final int row, final int[] samples) {
+            this.raster.getPixels(this.minX, row, this.width, 1, samples);
+        }
+
+        @Override
+        void dispose() {
+            this.raster = null;
+        }
+    }
+
+    /**
+     * Reads rows from the tiles of an image, holding a single row of tiles at
+     * a time. Rows must be read from top to bottom. The tile bounds are taken
+     * from the tiles themselves rather than from the tile grid (which is not
+     * reliable for sub-images of a BufferedImage) and any part of a row not
+     * covered by the current tiles is read with <code>getData</code>.
+     */
+    private static final class TileRowReader extends RowReader {
+
+        private final RenderedImage image;
+        private final int[] bandList;
+        private final int numBands;
+        private final int minTileX;
+        private final int numXTiles;
+        private final int maxTileY;
+
+        private int nextTileY;
+        private Raster[] tiles;
+        private int tileRowEnd;
+        private int[] buffer;
+
+        TileRowReader(final RenderedImage image, final int[] bandList) {
+            super(image.getMinX(), image.getMinY(), image.getWidth(), image
+                    .getHeight());
+            this.image = image;
+            this.bandList = bandList;
+            this.numBands = bandList != null ? bandList.length : image
+                    .getSampleModel().getNumBands();
+            this.minTileX = image.getMinTileX();
+            this.numXTiles = image.getNumXTiles();
+            this.nextTileY = image.getMinTileY();
+            this.maxTileY = this.nextTileY + image.getNumYTiles();
+        }
+
+        private Raster selectBands(final Raster raster) {
+            if (this.bandList == null) {
+                return raster;
+            }
+            return raster.createChild(raster.getMinX(), raster.getMinY(),
+                    raster.getWidth(), raster.getHeight(), raster.getMinX(),
+                    raster.getMinY(), this.bandList);
+        }
+
+        private void nextTileRow() {
+            // Drop the previous tiles before computing the next ones
+            this.tiles = null;
+            final Raster[] row = new Raster[this.numXTiles];
+            int end = Integer.MIN_VALUE;
+            for (int i = 0; i < this.numXTiles; i++) {
+                row[i] = selectBands(this.image.getTile(this.minTileX + i,
+                        this.nextTileY));
+                end = Math.max(end, row[i].getMinY() + row[i].getHeight());
+            }
+            this.nextTileY++;
+            this.tiles = row;
+            this.tileRowEnd = end;
+        }
+
+        @Override
+        void getPixels(final int row, final int[] samples) {
+            while ((this.tiles == null || row >= this.tileRowEnd)
+                    && this.nextTileY < this.maxTileY) {
+                nextTileRow();
+            }
+
+            final int maxX = this.minX + this.width;
+            int covered = 0;
+            if (this.tiles != null) {
+                for (final Raster tile : this.tiles) {
+                    final int x0 = Math.max(tile.getMinX(), this.minX);
+                    final int x1 = Math.min(tile.getMinX() + tile.getWidth(),
+                            maxX);
+                    if (x1 <= x0 || row < tile.getMinY()
+                            || row >= tile.getMinY() + tile.getHeight()) {
+                        continue;
+                    }
+                    final int length = (x1 - x0) * this.numBands;
+                    if (this.buffer == null || this.buffer.length < length) {
+                        this.buffer = new int[length];
+                    }
+                    tile.getPixels(x0, row, x1 - x0, 1, this.buffer);
+                    System.arraycopy(this.buffer, 0, samples, (x0 - this.minX)
+                            * this.numBands, length);
+                    covered += x1 - x0;
+                }
+            }
+            if (covered != this.width) {
+                final Raster raster = selectBands(this.image
+                        .getData(new Rectangle(this.minX, row, this.width, 1)));
+                raster.getPixels(this.minX, row, this.width, 1, samples);
+            }
+        }
+
+        @Override
+        void dispose() {
+            this.tiles = null;
+            this.buffer = null;
+        }
+    }
 }
@@ -0,0 +1,369 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.codec.png;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Adler32;
+import java.util.zip.Deflater;
+
+/**
+ * Filters and compresses the scanlines of a PNG image on several threads and
+ * writes them as a single zlib stream.
+ * <p>
+ * The rows of each pass are grouped into bands of roughly the configured block
+ * size. Every band is filtered and deflated on its own as a raw deflate stream
+ * ending with a sync flush, using the last 32K of filtered data preceding the
+ * band in the same pass as preset dictionary. The dictionary rows are simply
+ * filtered again by the task that needs them, so tasks never wait for each
+ * other. The blocks are written in order behind a zlib header, followed by an
+ * empty final block and the Adler-32 checksum of all filtered data, so the
+ * result is a regular zlib stream any inflater can read.
+ */
+class PNGParallelIDATWriter {
+
+    /** The size of the deflate sliding window. */
+    private static final int WINDOW_SIZE = 32768;
+
+    /** An empty final block with fixed Huffman codes, as zlib emits it. */
+    private static final byte[] FINAL_BLOCK = { 0x03, 0x00 };
+
+    private static final AtomicInteger POOL_COUNT = new AtomicInteger();
+
+    private final OutputStream out;
+    private final PNGEncodeParam param;
+    private final int bpp;
+    private final int blockSize;
+    private final int maxInFlight;
+
+    private final Executor executor;
+    private final ExecutorService ownExecutor;
+
+    private final Deque<Future<Block>> inFlight = new ArrayDeque<>();
+    private final Adler32 adler = new Adler32();
+
+    /** The last raw rows of the current pass, used as dictionary context. */
+    private final Deque<byte[]> history = new ArrayDeque<>();
+
+    private int bytesPerRow;
+    private int rowsPerBand;
+    private int maxContextRows;
+    private List<byte[]> band;
+
+    /**
+     * Creates a new writer.
+     *
+     * @param out
+     *            the stream receiving the compressed data
+     * @param param
+     *            the encoding parameters
+     * @param bpp
+     *            the number of bytes per pixel, rounded up
+     */
+    PNGParallelIDATWriter(final OutputStream out, final PNGEncodeParam param,
+            final int bpp) throws IOException {
+        this.out = out;
+        this.param = param;
+        this.bpp = bpp;
+        this.blockSize = param.getDeflateBlockSize();
+        final int parallelism = Math.max(1, param.getDeflateParallelism());
+        this.maxInFlight = 2 * parallelism;
+        if (param.getDeflateExecutor() != null) {
+            this.executor = param.getDeflateExecutor();
+            this.ownExecutor = null;
+        } else {
+            this.ownExecutor = createExecutor(parallelism);
+            this.executor = this.ownExecutor;
+        }
+        writeHeader();
+    }
+
+    private static ExecutorService createExecutor(final int threads) {
+        final String prefix = "PNGImageEncoder-" + POOL_COUNT.incrementAndGet()
+                + "-";
+        return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread t = new Thread(r, prefix
+                        + this.count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    private void writeHeader() throws IOException {
+        // CMF: deflate with a 32K window
+        final int cmf = 0x78;
+        final int level = this.param.getDeflaterLevel();
+        int flevel;
+        if (level == Deflater.DEFAULT_COMPRESSION) {
+            flevel = 2;
+        } else if (level < 2) {
+            flevel = 0;
+        } else if (level < 6) {
+            flevel = 1;
+        } else if (level == 6) {
+            flevel = 2;
+        } else {
+            flevel = 3;
+        }
+        int flg = flevel << 6;
+        flg += 31 - (cmf << 8 | flg) % 31;
+        this.out.write(cmf);
+        this.out.write(flg);
+    }
+
+    /**
+     * Starts a new pass (the whole image, or one Adam7 pass). Bands never span
+     * passes since the filters restart with a zero prior row.
+     *
+     * @param bytesPerRow
+     *            the number of bytes in a row of this pass, without the filter
+     *            type byte
+     */
+    void startPass(final int bytesPerRow) throws IOException {
+        submitBand();
+        this.history.clear();
+        this.bytesPerRow = bytesPerRow;
+        final int filteredRowLength = bytesPerRow + 1;
+        this.rowsPerBand = Math.max(1, this.blockSize / filteredRowLength);
+        this.maxContextRows = (WINDOW_SIZE + filteredRowLength - 1)
+                / filteredRowLength;
+    }
+
+    /**
+     * Adds the next raw row of the current pass. The writer takes ownership of
+     * the array, which must not be modified afterwards. As in
+     * <code>filterRow</code> the pixel data starts at index <code>bpp</code>
+     * and the leading bytes are zero.
+     *
+     * @param row
+     *            the raw row
+     */
+    void addRow(final byte[] row) throws IOException {
+        if (this.band == null) {
+            this.band = new ArrayList<>(this.rowsPerBand);
+        }
+        this.band.add(row);
+        if (this.band.size() == this.rowsPerBand) {
+            submitBand();
+        }
+    }
+
+    private void submitBand() throws IOException {
+        if (this.band == null || this.band.isEmpty()) {
+            return;
+        }
+        // The history holds up to maxContextRows rows to rebuild the
+        // dictionary plus the row before them, which the filters need.
+        final int available = this.history.size();
+        final int context = Math.min(available, this.maxContextRows);
+        final byte[][] rows = new byte[context + this.band.size()][];
+        byte[] prior = null;
+        int i = 0;
+        for (final byte[] row : this.history) {
+            if (i == available - context - 1) {
+                prior = row;
+            } else if (i >= available - context) {
+                rows[i - (available - context)] = row;
+            }
+            i++;
+        }
+        for (final byte[] row : this.band) {
+            rows[context + i - available] = row;
+            i++;
+        }
+        final FutureTask<Block> task = new FutureTask<>(new BandTask(rows,
+                context, prior, this.bytesPerRow));
+
+        for (final byte[] row : this.band) {
+            this.history.addLast(row);
+        }
+        while (this.history.size() > this.maxContextRows + 1) {
+            this.history.removeFirst();
+        }
+        this.band = null;
+
+        while (this.inFlight.size() >= this.maxInFlight) {
+            writeBlock(this.inFlight.removeFirst());
+        }
+        this.inFlight.addLast(task);
+        this.executor.execute(task);
+    }
+
+    private void writeBlock(final Future<Block> future) throws IOException {
+        final Block block;
+        try {
+            block = future.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+        this.adler.update(block.filtered);
+        block.compressed.writeTo(this.out);
+    }
+
+    /**
+     * Compresses the remaining rows and terminates the zlib stream. The
+     * underlying stream is not closed.
+     */
+    void finish() throws IOException {
+        try {
+            submitBand();
+            while (!this.inFlight.isEmpty()) {
+                writeBlock(this.inFlight.removeFirst());
+            }
+            this.out.write(FINAL_BLOCK);
+            final long sum = this.adler.getValue();
+            this.out.write((int) (sum >>> 24) & 0xff);
+            this.out.write((int) (sum >>> 16) & 0xff);
+            this.out.write((int) (sum >>> 8) & 0xff);
+            this.out.write((int) sum & 0xff);
+        } finally {
+            dispose();
+        }
+    }
+
+    /**
+     * Cancels any pending work and releases the private thread pool, if any.
+     */
+    void dispose() {
+        for (final Future<Block> future : this.inFlight) {
+            future.cancel(false);
+        }
+        this.inFlight.clear();
+        this.history.clear();
+        this.band = null;
+        if (this.ownExecutor != null) {
+            this.ownExecutor.shutdown();
+        }
+    }
+
+    /** The result of a band task. */
+    private static final class Block {
+
+        private final byte[] filtered;
+        private final ByteArrayOutputStream compressed;
+
+        Block(final byte[] filtered, final ByteArrayOutputStream compressed) {
+            this.filtered = filtered;
+            this.compressed = compressed;
+        }
+    }
+
+    /** Filters and deflates one band of rows. */
+    private final class BandTask implements Callable<Block> {
+
+        private final byte[][] rows;
+        private final int context;
+        private final byte[] prior;
+        private final int bytesPerRow;
+
+        BandTask(final byte[][] rows, final int context, final byte[] prior,
+                final int bytesPerRow) {
+            this.rows = rows;
+            this.context = context;
+            this.prior = prior;
+            this.bytesPerRow = bytesPerRow;
+        }
+
+        @Override
+        public Block call() {
+            final int rowLength = this.bytesPerRow + PNGParallelIDATWriter.this.bpp;
+            final int filteredRowLength = this.bytesPerRow + 1;
+            final byte[][] scratch = new byte[5][rowLength];
+            final byte[] dictionary = new byte[this.context * filteredRowLength];
+            final byte[] filtered = new byte[(this.rows.length - this.context)
+                    * filteredRowLength];
+
+            byte[] prev = this.prior != null ? this.prior : new byte[rowLength];
+            int pos = 0;
+            for (int r = 0; r < this.rows.length; r++) {
+                if (r == this.context) {
+                    pos = 0;
+                }
+                final byte[] target = r < this.context ? dictionary : filtered;
+                final byte[] curr = this.rows[r];
+                final int filterType = PNGParallelIDATWriter.this.param
+                        .filterRow(curr, prev, scratch, this.bytesPerRow,
+                                PNGParallelIDATWriter.this.bpp);
+                target[pos++] = (byte) filterType;
+                System.arraycopy(scratch[filterType],
+                        PNGParallelIDATWriter.this.bpp, target, pos,
+                        this.bytesPerRow);
+                pos += this.bytesPerRow;
+                prev = curr;
+            }
+
+            final Deflater deflater = PNGParallelIDATWriter.this.param
+                    .createDeflater(true);
+            final ByteArrayOutputStream compressed = new ByteArrayOutputStream(
+                    filtered.length / 2 + 64);
+            try {
+                if (dictionary.length > 0) {
+                    final int dictLength = Math.min(WINDOW_SIZE,
+                            dictionary.length);
+                    deflater.setDictionary(dictionary, dictionary.length
+                            - dictLength, dictLength);
+                }
+                deflater.setInput(filtered);
+                final byte[] buf = new byte[8192];
+                int n;
+                do {
+                    n = deflater.deflate(buf, 0, buf.length,
+                            Deflater.SYNC_FLUSH);
+                    compressed.write(buf, 0, n);
+                } while (n == buf.length);
+            } finally {
+                deflater.end();
+            }
+            return new Block(filtered, compressed);
+        }
+    }
+}
@@ -20,6 +20,7 @@
 package org.apache.xmlgraphics.image.codec.tiff;
 
 import org.apache.xmlgraphics.image.codec.util.ImageDecodeParam;
+import org.apache.xmlgraphics.image.codec.util.PropertyUtil;
 
 /**
  * An instance of <code>ImageDecodeParam</code> for decoding images in the TIFF
@@ -78,6 +79,8 @@ public class TIFFDecodeParam implements ImageDecodeParam {
     private boolean decodePaletteAsShorts = false;
     private Long ifdOffset = null;
     private boolean convertJPEGYCbCrToRGB = true;
+    private int subsampling = 1;
+    private int tileCacheSize = 0;
 
     /** Constructs a default instance of <code>TIFFDecodeParam</code>. */
     public TIFFDecodeParam() {
@@ -158,4 +161,54 @@ public class TIFFDecodeParam implements ImageDecodeParam {
     public boolean getJPEGDecompressYCbCrToRGB() {
         return this.convertJPEGYCbCrToRGB;
     }
+
+    /**
+     * Sets the source subsampling factor. With a factor <i>n</i> greater than
+     * 1 the decoded image only contains every <i>n</i>-th pixel of every
+     * <i>n</i>-th row, starting with the top left pixel, and strips or tiles
+     * that hold none of these rows are not decoded at all. The default is 1,
+     * which decodes every pixel.
+     *
+     * @throws IllegalArgumentException
+     *             if <code>subsampling</code> is not positive.
+     */
+    public void setSubsampling(final int subsampling) {
+        if (subsampling <= 0) {
+            throw new IllegalArgumentException(
+                    PropertyUtil.getString("TIFFDecodeParam0"));
+        }
+        this.subsampling = subsampling;
+    }
+
+    /**
+     * Returns the source subsampling factor.
+     */
+    public int getSubsampling() {
+        return this.subsampling;
+    }
+
+    /**
+     * Sets the number of decoded tiles or strips an image keeps in memory.
+     * A tile requested again while it is in the cache is returned without
+     * being read and decompressed again; when the cache is full the least
+     * recently used tile is dropped. The default is 0, which disables the
+     * cache.
+     *
+     * @throws IllegalArgumentException
+     *             if <code>tileCacheSize</code> is negative.
+     */
+    public void setTileCacheSize(final int tileCacheSize) {
+        if (tileCacheSize < 0) {
+            throw new IllegalArgumentException(
+                    PropertyUtil.getString("TIFFDecodeParam1"));
+        }
+        this.tileCacheSize = tileCacheSize;
+    }
+
+    /**
+     * Returns the number of decoded tiles or strips an image keeps in memory.
+     */
+    public int getTileCacheSize() {
+        return this.tileCacheSize;
+    }
 }
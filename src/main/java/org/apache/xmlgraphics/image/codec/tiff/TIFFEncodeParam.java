@@ -20,6 +20,7 @@
 package org.apache.xmlgraphics.image.codec.tiff;
 
 import java.util.Iterator;
+import java.util.concurrent.Executor;
 import java.util.zip.Deflater;
 
 import org.apache.xmlgraphics.image.codec.util.ImageEncodeParam;
@@ -56,30 +57,23 @@ public class TIFFEncodeParam implements ImageEncodeParam {
 
     /**
      * Modified Huffman Compression (CCITT Group 3 1D facsimile compression).
-     * <p>
-     * <b>Not currently supported.</b>
+     * Each row starts on a byte boundary.
      */
     public static final int COMPRESSION_GROUP3_1D = 2;
 
     /**
      * CCITT T.4 bilevel compression (CCITT Group 3 2D facsimile compression).
-     * <p>
-     * <b>Not currently supported.</b>
+     * Every row starts with an EOL code and every fourth row is coded without
+     * reference to the row above.
      */
     public static final int COMPRESSION_GROUP3_2D = 3;
 
     /**
      * CCITT T.6 bilevel compression (CCITT Group 4 facsimile compression).
-     * <p>
-     * <b>Not currently supported.</b>
      */
     public static final int COMPRESSION_GROUP4 = 4;
 
-    /**
-     * LZW compression.
-     * <p>
-     * <b>Not supported.</b>
-     */
+    /** LZW compression. */
     public static final int COMPRESSION_LZW = 5;
 
     /**
@@ -106,6 +100,15 @@ public class TIFFEncodeParam implements ImageEncodeParam {
      */
     public static final int COMPRESSION_DEFLATE = 32946;
 
+    /** No prediction scheme is applied before compression. */
+    public static final int PREDICTOR_NONE = 1;
+
+    /**
+     * Horizontal differencing: each sample is replaced by its difference to
+     * the corresponding sample of the pixel to its left before compression.
+     */
+    public static final int PREDICTOR_HORIZONTAL_DIFFERENCING = 2;
+
     private int compression = COMPRESSION_NONE;
 
     private boolean writeTiled = false;
@@ -120,6 +123,10 @@ public class TIFFEncodeParam implements ImageEncodeParam {
 
     private int deflateLevel = Deflater.DEFAULT_COMPRESSION;
 
+    private int predictor = PREDICTOR_NONE;
+
+    private Executor executor;
+
     /**
      * Constructs a TIFFEncodeParam object with default values for all
      * parameters.
@@ -138,8 +145,12 @@ public class TIFFEncodeParam implements ImageEncodeParam {
     /**
      * Specifies the type of compression to be used. The compression type
      * specified will be honored only if it is compatible with the image being
-     * written out. Currently only PackBits, JPEG, and DEFLATE compression
-     * schemes are supported.
+     * written out. Currently only PackBits, JPEG, LZW and DEFLATE compression
+     * schemes and, for bilevel images, the CCITT schemes are supported.
+     *
+     * <p>
+     * Images compressed with a CCITT scheme are written as WhiteIsZero and,
+     * unless a tile height is set, as a single strip.
      *
      * <p>
      * If <code>compression</code> is set to any value but
@@ -157,7 +168,11 @@ public class TIFFEncodeParam implements ImageEncodeParam {
 
         switch (compression) {
         case COMPRESSION_NONE:
+        case COMPRESSION_GROUP3_1D:
+        case COMPRESSION_GROUP3_2D:
+        case COMPRESSION_GROUP4:
         case COMPRESSION_PACKBITS:
+        case COMPRESSION_LZW:
         case COMPRESSION_DEFLATE:
             // Do nothing.
             break;
@@ -283,6 +298,52 @@ public class TIFFEncodeParam implements ImageEncodeParam {
         return this.deflateLevel;
     }
 
+    /**
+     * Sets the prediction scheme applied to the data before LZW or DEFLATE
+     * compression, either <code>PREDICTOR_NONE</code> or
+     * <code>PREDICTOR_HORIZONTAL_DIFFERENCING</code>. Horizontal differencing
+     * usually makes continuous-tone images compress considerably better; it
+     * is only supported for 8-bit samples. The default setting is
+     * <code>PREDICTOR_NONE</code>. This setting is ignored if the compression
+     * type is neither LZW nor DEFLATE.
+     */
+    public void setPredictor(final int predictor) {
+        if (predictor != PREDICTOR_NONE
+                && predictor != PREDICTOR_HORIZONTAL_DIFFERENCING) {
+            throw new RuntimeException(
+                    PropertyUtil.getString("TIFFEncodeParam2"));
+        }
+
+        this.predictor = predictor;
+    }
+
+    /**
+     * Gets the prediction scheme applied before LZW or DEFLATE compression.
+     */
+    public int getPredictor() {
+        return this.predictor;
+    }
+
+    /**
+     * Sets the <code>Executor</code> on which strips or tiles are compressed.
+     * Strips and tiles are compressed independently of each other, so with an
+     * executor several of them are compressed at the same time; they are
+     * still written to the output in order. The default, <code>null</code>,
+     * compresses them one after the other on the calling thread. The image
+     * data is always read on the calling thread. This setting is ignored if
+     * the data are not compressed.
+     */
+    public void setExecutor(final Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Returns the <code>Executor</code> set via <code>setExecutor()</code>.
+     */
+    public Executor getExecutor() {
+        return this.executor;
+    }
+
     /**
      * Sets flag indicating whether to convert RGB data to YCbCr when the
      * compression type is JPEG. The default value is <code>true</code>. This
@@ -19,6 +19,8 @@
 
 package org.apache.xmlgraphics.image.codec.tiff;
 
+import java.util.Arrays;
+
 import org.apache.xmlgraphics.image.codec.util.PropertyUtil;
 
 // CSOFF: InnerAssignment
@@ -28,8 +30,11 @@ import org.apache.xmlgraphics.image.codec.util.PropertyUtil;
 
 class TIFFFaxDecoder {
 
-    private int bitPointer, bytePointer;
-    private byte[] data;
+    // The compressed data in fill order 1, followed by two zero bytes so that
+    // peekBits never needs a bounds check, and the position in bits
+    private byte[] data = new byte[0];
+    private int dataLength;
+    private int bitPos;
     private final int w;
     private final int fillOrder;
 
@@ -49,29 +54,6 @@ class TIFFFaxDecoder {
     private int fillBits = 0;
     private int oneD;
 
-    static int[] table1 = { 0x00, // 0 bits are left in first byte - SHOULD NOT
-        // HAPPEN
-        0x01, // 1 bits are left in first byte
-        0x03, // 2 bits are left in first byte
-        0x07, // 3 bits are left in first byte
-        0x0f, // 4 bits are left in first byte
-        0x1f, // 5 bits are left in first byte
-        0x3f, // 6 bits are left in first byte
-        0x7f, // 7 bits are left in first byte
-        0xff // 8 bits are left in first byte
-    };
-
-    static int[] table2 = { 0x00, // 0
-        0x80, // 1
-        0xc0, // 2
-        0xe0, // 3
-        0xf0, // 4
-        0xf8, // 5
-        0xfc, // 6
-        0xfe, // 7
-        0xff // 8
-    };
-
     // Table to be used when fillOrder = 2, for flipping bytes.
     static byte[] flipTable = { 0, -128, 64, -64, 32, -96, 96, -32, 16, -112,
         80, -48, 48, -80, 112, -16, 8, -120, 72, -56, 40, -88, 104, -24,
@@ -533,6 +515,76 @@ class TIFFFaxDecoder {
         // 120 - 127
         41, 41, 41, 41, 41, 41, 41, 41, };
 
+    // Values of the combined run tables that are not runs
+    static final int INVALID_CODE = -1;
+    static final int EOL_CODE = -2;
+
+    // Combined white run table, indexed by the next 12 bits: every code,
+    // including the additional make up codes, is resolved with one lookup.
+    // Entries are run length << 5 | code length << 1 | 1 for make up codes.
+    // TIFFFaxEncoder derives its codes from the combined tables too.
+    static final int[] WHITE_RUNS = new int[1 << 12];
+
+    // Combined black run table, indexed by the next 13 bits
+    static final int[] BLACK_RUNS = new int[1 << 13];
+
+    static {
+        // Resolve every bit pattern the way the multi-step lookups through
+        // the tables above do
+        for (int p = 0; p < WHITE_RUNS.length; p++) {
+            final int current = p >>> 2;
+            final int entry = white[current];
+            final int bits = entry >>> 1 & 0x0f;
+            if (bits == 12) {
+                WHITE_RUNS[p] = additionalMakeupRun(current << 2 & 0x000c
+                        | p & 0x03, 8);
+            } else if (bits == 0) {
+                WHITE_RUNS[p] = INVALID_CODE;
+            } else if (bits == 15) {
+                WHITE_RUNS[p] = EOL_CODE;
+            } else {
+                WHITE_RUNS[p] = run(entry >>> 5 & 0x07ff, bits,
+                        (entry & 0x0001) != 0);
+            }
+        }
+        for (int p = 0; p < BLACK_RUNS.length; p++) {
+            int entry = initBlack[p >>> 9];
+            int bits = entry >>> 1 & 0x000f;
+            int code = entry >>> 5 & 0x07ff;
+            if (code == 100) {
+                entry = black[p & 0x01ff];
+                bits = entry >>> 1 & 0x000f;
+                code = entry >>> 5 & 0x07ff;
+                if (bits == 12) {
+                    BLACK_RUNS[p] = additionalMakeupRun(p >>> 1 & 0x000f, 8);
+                } else if (bits == 15) {
+                    BLACK_RUNS[p] = EOL_CODE;
+                } else {
+                    BLACK_RUNS[p] = run(code, 4 + bits,
+                            (entry & 0x0001) != 0);
+                }
+            } else if (code == 200) {
+                entry = twoBitBlack[p >>> 7 & 0x03];
+                BLACK_RUNS[p] = run(entry >>> 5 & 0x07ff,
+                        4 + (entry >>> 1 & 0x0f), false);
+            } else {
+                BLACK_RUNS[p] = run(code, bits, false);
+            }
+        }
+    }
+
+    private static int run(final int runLength, final int codeLength,
+            final boolean makeUp) {
+        return runLength << 5 | codeLength << 1 | (makeUp ? 1 : 0);
+    }
+
+    private static int additionalMakeupRun(final int index,
+            final int bitsBefore) {
+        final int entry = additionalMakeup[index];
+        return run(entry >>> 4 & 0x0fff, bitsBefore + (entry >>> 1 & 0x07),
+                true);
+    }
+
     /**
      * @param fillOrder
      *            The fill order of the compressed data bytes.
@@ -544,24 +596,21 @@ class TIFFFaxDecoder {
     public TIFFFaxDecoder(final int fillOrder, final int w, final int h) {
         this.fillOrder = fillOrder;
         this.w = w;
-        this.bitPointer = 0;
-        this.bytePointer = 0;
-        this.prevChangingElems = new int[w];
-        this.currChangingElems = new int[w];
+        // A row has up to w + 1 distinct changing elements, 0 to w, and the
+        // end of the row may be recorded twice more.
+        this.prevChangingElems = new int[w + 3];
+        this.currChangingElems = new int[w + 3];
     }
 
     // One-dimensional decoding methods
 
     public void decode1D(final byte[] buffer, final byte[] compData,
             final int startX, final int height) {
-        this.data = compData;
+        setData(compData);
 
         int lineOffset = 0;
         final int scanlineStride = (this.w + 7) / 8;
 
-        this.bitPointer = 0;
-        this.bytePointer = 0;
-
         for (int i = 0; i < height; ++i) {
             decodeNextScanline(buffer, lineOffset, startX);
             lineOffset += scanlineStride;
@@ -571,53 +620,16 @@ class TIFFFaxDecoder {
     public void decodeNextScanline(final byte[] buffer, final int lineOffset,
             final int inBitOffset) {
         int bitOffset = inBitOffset;
-        int bits = 0, code = 0, isT = 0;
-        int current, entry, twoBits;
-        boolean isWhite = true;
+        int runLength;
 
         // Initialize starting of the changing elements array
         this.changingElemSize = 0;
 
         // While scanline not complete
         while (bitOffset < this.w) {
-            while (isWhite) {
-                // White run
-                current = nextNBits(10);
-                entry = white[current];
-
-                // Get the 3 fields from the entry
-                isT = entry & 0x0001;
-                bits = entry >>> 1 & 0x0f;
-
-        if (bits == 12) { // Additional Make up code
-            // Get the next 2 bits
-            twoBits = nextLesserThan8Bits(2);
-            // Consolidate the 2 new bits and last 2 bits into 4 bits
-            current = current << 2 & 0x000c | twoBits;
-            entry = additionalMakeup[current];
-            bits = entry >>> 1 & 0x07; // 3 bits 0000 0111
-            code = entry >>> 4 & 0x0fff; // 12 bits
-            bitOffset += code; // Skip white run
-
-            updatePointer(4 - bits);
-        } else if (bits == 0) { // ERROR
-            throw new RuntimeException(
-                    PropertyUtil.getString("TIFFFaxDecoder0"));
-        } else if (bits == 15) { // EOL
-            throw new RuntimeException(
-                    PropertyUtil.getString("TIFFFaxDecoder1"));
-        } else {
-            // 11 bits - 0000 0111 1111 1111 = 0x07ff
-            code = entry >>> 5 & 0x07ff;
-            bitOffset += code;
-
-            updatePointer(10 - bits);
-            if (isT == 0) {
-                isWhite = false;
-                this.currChangingElems[this.changingElemSize++] = bitOffset;
-            }
-        }
-            }
+            // White run
+            bitOffset += decodeWhiteCodeWord();
+            this.currChangingElems[this.changingElemSize++] = bitOffset;
 
             // Check whether this run completed one width, if so
             // advance to next byte boundary for compression = 2.
@@ -628,74 +640,11 @@ class TIFFFaxDecoder {
                 break;
             }
 
-            while (!isWhite) {
-                // Black run
-                current = nextLesserThan8Bits(4);
-                entry = initBlack[current];
-
-                // Get the 3 fields from the entry
-                isT = entry & 0x0001;
-                bits = entry >>> 1 & 0x000f;
-                code = entry >>> 5 & 0x07ff;
-
-                if (code == 100) {
-                    current = nextNBits(9);
-                    entry = black[current];
-
-                    // Get the 3 fields from the entry
-                    isT = entry & 0x0001;
-                    bits = entry >>> 1 & 0x000f;
-                    code = entry >>> 5 & 0x07ff;
-
-                    if (bits == 12) {
-                        // Additional makeup codes
-                        updatePointer(5);
-                        current = nextLesserThan8Bits(4);
-                        entry = additionalMakeup[current];
-                        bits = entry >>> 1 & 0x07; // 3 bits 0000 0111
-                        code = entry >>> 4 & 0x0fff; // 12 bits
-
-                        setToBlack(buffer, lineOffset, bitOffset, code);
-                        bitOffset += code;
-
-                        updatePointer(4 - bits);
-                    } else if (bits == 15) {
-                        // EOL code
-                        throw new RuntimeException(
-                                PropertyUtil.getString("TIFFFaxDecoder2"));
-                    } else {
-                        setToBlack(buffer, lineOffset, bitOffset, code);
-                        bitOffset += code;
-
-                        updatePointer(9 - bits);
-                        if (isT == 0) {
-                            isWhite = true;
-                            this.currChangingElems[this.changingElemSize++] = bitOffset;
-                        }
-                    }
-                } else if (code == 200) {
-                    // Is a Terminating code
-                    current = nextLesserThan8Bits(2);
-                    entry = twoBitBlack[current];
-                    code = entry >>> 5 & 0x07ff;
-                    bits = entry >>> 1 & 0x0f;
-
-                    setToBlack(buffer, lineOffset, bitOffset, code);
-                    bitOffset += code;
-
-                    updatePointer(2 - bits);
-                    isWhite = true;
-                    this.currChangingElems[this.changingElemSize++] = bitOffset;
-                } else {
-                    // Is a Terminating code
-                    setToBlack(buffer, lineOffset, bitOffset, code);
-                    bitOffset += code;
-
-                    updatePointer(4 - bits);
-                    isWhite = true;
-                    this.currChangingElems[this.changingElemSize++] = bitOffset;
-                }
-            }
+            // Black run
+            runLength = decodeBlackCodeWord();
+            setToBlack(buffer, lineOffset, bitOffset, runLength);
+            bitOffset += runLength;
+            this.currChangingElems[this.changingElemSize++] = bitOffset;
 
             // Check whether this run completed one width
             if (bitOffset == this.w) {
@@ -713,12 +662,9 @@ class TIFFFaxDecoder {
 
     public void decode2D(final byte[] buffer, final byte[] compData,
             final int startX, final int height, final long tiffT4Options) {
-        this.data = compData;
+        setData(compData);
         this.compression = 3;
 
-        this.bitPointer = 0;
-        this.bytePointer = 0;
-
         final int scanlineStride = (this.w + 7) / 8;
 
         int a0, a1, b1, b2;
@@ -779,11 +725,8 @@ class TIFFFaxDecoder {
                     b1 = b[0];
                     b2 = b[1];
 
-                    // Get the next seven bits
-                    entry = nextLesserThan8Bits(7);
-
-                    // Run these through the 2DCodes table
-                    entry = twoDCodes[entry] & 0xff;
+                    // Run the next seven bits through the 2DCodes table
+                    entry = twoDCodes[peekBits(7)] & 0xff;
 
                     // Get the code and the number of bits used up
                     code = (entry & 0x78) >>> 3;
@@ -797,10 +740,10 @@ class TIFFFaxDecoder {
             bitOffset = a0 = b2;
 
             // Set pointer to consume the correct number of bits.
-            updatePointer(7 - bits);
+            skipBits(bits);
         } else if (code == 1) {
             // Horizontal
-            updatePointer(7 - bits);
+            skipBits(bits);
 
             // identify the next 2 codes.
             int number;
@@ -840,7 +783,7 @@ class TIFFFaxDecoder {
             bitOffset = a0 = a1;
             isWhite = !isWhite;
 
-            updatePointer(7 - bits);
+            skipBits(bits);
         } else {
             throw new RuntimeException(
                     PropertyUtil.getString("TIFFFaxDecoder4"));
@@ -863,12 +806,9 @@ class TIFFFaxDecoder {
     public synchronized void decodeT6(final byte[] buffer,
             final byte[] compData, final int startX, final int height,
             final long tiffT6Options) {
-        this.data = compData;
+        setData(compData);
         this.compression = 4;
 
-        this.bitPointer = 0;
-        this.bytePointer = 0;
-
         final int scanlineStride = (this.w + 7) / 8;
 
         int a0, a1, b1, b2;
@@ -924,10 +864,8 @@ class TIFFFaxDecoder {
                 b1 = b[0];
                 b2 = b[1];
 
-                // Get the next seven bits
-                entry = nextLesserThan8Bits(7);
-                // Run these through the 2DCodes table
-                entry = twoDCodes[entry] & 0xff;
+                // Run the next seven bits through the 2DCodes table
+                entry = twoDCodes[peekBits(7)] & 0xff;
 
                 // Get the code and the number of bits used up
                 code = (entry & 0x78) >>> 3;
@@ -942,10 +880,10 @@ class TIFFFaxDecoder {
             bitOffset = a0 = b2;
 
             // Set pointer to only consume the correct number of bits.
-            updatePointer(7 - bits);
+            skipBits(bits);
         } else if (code == 1) { // Horizontal
             // Set pointer to only consume the correct number of bits.
-            updatePointer(7 - bits);
+            skipBits(bits);
 
             // identify the next 2 alternating color codes.
             int number;
@@ -985,9 +923,10 @@ class TIFFFaxDecoder {
             bitOffset = a0 = a1;
             isWhite = !isWhite;
 
-            updatePointer(7 - bits);
+            skipBits(bits);
         } else if (code == 11) {
-            if (nextLesserThan8Bits(3) != 7) {
+            skipBits(7);
+            if (readBits(3) != 7) {
                 throw new RuntimeException(
                         PropertyUtil.getString("TIFFFaxDecoder5"));
             }
@@ -996,7 +935,7 @@ class TIFFFaxDecoder {
             boolean exit = false;
 
             while (!exit) {
-                while (nextLesserThan8Bits(1) != 1) {
+                while (readBits(1) != 1) {
                     zeros++;
                 }
 
@@ -1019,7 +958,7 @@ class TIFFFaxDecoder {
 
                     // Read in the bit which specifies the color of
                     // the following run
-                    if (nextLesserThan8Bits(1) == 0) {
+                    if (readBits(1) == 0) {
                         if (!isWhite) {
                             cce[currIndex++] = bitOffset;
                         }
@@ -1073,151 +1012,66 @@ class TIFFFaxDecoder {
 
     private void setToBlack(final byte[] buffer, final int lineOffset,
             final int bitOffset, final int numBits) {
-        int bitNum = 8 * lineOffset + bitOffset;
-        final int lastBit = bitNum + numBits;
-
-        int byteNum = bitNum >> 3;
-
-        // Handle bits in first byte
-        final int shift = bitNum & 0x7;
-        if (shift > 0) {
-            int maskVal = 1 << 7 - shift;
-            byte val = buffer[byteNum];
-            while (maskVal > 0 && bitNum < lastBit) {
-                val |= maskVal;
-                maskVal >>= 1;
-            ++bitNum;
-            }
-            buffer[byteNum] = val;
+        if (numBits <= 0) {
+            return;
         }
-
-        // Fill in 8 bits at a time
-        byteNum = bitNum >> 3;
-        while (bitNum < lastBit - 7) {
-            buffer[byteNum++] = (byte) 255;
-            bitNum += 8;
-        }
-
-        // Fill in remaining bits
-        while (bitNum < lastBit) {
-            byteNum = bitNum >> 3;
-        buffer[byteNum] |= 1 << 7 - (bitNum & 0x7);
-        ++bitNum;
+        final int bitNum = 8 * lineOffset + bitOffset;
+        final int lastBit = bitNum + numBits - 1;
+        final int firstByte = bitNum >> 3;
+        final int lastByte = lastBit >> 3;
+
+        final int firstMask = 0xff >>> (bitNum & 0x7);
+        final int lastMask = 0xff << 7 - (lastBit & 0x7);
+        if (firstByte == lastByte) {
+            buffer[firstByte] |= firstMask & lastMask;
+        } else {
+            buffer[firstByte] |= firstMask;
+            // Fill in 8 bits at a time
+            Arrays.fill(buffer, firstByte + 1, lastByte, (byte) 0xff);
+            buffer[lastByte] |= lastMask;
         }
     }
 
     // Returns run length
     private int decodeWhiteCodeWord() {
-        int current, entry, bits, isT, twoBits, code = -1;
         int runLength = 0;
-        boolean isWhite = true;
-
-        while (isWhite) {
-            current = nextNBits(10);
-            entry = white[current];
-
-            // Get the 3 fields from the entry
-            isT = entry & 0x0001;
-            bits = entry >>> 1 & 0x0f;
-
-        if (bits == 12) { // Additional Make up code
-            // Get the next 2 bits
-            twoBits = nextLesserThan8Bits(2);
-            // Consolidate the 2 new bits and last 2 bits into 4 bits
-            current = current << 2 & 0x000c | twoBits;
-            entry = additionalMakeup[current];
-            bits = entry >>> 1 & 0x07; // 3 bits 0000 0111
-            code = entry >>> 4 & 0x0fff; // 12 bits
-            runLength += code;
-            updatePointer(4 - bits);
-        } else if (bits == 0) { // ERROR
-            throw new RuntimeException(
-                    PropertyUtil.getString("TIFFFaxDecoder0"));
-        } else if (bits == 15) { // EOL
-            throw new RuntimeException(
-                    PropertyUtil.getString("TIFFFaxDecoder1"));
-        } else {
-            // 11 bits - 0000 0111 1111 1111 = 0x07ff
-            code = entry >>> 5 & 0x07ff;
-            runLength += code;
-            updatePointer(10 - bits);
-            if (isT == 0) {
-                isWhite = false;
+        int entry;
+        do {
+            entry = WHITE_RUNS[peekBits(12)];
+            if (entry == INVALID_CODE) {
+                throw new RuntimeException(
+                        PropertyUtil.getString("TIFFFaxDecoder0"));
+            } else if (entry == EOL_CODE) {
+                throw new RuntimeException(
+                        PropertyUtil.getString("TIFFFaxDecoder1"));
             }
-        }
-        }
+            runLength += entry >>> 5;
+            skipBits(entry >>> 1 & 0x0f);
+        } while ((entry & 0x01) != 0); // Make up code
 
         return runLength;
     }
 
     // Returns run length
     private int decodeBlackCodeWord() {
-        int current, entry, bits, isT, code = -1;
         int runLength = 0;
-        boolean isWhite = false;
-
-        while (!isWhite) {
-            current = nextLesserThan8Bits(4);
-            entry = initBlack[current];
-
-            // Get the 3 fields from the entry
-            isT = entry & 0x0001;
-            bits = entry >>> 1 & 0x000f;
-            code = entry >>> 5 & 0x07ff;
-
-            if (code == 100) {
-                current = nextNBits(9);
-                entry = black[current];
-
-                // Get the 3 fields from the entry
-                isT = entry & 0x0001;
-                bits = entry >>> 1 & 0x000f;
-                code = entry >>> 5 & 0x07ff;
-
-                if (bits == 12) {
-                    // Additional makeup codes
-                    updatePointer(5);
-                    current = nextLesserThan8Bits(4);
-                    entry = additionalMakeup[current];
-                    bits = entry >>> 1 & 0x07; // 3 bits 0000 0111
-                    code = entry >>> 4 & 0x0fff; // 12 bits
-                    runLength += code;
-
-                    updatePointer(4 - bits);
-                } else if (bits == 15) {
-                    // EOL code
-                    throw new RuntimeException(
-                            PropertyUtil.getString("TIFFFaxDecoder2"));
-                } else {
-                    runLength += code;
-                    updatePointer(9 - bits);
-                    if (isT == 0) {
-                        isWhite = true;
-                    }
-                }
-            } else if (code == 200) {
-                // Is a Terminating code
-                current = nextLesserThan8Bits(2);
-                entry = twoBitBlack[current];
-                code = entry >>> 5 & 0x07ff;
-                runLength += code;
-                bits = entry >>> 1 & 0x0f;
-                updatePointer(2 - bits);
-                isWhite = true;
-            } else {
-                // Is a Terminating code
-                runLength += code;
-                updatePointer(4 - bits);
-                isWhite = true;
+        int entry;
+        do {
+            entry = BLACK_RUNS[peekBits(13)];
+            if (entry == EOL_CODE) {
+                throw new RuntimeException(
+                        PropertyUtil.getString("TIFFFaxDecoder2"));
             }
-        }
+            runLength += entry >>> 5;
+            skipBits(entry >>> 1 & 0x0f);
+        } while ((entry & 0x01) != 0); // Make up code
 
         return runLength;
     }
 
     private int readEOL() {
         if (this.fillBits == 0) {
-            if (nextNBits(12) != 1) {
+            if (readBits(12) != 1) {
                 throw new RuntimeException(
                         PropertyUtil.getString("TIFFFaxDecoder6"));
             }
@@ -1227,9 +1081,9 @@ class TIFFFaxDecoder {
             // As many fill bits will be present as required to make
             // the EOL code of 12 bits end on a byte boundary.
 
-            final int bitsLeft = 8 - this.bitPointer;
+            final int bitsLeft = 8 - (this.bitPos & 0x7);
 
-            if (nextNBits(bitsLeft) != 0) {
+            if (readBits(bitsLeft) != 0) {
                 throw new RuntimeException(
                         PropertyUtil.getString("TIFFFaxDecoder8"));
             }
@@ -1239,7 +1093,7 @@ class TIFFFaxDecoder {
             // required. The first of them has to be all zeros, so ensure
             // that.
             if (bitsLeft < 4) {
-                if (nextNBits(8) != 0) {
+                if (readBits(8) != 0) {
                     throw new RuntimeException(
                             PropertyUtil.getString("TIFFFaxDecoder8"));
                 }
@@ -1249,7 +1103,7 @@ class TIFFFaxDecoder {
             // loop till the EOL of 0000 0001 is found, as long as all
             // the bytes preceding it are 0's.
             int n;
-            while ((n = nextNBits(8)) != 1) {
+            while ((n = readBits(8)) != 1) {
 
                 // If not all zeros
                 if (n != 0) {
@@ -1265,7 +1119,7 @@ class TIFFFaxDecoder {
         } else {
             // Otherwise for 2D encoding mode,
             // The next one bit signifies 1D/2D encoding of next line.
-            return nextLesserThan8Bits(1);
+            return readBits(1);
         }
     }
 
@@ -1301,142 +1155,59 @@ class TIFFFaxDecoder {
         }
     }
 
-    private int nextNBits(final int bitsToGet) {
-        byte b, next, next2next;
-        final int l = this.data.length - 1;
-        final int bp = this.bytePointer;
-
+    /**
+     * Makes <code>compData</code> the data to decode, converting it to fill
+     * order 1 if needed.
+     */
+    private void setData(final byte[] compData) {
+        final int length = compData.length;
+        if (this.data.length < length + 2) {
+            this.data = new byte[length + 2];
+        }
         if (this.fillOrder == 1) {
-            b = this.data[bp];
-
-            if (bp == l) {
-                next = 0x00;
-                next2next = 0x00;
-            } else if (bp + 1 == l) {
-                next = this.data[bp + 1];
-                next2next = 0x00;
-            } else {
-                next = this.data[bp + 1];
-                next2next = this.data[bp + 2];
-            }
+            System.arraycopy(compData, 0, this.data, 0, length);
         } else if (this.fillOrder == 2) {
-            b = flipTable[this.data[bp] & 0xff];
-
-            if (bp == l) {
-                next = 0x00;
-                next2next = 0x00;
-            } else if (bp + 1 == l) {
-                next = flipTable[this.data[bp + 1] & 0xff];
-                next2next = 0x00;
-            } else {
-                next = flipTable[this.data[bp + 1] & 0xff];
-                next2next = flipTable[this.data[bp + 2] & 0xff];
+            for (int i = 0; i < length; i++) {
+                this.data[i] = flipTable[compData[i] & 0xff];
             }
         } else {
             throw new RuntimeException(
                     PropertyUtil.getString("TIFFFaxDecoder7"));
         }
-
-        final int bitsLeft = 8 - this.bitPointer;
-        int bitsFromNextByte = bitsToGet - bitsLeft;
-        int bitsFromNext2NextByte = 0;
-        if (bitsFromNextByte > 8) {
-            bitsFromNext2NextByte = bitsFromNextByte - 8;
-            bitsFromNextByte = 8;
-        }
-
-        this.bytePointer++;
-
-        final int i1 = (b & table1[bitsLeft]) << bitsToGet - bitsLeft;
-        int i2 = (next & table2[bitsFromNextByte]) >>> 8 - bitsFromNextByte;
-
-        int i3 = 0;
-        if (bitsFromNext2NextByte != 0) {
-            i2 <<= bitsFromNext2NextByte;
-            i3 = (next2next & table2[bitsFromNext2NextByte]) >>> 8 - bitsFromNext2NextByte;
-            i2 |= i3;
-            this.bytePointer++;
-            this.bitPointer = bitsFromNext2NextByte;
-        } else {
-            if (bitsFromNextByte == 8) {
-                this.bitPointer = 0;
-                this.bytePointer++;
-            } else {
-                this.bitPointer = bitsFromNextByte;
-            }
-        }
-
-        final int i = i1 | i2;
-        return i;
+        this.data[length] = 0;
+        this.data[length + 1] = 0;
+        this.dataLength = length;
+        this.bitPos = 0;
     }
 
-    private int nextLesserThan8Bits(final int bitsToGet) {
-        byte b, next;
-        final int l = this.data.length - 1;
-        final int bp = this.bytePointer;
-
-        if (this.fillOrder == 1) {
-            b = this.data[bp];
-            if (bp == l) {
-                next = 0x00;
-            } else {
-                next = this.data[bp + 1];
-            }
-        } else if (this.fillOrder == 2) {
-            b = flipTable[this.data[bp] & 0xff];
-            if (bp == l) {
-                next = 0x00;
-            } else {
-                next = flipTable[this.data[bp + 1] & 0xff];
-            }
-        } else {
+    // Returns the next 1 to 13 bits without consuming them. Bits after the
+    // end of the data read as 0, but the first one must be within the data.
+    private int peekBits(final int bitsToGet) {
+        final int bytePointer = this.bitPos >>> 3;
+        if (bytePointer >= this.dataLength) {
             throw new RuntimeException(
-                    PropertyUtil.getString("TIFFFaxDecoder7"));
-        }
-
-        final int bitsLeft = 8 - this.bitPointer;
-        final int bitsFromNextByte = bitsToGet - bitsLeft;
-
-        final int shift = bitsLeft - bitsToGet;
-        int i1, i2;
-        if (shift >= 0) {
-            i1 = (b & table1[bitsLeft]) >>> shift;
-            this.bitPointer += bitsToGet;
-            if (this.bitPointer == 8) {
-                this.bitPointer = 0;
-                this.bytePointer++;
-            }
-        } else {
-            i1 = (b & table1[bitsLeft]) << -shift;
-            i2 = (next & table2[bitsFromNextByte]) >>> 8 - bitsFromNextByte;
-
-            i1 |= i2;
-            this.bytePointer++;
-            this.bitPointer = bitsFromNextByte;
+                    PropertyUtil.getString("TIFFFaxDecoder9"));
         }
-
-        return i1;
+        final byte[] d = this.data;
+        final int window = (d[bytePointer] & 0xff) << 16
+                | (d[bytePointer + 1] & 0xff) << 8 | d[bytePointer + 2] & 0xff;
+        return window >>> 24 - (this.bitPos & 0x7) - bitsToGet
+                & (1 << bitsToGet) - 1;
     }
 
-    // Move pointer backwards by given amount of bits
-    private void updatePointer(final int bitsToMoveBack) {
-        final int i = this.bitPointer - bitsToMoveBack;
+    private void skipBits(final int bits) {
+        this.bitPos += bits;
+    }
 
-        if (i < 0) {
-            this.bytePointer--;
-            this.bitPointer = 8 + i;
-        } else {
-            this.bitPointer = i;
-        }
+    private int readBits(final int bitsToGet) {
+        final int bits = peekBits(bitsToGet);
+        this.bitPos += bitsToGet;
+        return bits;
     }
 
     // Move to the next byte boundary
     private boolean advancePointer() {
-        if (this.bitPointer != 0) {
-            this.bytePointer++;
-            this.bitPointer = 0;
-        }
-
+        this.bitPos = this.bitPos + 7 & ~0x7;
         return true;
     }
 }
@@ -0,0 +1,331 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.codec.tiff;
+
+import java.util.Arrays;
+
+/**
+ * A class for encoding bilevel rows with the CCITT facsimile codes of TIFF
+ * compression schemes 2 (Modified Huffman), 3 (T.4, here always with
+ * two-dimensional coding) and 4 (T.6). In the rows a 1 bit is a black
+ * pixel, so the images are WhiteIsZero. The output can be read by
+ * {@link TIFFFaxDecoder}.
+ *
+ * <p>
+ * An instance keeps its buffers between strips and must not be used by
+ * several threads at the same time.
+ */
+class TIFFFaxEncoder {
+
+    /**
+     * The number of rows of a T.4 strip coded relative to the row above after
+     * each one-dimensionally coded row, plus one. This is the K parameter of
+     * T.4 for vertical resolutions above 200 lines per inch.
+     */
+    static final int T4_K = 4;
+
+    private static final int EOL = 0x001;
+    private static final int EOL_LENGTH = 12;
+
+    private static final int MAX_MAKE_UP_RUN = 2560;
+
+    // Codes and code lengths of the runs of 0 to 63 pixels, then of the make
+    // up codes for multiples of 64 up to 2560, indexed by run / 64 + 63. They
+    // are taken from the decoding tables so both always agree.
+    private static final int[] WHITE_CODES = new int[64 + 40];
+    private static final int[] WHITE_LENGTHS = new int[64 + 40];
+    private static final int[] BLACK_CODES = new int[64 + 40];
+    private static final int[] BLACK_LENGTHS = new int[64 + 40];
+
+    static {
+        invert(TIFFFaxDecoder.WHITE_RUNS, 12, WHITE_CODES, WHITE_LENGTHS);
+        invert(TIFFFaxDecoder.BLACK_RUNS, 13, BLACK_CODES, BLACK_LENGTHS);
+    }
+
+    private static void invert(final int[] runs, final int bits,
+            final int[] codes, final int[] lengths) {
+        for (int p = 0; p < runs.length; p++) {
+            final int entry = runs[p];
+            if (entry >= 0) {
+                final int run = entry >>> 5;
+                final int length = entry >>> 1 & 0x0f;
+                final int index = run < 64 ? run : run / 64 + 63;
+                codes[index] = p >>> bits - length;
+                lengths[index] = length;
+            }
+        }
+    }
+
+    private final int compression;
+    private final int w;
+
+    // Changing elements of the coding and the reference row: the positions
+    // of the pixels that differ from their left neighbour, the pixel before
+    // the row being white, followed by four elements at the end of the row.
+    private int[] codingElems;
+    private int[] referenceElems;
+
+    private byte[] out = new byte[0];
+    private int outPos;
+    private int bitBuffer;
+    private int bitCount;
+
+    /**
+     * Constructs an encoder for rows of <code>w</code> pixels.
+     *
+     * @param compression
+     *            the TIFF compression scheme: 2, 3 or 4.
+     * @param w
+     *            the number of pixels of a row.
+     */
+    TIFFFaxEncoder(final int compression, final int w) {
+        if (compression < 2 || compression > 4) {
+            throw new IllegalArgumentException();
+        }
+        this.compression = compression;
+        this.w = w;
+        this.codingElems = new int[w + 5];
+        this.referenceElems = new int[w + 5];
+    }
+
+    /**
+     * Returns the buffer holding the output of the last call to
+     * {@link #encode}. It is reused by the next call.
+     */
+    byte[] getBuffer() {
+        return this.out;
+    }
+
+    /**
+     * Encodes <code>rows</code> rows of packed pixels as one strip or tile.
+     *
+     * @param data
+     *            the rows, starting at offset 0. The bits after the last
+     *            pixel of a row are ignored.
+     * @param rows
+     *            the number of rows.
+     * @param bytesPerRow
+     *            the offset between the starts of two rows.
+     * @return the number of bytes written to {@link #getBuffer()}.
+     */
+    int encode(final byte[] data, final int rows, final int bytesPerRow) {
+        this.outPos = 0;
+        this.bitBuffer = 0;
+        this.bitCount = 0;
+
+        // The row above the first one is white
+        setChangingElements(this.referenceElems, 0);
+
+        for (int row = 0; row < rows; row++) {
+            final int[] elems = this.codingElems;
+            final int count = findChangingElements(data, row * bytesPerRow,
+                    elems);
+            switch (this.compression) {
+            case 2:
+                encodeRuns(elems, count);
+                // Every row starts on a byte boundary
+                flushBits();
+                break;
+            case 3:
+                putBits(EOL, EOL_LENGTH);
+                if (row % T4_K == 0) {
+                    putBits(1, 1);
+                    encodeRuns(elems, count);
+                } else {
+                    putBits(0, 1);
+                    encodeRelative(elems, this.referenceElems);
+                }
+                break;
+            default:
+                encodeRelative(elems, this.referenceElems);
+                break;
+            }
+            this.codingElems = this.referenceElems;
+            this.referenceElems = elems;
+        }
+
+        if (this.compression == 4) {
+            // End of facsimile block
+            putBits(EOL, EOL_LENGTH);
+            putBits(EOL, EOL_LENGTH);
+        }
+        flushBits();
+        return this.outPos;
+    }
+
+    /**
+     * Stores the changing elements of the row at <code>offset</code> in
+     * <code>elems</code>.
+     *
+     * @return the number of changing elements before the end of the row.
+     */
+    private int findChangingElements(final byte[] data, final int offset,
+            final int[] elems) {
+        final int end = offset + (this.w + 7 >> 3);
+        int count = 0;
+        int x = 0;
+        // 0 while looking for a black pixel, 0xff for a white one
+        int invert = 0;
+        while (true) {
+            int i = offset + (x >> 3);
+            int b = ((data[i] ^ invert) & 0xff) & 0xff >>> (x & 0x7);
+            while (b == 0 && ++i < end) {
+                b = (data[i] ^ invert) & 0xff;
+            }
+            if (b == 0) {
+                break;
+            }
+            x = (i - offset << 3) + Integer.numberOfLeadingZeros(b) - 24;
+            if (x >= this.w) {
+                break;
+            }
+            elems[count++] = x;
+            invert ^= 0xff;
+        }
+        setChangingElements(elems, count);
+        return count;
+    }
+
+    private void setChangingElements(final int[] elems, final int count) {
+        Arrays.fill(elems, count, count + 4, this.w);
+    }
+
+    /** Codes a row as alternating white and black runs. */
+    private void encodeRuns(final int[] elems, final int count) {
+        int a0 = 0;
+        for (int i = 0; i < count; i++) {
+            putRun(elems[i] - a0, (i & 1) == 0);
+            a0 = elems[i];
+        }
+        putRun(this.w - a0, (count & 1) == 0);
+    }
+
+    /** Codes a row relative to the row above with the two-dimensional modes. */
+    private void encodeRelative(final int[] coding, final int[] reference) {
+        int a0 = -1;
+        boolean isWhite = true;
+        // Index of a1 and of the first reference element after a0
+        int a1Index = 0;
+        int bIndex = 0;
+        while (a0 < this.w) {
+            while (coding[a1Index] <= a0) {
+                a1Index++;
+            }
+            final int a1 = coding[a1Index];
+            while (reference[bIndex] <= a0) {
+                bIndex++;
+            }
+            // b1 changes to the opposite colour of a0, so the elements at
+            // even indices follow white pixels
+            final int b1Index = bIndex + ((bIndex & 1) == (isWhite ? 0 : 1) ? 0
+                    : 1);
+            final int b1 = reference[b1Index];
+            final int b2 = reference[b1Index + 1];
+
+            if (b2 < a1) {
+                // Pass mode
+                putBits(0x1, 4);
+                a0 = b2;
+            } else {
+                final int d = a1 - b1;
+                if (d >= -3 && d <= 3) {
+                    putVertical(d);
+                    a0 = a1;
+                    isWhite = !isWhite;
+                } else {
+                    // Horizontal mode
+                    final int a2 = coding[a1Index + 1];
+                    putBits(0x1, 3);
+                    putRun(a1 - Math.max(a0, 0), isWhite);
+                    putRun(a2 - a1, !isWhite);
+                    a0 = a2;
+                }
+            }
+        }
+    }
+
+    private void putVertical(final int d) {
+        switch (d) {
+        case 0:
+            putBits(0x1, 1);
+            break;
+        case 1:
+            putBits(0x3, 3);
+            break;
+        case 2:
+            putBits(0x3, 6);
+            break;
+        case 3:
+            putBits(0x3, 7);
+            break;
+        case -1:
+            putBits(0x2, 3);
+            break;
+        case -2:
+            putBits(0x2, 6);
+            break;
+        default:
+            putBits(0x2, 7);
+            break;
+        }
+    }
+
+    private void putRun(final int length, final boolean isWhite) {
+        final int[] codes = isWhite ? WHITE_CODES : BLACK_CODES;
+        final int[] lengths = isWhite ? WHITE_LENGTHS : BLACK_LENGTHS;
+        int run = length;
+        final int maxMakeUp = MAX_MAKE_UP_RUN / 64 + 63;
+        while (run >= MAX_MAKE_UP_RUN + 64) {
+            putBits(codes[maxMakeUp], lengths[maxMakeUp]);
+            run -= MAX_MAKE_UP_RUN;
+        }
+        if (run >= 64) {
+            final int makeUp = run / 64 + 63;
+            putBits(codes[makeUp], lengths[makeUp]);
+            run &= 0x3f;
+        }
+        putBits(codes[run], lengths[run]);
+    }
+
+    private void putBits(final int code, final int length) {
+        this.bitBuffer = this.bitBuffer << length | code;
+        this.bitCount += length;
+        while (this.bitCount >= 8) {
+            this.bitCount -= 8;
+            putByte(this.bitBuffer >>> this.bitCount);
+        }
+    }
+
+    /** Writes the remaining bits, padded with 0 bits to a byte boundary. */
+    private void flushBits() {
+        if (this.bitCount > 0) {
+            putByte(this.bitBuffer << 8 - this.bitCount);
+            this.bitCount = 0;
+        }
+    }
+
+    private void putByte(final int b) {
+        if (this.outPos == this.out.length) {
+            this.out = Arrays.copyOf(this.out,
+                    Math.max(this.out.length * 2, 4096));
+        }
+        this.out[this.outPos++] = (byte) b;
+    }
+}
@@ -36,13 +36,18 @@ import java.awt.image.Raster;
 import java.awt.image.SampleModel;
 import java.awt.image.WritableRaster;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.zip.DataFormatException;
 import java.util.zip.Inflater;
 
 import lombok.extern.slf4j.Slf4j;
 
+import org.apache.xmlgraphics.image.codec.util.ByteBufferSeekableStream;
 import org.apache.xmlgraphics.image.codec.util.PropertyUtil;
 import org.apache.xmlgraphics.image.codec.util.SeekableStream;
 import org.apache.xmlgraphics.image.rendered.AbstractRed;
@@ -102,9 +107,6 @@ public class TIFFImage extends AbstractRed {
     // LZW compression related variable
     int predictor;
 
-    // DEFLATE variables
-    Inflater inflater = null;
-
     // Endian-ness indicator
     boolean isBigEndian;
 
@@ -115,24 +117,57 @@ public class TIFFImage extends AbstractRed {
     boolean decodePaletteAsShorts;
     boolean tiled;
 
-    // Decoders
-    private TIFFFaxDecoder decoder = null;
-    private TIFFLZWDecoder lzwDecoder = null;
+    int samplesPerPixel;
+
+    /**
+     * The decompressors used by one <code>getTile</code> call. Each running
+     * call takes its own set, so the decoders, which keep state while
+     * decoding, are never shared between threads.
+     */
+    private static final class TileDecoders {
+        private Inflater inflater;
+        private TIFFFaxDecoder faxDecoder;
+        private TIFFLZWDecoder lzwDecoder;
+    }
+
+    /** The maximum number of idle decoder sets kept per image. */
+    private static final int MAX_IDLE_DECODERS = Runtime.getRuntime()
+            .availableProcessors();
+
+    /** Decoder sets not in use by a running <code>getTile</code> call. */
+    private final Deque<TileDecoders> idleDecoders = new ArrayDeque<TileDecoders>();
+
+    /** Recently decoded tiles by tile index, or null if caching is off. */
+    private Map<Integer, Raster> tileCache;
 
     /**
      * Inflates <code>deflated</code> into <code>inflated</code> using the
-     * <code>Inflater</code> constructed during class instantiation.
+     * given <code>Inflater</code> and reverses the predictor, if any.
      */
-    private void inflate(final byte[] deflated, final byte[] inflated) {
-        this.inflater.setInput(deflated);
+    private void inflate(final Inflater inflater, final byte[] deflated,
+            final byte[] inflated) {
+        inflater.setInput(deflated);
         try {
-            this.inflater.inflate(inflated);
+            inflater.inflate(inflated);
         } catch (final DataFormatException dfe) {
             log.error("DataFormatException", dfe);
             throw new RuntimeException(PropertyUtil.getString("TIFFImage17")
                     + ": " + dfe.getMessage());
+        } finally {
+            inflater.reset();
+        }
+
+        // Horizontal Differencing Predictor, only allowed for 8-bit samples
+        if (this.predictor == 2) {
+            final int bytesPerRow = this.tileWidth * this.samplesPerPixel;
+            for (int rowStart = 0; rowStart + bytesPerRow <= inflated.length;
+                    rowStart += bytesPerRow) {
+                for (int i = rowStart + this.samplesPerPixel; i < rowStart
+                        + bytesPerRow; i++) {
+                    inflated[i] += inflated[i - this.samplesPerPixel];
+                }
+            }
         }
-        this.inflater.reset();
     }
 
     private static SampleModel createPixelInterleavedSampleModel(
@@ -194,6 +229,21 @@ public class TIFFImage extends AbstractRed {
 
         this.decodePaletteAsShorts = param.getDecodePaletteAsShorts();
 
+        final int cacheSize = param.getTileCacheSize();
+        if (cacheSize > 0) {
+            this.tileCache = new LinkedHashMap<Integer, Raster>(16, 0.75f,
+                    true) {
+
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(
+                        final Map.Entry<Integer, Raster> eldest) {
+                    return size() > cacheSize;
+                }
+            };
+        }
+
         // Read the specified directory.
         final TIFFDirectory dir = param.getIFDOffset() == null ? new TIFFDirectory(
                 stream, directory) : new TIFFDirectory(stream, param
@@ -204,6 +254,7 @@ public class TIFFImage extends AbstractRed {
                 .getField(TIFFImageDecoder.TIFF_SAMPLES_PER_PIXEL);
         final int samplesPerPixel = sfield == null ? 1 : (int) sfield
                 .getAsLong(0);
+        this.samplesPerPixel = samplesPerPixel;
 
         // Read the TIFF_PLANAR_CONFIGURATION field
         final TIFFField planarConfigurationField = dir
@@ -307,10 +358,9 @@ public class TIFFImage extends AbstractRed {
 
         // Determine which kind of image we are dealing with.
         this.imageType = TYPE_UNSUPPORTED;
+        this.isWhiteZero = photometricType == 0;
         switch (photometricType) {
-                case 0: // WhiteIsZero
-                    this.isWhiteZero = true;
-                    break;
+                case 0: // WhiteIsZero, same layout as BlackIsZero
                 case 1: // BlackIsZero
                     if (this.sampleSize == 1 && samplesPerPixel == 1) {
                         this.imageType = TYPE_BILEVEL;
@@ -456,9 +506,6 @@ public class TIFFImage extends AbstractRed {
                 case COMP_PACKBITS:
                     // Do nothing.
                     break;
-                case COMP_DEFLATE:
-                    this.inflater = new Inflater();
-                    break;
                 case COMP_FAX_G3_1D:
                 case COMP_FAX_G3_2D:
                 case COMP_FAX_G4_2D:
@@ -490,13 +537,13 @@ public class TIFFImage extends AbstractRed {
                         }
                     }
 
-                    // Fax encoding, need to create the Fax decoder.
-                    this.decoder = new TIFFFaxDecoder(this.fillOrder, tileWidth,
-                            tileHeight);
+                    // The Fax decoder is created by acquireDecoders().
                     break;
 
+                case COMP_DEFLATE:
                 case COMP_LZW:
-                    // LZW compression used, need to create the LZW decoder.
+                    // LZW or DEFLATE compression used, the decoder is created
+                    // by acquireDecoders(). Both may use the predictor.
                     final TIFFField predictorField = dir
                     .getField(TIFFImageDecoder.TIFF_PREDICTOR);
 
@@ -515,9 +562,6 @@ public class TIFFImage extends AbstractRed {
                                     PropertyUtil.getString("TIFFImage9"));
                         }
                     }
-
-                    this.lzwDecoder = new TIFFLZWDecoder(tileWidth, this.predictor,
-                            samplesPerPixel);
                     break;
 
                 case COMP_JPEG_OLD:
@@ -747,10 +791,13 @@ public class TIFFImage extends AbstractRed {
     }
 
     /**
-     * Returns tile (tileX, tileY) as a Raster.
+     * Returns tile (tileX, tileY) as a Raster. This method may be called by
+     * several threads at the same time: the compressed data of each tile is
+     * read with a positional read and decompressed with decoders that are not
+     * shared with any other running call.
      */
     @Override
-    public synchronized Raster getTile(final int tileX, final int tileY) {
+    public Raster getTile(final int tileX, final int tileY) {
         if (tileX < 0 || tileX >= this.tilesX || tileY < 0
                 || tileY >= this.tilesY) {
             throw new IllegalArgumentException(
@@ -759,6 +806,106 @@ public class TIFFImage extends AbstractRed {
 
         // log.info("Called TIFF getTile:" + tileX + "," + tileY);
 
+        final int index = tileY * this.tilesX + tileX;
+        if (this.tileCache != null) {
+            synchronized (this.tileCache) {
+                final Raster cached = this.tileCache.get(index);
+                if (cached != null) {
+                    return cached;
+                }
+            }
+        }
+
+        final SeekableStream in;
+        try {
+            in = openTile(index);
+        } catch (final IOException ioe) {
+            log.error("IOException", ioe);
+            throw new RuntimeException(PropertyUtil.getString("TIFFImage13")
+                    + ": " + ioe.getMessage());
+        }
+
+        final TileDecoders decoders = acquireDecoders();
+        final Raster tile;
+        try {
+            tile = decodeTile(tileX, tileY, in, decoders);
+        } finally {
+            releaseDecoders(decoders);
+        }
+
+        if (this.tileCache != null) {
+            synchronized (this.tileCache) {
+                this.tileCache.put(index, tile);
+            }
+        }
+        return tile;
+    }
+
+    /**
+     * Returns a stream over the compressed data of the tile with the given
+     * index. Memory-mapped data is shared; other streams are read into a new
+     * array without moving their pointer.
+     */
+    private SeekableStream openTile(final int index) throws IOException {
+        final long offset = this.tileOffsets[index];
+        final int byteCount = (int) this.tileByteCounts[index];
+        if (this.stream instanceof ByteBufferSeekableStream) {
+            return ((ByteBufferSeekableStream) this.stream).range(offset,
+                    byteCount);
+        }
+        final byte[] data = new byte[byteCount];
+        this.stream.readFully(offset, data, 0, byteCount);
+        return new ByteBufferSeekableStream(ByteBuffer.wrap(data));
+    }
+
+    private TileDecoders acquireDecoders() {
+        synchronized (this.idleDecoders) {
+            final TileDecoders decoders = this.idleDecoders.poll();
+            if (decoders != null) {
+                return decoders;
+            }
+        }
+        final TileDecoders decoders = new TileDecoders();
+        switch (this.compression) {
+        case COMP_DEFLATE:
+            decoders.inflater = new Inflater();
+            break;
+        case COMP_FAX_G3_1D:
+        case COMP_FAX_G3_2D:
+        case COMP_FAX_G4_2D:
+            decoders.faxDecoder = new TIFFFaxDecoder(this.fillOrder,
+                    this.tileWidth, this.tileHeight);
+            break;
+        case COMP_LZW:
+            decoders.lzwDecoder = new TIFFLZWDecoder(this.tileWidth,
+                    this.predictor, this.samplesPerPixel);
+            break;
+        default:
+            break;
+        }
+        return decoders;
+    }
+
+    private void releaseDecoders(final TileDecoders decoders) {
+        synchronized (this.idleDecoders) {
+            if (this.idleDecoders.size() < MAX_IDLE_DECODERS) {
+                this.idleDecoders.push(decoders);
+                return;
+            }
+        }
+        // Don't hold native zlib memory for more threads than can run
+        if (decoders.inflater != null) {
+            decoders.inflater.end();
+        }
+    }
+
+    /**
+     * Decodes tile (tileX, tileY) from <code>in</code>, which holds exactly
+     * the compressed data of the tile.
+     */
+    private WritableRaster decodeTile(final int tileX, final int tileY,
+            final SeekableStream in, final TileDecoders decoders) {
+
         // Get the data array out of the DataBuffer
         byte[] bdata = null;
         short[] sdata = null;
@@ -785,17 +932,6 @@ public class TIFFImage extends AbstractRed {
         short sswap;
         int iswap;
 
-        // Save original file pointer position and seek to tile data location.
-        long save_offset = 0;
-        try {
-            save_offset = this.stream.getFilePointer();
-            this.stream.seek(this.tileOffsets[tileY * this.tilesX + tileX]);
-        } catch (final IOException ioe) {
-            log.error("IOException", ioe);
-            throw new RuntimeException(PropertyUtil.getString("TIFFImage13")
-                    + ": " + ioe.getMessage());
-        }
-
         // Number of bytes in this tile (strip) after compression.
         final int byteCount = (int) this.tileByteCounts[tileY * this.tilesX
                 + tileX];
@@ -821,7 +957,7 @@ public class TIFFImage extends AbstractRed {
         if (this.imageType == TYPE_BILEVEL) { // bilevel
             try {
                 if (this.compression == COMP_PACKBITS) {
-                    this.stream.readFully(data, 0, byteCount);
+                    in.readFully(data, 0, byteCount);
 
                     // Since the decompressed data will still be packed
                     // 8 pixels into 1 byte, calculate bytesInThisTile
@@ -834,27 +970,25 @@ public class TIFFImage extends AbstractRed {
                     }
                     decodePackbits(data, bytesInThisTile, bdata);
                 } else if (this.compression == COMP_LZW) {
-                    this.stream.readFully(data, 0, byteCount);
-                    this.lzwDecoder.decode(data, bdata, newRect.height);
+                    in.readFully(data, 0, byteCount);
+                    decoders.lzwDecoder.decode(data, bdata, newRect.height);
                 } else if (this.compression == COMP_FAX_G3_1D) {
-                    this.stream.readFully(data, 0, byteCount);
-                    this.decoder.decode1D(bdata, data, 0, newRect.height);
+                    in.readFully(data, 0, byteCount);
+                    decoders.faxDecoder.decode1D(bdata, data, 0, newRect.height);
                 } else if (this.compression == COMP_FAX_G3_2D) {
-                    this.stream.readFully(data, 0, byteCount);
-                    this.decoder.decode2D(bdata, data, 0, newRect.height,
+                    in.readFully(data, 0, byteCount);
+                    decoders.faxDecoder.decode2D(bdata, data, 0, newRect.height,
                             this.tiffT4Options);
                 } else if (this.compression == COMP_FAX_G4_2D) {
-                    this.stream.readFully(data, 0, byteCount);
-                    this.decoder.decodeT6(bdata, data, 0, newRect.height,
+                    in.readFully(data, 0, byteCount);
+                    decoders.faxDecoder.decodeT6(bdata, data, 0, newRect.height,
                             this.tiffT6Options);
                 } else if (this.compression == COMP_DEFLATE) {
-                    this.stream.readFully(data, 0, byteCount);
-                    inflate(data, bdata);
+                    in.readFully(data, 0, byteCount);
+                    inflate(decoders.inflater, data, bdata);
                 } else if (this.compression == COMP_NONE) {
-                    this.stream.readFully(bdata, 0, byteCount);
+                    in.readFully(bdata, 0, byteCount);
                 }
-
-                this.stream.seek(save_offset);
             } catch (final IOException ioe) {
                 log.error("IOException", ioe);
                 throw new RuntimeException(
@@ -886,7 +1020,7 @@ public class TIFFImage extends AbstractRed {
 
                         if (this.compression == COMP_PACKBITS) {
 
-                            this.stream.readFully(data, 0, byteCount);
+                            in.readFully(data, 0, byteCount);
 
                             final byte[] byteArray = new byte[entries];
                             decodePackbits(data, entries, byteArray);
@@ -897,10 +1031,10 @@ public class TIFFImage extends AbstractRed {
                         } else if (this.compression == COMP_LZW) {
 
                             // Read in all the compressed data for this tile
-                            this.stream.readFully(data, 0, byteCount);
+                            in.readFully(data, 0, byteCount);
 
                             final byte[] byteArray = new byte[entries];
-                            this.lzwDecoder.decode(data, byteArray,
+                            decoders.lzwDecoder.decode(data, byteArray,
                                     newRect.height);
                             tempData = new short[unitsBeforeLookup];
                             interpretBytesAsShorts(byteArray, tempData,
@@ -908,9 +1042,9 @@ public class TIFFImage extends AbstractRed {
 
                         } else if (this.compression == COMP_DEFLATE) {
 
-                            this.stream.readFully(data, 0, byteCount);
+                            in.readFully(data, 0, byteCount);
                             final byte[] byteArray = new byte[entries];
-                            inflate(data, byteArray);
+                            inflate(decoders.inflater, data, byteArray);
                             tempData = new short[unitsBeforeLookup];
                             interpretBytesAsShorts(byteArray, tempData,
                                     unitsBeforeLookup);
@@ -922,11 +1056,9 @@ public class TIFFImage extends AbstractRed {
                             // which will take half the space, so while
                             // allocating we divide byteCount by 2.
                             tempData = new short[byteCount / 2];
-                            readShorts(byteCount / 2, tempData);
+                            readShorts(in, byteCount / 2, tempData);
                         }
 
-                        this.stream.seek(save_offset);
-
                     } catch (final IOException ioe) {
                         log.error("IOException", ioe);
                         throw new RuntimeException(
@@ -989,7 +1121,7 @@ public class TIFFImage extends AbstractRed {
 
                         if (this.compression == COMP_PACKBITS) {
 
-                            this.stream.readFully(data, 0, byteCount);
+                            in.readFully(data, 0, byteCount);
 
                             // Since unitsInThisTile is the number of shorts,
                             // but we do our decompression in terms of bytes, we
@@ -1005,7 +1137,7 @@ public class TIFFImage extends AbstractRed {
 
                         } else if (this.compression == COMP_LZW) {
 
-                            this.stream.readFully(data, 0, byteCount);
+                            in.readFully(data, 0, byteCount);
 
                             // Since unitsInThisTile is the number of shorts,
                             // but we do our decompression in terms of bytes, we
@@ -1013,26 +1145,24 @@ public class TIFFImage extends AbstractRed {
                             // figure out how many bytes we'll get after
                             // decompression.
                             final byte[] byteArray = new byte[unitsInThisTile * 2];
-                            this.lzwDecoder.decode(data, byteArray,
+                            decoders.lzwDecoder.decode(data, byteArray,
                                     newRect.height);
                             interpretBytesAsShorts(byteArray, sdata,
                                     unitsInThisTile);
 
                         } else if (this.compression == COMP_DEFLATE) {
 
-                            this.stream.readFully(data, 0, byteCount);
+                            in.readFully(data, 0, byteCount);
                             final byte[] byteArray = new byte[unitsInThisTile * 2];
-                            inflate(data, byteArray);
+                            inflate(decoders.inflater, data, byteArray);
                             interpretBytesAsShorts(byteArray, sdata,
                                     unitsInThisTile);
 
                         } else if (this.compression == COMP_NONE) {
 
-                            readShorts(byteCount / 2, sdata);
+                            readShorts(in, byteCount / 2, sdata);
                         }
 
-                        this.stream.seek(save_offset);
-
                     } catch (final IOException ioe) {
                         log.error("IOException", ioe);
                         throw new RuntimeException(
@@ -1059,35 +1189,33 @@ public class TIFFImage extends AbstractRed {
 
                         if (this.compression == COMP_PACKBITS) {
 
-                            this.stream.readFully(data, 0, byteCount);
+                            in.readFully(data, 0, byteCount);
                             tempData = new byte[unitsBeforeLookup];
                             decodePackbits(data, unitsBeforeLookup, tempData);
 
                         } else if (this.compression == COMP_LZW) {
 
-                            this.stream.readFully(data, 0, byteCount);
+                            in.readFully(data, 0, byteCount);
                             tempData = new byte[unitsBeforeLookup];
-                            this.lzwDecoder.decode(data, tempData,
+                            decoders.lzwDecoder.decode(data, tempData,
                                     newRect.height);
 
                         } else if (this.compression == COMP_DEFLATE) {
 
-                            this.stream.readFully(data, 0, byteCount);
+                            in.readFully(data, 0, byteCount);
                             tempData = new byte[unitsBeforeLookup];
-                            inflate(data, tempData);
+                            inflate(decoders.inflater, data, tempData);
 
                         } else if (this.compression == COMP_NONE) {
 
                             tempData = new byte[byteCount];
-                            this.stream.readFully(tempData, 0, byteCount);
+                            in.readFully(tempData, 0, byteCount);
                         } else {
                             throw new RuntimeException(
                                     PropertyUtil.getString("IFFImage10") + ": "
                                             + this.compression);
                         }
 
-                        this.stream.seek(save_offset);
-
                     } catch (final IOException ioe) {
                         log.error("IOException", ioe);
                         throw new RuntimeException(
@@ -1123,22 +1251,22 @@ public class TIFFImage extends AbstractRed {
 
                         if (this.compression == COMP_PACKBITS) {
 
-                            this.stream.readFully(data, 0, byteCount);
+                            in.readFully(data, 0, byteCount);
                             decodePackbits(data, unitsInThisTile, bdata);
 
                         } else if (this.compression == COMP_LZW) {
 
-                            this.stream.readFully(data, 0, byteCount);
-                            this.lzwDecoder.decode(data, bdata, newRect.height);
+                            in.readFully(data, 0, byteCount);
+                            decoders.lzwDecoder.decode(data, bdata, newRect.height);
 
                         } else if (this.compression == COMP_DEFLATE) {
 
-                            this.stream.readFully(data, 0, byteCount);
-                            inflate(data, bdata);
+                            in.readFully(data, 0, byteCount);
+                            inflate(decoders.inflater, data, bdata);
 
                         } else if (this.compression == COMP_NONE) {
 
-                            this.stream.readFully(bdata, 0, byteCount);
+                            in.readFully(bdata, 0, byteCount);
 
                         } else {
                             throw new RuntimeException(
@@ -1146,8 +1274,6 @@ public class TIFFImage extends AbstractRed {
                                             + ": " + this.compression);
                         }
 
-                        this.stream.seek(save_offset);
-
                     } catch (final IOException ioe) {
                         log.error("IOException", ioe);
                         throw new RuntimeException(
@@ -1168,8 +1294,7 @@ public class TIFFImage extends AbstractRed {
                     byte[] tempData = null;
 
                     try {
-                        this.stream.readFully(data, 0, byteCount);
-                        this.stream.seek(save_offset);
+                        in.readFully(data, 0, byteCount);
                     } catch (final IOException ioe) {
                         log.error("IOException", ioe);
                         throw new RuntimeException(
@@ -1186,12 +1311,12 @@ public class TIFFImage extends AbstractRed {
                     } else if (this.compression == COMP_LZW) {
 
                         tempData = new byte[bytesPostDecoding];
-                        this.lzwDecoder.decode(data, tempData, newRect.height);
+                        decoders.lzwDecoder.decode(data, tempData, newRect.height);
 
                     } else if (this.compression == COMP_DEFLATE) {
 
                         tempData = new byte[bytesPostDecoding];
-                        inflate(data, tempData);
+                        inflate(decoders.inflater, data, tempData);
 
                     } else if (this.compression == COMP_NONE) {
 
@@ -1236,26 +1361,24 @@ public class TIFFImage extends AbstractRed {
                         // If compressed, decode the data.
                         if (this.compression == COMP_PACKBITS) {
 
-                            this.stream.readFully(data, 0, byteCount);
+                            in.readFully(data, 0, byteCount);
                             decodePackbits(data, bytesPostDecoding, bdata);
 
                         } else if (this.compression == COMP_LZW) {
 
-                            this.stream.readFully(data, 0, byteCount);
-                            this.lzwDecoder.decode(data, bdata, newRect.height);
+                            in.readFully(data, 0, byteCount);
+                            decoders.lzwDecoder.decode(data, bdata, newRect.height);
 
                         } else if (this.compression == COMP_DEFLATE) {
 
-                            this.stream.readFully(data, 0, byteCount);
-                            inflate(data, bdata);
+                            in.readFully(data, 0, byteCount);
+                            inflate(decoders.inflater, data, bdata);
 
                         } else if (this.compression == COMP_NONE) {
 
-                            this.stream.readFully(bdata, 0, byteCount);
+                            in.readFully(bdata, 0, byteCount);
                         }
 
-                        this.stream.seek(save_offset);
-
                     } catch (final IOException ioe) {
                         log.error("IOException", ioe);
                         throw new RuntimeException(
@@ -1268,7 +1391,7 @@ public class TIFFImage extends AbstractRed {
             try {
                 if (this.compression == COMP_PACKBITS) {
 
-                    this.stream.readFully(data, 0, byteCount);
+                    in.readFully(data, 0, byteCount);
 
                     // Since the decompressed data will still be packed
                     // 2 pixels into 1 byte, calculate bytesInThisTile
@@ -1284,20 +1407,18 @@ public class TIFFImage extends AbstractRed {
 
                 } else if (this.compression == COMP_LZW) {
 
-                    this.stream.readFully(data, 0, byteCount);
-                    this.lzwDecoder.decode(data, bdata, newRect.height);
+                    in.readFully(data, 0, byteCount);
+                    decoders.lzwDecoder.decode(data, bdata, newRect.height);
 
                 } else if (this.compression == COMP_DEFLATE) {
 
-                    this.stream.readFully(data, 0, byteCount);
-                    inflate(data, bdata);
+                    in.readFully(data, 0, byteCount);
+                    inflate(decoders.inflater, data, bdata);
 
                 } else {
 
-                    this.stream.readFully(bdata, 0, byteCount);
+                    in.readFully(bdata, 0, byteCount);
                 }
-
-                this.stream.seek(save_offset);
             } catch (final IOException ioe) {
                 log.error("IOException", ioe);
                 throw new RuntimeException(
@@ -1310,22 +1431,22 @@ public class TIFFImage extends AbstractRed {
                 if (this.sampleSize == 8) {
 
                     if (this.compression == COMP_NONE) {
-                        this.stream.readFully(bdata, 0, byteCount);
+                        in.readFully(bdata, 0, byteCount);
 
                     } else if (this.compression == COMP_LZW) {
 
-                        this.stream.readFully(data, 0, byteCount);
-                        this.lzwDecoder.decode(data, bdata, newRect.height);
+                        in.readFully(data, 0, byteCount);
+                        decoders.lzwDecoder.decode(data, bdata, newRect.height);
 
                     } else if (this.compression == COMP_PACKBITS) {
 
-                        this.stream.readFully(data, 0, byteCount);
+                        in.readFully(data, 0, byteCount);
                         decodePackbits(data, unitsInThisTile, bdata);
 
                     } else if (this.compression == COMP_DEFLATE) {
 
-                        this.stream.readFully(data, 0, byteCount);
-                        inflate(data, bdata);
+                        in.readFully(data, 0, byteCount);
+                        inflate(decoders.inflater, data, bdata);
 
                     } else {
                         throw new RuntimeException(
@@ -1337,11 +1458,11 @@ public class TIFFImage extends AbstractRed {
 
                     if (this.compression == COMP_NONE) {
 
-                        readShorts(byteCount / 2, sdata);
+                        readShorts(in, byteCount / 2, sdata);
 
                     } else if (this.compression == COMP_LZW) {
 
-                        this.stream.readFully(data, 0, byteCount);
+                        in.readFully(data, 0, byteCount);
 
                         // Since unitsInThisTile is the number of shorts,
                         // but we do our decompression in terms of bytes, we
@@ -1349,13 +1470,13 @@ public class TIFFImage extends AbstractRed {
                         // figure out how many bytes we'll get after
                         // decompression.
                         final byte[] byteArray = new byte[unitsInThisTile * 2];
-                        this.lzwDecoder.decode(data, byteArray, newRect.height);
+                        decoders.lzwDecoder.decode(data, byteArray, newRect.height);
                         interpretBytesAsShorts(byteArray, sdata,
                                 unitsInThisTile);
 
                     } else if (this.compression == COMP_PACKBITS) {
 
-                        this.stream.readFully(data, 0, byteCount);
+                        in.readFully(data, 0, byteCount);
 
                         // Since unitsInThisTile is the number of shorts,
                         // but we do our decompression in terms of bytes, we
@@ -1370,9 +1491,9 @@ public class TIFFImage extends AbstractRed {
                                 unitsInThisTile);
                     } else if (this.compression == COMP_DEFLATE) {
 
-                        this.stream.readFully(data, 0, byteCount);
+                        in.readFully(data, 0, byteCount);
                         final byte[] byteArray = new byte[unitsInThisTile * 2];
-                        inflate(data, byteArray);
+                        inflate(decoders.inflater, data, byteArray);
                         interpretBytesAsShorts(byteArray, sdata,
                                 unitsInThisTile);
 
@@ -1381,11 +1502,11 @@ public class TIFFImage extends AbstractRed {
                         && dataType == DataBuffer.TYPE_INT) { // redundant
                     if (this.compression == COMP_NONE) {
 
-                        readInts(byteCount / 4, idata);
+                        readInts(in, byteCount / 4, idata);
 
                     } else if (this.compression == COMP_LZW) {
 
-                        this.stream.readFully(data, 0, byteCount);
+                        in.readFully(data, 0, byteCount);
 
                         // Since unitsInThisTile is the number of ints,
                         // but we do our decompression in terms of bytes, we
@@ -1393,12 +1514,12 @@ public class TIFFImage extends AbstractRed {
                         // figure out how many bytes we'll get after
                         // decompression.
                         final byte[] byteArray = new byte[unitsInThisTile * 4];
-                        this.lzwDecoder.decode(data, byteArray, newRect.height);
+                        decoders.lzwDecoder.decode(data, byteArray, newRect.height);
                         interpretBytesAsInts(byteArray, idata, unitsInThisTile);
 
                     } else if (this.compression == COMP_PACKBITS) {
 
-                        this.stream.readFully(data, 0, byteCount);
+                        in.readFully(data, 0, byteCount);
 
                         // Since unitsInThisTile is the number of ints,
                         // but we do our decompression in terms of bytes, we
@@ -1412,16 +1533,14 @@ public class TIFFImage extends AbstractRed {
                         interpretBytesAsInts(byteArray, idata, unitsInThisTile);
                     } else if (this.compression == COMP_DEFLATE) {
 
-                        this.stream.readFully(data, 0, byteCount);
+                        in.readFully(data, 0, byteCount);
                         final byte[] byteArray = new byte[unitsInThisTile * 4];
-                        inflate(data, byteArray);
+                        inflate(decoders.inflater, data, byteArray);
                         interpretBytesAsInts(byteArray, idata, unitsInThisTile);
 
                     }
                 }
 
-                this.stream.seek(save_offset);
-
             } catch (final IOException ioe) {
                 log.error("IOException", ioe);
                 throw new RuntimeException(
@@ -1578,7 +1697,7 @@ public class TIFFImage extends AbstractRed {
         return tile;
     }
 
-    private void readShorts(final int shortCount, final short[] shortArray) {
+    private void readShorts(final SeekableStream in, final int shortCount, final short[] shortArray) {
 
         // Since each short consists of 2 bytes, we need a
         // byte array of double size
@@ -1586,7 +1705,7 @@ public class TIFFImage extends AbstractRed {
         final byte[] byteArray = new byte[byteCount];
 
         try {
-            this.stream.readFully(byteArray, 0, byteCount);
+            in.readFully(byteArray, 0, byteCount);
         } catch (final IOException ioe) {
             log.error("IOException", ioe);
             throw new RuntimeException(PropertyUtil.getString("TIFFImage13")
@@ -1596,7 +1715,7 @@ public class TIFFImage extends AbstractRed {
         interpretBytesAsShorts(byteArray, shortArray, shortCount);
     }
 
-    private void readInts(final int intCount, final int[] intArray) {
+    private void readInts(final SeekableStream in, final int intCount, final int[] intArray) {
 
         // Since each int consists of 4 bytes, we need a
         // byte array of quadruple size
@@ -1604,7 +1723,7 @@ public class TIFFImage extends AbstractRed {
         final byte[] byteArray = new byte[byteCount];
 
         try {
-            this.stream.readFully(byteArray, 0, byteCount);
+            in.readFully(byteArray, 0, byteCount);
         } catch (final IOException ioe) {
             log.error("IOException", ioe);
             throw new RuntimeException(PropertyUtil.getString("TIFFImage13")
@@ -26,6 +26,7 @@ import org.apache.xmlgraphics.image.codec.util.ImageDecodeParam;
 import org.apache.xmlgraphics.image.codec.util.ImageDecoderImpl;
 import org.apache.xmlgraphics.image.codec.util.PropertyUtil;
 import org.apache.xmlgraphics.image.codec.util.SeekableStream;
+import org.apache.xmlgraphics.image.rendered.SubsampledRed;
 
 /**
  * A baseline TIFF reader. The reader has some functionality in addition to the
@@ -90,6 +91,9 @@ public class TIFFImageDecoder extends ImageDecoderImpl {
         if (page < 0 || page >= getNumPages()) {
             throw new IOException(PropertyUtil.getString("TIFFImageDecoder0"));
         }
-        return new TIFFImage(this.input, (TIFFDecodeParam) this.param, page);
+        final TIFFDecodeParam decodeParam = (TIFFDecodeParam) this.param;
+        final TIFFImage image = new TIFFImage(this.input, decodeParam, page);
+        return decodeParam == null ? image : SubsampledRed.subsample(image,
+                decodeParam.getSubsampling());
     }
 }
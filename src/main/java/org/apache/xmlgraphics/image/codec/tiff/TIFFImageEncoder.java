@@ -34,13 +34,22 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.zip.Deflater;
 
 import lombok.extern.slf4j.Slf4j;
@@ -78,6 +87,10 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
 
     // Compression types
     private static final int COMP_NONE = 1;
+    private static final int COMP_FAX_G3_1D = 2;
+    private static final int COMP_FAX_G3_2D = 3;
+    private static final int COMP_FAX_G4_2D = 4;
+    private static final int COMP_LZW = 5;
     private static final int COMP_JPEG_TTN2 = 7;
     private static final int COMP_PACKBITS = 32773;
     private static final int COMP_DEFLATE = 32946;
@@ -392,6 +405,19 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
                     PropertyUtil.getString("TIFFImageEncoder8"));
         }
 
+        // The CCITT codes are written for WhiteIsZero data, so BlackIsZero
+        // images are inverted while compressing.
+        final boolean isFax = compression == COMP_FAX_G3_1D
+                || compression == COMP_FAX_G3_2D
+                || compression == COMP_FAX_G4_2D;
+        if (isFax && imageType != TIFF_BILEVEL_BLACK_IS_ZERO
+                && imageType != TIFF_BILEVEL_WHITE_IS_ZERO) {
+            throw new RuntimeException(
+                    PropertyUtil.getString("TIFFImageEncoder15"));
+        }
+        final boolean invert = isFax
+                && imageType == TIFF_BILEVEL_BLACK_IS_ZERO;
+
         int photometricInterpretation = -1;
         switch (imageType) {
 
@@ -400,7 +426,7 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
             break;
 
         case TIFF_BILEVEL_BLACK_IS_ZERO:
-            photometricInterpretation = 1;
+            photometricInterpretation = invert ? 0 : 1;
             break;
 
         case TIFF_GRAY:
@@ -460,6 +486,16 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
                     PropertyUtil.getString("TIFFImageEncoder8"));
         }
 
+        // Horizontal differencing only applies to LZW and DEFLATE.
+        final int predictor = compression == COMP_LZW
+                || compression == COMP_DEFLATE ? encodeParam.getPredictor()
+                : TIFFEncodeParam.PREDICTOR_NONE;
+        if (predictor == TIFFEncodeParam.PREDICTOR_HORIZONTAL_DIFFERENCING
+                && sampleSize[0] != 8) {
+            throw new RuntimeException(
+                    PropertyUtil.getString("TIFFImageEncoder14"));
+        }
+
         // Initialize tile dimensions.
         int tileWidth;
         int tileHeight;
@@ -471,8 +507,13 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
         } else {
             tileWidth = width;
 
-            tileHeight = encodeParam.getTileHeight() > 0 ? encodeParam
-                    .getTileHeight() : DEFAULT_ROWS_PER_STRIP;
+            // CCITT data compresses best in a single strip, which is also
+            // the only layout ImageLoaderRawCCITTFax can embed.
+            if (encodeParam.getTileHeight() > 0) {
+                tileHeight = encodeParam.getTileHeight();
+            } else {
+                tileHeight = isFax ? height : DEFAULT_ROWS_PER_STRIP;
+            }
         }
 
         int numTiles;
@@ -615,6 +656,17 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
             // use it if available.
         }
 
+        if (compression == COMP_FAX_G3_2D) {
+            // Two-dimensional coding
+            fields.add(new TIFFField(TIFFImageDecoder.TIFF_T4_OPTIONS,
+                    TIFFField.TIFF_LONG, 1, new long[] { 1 }));
+        }
+
+        if (predictor == TIFFEncodeParam.PREDICTOR_HORIZONTAL_DIFFERENCING) {
+            fields.add(new TIFFField(TIFFImageDecoder.TIFF_PREDICTOR,
+                    TIFFField.TIFF_SHORT, 1, new char[] { (char) predictor }));
+        }
+
         if (imageType == TIFF_YCBCR) {
             // YCbCrSubSampling: 2 is the default so we must write 1 as
             // we do not (yet) do any subsampling.
@@ -683,14 +735,11 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
         // is used (outCache non-null, tempFile null).
 
         OutputStream outCache = null;
-        byte[] compressBuf = null;
         File tempFile = null;
 
         int nextIFDOffset = 0;
         boolean skipByte = false;
 
-        Deflater deflater = null;
-
         if (compression == COMP_NONE) {
             // Determine the number of bytes of padding necessary between
             // the end of the IFD and the first data segment such that the
@@ -758,236 +807,114 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
                             (int) totalBytesOfData);
                 }
             }
-
-            int bufSize = 0;
-            switch (compression) {
-            case COMP_PACKBITS:
-                bufSize = (int) (bytesPerTile + (bytesPerRow + 127) / 128
-                        * tileHeight);
-                break;
-            case COMP_DEFLATE:
-                bufSize = (int) bytesPerTile;
-                deflater = new Deflater(encodeParam.getDeflateLevel());
-                break;
-            default:
-                bufSize = 0;
-            }
-            if (bufSize != 0) {
-                compressBuf = new byte[bufSize];
-            }
         }
 
-        // ---- Writing of actual image data ----
-
-        // Buffer for up to tileHeight rows of pixels
-        int[] pixels = null;
-        float[] fpixels = null;
-
-        // Whether to test for contiguous data.
-        final boolean checkContiguous = sampleSize[0] == 1
-                && sampleModel instanceof MultiPixelPackedSampleModel
-                && dataType == DataBuffer.TYPE_BYTE || sampleSize[0] == 8
-                && sampleModel instanceof ComponentSampleModel;
-
-        // Also create a buffer to hold tileHeight lines of the
-        // data to be written to the file, so we can use array writes.
-        byte[] bpixels = null;
-        if (compression != COMP_JPEG_TTN2) {
-            if (dataType == DataBuffer.TYPE_BYTE) {
-                bpixels = new byte[tileHeight * tileWidth * numBands];
-            } else if (dataTypeIsShort) {
-                bpixels = new byte[2 * tileHeight * tileWidth * numBands];
-            } else if (dataType == DataBuffer.TYPE_INT
-                    || dataType == DataBuffer.TYPE_FLOAT) {
-                bpixels = new byte[4 * tileHeight * tileWidth * numBands];
+        final TileWriter tileWriter = new TileWriter(compression, predictor,
+                encodeParam, tileWidth, (int) bytesPerRow, numBands, invert,
+                tileByteCounts);
+
+        try {
+            // ---- Writing of actual image data ----
+
+            // Buffer for up to tileHeight rows of pixels
+            int[] pixels = null;
+            float[] fpixels = null;
+
+            // Whether to test for contiguous data.
+            final boolean checkContiguous = sampleSize[0] == 1
+                    && sampleModel instanceof MultiPixelPackedSampleModel
+                    && dataType == DataBuffer.TYPE_BYTE || sampleSize[0] == 8
+                    && sampleModel instanceof ComponentSampleModel;
+
+            // Also create a buffer to hold tileHeight lines of the
+            // data to be written to the file, so we can use array writes.
+            byte[] bpixels = null;
+            if (compression != COMP_JPEG_TTN2) {
+                if (dataType == DataBuffer.TYPE_BYTE) {
+                    bpixels = new byte[tileHeight * (int) bytesPerRow];
+                } else if (dataTypeIsShort) {
+                    bpixels = new byte[2 * tileHeight * tileWidth * numBands];
+                } else if (dataType == DataBuffer.TYPE_INT
+                        || dataType == DataBuffer.TYPE_FLOAT) {
+                    bpixels = new byte[4 * tileHeight * tileWidth * numBands];
+                }
             }
-        }
 
-        // Process tileHeight rows at a time
-        final int lastRow = minY + height;
-        final int lastCol = minX + width;
-        int tileNum = 0;
-        for (int row = minY; row < lastRow; row += tileHeight) {
-            final int rows = isTiled ? tileHeight : Math.min(tileHeight,
-                    lastRow - row);
-            final int size = rows * tileWidth * numBands;
-
-            for (int col = minX; col < lastCol; col += tileWidth) {
-                // Grab the pixels
-                final Raster src = im.getData(new Rectangle(col, row,
-                        tileWidth, rows));
-
-                boolean useDataBuffer = false;
-                if (compression != COMP_JPEG_TTN2) { // JPEG access Raster
-                    if (checkContiguous) {
-                        if (sampleSize[0] == 8) { // 8-bit
-                            final ComponentSampleModel csm = (ComponentSampleModel) src
-                                    .getSampleModel();
-                            final int[] bankIndices = csm.getBankIndices();
-                            final int[] bandOffsets = csm.getBandOffsets();
-                            final int pixelStride = csm.getPixelStride();
-                            final int lineStride = csm.getScanlineStride();
-
-                            if (pixelStride != numBands
-                                    || lineStride != bytesPerRow) {
-                                useDataBuffer = false;
-                            } else {
-                                useDataBuffer = true;
-                                for (int i = 0; useDataBuffer && i < numBands; ++i) {
-                                    if (bankIndices[i] != 0
-                                            || bandOffsets[i] != i) {
-                                        useDataBuffer = false;
+            // Process tileHeight rows at a time
+            final int lastRow = minY + height;
+            final int lastCol = minX + width;
+            for (int row = minY; row < lastRow; row += tileHeight) {
+                final int rows = isTiled ? tileHeight : Math.min(tileHeight,
+                        lastRow - row);
+                final int size = rows * tileWidth * numBands;
+
+                for (int col = minX; col < lastCol; col += tileWidth) {
+                    // Grab the pixels
+                    final Raster src = im.getData(new Rectangle(col, row,
+                            tileWidth, rows));
+
+                    boolean useDataBuffer = false;
+                    if (compression != COMP_JPEG_TTN2) { // JPEG access Raster
+                        if (checkContiguous) {
+                            if (sampleSize[0] == 8) { // 8-bit
+                                final ComponentSampleModel csm = (ComponentSampleModel) src
+                                        .getSampleModel();
+                                final int[] bankIndices = csm.getBankIndices();
+                                final int[] bandOffsets = csm.getBandOffsets();
+                                final int pixelStride = csm.getPixelStride();
+                                final int lineStride = csm.getScanlineStride();
+
+                                if (pixelStride != numBands
+                                        || lineStride != bytesPerRow) {
+                                    useDataBuffer = false;
+                                } else {
+                                    useDataBuffer = true;
+                                    for (int i = 0; useDataBuffer && i < numBands; ++i) {
+                                        if (bankIndices[i] != 0
+                                                || bandOffsets[i] != i) {
+                                            useDataBuffer = false;
+                                        }
                                     }
                                 }
-                            }
-                        } else { // 1-bit
-                            final MultiPixelPackedSampleModel mpp = (MultiPixelPackedSampleModel) src
-                                    .getSampleModel();
-                            if (mpp.getNumBands() == 1
-                                    && mpp.getDataBitOffset() == 0
-                                    && mpp.getPixelBitStride() == 1) {
-                                useDataBuffer = true;
-                            }
-                        }
-                    }
-
-                    if (!useDataBuffer) {
-                        if (dataType == DataBuffer.TYPE_FLOAT) {
-                            fpixels = src.getPixels(col, row, tileWidth, rows,
-                                    fpixels);
-                        } else {
-                            pixels = src.getPixels(col, row, tileWidth, rows,
-                                    pixels);
-                        }
-                    }
-                }
-
-                int index;
-
-                int pixel = 0;
-                int k = 0;
-                switch (sampleSize[0]) {
-
-                case 1:
-
-                    if (useDataBuffer) {
-                        final byte[] btmp = ((DataBufferByte) src
-                                .getDataBuffer()).getData();
-                        final MultiPixelPackedSampleModel mpp = (MultiPixelPackedSampleModel) src
-                                .getSampleModel();
-                        final int lineStride = mpp.getScanlineStride();
-                        int inOffset = mpp.getOffset(
-                                col - src.getSampleModelTranslateX(),
-                                row - src.getSampleModelTranslateY());
-                        if (lineStride == (int) bytesPerRow) {
-                            System.arraycopy(btmp, inOffset, bpixels, 0,
-                                    (int) bytesPerRow * rows);
-                        } else {
-                            int outOffset = 0;
-                            for (int j = 0; j < rows; j++) {
-                                System.arraycopy(btmp, inOffset, bpixels,
-                                        outOffset, (int) bytesPerRow);
-                                inOffset += lineStride;
-                                outOffset += (int) bytesPerRow;
+                            } else { // 1-bit
+                                final MultiPixelPackedSampleModel mpp = (MultiPixelPackedSampleModel) src
+                                        .getSampleModel();
+                                if (mpp.getNumBands() == 1
+                                        && mpp.getDataBitOffset() == 0
+                                        && mpp.getPixelBitStride() == 1) {
+                                    useDataBuffer = true;
+                                }
                             }
                         }
-                    } else {
-                        index = 0;
 
-                        // For each of the rows in a strip
-                        for (int i = 0; i < rows; ++i) {
-
-                            // Write number of pixels exactly divisible by 8
-                            for (int j = 0; j < tileWidth / 8; j++) {
-
-                                pixel = pixels[index++] << 7
-                                        | pixels[index++] << 6
-                                        | pixels[index++] << 5
-                                        | pixels[index++] << 4
-                                        | pixels[index++] << 3
-                                        | pixels[index++] << 2
-                                        | pixels[index++] << 1
-                                        | pixels[index++];
-                                bpixels[k++] = (byte) pixel;
-                            }
-
-                            // Write the pixels remaining after division by 8
-                            if (tileWidth % 8 > 0) {
-                                pixel = 0;
-                                for (int j = 0; j < tileWidth % 8; j++) {
-                                    pixel |= pixels[index++] << 7 - j;
-                                }
-                                bpixels[k++] = (byte) pixel;
+                        if (!useDataBuffer) {
+                            if (dataType == DataBuffer.TYPE_FLOAT) {
+                                fpixels = src.getPixels(col, row, tileWidth, rows,
+                                        fpixels);
+                            } else {
+                                pixels = src.getPixels(col, row, tileWidth, rows,
+                                        pixels);
                             }
                         }
                     }
 
-                    if (compression == COMP_NONE) {
-                        this.output.write(bpixels, 0, rows
-                                * ((tileWidth + 7) / 8));
-                    } else if (compression == COMP_PACKBITS) {
-                        final int numCompressedBytes = compressPackBits(
-                                bpixels, rows, (int) bytesPerRow, compressBuf);
-                        tileByteCounts[tileNum++] = numCompressedBytes;
-                        this.output.write(compressBuf, 0, numCompressedBytes);
-                    } else if (compression == COMP_DEFLATE) {
-                        final int numCompressedBytes = deflate(deflater,
-                                bpixels, compressBuf);
-                        tileByteCounts[tileNum++] = numCompressedBytes;
-                        this.output.write(compressBuf, 0, numCompressedBytes);
-                    }
-
-                    break;
-
-                case 4:
+                    int index;
 
-                    index = 0;
+                    int pixel = 0;
+                    int k = 0;
+                    switch (sampleSize[0]) {
 
-                    // For each of the rows in a strip
-                    for (int i = 0; i < rows; ++i) {
+                    case 1:
 
-                        // Write the number of pixels that will fit into an
-                        // even number of nibbles.
-                        for (int j = 0; j < tileWidth / 2; j++) {
-                            pixel = pixels[index++] << 4 | pixels[index++];
-                            bpixels[k++] = (byte) pixel;
-                        }
-
-                        // Last pixel for odd-length lines
-                        if ((tileWidth & 1) == 1) {
-                            pixel = pixels[index++] << 4;
-                            bpixels[k++] = (byte) pixel;
-                        }
-                    }
-
-                    if (compression == COMP_NONE) {
-                        this.output.write(bpixels, 0, rows
-                                * ((tileWidth + 1) / 2));
-                    } else if (compression == COMP_PACKBITS) {
-                        final int numCompressedBytes = compressPackBits(
-                                bpixels, rows, (int) bytesPerRow, compressBuf);
-                        tileByteCounts[tileNum++] = numCompressedBytes;
-                        this.output.write(compressBuf, 0, numCompressedBytes);
-                    } else if (compression == COMP_DEFLATE) {
-                        final int numCompressedBytes = deflate(deflater,
-                                bpixels, compressBuf);
-                        tileByteCounts[tileNum++] = numCompressedBytes;
-                        this.output.write(compressBuf, 0, numCompressedBytes);
-                    }
-                    break;
-
-                case 8:
-
-                    if (compression != COMP_JPEG_TTN2) {
                         if (useDataBuffer) {
                             final byte[] btmp = ((DataBufferByte) src
                                     .getDataBuffer()).getData();
-                            final ComponentSampleModel csm = (ComponentSampleModel) src
+                            final MultiPixelPackedSampleModel mpp = (MultiPixelPackedSampleModel) src
                                     .getSampleModel();
-                            int inOffset = csm.getOffset(
-                                    col - src.getSampleModelTranslateX(), row
-                                            - src.getSampleModelTranslateY());
-                            final int lineStride = csm.getScanlineStride();
+                            final int lineStride = mpp.getScanlineStride();
+                            int inOffset = mpp.getOffset(
+                                    col - src.getSampleModelTranslateX(),
+                                    row - src.getSampleModelTranslateY());
                             if (lineStride == (int) bytesPerRow) {
                                 System.arraycopy(btmp, inOffset, bpixels, 0,
                                         (int) bytesPerRow * rows);
@@ -1001,88 +928,140 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
                                 }
                             }
                         } else {
-                            for (int i = 0; i < size; ++i) {
-                                bpixels[i] = (byte) pixels[i];
+                            index = 0;
+
+                            // For each of the rows in a strip
+                            for (int i = 0; i < rows; ++i) {
+
+                                // Write number of pixels exactly divisible by 8
+                                for (int j = 0; j < tileWidth / 8; j++) {
+
+                                    pixel = pixels[index++] << 7
+                                            | pixels[index++] << 6
+                                            | pixels[index++] << 5
+                                            | pixels[index++] << 4
+                                            | pixels[index++] << 3
+                                            | pixels[index++] << 2
+                                            | pixels[index++] << 1
+                                            | pixels[index++];
+                                    bpixels[k++] = (byte) pixel;
+                                }
+
+                                // Write the pixels remaining after division by 8
+                                if (tileWidth % 8 > 0) {
+                                    pixel = 0;
+                                    for (int j = 0; j < tileWidth % 8; j++) {
+                                        pixel |= pixels[index++] << 7 - j;
+                                    }
+                                    bpixels[k++] = (byte) pixel;
+                                }
                             }
                         }
-                    }
 
-                    if (compression == COMP_NONE) {
-                        this.output.write(bpixels, 0, size);
-                    } else if (compression == COMP_PACKBITS) {
-                        final int numCompressedBytes = compressPackBits(
-                                bpixels, rows, (int) bytesPerRow, compressBuf);
-                        tileByteCounts[tileNum++] = numCompressedBytes;
-                        this.output.write(compressBuf, 0, numCompressedBytes);
-                    } else if (compression == COMP_DEFLATE) {
-                        final int numCompressedBytes = deflate(deflater,
-                                bpixels, compressBuf);
-                        tileByteCounts[tileNum++] = numCompressedBytes;
-                        this.output.write(compressBuf, 0, numCompressedBytes);
-                    }
-                    break;
+                        tileWriter.write(bpixels, rows);
 
-                case 16:
+                        break;
 
-                    int ls = 0;
-                    for (int i = 0; i < size; ++i) {
-                        final int value = pixels[i];
-                        bpixels[ls++] = (byte) ((value & 0xff00) >> 8);
-                        bpixels[ls++] = (byte) (value & 0x00ff);
-                    }
+                    case 4:
 
-                    if (compression == COMP_NONE) {
-                        this.output.write(bpixels, 0, size * 2);
-                    } else if (compression == COMP_PACKBITS) {
-                        final int numCompressedBytes = compressPackBits(
-                                bpixels, rows, (int) bytesPerRow, compressBuf);
-                        tileByteCounts[tileNum++] = numCompressedBytes;
-                        this.output.write(compressBuf, 0, numCompressedBytes);
-                    } else if (compression == COMP_DEFLATE) {
-                        final int numCompressedBytes = deflate(deflater,
-                                bpixels, compressBuf);
-                        tileByteCounts[tileNum++] = numCompressedBytes;
-                        this.output.write(compressBuf, 0, numCompressedBytes);
-                    }
-                    break;
+                        index = 0;
+
+                        // For each of the rows in a strip
+                        for (int i = 0; i < rows; ++i) {
+
+                            // Write the number of pixels that will fit into an
+                            // even number of nibbles.
+                            for (int j = 0; j < tileWidth / 2; j++) {
+                                pixel = pixels[index++] << 4 | pixels[index++];
+                                bpixels[k++] = (byte) pixel;
+                            }
+
+                            // Last pixel for odd-length lines
+                            if ((tileWidth & 1) == 1) {
+                                pixel = pixels[index++] << 4;
+                                bpixels[k++] = (byte) pixel;
+                            }
+                        }
+
+                        tileWriter.write(bpixels, rows);
+                        break;
+
+                    case 8:
+
+                        if (compression != COMP_JPEG_TTN2) {
+                            if (useDataBuffer) {
+                                final byte[] btmp = ((DataBufferByte) src
+                                        .getDataBuffer()).getData();
+                                final ComponentSampleModel csm = (ComponentSampleModel) src
+                                        .getSampleModel();
+                                int inOffset = csm.getOffset(
+                                        col - src.getSampleModelTranslateX(), row
+                                                - src.getSampleModelTranslateY());
+                                final int lineStride = csm.getScanlineStride();
+                                if (lineStride == (int) bytesPerRow) {
+                                    System.arraycopy(btmp, inOffset, bpixels, 0,
+                                            (int) bytesPerRow * rows);
+                                } else {
+                                    int outOffset = 0;
+                                    for (int j = 0; j < rows; j++) {
+                                        System.arraycopy(btmp, inOffset, bpixels,
+                                                outOffset, (int) bytesPerRow);
+                                        inOffset += lineStride;
+                                        outOffset += (int) bytesPerRow;
+                                    }
+                                }
+                            } else {
+                                for (int i = 0; i < size; ++i) {
+                                    bpixels[i] = (byte) pixels[i];
+                                }
+                            }
+                        }
+
+                        tileWriter.write(bpixels, rows);
+                        break;
+
+                    case 16:
 
-                case 32:
-                    if (dataType == DataBuffer.TYPE_INT) {
-                        int li = 0;
+                        int ls = 0;
                         for (int i = 0; i < size; ++i) {
                             final int value = pixels[i];
-                            bpixels[li++] = (byte) ((value & 0xff000000) >>> 24);
-                            bpixels[li++] = (byte) ((value & 0x00ff0000) >>> 16);
-                            bpixels[li++] = (byte) ((value & 0x0000ff00) >>> 8);
-                            bpixels[li++] = (byte) (value & 0x000000ff);
+                            bpixels[ls++] = (byte) ((value & 0xff00) >> 8);
+                            bpixels[ls++] = (byte) (value & 0x00ff);
                         }
-                    } else { // DataBuffer.TYPE_FLOAT
-                        int lf = 0;
-                        for (int i = 0; i < size; ++i) {
-                            final int value = Float.floatToIntBits(fpixels[i]);
-                            bpixels[lf++] = (byte) ((value & 0xff000000) >>> 24);
-                            bpixels[lf++] = (byte) ((value & 0x00ff0000) >>> 16);
-                            bpixels[lf++] = (byte) ((value & 0x0000ff00) >>> 8);
-                            bpixels[lf++] = (byte) (value & 0x000000ff);
+
+                        tileWriter.write(bpixels, rows);
+                        break;
+
+                    case 32:
+                        if (dataType == DataBuffer.TYPE_INT) {
+                            int li = 0;
+                            for (int i = 0; i < size; ++i) {
+                                final int value = pixels[i];
+                                bpixels[li++] = (byte) ((value & 0xff000000) >>> 24);
+                                bpixels[li++] = (byte) ((value & 0x00ff0000) >>> 16);
+                                bpixels[li++] = (byte) ((value & 0x0000ff00) >>> 8);
+                                bpixels[li++] = (byte) (value & 0x000000ff);
+                            }
+                        } else { // DataBuffer.TYPE_FLOAT
+                            int lf = 0;
+                            for (int i = 0; i < size; ++i) {
+                                final int value = Float.floatToIntBits(fpixels[i]);
+                                bpixels[lf++] = (byte) ((value & 0xff000000) >>> 24);
+                                bpixels[lf++] = (byte) ((value & 0x00ff0000) >>> 16);
+                                bpixels[lf++] = (byte) ((value & 0x0000ff00) >>> 8);
+                                bpixels[lf++] = (byte) (value & 0x000000ff);
+                            }
                         }
-                    }
-                    if (compression == COMP_NONE) {
-                        this.output.write(bpixels, 0, size * 4);
-                    } else if (compression == COMP_PACKBITS) {
-                        final int numCompressedBytes = compressPackBits(
-                                bpixels, rows, (int) bytesPerRow, compressBuf);
-                        tileByteCounts[tileNum++] = numCompressedBytes;
-                        this.output.write(compressBuf, 0, numCompressedBytes);
-                    } else if (compression == COMP_DEFLATE) {
-                        final int numCompressedBytes = deflate(deflater,
-                                bpixels, compressBuf);
-                        tileByteCounts[tileNum++] = numCompressedBytes;
-                        this.output.write(compressBuf, 0, numCompressedBytes);
-                    }
-                    break;
+                        tileWriter.write(bpixels, rows);
+                        break;
 
+                    }
                 }
             }
+
+            tileWriter.finish();
+        } finally {
+            tileWriter.dispose();
         }
 
         if (compression == COMP_NONE) {
@@ -1550,13 +1529,275 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
         return outOffset;
     }
 
-    private static int deflate(final Deflater deflater, final byte[] inflated,
-            final byte[] deflated) {
-        deflater.setInput(inflated);
-        deflater.finish();
-        final int numCompressedBytes = deflater.deflate(deflated);
-        deflater.reset();
-        return numCompressedBytes;
+    /**
+     * Applies the horizontal differencing predictor to <code>rows</code> rows
+     * of 8-bit samples.
+     */
+    private static void differenceRows(final byte[] data, final int rows,
+            final int bytesPerRow, final int samplesPerPixel) {
+        for (int row = 0; row < rows; row++) {
+            final int rowStart = row * bytesPerRow;
+            // Right to left, so every sample is differenced with the
+            // original value of its left neighbour
+            for (int i = rowStart + bytesPerRow - 1; i >= rowStart
+                    + samplesPerPixel; i--) {
+                data[i] -= data[i - samplesPerPixel];
+            }
+        }
     }
 
+    /**
+     * Compresses strips or tiles. An instance keeps its buffers and
+     * compressor state between tiles and is used by one thread at a time.
+     */
+    private static final class TileCompressor {
+
+        private final int compression;
+        private final int predictor;
+        private final int bytesPerRow;
+        private final int samplesPerPixel;
+        private final boolean invert;
+        private Deflater deflater;
+        private TIFFLZWEncoder lzwEncoder;
+        private TIFFFaxEncoder faxEncoder;
+        private byte[] buffer = new byte[0];
+
+        private TileCompressor(final int compression, final int predictor,
+                final int deflateLevel, final int tileWidth,
+                final int bytesPerRow, final int samplesPerPixel,
+                final boolean invert) {
+            this.compression = compression;
+            this.predictor = predictor;
+            this.bytesPerRow = bytesPerRow;
+            this.samplesPerPixel = samplesPerPixel;
+            this.invert = invert;
+            if (compression == COMP_DEFLATE) {
+                this.deflater = new Deflater(deflateLevel);
+            } else if (compression == COMP_LZW) {
+                this.lzwEncoder = new TIFFLZWEncoder();
+            } else if (compression == COMP_FAX_G3_1D
+                    || compression == COMP_FAX_G3_2D
+                    || compression == COMP_FAX_G4_2D) {
+                this.faxEncoder = new TIFFFaxEncoder(compression, tileWidth);
+            }
+        }
+
+        /**
+         * Compresses the first <code>rows</code> rows of <code>data</code>,
+         * which the predictor or the inversion may modify, into
+         * <code>buffer</code>.
+         *
+         * @return the number of compressed bytes.
+         */
+        private int compress(final byte[] data, final int rows) {
+            final int length = rows * this.bytesPerRow;
+            final boolean differencing = this.predictor
+                    == TIFFEncodeParam.PREDICTOR_HORIZONTAL_DIFFERENCING;
+            if (differencing) {
+                differenceRows(data, rows, this.bytesPerRow,
+                        this.samplesPerPixel);
+            }
+            if (this.invert) {
+                for (int i = 0; i < length; i++) {
+                    data[i] = (byte) ~data[i];
+                }
+            }
+            switch (this.compression) {
+            case COMP_PACKBITS:
+                ensureCapacity(length + (this.bytesPerRow + 127) / 128 * rows);
+                return compressPackBits(data, rows, this.bytesPerRow,
+                        this.buffer);
+            case COMP_LZW:
+                ensureCapacity(TIFFLZWEncoder.getMaxEncodedLength(length));
+                return this.lzwEncoder.encode(data, 0, length, this.buffer);
+            case COMP_DEFLATE:
+                ensureCapacity(length + (length >> 12) + 64);
+                this.deflater.setInput(data, 0, length);
+                this.deflater.finish();
+                int count = 0;
+                while (!this.deflater.finished()) {
+                    if (count == this.buffer.length) {
+                        this.buffer = Arrays.copyOf(this.buffer,
+                                this.buffer.length * 2);
+                    }
+                    count += this.deflater.deflate(this.buffer, count,
+                            this.buffer.length - count);
+                }
+                this.deflater.reset();
+                return count;
+            case COMP_FAX_G3_1D:
+            case COMP_FAX_G3_2D:
+            case COMP_FAX_G4_2D:
+                final int faxCount = this.faxEncoder.encode(data, rows,
+                        this.bytesPerRow);
+                this.buffer = this.faxEncoder.getBuffer();
+                return faxCount;
+            default:
+                throw new IllegalStateException();
+            }
+        }
+
+        private void ensureCapacity(final int size) {
+            if (this.buffer.length < size) {
+                this.buffer = new byte[size];
+            }
+        }
+
+        private void dispose() {
+            if (this.deflater != null) {
+                this.deflater.end();
+            }
+        }
+    }
+
+    /**
+     * Writes the strips or tiles of one image in order, compressing them
+     * first if needed. With an executor set in the encoding parameters, up to
+     * two tiles per processor are compressed concurrently while the caller
+     * prepares the next ones.
+     */
+    private final class TileWriter {
+
+        private final int compression;
+        private final int predictor;
+        private final int deflateLevel;
+        private final int tileWidth;
+        private final int bytesPerRow;
+        private final int samplesPerPixel;
+        private final boolean invert;
+        private final long[] tileByteCounts;
+        private final Executor executor;
+        private final int maxPending;
+
+        /** Tiles submitted to the executor and not written yet, in order. */
+        private final Deque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+        /** Compressors not in use by a running task. */
+        private final Deque<TileCompressor> idle = new ArrayDeque<TileCompressor>();
+        /** Set by {@link #dispose()}, guarded by <code>idle</code>. */
+        private boolean disposed;
+        private int tileNum;
+
+        private TileWriter(final int compression, final int predictor,
+                final TIFFEncodeParam encodeParam, final int tileWidth,
+                final int bytesPerRow, final int samplesPerPixel,
+                final boolean invert, final long[] tileByteCounts) {
+            this.compression = compression;
+            this.predictor = predictor;
+            this.deflateLevel = encodeParam.getDeflateLevel();
+            this.tileWidth = tileWidth;
+            this.bytesPerRow = bytesPerRow;
+            this.samplesPerPixel = samplesPerPixel;
+            this.invert = invert;
+            this.tileByteCounts = tileByteCounts;
+            this.executor = compression == COMP_NONE ? null : encodeParam
+                    .getExecutor();
+            this.maxPending = 2 * Runtime.getRuntime().availableProcessors();
+        }
+
+        /**
+         * Writes the first <code>rows</code> rows of <code>data</code> as the
+         * next strip or tile. The array may be reused once this returns.
+         */
+        private void write(final byte[] data, final int rows)
+                throws IOException {
+            final int length = rows * this.bytesPerRow;
+            if (this.compression == COMP_NONE) {
+                TIFFImageEncoder.this.output.write(data, 0, length);
+            } else if (this.executor == null) {
+                final TileCompressor compressor = acquire();
+                final int count = compressor.compress(data, rows);
+                writeCompressed(compressor.buffer, count);
+                release(compressor);
+            } else {
+                if (this.pending.size() >= this.maxPending) {
+                    writeNextPending();
+                }
+                final byte[] copy = Arrays.copyOf(data, length);
+                final FutureTask<byte[]> task = new FutureTask<byte[]>(
+                        new Callable<byte[]>() {
+                            public byte[] call() {
+                                final TileCompressor compressor = acquire();
+                                try {
+                                    final int count = compressor.compress(
+                                            copy, rows);
+                                    return Arrays.copyOf(compressor.buffer,
+                                            count);
+                                } finally {
+                                    release(compressor);
+                                }
+                            }
+                        });
+                this.pending.add(task);
+                this.executor.execute(task);
+            }
+        }
+
+        /** Writes the tiles still being compressed. */
+        private void finish() throws IOException {
+            while (!this.pending.isEmpty()) {
+                writeNextPending();
+            }
+        }
+
+        /**
+         * Cancels the tiles not written yet, if encoding failed, and releases
+         * the compressors. Compressors still in use by a running task are
+         * released when the task returns them.
+         */
+        private void dispose() {
+            while (!this.pending.isEmpty()) {
+                this.pending.remove().cancel(false);
+            }
+            synchronized (this.idle) {
+                this.disposed = true;
+                for (final TileCompressor compressor : this.idle) {
+                    compressor.dispose();
+                }
+                this.idle.clear();
+            }
+        }
+
+        private void writeNextPending() throws IOException {
+            final byte[] compressed;
+            try {
+                compressed = this.pending.remove().get();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(e.getMessage());
+            } catch (final ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IOException(e.getCause());
+            }
+            writeCompressed(compressed, compressed.length);
+        }
+
+        private void writeCompressed(final byte[] compressed, final int count)
+                throws IOException {
+            this.tileByteCounts[this.tileNum++] = count;
+            TIFFImageEncoder.this.output.write(compressed, 0, count);
+        }
+
+        private TileCompressor acquire() {
+            synchronized (this.idle) {
+                if (!this.idle.isEmpty()) {
+                    return this.idle.pop();
+                }
+            }
+            return new TileCompressor(this.compression, this.predictor,
+                    this.deflateLevel, this.tileWidth, this.bytesPerRow,
+                    this.samplesPerPixel, this.invert);
+        }
+
+        private void release(final TileCompressor compressor) {
+            synchronized (this.idle) {
+                if (this.disposed) {
+                    compressor.dispose();
+                } else {
+                    this.idle.push(compressor);
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.codec.tiff;
+
+import java.util.Arrays;
+
+/**
+ * A class for performing LZW encoding as described in section 13 of the TIFF
+ * 6.0 specification: codes of 9 to 12 bits written most significant bit
+ * first, a ClearCode at the start of every strip or tile and whenever the
+ * string table is full, and the code width increased one code early. The
+ * output can be read by {@link TIFFLZWDecoder}.
+ *
+ * <p>
+ * An instance keeps its string table between calls and must not be used by
+ * several threads at the same time.
+ */
+public class TIFFLZWEncoder {
+
+    private static final int CLEAR_CODE = 256;
+    private static final int EOI_CODE = 257;
+    private static final int FIRST_CODE = 258;
+    private static final int MIN_BITS = 9;
+    private static final int MAX_BITS = 12;
+    /** The table is reset when it reaches this size, see libtiff. */
+    private static final int TABLE_FULL = (1 << MAX_BITS) - 2;
+
+    /** A prime comfortably larger than the number of codes. */
+    private static final int HASH_SIZE = 9001;
+
+    /** (byte << 12 | prefix code) of each hash slot, or -1 if free. */
+    private final int[] hashKeys = new int[HASH_SIZE];
+    private final short[] hashCodes = new short[HASH_SIZE];
+
+    private int nextCode;
+    private int codeBits;
+
+    private byte[] out;
+    private int outPos;
+    private int bitBuffer;
+    private int bitCount;
+
+    /**
+     * Returns an upper bound for the number of bytes {@link #encode} writes
+     * for <code>length</code> bytes of input.
+     */
+    public static int getMaxEncodedLength(final int length) {
+        // At most one code per input byte, plus the ClearCodes, the
+        // EndOfInformation code and the final partial byte.
+        final long codes = length + length / (TABLE_FULL - FIRST_CODE) + 4;
+        return (int) ((codes * MAX_BITS + 7) / 8);
+    }
+
+    /**
+     * Encodes <code>length</code> bytes of <code>data</code> starting at
+     * <code>offset</code> as one LZW strip or tile.
+     *
+     * @param data
+     *            the uncompressed data.
+     * @param offset
+     *            the offset of the first byte to encode.
+     * @param length
+     *            the number of bytes to encode.
+     * @param compData
+     *            array to return the compressed data in; it must hold at least
+     *            <code>getMaxEncodedLength(length)</code> bytes.
+     * @return the number of bytes written to <code>compData</code>.
+     */
+    public int encode(final byte[] data, final int offset, final int length,
+            final byte[] compData) {
+        this.out = compData;
+        this.outPos = 0;
+        this.bitBuffer = 0;
+        this.bitCount = 0;
+
+        resetTable();
+        writeCode(CLEAR_CODE);
+
+        if (length > 0) {
+            int prefix = data[offset] & 0xff;
+            final int end = offset + length;
+            for (int i = offset + 1; i < end; i++) {
+                final int c = data[i] & 0xff;
+                final int key = c << MAX_BITS | prefix;
+                int slot = key % HASH_SIZE;
+                while (this.hashKeys[slot] != -1
+                        && this.hashKeys[slot] != key) {
+                    if (++slot == HASH_SIZE) {
+                        slot = 0;
+                    }
+                }
+                if (this.hashKeys[slot] == key) {
+                    prefix = this.hashCodes[slot];
+                    continue;
+                }
+
+                writeCode(prefix);
+                prefix = c;
+                this.hashKeys[slot] = key;
+                this.hashCodes[slot] = (short) this.nextCode++;
+                if (this.nextCode == TABLE_FULL) {
+                    writeCode(CLEAR_CODE);
+                    resetTable();
+                } else {
+                    growCodeBits();
+                }
+            }
+
+            // The decoder adds a table entry for the last code as well, which
+            // may widen the EndOfInformation code.
+            writeCode(prefix);
+            if (++this.nextCode == TABLE_FULL) {
+                writeCode(CLEAR_CODE);
+                resetTable();
+            } else {
+                growCodeBits();
+            }
+        }
+        writeCode(EOI_CODE);
+
+        if (this.bitCount > 0) {
+            this.out[this.outPos++] = (byte) (this.bitBuffer << 8 - this.bitCount);
+        }
+        this.out = null;
+        return this.outPos;
+    }
+
+    private void resetTable() {
+        Arrays.fill(this.hashKeys, -1);
+        this.nextCode = FIRST_CODE;
+        this.codeBits = MIN_BITS;
+    }
+
+    private void growCodeBits() {
+        if (this.nextCode > (1 << this.codeBits) - 1
+                && this.codeBits < MAX_BITS) {
+            this.codeBits++;
+        }
+    }
+
+    private void writeCode(final int code) {
+        this.bitBuffer = this.bitBuffer << this.codeBits | code;
+        this.bitCount += this.codeBits;
+        while (this.bitCount >= 8) {
+            this.bitCount -= 8;
+            this.out[this.outPos++] = (byte) (this.bitBuffer >> this.bitCount);
+        }
+        this.bitBuffer &= (1 << this.bitCount) - 1;
+    }
+}
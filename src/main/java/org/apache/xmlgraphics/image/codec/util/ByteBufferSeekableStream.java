@@ -0,0 +1,193 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.codec.util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A subclass of <code>SeekableStream</code> that reads from a
+ * <code>ByteBuffer</code>, typically a memory-mapped file. Reads are served
+ * directly from the buffer, so no system calls or intermediate buffers are
+ * involved.
+ * <p>
+ * The stream operates on its own view of the buffer: its position is
+ * independent of the position of the buffer passed to the constructor and of
+ * any other stream created on the same buffer.
+ */
+public final class ByteBufferSeekableStream extends SeekableStream {
+
+    /** The view of the source data. */
+    private final ByteBuffer buffer;
+
+    /**
+     * Constructs a <code>SeekableStream</code> over the remaining bytes of a
+     * <code>ByteBuffer</code>. Position 0 of the stream corresponds to the
+     * current position of the buffer.
+     *
+     * @param buffer
+     *            the buffer holding the data
+     */
+    public ByteBufferSeekableStream(final ByteBuffer buffer) {
+        this.buffer = buffer.slice();
+    }
+
+    /**
+     * Returns the number of bytes in the stream.
+     *
+     * @return the length of the stream
+     */
+    public long length() {
+        return this.buffer.limit();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean canSeekBackwards() {
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getFilePointer() {
+        return this.buffer.position();
+    }
+
+    /**
+     * Sets the file pointer. Seeking past the end of the stream is allowed;
+     * subsequent reads then return EOF.
+     *
+     * @param pos
+     *            the new position
+     * @throws IOException
+     *             if <code>pos</code> is negative
+     */
+    @Override
+    public void seek(final long pos) throws IOException {
+        if (pos < 0) {
+            throw new IOException("Negative seek position: " + pos);
+        }
+        this.buffer.position((int) Math.min(pos, this.buffer.limit()));
+    }
+
+    /**
+     * Reads exactly <code>len</code> bytes starting at offset <code>pos</code>
+     * without moving the stream pointer. Unlike the other read methods this
+     * one may be called by several threads at the same time.
+     *
+     * @throws EOFException
+     *             if the stream ends before <code>len</code> bytes are read
+     */
+    @Override
+    public void readFully(final long pos, final byte[] b, final int off,
+            final int len) throws IOException {
+        slice(pos, len).get(b, off, len);
+    }
+
+    /**
+     * Returns a new stream over <code>len</code> bytes of this one, starting
+     * at offset <code>pos</code>. The data is shared, not copied, and the
+     * pointer of this stream is left unchanged. This method may be called by
+     * several threads at the same time.
+     *
+     * @param pos
+     *            the offset of the first byte of the new stream
+     * @param len
+     *            the length of the new stream
+     * @return a stream positioned at its first byte
+     * @throws EOFException
+     *             if this stream ends before <code>pos + len</code>
+     */
+    public ByteBufferSeekableStream range(final long pos, final int len)
+            throws IOException {
+        return new ByteBufferSeekableStream(slice(pos, len));
+    }
+
+    private ByteBuffer slice(final long pos, final int len) throws IOException {
+        if (pos < 0 || len < 0) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (pos + len > this.buffer.limit()) {
+            throw new EOFException();
+        }
+        // A duplicate has its own position and limit, so concurrent callers
+        // never see each other's bounds.
+        final ByteBuffer view = this.buffer.duplicate();
+        view.limit((int) pos + len);
+        view.position((int) pos);
+        return view;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int read() {
+        if (!this.buffer.hasRemaining()) {
+            return -1;
+        }
+        return this.buffer.get() & 0xff;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int read(final byte[] b, final int off, final int len) {
+        if (b == null) {
+            throw new NullPointerException();
+        }
+        if (off < 0 || len < 0 || off + len > b.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len == 0) {
+            return 0;
+        }
+        final int n = Math.min(len, this.buffer.remaining());
+        if (n == 0) {
+            return -1;
+        }
+        this.buffer.get(b, off, n);
+        return n;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int skipBytes(final int n) {
+        if (n <= 0) {
+            return 0;
+        }
+        final int skipped = Math.min(n, this.buffer.remaining());
+        this.buffer.position(this.buffer.position() + skipped);
+        return skipped;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long skip(final long n) {
+        if (n <= 0) {
+            return 0;
+        }
+        return skipBytes((int) Math.min(n, Integer.MAX_VALUE));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int available() {
+        return this.buffer.remaining();
+    }
+}
@@ -291,6 +291,46 @@ public abstract class SeekableStream extends InputStream implements DataInput {
      */
     public abstract void seek(final long pos) throws IOException;
 
+    /**
+     * Reads exactly <code>len</code> bytes starting at offset <code>pos</code>
+     * of this stream without moving the stream pointer, so that several
+     * threads may read from the same stream.
+     *
+     * <p>
+     * The default implementation seeks to <code>pos</code>, reads the data and
+     * restores the stream pointer while holding the lock of this object; it
+     * requires <code>canSeekBackwards()</code> to return <code>true</code>.
+     * Subclasses that can read without changing their state should override
+     * it.
+     *
+     * @param pos
+     *            the offset, measured in bytes from the beginning of the
+     *            stream, of the first byte to read.
+     * @param b
+     *            the buffer into which the data is read.
+     * @param off
+     *            the start offset of the data.
+     * @param len
+     *            the number of bytes to read.
+     * @exception EOFException
+     *                if this stream reaches the end before reading all the
+     *                bytes.
+     * @exception IOException
+     *                if an I/O error occurs.
+     */
+    public void readFully(final long pos, final byte[] b, final int off,
+            final int len) throws IOException {
+        synchronized (this) {
+            final long savedPos = getFilePointer();
+            seek(pos);
+            try {
+                readFully(b, off, len);
+            } finally {
+                seek(savedPos);
+            }
+        }
+    }
+
     // Methods from RandomAccessFile
 
     /**
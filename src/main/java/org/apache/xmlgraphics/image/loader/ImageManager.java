@@ -20,15 +20,24 @@
 package org.apache.xmlgraphics.image.loader;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
+import javax.imageio.stream.ImageInputStream;
 import javax.xml.transform.Source;
 
 import lombok.extern.slf4j.Slf4j;
 
 import org.apache.xmlgraphics.image.loader.cache.ImageCache;
+import org.apache.xmlgraphics.image.loader.metrics.ImageMetricsListener;
 import org.apache.xmlgraphics.image.loader.pipeline.ImageProviderPipeline;
 import org.apache.xmlgraphics.image.loader.pipeline.PipelineFactory;
 import org.apache.xmlgraphics.image.loader.spi.ImageImplRegistry;
@@ -49,10 +58,16 @@ public class ImageManager {
     private final ImageContext imageContext;
 
     /** The image cache for this instance */
-    private final ImageCache cache = new ImageCache();
+    private final ImageCache cache;
 
     private final PipelineFactory pipelineFactory = new PipelineFactory(this);
 
+    /** The executor for asynchronous requests (null: run in calling thread) */
+    private volatile Executor executor;
+
+    /** Receives timing events, may be null */
+    private volatile ImageMetricsListener metricsListener;
+
     /**
      * Main constructor.
      *
@@ -73,8 +88,26 @@ public class ImageManager {
      */
     public ImageManager(final ImageImplRegistry registry,
             final ImageContext context) {
+        this(registry, context, new ImageCache());
+    }
+
+    /**
+     * Constructor with a custom image cache, for example one using a
+     * {@link org.apache.xmlgraphics.image.loader.cache.BoundedImageCacheBackend}
+     * to limit the memory occupied by cached images.
+     *
+     * @param registry
+     *            the implementation registry with all plug-ins
+     * @param context
+     *            the session-independent context information
+     * @param cache
+     *            the image cache to use (may be null if no caching is desired)
+     */
+    public ImageManager(final ImageImplRegistry registry,
+            final ImageContext context, final ImageCache cache) {
         this.registry = registry;
         this.imageContext = context;
+        this.cache = cache;
     }
 
     /**
@@ -113,6 +146,51 @@ public class ImageManager {
         return this.pipelineFactory;
     }
 
+    /**
+     * Sets the Executor used by
+     * {@link #preloadAll(Collection, ImageSessionContext)} to preload images
+     * concurrently. If no Executor is set, the images are preloaded in the
+     * calling thread.
+     *
+     * @param executor
+     *            the executor (may be null)
+     */
+    public void setExecutor(final Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Returns the Executor used for asynchronous requests.
+     *
+     * @return the executor or null if requests are run in the calling thread
+     */
+    public Executor getExecutor() {
+        return this.executor;
+    }
+
+    /**
+     * Sets the listener receiving the timings of preloading, loading and
+     * converting images, for example an
+     * {@link org.apache.xmlgraphics.image.loader.metrics.ImageMetrics}
+     * instance. The listener is passed to all pipelines created after this
+     * call.
+     *
+     * @param listener
+     *            the listener (or null to disable metrics)
+     */
+    public void setMetricsListener(final ImageMetricsListener listener) {
+        this.metricsListener = listener;
+    }
+
+    /**
+     * Returns the listener receiving timing events.
+     *
+     * @return the listener or null if none is set
+     */
+    public ImageMetricsListener getMetricsListener() {
+        return this.metricsListener;
+    }
+
     /**
      * Returns an ImageInfo object containing its intrinsic size for a given
      * URI. The ImageInfo is retrieved from an image cache if it has been
@@ -140,6 +218,82 @@ public class ImageManager {
         }
     }
 
+    /**
+     * Asynchronous variant of
+     * {@link #getImageInfo(String, ImageSessionContext)}. The image is
+     * preloaded by the given Executor and the ImageInfo is registered with the
+     * image cache, so a subsequent call to the synchronous variant finds it
+     * there. If the preloading fails, {@link Future#get()} throws an
+     * {@link java.util.concurrent.ExecutionException} wrapping the
+     * ImageException or IOException.
+     *
+     * @param uri
+     *            the URI of the image
+     * @param session
+     *            the session context through which to resolve the URI if the
+     *            image is not in the cache
+     * @param executor
+     *            the executor to run the request on (null: the request is run
+     *            in the calling thread)
+     * @return a Future for the ImageInfo object
+     */
+    public Future<ImageInfo> getImageInfoAsync(final String uri,
+            final ImageSessionContext session, final Executor executor) {
+        return submit(new Callable<ImageInfo>() {
+            @Override
+            public ImageInfo call() throws ImageException, IOException {
+                return getImageInfo(uri, session);
+            }
+        }, executor);
+    }
+
+    /**
+     * Preloads a batch of images concurrently using the given Executor and
+     * fills the image cache with their ImageInfo objects. This allows, for
+     * example, a layout engine to request the intrinsic sizes of all images
+     * of a document up front so the I/O for the individual images overlaps.
+     * Duplicate URIs are only requested once.
+     *
+     * @param uris
+     *            the URIs of the images
+     * @param session
+     *            the session context through which to resolve the URIs
+     * @param executor
+     *            the executor to run the requests on (null: the requests are
+     *            run in the calling thread)
+     * @return a Map (in iteration order of the URIs) with a Future for the
+     *         ImageInfo object of each URI
+     */
+    public Map<String, Future<ImageInfo>> preloadAll(
+            final Collection<String> uris, final ImageSessionContext session,
+            final Executor executor) {
+        final Map<String, Future<ImageInfo>> futures = new LinkedHashMap<>();
+        for (final String uri : uris) {
+            if (!futures.containsKey(uri)) {
+                futures.put(uri, getImageInfoAsync(uri, session, executor));
+            }
+        }
+        return Collections.unmodifiableMap(futures);
+    }
+
+    /**
+     * Preloads a batch of images using the Executor set through
+     * {@link #setExecutor(Executor)}. See
+     * {@link #preloadAll(Collection, ImageSessionContext, Executor)} for more
+     * information.
+     *
+     * @param uris
+     *            the URIs of the images
+     * @param session
+     *            the session context through which to resolve the URIs
+     * @return a Map (in iteration order of the URIs) with a Future for the
+     *         ImageInfo object of each URI
+     */
+    public Map<String, Future<ImageInfo>> preloadAll(
+            final Collection<String> uris, final ImageSessionContext session) {
+        return preloadAll(uris, session, getExecutor());
+    }
+
     /**
      * Preloads an image, i.e. the format of the image is identified and some
      * basic information (MIME type, intrinsic size and possibly other values)
@@ -199,8 +353,33 @@ public class ImageManager {
      */
     public ImageInfo preloadImage(final String uri, final Source src)
             throws ImageException, IOException {
-        final Iterator<ImagePreloader> iter = this.registry
-                .getPreloaderIterator();
+        final ImageMetricsListener listener = this.metricsListener;
+        if (listener == null) {
+            return doPreloadImage(uri, src);
+        }
+        final long start = System.nanoTime();
+        ImageInfo info = null;
+        try {
+            info = doPreloadImage(uri, src);
+            return info;
+        } finally {
+            listener.imagePreloaded(uri, info, System.nanoTime() - start);
+        }
+    }
+
+    private ImageInfo doPreloadImage(final String uri, final Source src)
+            throws ImageException, IOException {
+        final Iterator<ImagePreloader> iter;
+        final ImageInputStream in = ImageUtil.getImageInputStream(src);
+        final int headerLength = this.registry.getPreloaderHeaderLength();
+        if (in != null && headerLength > 0) {
+            // Read the header once and skip the preloaders whose signatures
+            // don't match it
+            iter = this.registry.getPreloaderIterator(ImageUtil.readHeader(
+                    in, headerLength));
+        } else {
+            iter = this.registry.getPreloaderIterator();
+        }
         while (iter.hasNext()) {
             final ImagePreloader preloader = iter.next();
             final ImageInfo info = preloader.preloadImage(uri, src,
@@ -233,6 +412,29 @@ public class ImageManager {
         return newHints;
     }
 
+    private Map<Object, Object> prepareHints(final ImageInfo info,
+            final Map<Object, Object> hints,
+            final ImageSessionContext sessionContext) {
+        final Map<Object, Object> newHints = prepareHints(hints,
+                sessionContext);
+        if (Boolean.TRUE.equals(newHints
+                .get(ImageProcessingHints.ALLOW_SUBSAMPLING))
+                && !newHints
+                .containsKey(ImageProcessingHints.SOURCE_SUBSAMPLING)) {
+            final Object target = newHints
+                    .get(ImageProcessingHints.TARGET_RESOLUTION);
+            if (target instanceof Number) {
+                final int factor = ImageUtil.getSubsampling(info.getSize(),
+                        ((Number) target).doubleValue());
+                if (factor > 1) {
+                    newHints.put(ImageProcessingHints.SOURCE_SUBSAMPLING,
+                            factor);
+                }
+            }
+        }
+        return newHints;
+    }
+
     /**
      * Loads an image. The caller can indicate what kind of image flavor is
      * requested. When this method is called the code looks for a suitable
@@ -264,7 +466,8 @@ public class ImageManager {
     public Image getImage(final ImageInfo info, final ImageFlavor flavor,
             final Map<Object, Object> hints, final ImageSessionContext session)
                     throws ImageException, IOException {
-        final Map<Object, Object> preparedHints = prepareHints(hints, session);
+        final Map<Object, Object> preparedHints = prepareHints(info, hints,
+                session);
 
         Image img = null;
         final ImageProviderPipeline pipeline = getPipelineFactory()
@@ -313,7 +516,8 @@ public class ImageManager {
     public Image getImage(final ImageInfo info, final ImageFlavor[] flavors,
             final Map<Object, Object> hints, final ImageSessionContext session)
                     throws ImageException, IOException {
-        final Map<Object, Object> preparedHints = prepareHints(hints, session);
+        final Map<Object, Object> preparedHints = prepareHints(info, hints,
+                session);
 
         Image img = null;
         final ImageProviderPipeline[] candidates = getPipelineFactory()
@@ -386,6 +590,77 @@ public class ImageManager {
                 session);
     }
 
+    /**
+     * Asynchronous variant of
+     * {@link #getImage(ImageInfo, ImageFlavor[], Map, ImageSessionContext)}.
+     *
+     * @param info
+     *            the ImageInfo instance for the image (obtained by
+     *            {@link #getImageInfo(String, ImageSessionContext)})
+     * @param flavors
+     *            the requested image flavors (in preferred order).
+     * @param hints
+     *            a Map of hints to any of the background components or null
+     * @param session
+     *            the session context
+     * @param executor
+     *            the executor to run the request on (null: the request is run
+     *            in the calling thread)
+     * @return a Future for the fully loaded image
+     */
+    public Future<Image> getImageAsync(final ImageInfo info,
+            final ImageFlavor[] flavors, final Map<Object, Object> hints,
+            final ImageSessionContext session, final Executor executor) {
+        return submit(new Callable<Image>() {
+            @Override
+            public Image call() throws ImageException, IOException {
+                return getImage(info, flavors, hints, session);
+            }
+        }, executor);
+    }
+
+    /**
+     * Asynchronously preloads (if necessary) and loads an image in one step.
+     * See {@link #getImageInfo(String, ImageSessionContext)} and
+     * {@link #getImage(ImageInfo, ImageFlavor[], Map, ImageSessionContext)}
+     * for more information.
+     *
+     * @param uri
+     *            the URI of the image
+     * @param flavors
+     *            the requested image flavors (in preferred order).
+     * @param hints
+     *            a Map of hints to any of the background components or null
+     * @param session
+     *            the session context
+     * @param executor
+     *            the executor to run the request on (null: the request is run
+     *            in the calling thread)
+     * @return a Future for the fully loaded image
+     */
+    public Future<Image> getImageAsync(final String uri,
+            final ImageFlavor[] flavors, final Map<Object, Object> hints,
+            final ImageSessionContext session, final Executor executor) {
+        return submit(new Callable<Image>() {
+            @Override
+            public Image call() throws ImageException, IOException {
+                final ImageInfo info = getImageInfo(uri, session);
+                return getImage(info, flavors, hints, session);
+            }
+        }, executor);
+    }
+
+    private static <T> Future<T> submit(final Callable<T> callable,
+            final Executor executor) {
+        final FutureTask<T> task = new FutureTask<>(callable);
+        if (executor != null) {
+            executor.execute(task);
+        } else {
+            task.run();
+        }
+        return task;
+    }
+
     /**
      * Converts an image. The caller can indicate what kind of image flavors are
      * requested. When this method is called the code looks for a suitable
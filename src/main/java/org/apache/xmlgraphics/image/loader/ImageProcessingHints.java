@@ -38,6 +38,21 @@ public interface ImageProcessingHints {
      */
     String TARGET_RESOLUTION = "TARGET_RESOLUTION"; // Value: Number (unit dpi)
 
+    /**
+     * Used to ask image loaders to decode only every n-th pixel of every n-th
+     * row of the image. Loaders that support it return a correspondingly
+     * smaller image with the same intrinsic size; others ignore the hint.
+     * Images loaded with a factor greater than 1 are not cached.
+     */
+    String SOURCE_SUBSAMPLING = "SOURCE_SUBSAMPLING"; // Value: Integer
+    /**
+     * Used to allow the {@link ImageManager} to derive
+     * {@link #SOURCE_SUBSAMPLING} from the image's resolution and
+     * {@link #TARGET_RESOLUTION} when it is not given explicitly. This assumes
+     * the image is not rendered larger than its intrinsic size.
+     */
+    String ALLOW_SUBSAMPLING = "ALLOW_SUBSAMPLING"; // Value: Boolean
+
     /**
      * Used to pass in the {@link ImageSessionContext}. A consumer can use this
      * to load embedded images over the same mechanism as the main image (ex.
@@ -94,4 +109,13 @@ public interface ImageProcessingHints {
      */
     String TRANSPARENCY_INTENT_IGNORE = "ignore";
 
+    /**
+     * Used to tell a PNG producer how to trade file size for encoding speed.
+     * Value: String, see
+     * {@link org.apache.xmlgraphics.image.writer.ImageWriterParams#PNG_ENCODE_PROFILE_DEFAULT}
+     * and
+     * {@link org.apache.xmlgraphics.image.writer.ImageWriterParams#PNG_ENCODE_PROFILE_SPEED}.
+     */
+    String PNG_ENCODE_PROFILE = "PNG_ENCODE_PROFILE";
+
 }
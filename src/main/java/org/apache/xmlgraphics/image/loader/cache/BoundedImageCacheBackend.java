@@ -0,0 +1,437 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.loader.cache;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.apache.xmlgraphics.image.loader.Image;
+
+/**
+ * Image cache backend with a fixed memory budget. Every entry is weighed by an
+ * {@link ImageWeigher} and entries are evicted as soon as the accumulated
+ * weight exceeds the configured maximum, so the cached working set stays at a
+ * predictable size independent of the garbage collector's behaviour.
+ * <p>
+ * Two eviction orders are available:
+ * <ul>
+ * <li>{@link EvictionOrder#LRU}: the least recently used entry is evicted
+ * first.</li>
+ * <li>{@link EvictionOrder#W_TINY_LFU}: new entries enter a small LRU window.
+ * When they leave the window they are only admitted into the main space if
+ * they have been requested more often recently than the entry they would
+ * replace. The main space is a segmented LRU (probation/protected). This
+ * protects frequently used images from being flushed by a burst of images
+ * that are used only once.</li>
+ * </ul>
+ * Entries heavier than the whole budget are not cached at all. This class is
+ * thread-safe.
+ */
+@Slf4j
+public class BoundedImageCacheBackend implements ImageCacheBackend {
+
+    /** The order in which entries are evicted. */
+    public enum EvictionOrder {
+        /** Least recently used */
+        LRU,
+        /** Window TinyLFU (frequency-based admission with an LRU window) */
+        W_TINY_LFU
+    }
+
+    /** Share of the budget reserved for the admission window (W-TinyLFU) */
+    private static final double WINDOW_RATIO = 0.01;
+    /** Share of the main space reserved for the protected segment */
+    private static final double PROTECTED_RATIO = 0.8;
+    /** Assumed average entry weight used to size the frequency sketch */
+    private static final long TYPICAL_ENTRY_WEIGHT = 256 * 1024;
+
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+
+    private final long maximumWeight;
+    private final long windowMaximum;
+    private final long protectedMaximum;
+    private final EvictionOrder evictionOrder;
+    private final ImageWeigher weigher;
+    private final FrequencySketch sketch;
+
+    private final Map<Object, Entry> data = new HashMap<>();
+    private final Segment[] segments = { new Segment(), new Segment(),
+            new Segment() };
+    private long evictionCount;
+    private ImageCacheBackendListener listener;
+
+    /**
+     * Creates a new cache backend with LRU eviction and the default weigher.
+     *
+     * @param maximumWeight
+     *            the maximum accumulated weight (in bytes)
+     */
+    public BoundedImageCacheBackend(final long maximumWeight) {
+        this(maximumWeight, EvictionOrder.LRU);
+    }
+
+    /**
+     * Creates a new cache backend with the default weigher.
+     *
+     * @param maximumWeight
+     *            the maximum accumulated weight (in bytes)
+     * @param evictionOrder
+     *            the eviction order
+     */
+    public BoundedImageCacheBackend(final long maximumWeight,
+            final EvictionOrder evictionOrder) {
+        this(maximumWeight, evictionOrder, new DefaultImageWeigher());
+    }
+
+    /**
+     * Creates a new cache backend.
+     *
+     * @param maximumWeight
+     *            the maximum accumulated weight (in bytes)
+     * @param evictionOrder
+     *            the eviction order
+     * @param weigher
+     *            the weigher estimating the memory occupied by each image
+     */
+    public BoundedImageCacheBackend(final long maximumWeight,
+            final EvictionOrder evictionOrder, final ImageWeigher weigher) {
+        if (maximumWeight <= 0) {
+            throw new IllegalArgumentException(
+                    "maximumWeight must be greater than 0");
+        }
+        if (evictionOrder == null) {
+            throw new NullPointerException("evictionOrder must not be null");
+        }
+        if (weigher == null) {
+            throw new NullPointerException("weigher must not be null");
+        }
+        this.maximumWeight = maximumWeight;
+        this.evictionOrder = evictionOrder;
+        this.weigher = weigher;
+        if (evictionOrder == EvictionOrder.W_TINY_LFU) {
+            this.windowMaximum = Math.max(1,
+                    (long) (maximumWeight * WINDOW_RATIO));
+            final long mainMaximum = maximumWeight - this.windowMaximum;
+            this.protectedMaximum = (long) (mainMaximum * PROTECTED_RATIO);
+            this.sketch = new FrequencySketch((int) Math.min(1 << 16,
+                    maximumWeight / TYPICAL_ENTRY_WEIGHT));
+        } else {
+            this.windowMaximum = maximumWeight;
+            this.protectedMaximum = 0;
+            this.sketch = null;
+        }
+    }
+
+    /**
+     * Returns the maximum accumulated weight of this cache.
+     *
+     * @return the maximum weight (in bytes)
+     */
+    public long getMaximumWeight() {
+        return this.maximumWeight;
+    }
+
+    /**
+     * Returns the eviction order of this cache.
+     *
+     * @return the eviction order
+     */
+    public EvictionOrder getEvictionOrder() {
+        return this.evictionOrder;
+    }
+
+    /**
+     * Returns the accumulated weight of all entries currently in the cache.
+     *
+     * @return the accumulated weight (in bytes)
+     */
+    public synchronized long getWeightedSize() {
+        long total = 0;
+        for (final Segment segment : this.segments) {
+            total += segment.weight;
+        }
+        return total;
+    }
+
+    /**
+     * Returns the number of entries currently in the cache.
+     *
+     * @return the number of entries
+     */
+    public synchronized int size() {
+        return this.data.size();
+    }
+
+    /**
+     * Returns the number of entries evicted (or rejected) so far because of
+     * the size limit.
+     *
+     * @return the number of evictions
+     */
+    public synchronized long getEvictionCount() {
+        return this.evictionCount;
+    }
+
+    /**
+     * Sets a listener which is notified of all entries added to and removed
+     * from this cache.
+     *
+     * @param listener
+     *            the listener (or null to remove the current listener)
+     */
+    public synchronized void setListener(
+            final ImageCacheBackendListener listener) {
+        this.listener = listener;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized Object get(final Object key) {
+        recordAccess(key);
+        final Entry entry = this.data.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.segment == PROBATION) {
+            move(entry, PROTECTED);
+            demoteProtected();
+        } else {
+            this.segments[entry.segment].touch(entry);
+        }
+        return entry.value;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void put(final Object key, final Object value) {
+        final long weight = weigh(value);
+        synchronized (this) {
+            recordAccess(key);
+            final Entry old = this.data.remove(key);
+            if (old != null) {
+                this.segments[old.segment].remove(old);
+                notifyRemoved(old, false);
+            }
+            if (weight > this.maximumWeight) {
+                log.debug("Entry {} ({} bytes) exceeds the cache size of {}"
+                        + " bytes and is not cached", key, weight,
+                        this.maximumWeight);
+                this.evictionCount++;
+                if (this.listener != null) {
+                    this.listener.entryRejected(key, value, weight);
+                }
+                return;
+            }
+            final Entry entry = new Entry(key, value, weight);
+            this.data.put(key, entry);
+            this.segments[WINDOW].add(entry, WINDOW);
+            if (this.listener != null) {
+                this.listener.entryAdded(key, value, weight);
+            }
+            evict();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized Object remove(final Object key) {
+        final Entry entry = this.data.remove(key);
+        if (entry == null) {
+            return null;
+        }
+        this.segments[entry.segment].remove(entry);
+        notifyRemoved(entry, false);
+        return entry.value;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void clear() {
+        if (this.listener != null) {
+            for (final Entry entry : this.data.values()) {
+                notifyRemoved(entry, false);
+            }
+        }
+        this.data.clear();
+        for (final Segment segment : this.segments) {
+            segment.clear();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void doHouseKeeping() {
+        // nop, the cache is kept within bounds on every modification
+    }
+
+    private long weigh(final Object value) {
+        if (value instanceof Image) {
+            return this.weigher.weigh((Image) value);
+        }
+        return DefaultImageWeigher.ENTRY_OVERHEAD;
+    }
+
+    private void recordAccess(final Object key) {
+        if (this.sketch != null) {
+            this.sketch.increment(key);
+        }
+    }
+
+    private void evict() {
+        if (this.sketch != null) {
+            // Entries leaving the window compete for admission into the main
+            // space. The most recent entry always stays in the window.
+            final Segment window = this.segments[WINDOW];
+            while (window.weight > this.windowMaximum && window.size() > 1) {
+                final Entry candidate = window.first();
+                window.remove(candidate);
+                if (admit(candidate)) {
+                    this.segments[PROBATION].add(candidate, PROBATION);
+                } else {
+                    discard(candidate);
+                }
+            }
+        }
+        while (getWeightedSize() > this.maximumWeight) {
+            Entry victim = this.segments[PROBATION].first();
+            if (victim == null) {
+                victim = this.segments[PROTECTED].first();
+            }
+            if (victim == null) {
+                victim = this.segments[WINDOW].first();
+            }
+            this.segments[victim.segment].remove(victim);
+            discard(victim);
+        }
+    }
+
+    /**
+     * Decides whether an entry leaving the window is admitted into the main
+     * space. Victims from the main space are evicted as long as they have been
+     * used less frequently than the candidate and the candidate does not fit.
+     */
+    private boolean admit(final Entry candidate) {
+        final int candidateFrequency = this.sketch.frequency(candidate.key);
+        final long mainMaximum = this.maximumWeight
+                - this.segments[WINDOW].weight;
+        while (this.segments[PROBATION].weight
+                + this.segments[PROTECTED].weight
+                + candidate.weight > mainMaximum) {
+            Entry victim = this.segments[PROBATION].first();
+            if (victim == null) {
+                victim = this.segments[PROTECTED].first();
+            }
+            if (victim == null || candidateFrequency <= this.sketch
+                    .frequency(victim.key)) {
+                return false;
+            }
+            this.segments[victim.segment].remove(victim);
+            discard(victim);
+        }
+        return true;
+    }
+
+    private void demoteProtected() {
+        final Segment protectedSegment = this.segments[PROTECTED];
+        while (protectedSegment.weight > this.protectedMaximum
+                && protectedSegment.size() > 1) {
+            move(protectedSegment.first(), PROBATION);
+        }
+    }
+
+    private void move(final Entry entry, final int target) {
+        this.segments[entry.segment].remove(entry);
+        this.segments[target].add(entry, target);
+    }
+
+    private void discard(final Entry entry) {
+        this.data.remove(entry.key);
+        this.evictionCount++;
+        log.trace("Evicted from image cache: {}", entry.key);
+        notifyRemoved(entry, true);
+    }
+
+    private void notifyRemoved(final Entry entry, final boolean evicted) {
+        if (this.listener != null) {
+            this.listener.entryRemoved(entry.key, entry.value, entry.weight,
+                    evicted);
+        }
+    }
+
+    /** A cache entry. */
+    private static class Entry {
+
+        private final Object key;
+        private final Object value;
+        private final long weight;
+        private int segment;
+
+        Entry(final Object key, final Object value, final long weight) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    /** An LRU-ordered group of entries with their accumulated weight. */
+    private static class Segment {
+
+        private final LinkedHashMap<Object, Entry> entries = new LinkedHashMap<>();
+        private long weight;
+
+        void add(final Entry entry, final int id) {
+            entry.segment = id;
+            this.entries.put(entry.key, entry);
+            this.weight += entry.weight;
+        }
+
+        void remove(final Entry entry) {
+            if (this.entries.remove(entry.key) != null) {
+                this.weight -= entry.weight;
+            }
+        }
+
+        void touch(final Entry entry) {
+            this.entries.remove(entry.key);
+            this.entries.put(entry.key, entry);
+        }
+
+        Entry first() {
+            final Iterator<Entry> iter = this.entries.values().iterator();
+            return iter.hasNext() ? iter.next() : null;
+        }
+
+        int size() {
+            return this.entries.size();
+        }
+
+        void clear() {
+            this.entries.clear();
+            this.weight = 0;
+        }
+    }
+
+}
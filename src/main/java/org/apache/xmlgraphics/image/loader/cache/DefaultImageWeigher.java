@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.loader.cache;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+
+import org.apache.xmlgraphics.image.loader.Image;
+import org.apache.xmlgraphics.image.loader.impl.ImageRawStream;
+import org.apache.xmlgraphics.image.loader.impl.ImageRendered;
+
+/**
+ * Default {@link ImageWeigher} implementation. Bitmaps are weighed by the size
+ * of their raster data, raw images by the size of their in-memory stream data.
+ * Images whose memory footprint cannot be determined (like vector graphics)
+ * are given a fixed weight.
+ */
+public class DefaultImageWeigher implements ImageWeigher {
+
+    /** Fixed per-entry overhead (ImageInfo, keys, wrapper objects) */
+    public static final long ENTRY_OVERHEAD = 1024;
+
+    /** Weight for images whose size cannot be estimated */
+    public static final long DEFAULT_WEIGHT = 64 * 1024;
+
+    /** {@inheritDoc} */
+    @Override
+    public long weigh(final Image img) {
+        if (img instanceof ImageRendered) {
+            return ENTRY_OVERHEAD
+                    + weigh(((ImageRendered) img).getRenderedImage());
+        } else if (img instanceof ImageRawStream) {
+            final ImageRawStream.InputStreamFactory factory = ((ImageRawStream) img)
+                    .getInputStreamFactory();
+            if (factory instanceof ImageRawStream.ByteArrayStreamFactory) {
+                return ENTRY_OVERHEAD
+                        + ((ImageRawStream.ByteArrayStreamFactory) factory)
+                                .getByteCount();
+            }
+            // Stream data is not held in memory
+            return ENTRY_OVERHEAD;
+        }
+        return DEFAULT_WEIGHT;
+    }
+
+    /**
+     * Estimates the memory occupied by the pixels of a RenderedImage.
+     *
+     * @param red
+     *            the RenderedImage
+     * @return the estimated size in bytes
+     */
+    protected long weigh(final RenderedImage red) {
+        if (red instanceof BufferedImage) {
+            final DataBuffer buffer = ((BufferedImage) red).getRaster()
+                    .getDataBuffer();
+            return (long) buffer.getSize() * buffer.getNumBanks()
+                    * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+        }
+        final SampleModel sm = red.getSampleModel();
+        long bitsPerPixel = 0;
+        final int[] sampleSizes = sm.getSampleSize();
+        for (final int sampleSize : sampleSizes) {
+            bitsPerPixel += sampleSize;
+        }
+        return (long) red.getWidth() * red.getHeight() * bitsPerPixel / 8;
+    }
+
+}
@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.loader.cache;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import javax.imageio.stream.ImageInputStream;
+import javax.xml.transform.Source;
+
+import org.apache.xmlgraphics.image.loader.util.ImageUtil;
+
+/**
+ * Validator based on a hash over the image content. This works for any URI
+ * scheme but reads the complete image, so it is only worthwhile if reading the
+ * image is much cheaper than preloading or decoding it (for example, for
+ * formats with expensive preloaders).
+ */
+public class DigestImageCacheValidator implements ImageCacheValidator {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final String algorithm;
+
+    /**
+     * Creates a validator using SHA-1.
+     */
+    public DigestImageCacheValidator() {
+        this("SHA-1");
+    }
+
+    /**
+     * Creates a validator using the given digest algorithm.
+     *
+     * @param algorithm
+     *            the name of the {@link MessageDigest} algorithm
+     */
+    public DigestImageCacheValidator(final String algorithm) {
+        this.algorithm = algorithm;
+        createDigest(); // Fail early if the algorithm is not available
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String getValidator(final String uri, final Source src)
+            throws IOException {
+        final ImageInputStream in = ImageUtil.getImageInputStream(src);
+        if (in == null) {
+            return null;
+        }
+        final MessageDigest digest = createDigest();
+        final byte[] buf = new byte[BUFFER_SIZE];
+        in.mark();
+        try {
+            int len;
+            while ((len = in.read(buf)) >= 0) {
+                digest.update(buf, 0, len);
+            }
+        } finally {
+            in.reset();
+        }
+        return this.algorithm + ":" + PersistentImageCache.toHex(digest.digest());
+    }
+
+    private MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance(this.algorithm);
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException("Digest algorithm not available: "
+                    + this.algorithm, e);
+        }
+    }
+
+}
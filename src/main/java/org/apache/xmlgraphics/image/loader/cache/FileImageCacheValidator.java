@@ -0,0 +1,58 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.loader.cache;
+
+import java.io.File;
+import java.net.URI;
+import java.net.URISyntaxException;
+
+import javax.xml.transform.Source;
+
+/**
+ * Validator based on the modification time and the length of a local file.
+ * Only images that are resolved to "file:" URLs can be validated.
+ */
+public class FileImageCacheValidator implements ImageCacheValidator {
+
+    /** {@inheritDoc} */
+    @Override
+    public String getValidator(final String uri, final Source src) {
+        final File file = toFile(src.getSystemId());
+        if (file == null || !file.isFile()) {
+            return null;
+        }
+        return file.lastModified() + ":" + file.length();
+    }
+
+    private static File toFile(final String systemId) {
+        if (systemId == null || !systemId.startsWith("file:")) {
+            return null;
+        }
+        try {
+            return new File(new URI(systemId));
+        } catch (final URISyntaxException e) {
+            return null;
+        } catch (final IllegalArgumentException e) {
+            // URI has an authority or query component
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.loader.cache;
+
+/**
+ * A small count-min sketch estimating how often a key has been accessed
+ * recently. It is the frequency filter of the W-TinyLFU eviction order of
+ * {@link BoundedImageCacheBackend}. Counters saturate at 15 and are halved
+ * periodically so old popularity fades away. This class is not thread-safe.
+ */
+final class FrequencySketch {
+
+    private static final int DEPTH = 4;
+    private static final int MAX_COUNT = 15;
+    private static final int[] SEEDS = { 0x97cb3127, 0xb7a2ed87, 0x4d2c8f2b,
+            0x8d6c2e3d };
+
+    private final byte[] table;
+    private final int width;
+    private final int sampleSize;
+    private int additions;
+
+    /**
+     * Creates a new sketch.
+     *
+     * @param expectedEntries
+     *            the number of entries the sketch should be able to tell
+     *            apart reasonably well
+     */
+    FrequencySketch(final int expectedEntries) {
+        int w = 16;
+        while (w < expectedEntries && w < 1 << 24) {
+            w <<= 1;
+        }
+        this.width = w;
+        this.table = new byte[this.width * DEPTH];
+        this.sampleSize = 10 * this.width;
+    }
+
+    /**
+     * Returns the estimated access frequency of a key.
+     *
+     * @param key
+     *            the key
+     * @return the estimated frequency (0 to 15)
+     */
+    int frequency(final Object key) {
+        final int hash = spread(key.hashCode());
+        int min = MAX_COUNT;
+        for (int i = 0; i < DEPTH; i++) {
+            min = Math.min(min, this.table[indexOf(hash, i)]);
+        }
+        return min;
+    }
+
+    /**
+     * Records an access to a key.
+     *
+     * @param key
+     *            the key
+     */
+    void increment(final Object key) {
+        final int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int i = 0; i < DEPTH; i++) {
+            final int index = indexOf(hash, i);
+            if (this.table[index] < MAX_COUNT) {
+                this.table[index]++;
+                added = true;
+            }
+        }
+        if (added && ++this.additions >= this.sampleSize) {
+            reset();
+        }
+    }
+
+    /** Halves all counters (aging). */
+    private void reset() {
+        for (int i = 0; i < this.table.length; i++) {
+            this.table[i] = (byte) (this.table[i] >>> 1);
+        }
+        this.additions /= 2;
+    }
+
+    private int indexOf(final int hash, final int row) {
+        int h = hash * SEEDS[row];
+        h ^= h >>> 16;
+        return row * this.width + (h & (this.width - 1));
+    }
+
+    private static int spread(final int hashCode) {
+        int h = hashCode * 0x9e3779b9;
+        h ^= h >>> 15;
+        return h;
+    }
+
+}
@@ -26,6 +26,12 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import javax.xml.transform.Source;
 
@@ -48,6 +54,14 @@ import org.apache.xmlgraphics.image.loader.util.SoftMapCache;
  * are discarded after 60 seconds (which causes a retry next time the same URI
  * is requested). This allows to counteract performance loss when accessing
  * invalid or temporarily unavailable images over slow connections.
+ * <p>
+ * The Image instances are held by an {@link ImageCacheBackend}. By default,
+ * they are only referenced softly and therefore kept until the garbage
+ * collector runs short on memory. Use a {@link BoundedImageCacheBackend} to
+ * limit the memory occupied by cached images to a fixed budget.
+ * <p>
+ * Optionally, a {@link PersistentImageCache} can be attached as a second
+ * tier which keeps ImageInfo objects on disk across JVM restarts.
  */
 public class ImageCache {
 
@@ -58,7 +72,9 @@ public class ImageCache {
 
     // Actual image cache
     private final SoftMapCache imageInfos = new SoftMapCache(true);
-    private final SoftMapCache images = new SoftMapCache(true);
+    private final ConcurrentMap<String, FutureTask<ImageInfo>> pendingImageInfos = new ConcurrentHashMap<>();
+    private final ImageCacheBackend images;
+    private volatile PersistentImageCache persistentCache;
 
     private ImageCacheListener cacheListener;
     private final TimeStampProvider timeStampProvider;
@@ -68,7 +84,18 @@ public class ImageCache {
      * Default constructor with default settings.
      */
     public ImageCache() {
-        this(new TimeStampProvider(), new DefaultExpirationPolicy());
+        this(new SoftImageCacheBackend());
+    }
+
+    /**
+     * Constructor with a custom storage backend for the Image instances.
+     * 
+     * @param imageBackend
+     *            the backend holding the Image instances
+     */
+    public ImageCache(final ImageCacheBackend imageBackend) {
+        this(new TimeStampProvider(), new DefaultExpirationPolicy(),
+                imageBackend);
     }
 
     /**
@@ -81,11 +108,61 @@ public class ImageCache {
      */
     public ImageCache(final TimeStampProvider timeStampProvider,
             final ExpirationPolicy invalidURIExpirationPolicy) {
+        this(timeStampProvider, invalidURIExpirationPolicy,
+                new SoftImageCacheBackend());
+    }
+
+    /**
+     * Constructor for customized behaviour and testing.
+     * 
+     * @param timeStampProvider
+     *            the time stamp provider to use
+     * @param invalidURIExpirationPolicy
+     *            the expiration policy for invalid URIs
+     * @param imageBackend
+     *            the backend holding the Image instances
+     */
+    public ImageCache(final TimeStampProvider timeStampProvider,
+            final ExpirationPolicy invalidURIExpirationPolicy,
+            final ImageCacheBackend imageBackend) {
+        if (imageBackend == null) {
+            throw new NullPointerException("imageBackend must not be null");
+        }
         this.timeStampProvider = timeStampProvider;
         this.invalidURIExpirationPolicy = invalidURIExpirationPolicy;
+        this.images = imageBackend;
         this.lastHouseKeeping = this.timeStampProvider.getTimeStamp();
     }
 
+    /**
+     * Returns the backend holding the Image instances.
+     * 
+     * @return the image backend
+     */
+    public ImageCacheBackend getImageBackend() {
+        return this.images;
+    }
+
+    /**
+     * Sets the persistent second-level cache tier consulted before an image is
+     * preloaded. Preloaded ImageInfo objects are written to it.
+     * 
+     * @param persistentCache
+     *            the persistent cache (or null to disable the tier)
+     */
+    public void setPersistentCache(final PersistentImageCache persistentCache) {
+        this.persistentCache = persistentCache;
+    }
+
+    /**
+     * Returns the persistent second-level cache tier.
+     * 
+     * @return the persistent cache or null if there is none
+     */
+    public PersistentImageCache getPersistentCache() {
+        return this.persistentCache;
+    }
+
     /**
      * Sets an ImageCacheListener instance so the events in the image cache can
      * be observed.
@@ -115,39 +192,105 @@ public class ImageCache {
     public ImageInfo needImageInfo(final String uri,
             final ImageSessionContext session, final ImageManager manager)
             throws ImageException, IOException {
-        // Fetch unique version of the URI and use it for synchronization so we
-        // have some sort of
-        // "row-level" locking instead of "table-level" locking (to use a
-        // database analogy).
-        // The fine locking strategy is necessary since preloading an image is a
-        // potentially long
-        // operation.
         if (isInvalidURI(uri)) {
             throw new FileNotFoundException("Image not found: " + uri);
         }
-        final String lockURI = uri.intern();
-        synchronized (lockURI) {
-            ImageInfo info = getImageInfo(uri);
+        final ImageInfo info = getImageInfo(uri);
+        if (info != null) {
+            return info;
+        }
+        // Preloading an image is a potentially long operation. Only the first
+        // caller for a URI preloads the image, concurrent callers for the same
+        // URI wait for its result and callers for other URIs are not blocked
+        // at all.
+        final FutureTask<ImageInfo> task = new FutureTask<>(
+                new Callable<ImageInfo>() {
+                    @Override
+                    public ImageInfo call() throws ImageException, IOException {
+                        return preloadImageInfo(uri, session, manager);
+                    }
+                });
+        FutureTask<ImageInfo> pending = this.pendingImageInfos.putIfAbsent(
+                uri, task);
+        if (pending == null) {
+            pending = task;
+            try {
+                task.run();
+            } finally {
+                this.pendingImageInfos.remove(uri, task);
+            }
+        }
+        return waitForImageInfo(uri, pending);
+    }
+
+    private ImageInfo preloadImageInfo(final String uri,
+            final ImageSessionContext session, final ImageManager manager)
+            throws ImageException, IOException {
+        // Another caller may have finished preloading between our cache
+        // lookup and the registration of the pending task
+        ImageInfo info = (ImageInfo) this.imageInfos.get(uri);
+        if (info != null) {
+            return info;
+        }
+        try {
+            final Source src = session.needSource(uri);
+            if (src == null) {
+                registerInvalidURI(uri);
+                throw new FileNotFoundException("Image not found: " + uri);
+            }
+            final PersistentImageCache persistent = this.persistentCache;
+            if (persistent != null) {
+                info = persistent.getImageInfo(uri, src);
+            }
             if (info == null) {
+                info = manager.preloadImage(uri, src);
+                if (persistent != null) {
+                    persistent.putImageInfo(info, src);
+                }
+            }
+            session.returnSource(uri, src);
+        } catch (final IOException ioe) {
+            registerInvalidURI(uri);
+            throw ioe;
+        } catch (final ImageException e) {
+            registerInvalidURI(uri);
+            throw e;
+        }
+        putImageInfo(info);
+        return info;
+    }
+
+    private ImageInfo waitForImageInfo(final String uri,
+            final Future<ImageInfo> pending) throws ImageException,
+            IOException {
+        boolean interrupted = false;
+        try {
+            while (true) {
                 try {
-                    final Source src = session.needSource(uri);
-                    if (src == null) {
-                        registerInvalidURI(uri);
-                        throw new FileNotFoundException("Image not found: "
-                                + uri);
+                    return pending.get();
+                } catch (final InterruptedException ie) {
+                    // The preload is performed by another caller, don't abandon
+                    // it halfway but restore the interrupt status afterwards
+                    interrupted = true;
+                } catch (final ExecutionException ee) {
+                    final Throwable cause = ee.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    } else if (cause instanceof ImageException) {
+                        throw (ImageException) cause;
+                    } else if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    } else if (cause instanceof Error) {
+                        throw (Error) cause;
                     }
-                    info = manager.preloadImage(uri, src);
-                    session.returnSource(uri, src);
-                } catch (final IOException ioe) {
-                    registerInvalidURI(uri);
-                    throw ioe;
-                } catch (final ImageException e) {
-                    registerInvalidURI(uri);
-                    throw e;
+                    throw new ImageException("Error while preloading " + uri,
+                            cause);
                 }
-                putImageInfo(info);
             }
-            return info;
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
         }
     }
 
@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.loader.cache;
+
+/**
+ * Storage backend for the Image instances held by an {@link ImageCache}.
+ * Implementations decide when entries are discarded. They must be thread-safe
+ * as the image cache is shared by all sessions of an ImageManager.
+ *
+ * @see SoftImageCacheBackend
+ * @see BoundedImageCacheBackend
+ */
+public interface ImageCacheBackend {
+
+    /**
+     * Returns the value associated with the given key or null if the value is
+     * not (or no longer) in the cache.
+     *
+     * @param key
+     *            the key
+     * @return the requested value or null
+     */
+    Object get(final Object key);
+
+    /**
+     * Puts a new value in the cache overwriting any existing value with the
+     * same key.
+     *
+     * @param key
+     *            the key
+     * @param value
+     *            the value
+     */
+    void put(final Object key, final Object value);
+
+    /**
+     * Removes the value associated with the given key.
+     *
+     * @param key
+     *            the key
+     * @return the removed value or null if there was none
+     */
+    Object remove(final Object key);
+
+    /**
+     * Clears the cache.
+     */
+    void clear();
+
+    /**
+     * Triggers some house-keeping, i.e. removes stale entries.
+     */
+    void doHouseKeeping();
+
+}
@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.loader.cache;
+
+import java.util.EventListener;
+
+/**
+ * Listener receiving the changes of the content of an
+ * {@link ImageCacheBackend} which supports it (see
+ * {@link BoundedImageCacheBackend#setListener(ImageCacheBackendListener)}).
+ * The methods are called while the backend holds its lock, so they must
+ * return quickly and must not access the cache.
+ */
+public interface ImageCacheBackendListener extends EventListener {
+
+    /**
+     * An entry was added to the cache.
+     *
+     * @param key
+     *            the key
+     * @param value
+     *            the value
+     * @param weight
+     *            the estimated memory occupied by the value (in bytes)
+     */
+    void entryAdded(final Object key, final Object value, final long weight);
+
+    /**
+     * An entry previously reported by {@link #entryAdded} left the cache.
+     *
+     * @param key
+     *            the key
+     * @param value
+     *            the value
+     * @param weight
+     *            the weight reported when the entry was added
+     * @param evicted
+     *            true if the entry was evicted to make room, false if it was
+     *            removed, replaced or cleared
+     */
+    void entryRemoved(final Object key, final Object value,
+            final long weight, final boolean evicted);
+
+    /**
+     * An entry was not added to the cache because it exceeds the cache's
+     * capacity on its own.
+     *
+     * @param key
+     *            the key
+     * @param value
+     *            the value
+     * @param weight
+     *            the estimated memory occupied by the value (in bytes)
+     */
+    void entryRejected(final Object key, final Object value, final long weight);
+
+}
@@ -20,21 +20,23 @@
 package org.apache.xmlgraphics.image.loader.cache;
 
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Convenience class that gathers statistical information about the image cache.
  */
 public class ImageCacheStatistics implements ImageCacheListener {
 
-    private int invalidHits;
-    private int imageInfoCacheHits;
-    private int imageInfoCacheMisses;
-    private int imageCacheHits;
-    private int imageCacheMisses;
-    private Map<ImageKey, Integer> imageCacheHitMap;
-    private Map<ImageKey, Integer> imageCacheMissMap;
+    private final AtomicInteger invalidHits = new AtomicInteger();
+    private final AtomicInteger imageInfoCacheHits = new AtomicInteger();
+    private final AtomicInteger imageInfoCacheMisses = new AtomicInteger();
+    private final AtomicInteger imageCacheHits = new AtomicInteger();
+    private final AtomicInteger imageCacheMisses = new AtomicInteger();
+    private ConcurrentMap<ImageKey, Integer> imageCacheHitMap;
+    private ConcurrentMap<ImageKey, Integer> imageCacheMissMap;
 
     /**
      * Main constructor.
@@ -45,8 +47,8 @@ public class ImageCacheStatistics implements ImageCacheListener {
      */
     public ImageCacheStatistics(final boolean detailed) {
         if (detailed) {
-            this.imageCacheHitMap = new HashMap<>();
-            this.imageCacheMissMap = new HashMap<>();
+            this.imageCacheHitMap = new ConcurrentHashMap<>();
+            this.imageCacheMissMap = new ConcurrentHashMap<>();
         }
     }
 
@@ -54,44 +56,49 @@ public class ImageCacheStatistics implements ImageCacheListener {
      * Reset the gathered statistics information.
      */
     public void reset() {
-        this.imageInfoCacheHits = 0;
-        this.imageInfoCacheMisses = 0;
-        this.invalidHits = 0;
+        this.imageInfoCacheHits.set(0);
+        this.imageInfoCacheMisses.set(0);
+        this.invalidHits.set(0);
+        this.imageCacheHits.set(0);
+        this.imageCacheMisses.set(0);
+        if (this.imageCacheHitMap != null) {
+            this.imageCacheHitMap.clear();
+            this.imageCacheMissMap.clear();
+        }
     }
 
     /** {@inheritDoc} */
     @Override
     public void invalidHit(final String uri) {
-        this.invalidHits++;
+        this.invalidHits.incrementAndGet();
     }
 
     /** {@inheritDoc} */
     @Override
     public void cacheHitImageInfo(final String uri) {
-        this.imageInfoCacheHits++;
+        this.imageInfoCacheHits.incrementAndGet();
     }
 
     /** {@inheritDoc} */
     @Override
     public void cacheMissImageInfo(final String uri) {
-        this.imageInfoCacheMisses++;
+        this.imageInfoCacheMisses.incrementAndGet();
     }
 
-    private void increaseEntry(final Map<ImageKey, Integer> map,
+    private void increaseEntry(final ConcurrentMap<ImageKey, Integer> map,
             final ImageKey key) {
-        Integer v = map.get(key);
-        if (v == null) {
-            v = 1;
-        } else {
-            v = v.intValue() + 1;
+        while (true) {
+            final Integer v = map.putIfAbsent(key, 1);
+            if (v == null || map.replace(key, v, v.intValue() + 1)) {
+                return;
+            }
         }
-        map.put(key, v);
     }
 
     /** {@inheritDoc} */
     @Override
     public void cacheHitImage(final ImageKey key) {
-        this.imageCacheHits++;
+        this.imageCacheHits.incrementAndGet();
         if (this.imageCacheHitMap != null) {
             increaseEntry(this.imageCacheHitMap, key);
         }
@@ -100,7 +107,7 @@ public class ImageCacheStatistics implements ImageCacheListener {
     /** {@inheritDoc} */
     @Override
     public void cacheMissImage(final ImageKey key) {
-        this.imageCacheMisses++;
+        this.imageCacheMisses.incrementAndGet();
         if (this.imageCacheMissMap != null) {
             increaseEntry(this.imageCacheMissMap, key);
         }
@@ -112,7 +119,7 @@ public class ImageCacheStatistics implements ImageCacheListener {
      * @return the number of times an invalid URI is tried.
      */
     public int getInvalidHits() {
-        return this.invalidHits;
+        return this.invalidHits.get();
     }
 
     /**
@@ -121,7 +128,7 @@ public class ImageCacheStatistics implements ImageCacheListener {
      * @return the number of cache hits for ImageInfo instances.
      */
     public int getImageInfoCacheHits() {
-        return this.imageInfoCacheHits;
+        return this.imageInfoCacheHits.get();
     }
 
     /**
@@ -130,7 +137,7 @@ public class ImageCacheStatistics implements ImageCacheListener {
      * @return the number of cache misses for ImageInfo instances.
      */
     public int getImageInfoCacheMisses() {
-        return this.imageInfoCacheMisses;
+        return this.imageInfoCacheMisses.get();
     }
 
     /**
@@ -139,7 +146,7 @@ public class ImageCacheStatistics implements ImageCacheListener {
      * @return the number of cache hits for Image instances.
      */
     public int getImageCacheHits() {
-        return this.imageCacheHits;
+        return this.imageCacheHits.get();
     }
 
     /**
@@ -148,7 +155,7 @@ public class ImageCacheStatistics implements ImageCacheListener {
      * @return the number of cache misses for Image instances.
      */
     public int getImageCacheMisses() {
-        return this.imageCacheMisses;
+        return this.imageCacheMisses.get();
     }
 
     /**
@@ -0,0 +1,52 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.loader.cache;
+
+import java.io.IOException;
+
+import javax.xml.transform.Source;
+
+/**
+ * Determines a validator for the content behind an image URI, i.e. a string
+ * which changes whenever the image changes. The {@link PersistentImageCache}
+ * stores the validator with each entry and only reuses an entry if the
+ * validator still matches.
+ *
+ * @see FileImageCacheValidator
+ * @see DigestImageCacheValidator
+ */
+public interface ImageCacheValidator {
+
+    /**
+     * Returns the validator for an image. Implementations must leave any
+     * stream of the Source at its original position.
+     *
+     * @param uri
+     *            the original URI of the image
+     * @param src
+     *            the resolved Source of the image
+     * @return the validator or null if the image cannot be validated (in
+     *         which case it is not cached persistently)
+     * @throws IOException
+     *             if an I/O error occurs while determining the validator
+     */
+    String getValidator(final String uri, final Source src) throws IOException;
+
+}
@@ -0,0 +1,40 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.loader.cache;
+
+import org.apache.xmlgraphics.image.loader.Image;
+
+/**
+ * Estimates the amount of memory an {@link Image} occupies. The estimate is
+ * used by {@link BoundedImageCacheBackend} to keep the cached images within a
+ * byte budget.
+ */
+public interface ImageWeigher {
+
+    /**
+     * Returns the estimated number of bytes the given image keeps in memory.
+     *
+     * @param img
+     *            the image
+     * @return the estimated size in bytes (a non-negative value)
+     */
+    long weigh(final Image img);
+
+}
@@ -0,0 +1,576 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.loader.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.transform.Source;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.apache.xmlgraphics.image.loader.ImageFlavor;
+import org.apache.xmlgraphics.image.loader.ImageInfo;
+import org.apache.xmlgraphics.image.loader.ImageSize;
+
+/**
+ * Second-level cache tier which persists {@link ImageInfo} objects and,
+ * optionally, the raw payloads read by raw image loaders to a local directory,
+ * so they survive a restart of the JVM. It is attached to an
+ * {@link ImageCache} through {@link ImageCache#setPersistentCache}.
+ * <p>
+ * Entries are keyed by the original URI and the resolved system identifier of
+ * the image and are only reused while the validator determined by an
+ * {@link ImageCacheValidator} is unchanged. Custom objects of an ImageInfo are
+ * persisted if they are serializable and dropped otherwise. ImageInfo objects
+ * carrying a fully loaded image ({@link ImageInfo#ORIGINAL_IMAGE}) are not
+ * persisted at all.
+ * <p>
+ * The total size of the files in the directory is capped; the least recently
+ * used entries are deleted first. The access order survives restarts as it is
+ * recorded in the files' modification times. The directory must not be
+ * writable by untrusted parties as entries are read using Java serialization.
+ */
+@Slf4j
+public class PersistentImageCache {
+
+    private static final int FORMAT_VERSION = 1;
+    private static final String INFO_SUFFIX = ".info";
+    private static final String RAW_SUFFIX = ".raw";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final File directory;
+    private final long maxSize;
+    private final ImageCacheValidator validator;
+    private volatile boolean rawPayloadsEnabled;
+
+    /** File name to file size, in access order */
+    private final LinkedHashMap<String, Long> index = new LinkedHashMap<>(16,
+            0.75f, true);
+    private long size;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Creates a new persistent cache validating entries by file modification
+     * time and length.
+     *
+     * @param directory
+     *            the directory holding the cache files (created if necessary)
+     * @param maxSize
+     *            the maximum number of bytes occupied by the cache files
+     * @throws IOException
+     *             if the directory cannot be created
+     */
+    public PersistentImageCache(final File directory, final long maxSize)
+            throws IOException {
+        this(directory, maxSize, new FileImageCacheValidator());
+    }
+
+    /**
+     * Creates a new persistent cache.
+     *
+     * @param directory
+     *            the directory holding the cache files (created if necessary)
+     * @param maxSize
+     *            the maximum number of bytes occupied by the cache files
+     * @param validator
+     *            the validator used to detect changed images
+     * @throws IOException
+     *             if the directory cannot be created
+     */
+    public PersistentImageCache(final File directory, final long maxSize,
+            final ImageCacheValidator validator) throws IOException {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive");
+        }
+        if (validator == null) {
+            throw new NullPointerException("validator must not be null");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create cache directory: "
+                    + directory);
+        }
+        this.directory = directory;
+        this.maxSize = maxSize;
+        this.validator = validator;
+        loadIndex();
+    }
+
+    private synchronized void loadIndex() {
+        final File[] files = this.directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        // Oldest first, so the access order of the previous run is restored
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(final File f1, final File f2) {
+                final long m1 = f1.lastModified();
+                final long m2 = f2.lastModified();
+                return m1 < m2 ? -1 : m1 == m2 ? 0 : 1;
+            }
+        });
+        for (final File file : files) {
+            final String name = file.getName();
+            if (name.endsWith(TEMP_SUFFIX)) {
+                // Left over from an interrupted write
+                delete(file);
+            } else if (name.endsWith(INFO_SUFFIX) || name.endsWith(RAW_SUFFIX)) {
+                this.index.put(name, file.length());
+                this.size += file.length();
+            }
+        }
+        evict();
+        log.debug("Opened persistent image cache {} with {} entries ({} bytes)",
+                this.directory, this.index.size(), this.size);
+    }
+
+    /**
+     * Enables or disables the persistence of raw payloads (see
+     * {@link #getRawPayload(ImageInfo, ImageFlavor, Source)}). Disabled by
+     * default.
+     *
+     * @param enabled
+     *            true to enable raw payloads
+     */
+    public void setRawPayloadsEnabled(final boolean enabled) {
+        this.rawPayloadsEnabled = enabled;
+    }
+
+    /**
+     * Indicates whether raw payloads are persisted.
+     *
+     * @return true if raw payloads are enabled
+     */
+    public boolean isRawPayloadsEnabled() {
+        return this.rawPayloadsEnabled;
+    }
+
+    /**
+     * Returns a persisted ImageInfo object.
+     *
+     * @param uri
+     *            the original URI of the image
+     * @param src
+     *            the resolved Source of the image
+     * @return the ImageInfo object or null if there's no valid entry
+     * @throws IOException
+     *             if the validator cannot be determined
+     */
+    public ImageInfo getImageInfo(final String uri, final Source src)
+            throws IOException {
+        final String validation = this.validator.getValidator(uri, src);
+        if (validation == null) {
+            return null;
+        }
+        final String key = createKey(uri, src, null);
+        final File file = lookup(key, INFO_SUFFIX);
+        if (file == null) {
+            this.misses.incrementAndGet();
+            return null;
+        }
+        try (final ObjectInputStream in = new ObjectInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (!readHeader(in, key, validation)) {
+                this.misses.incrementAndGet();
+                remove(file);
+                return null;
+            }
+            final ImageInfo info = new ImageInfo(uri, in.readUTF());
+            if (in.readBoolean()) {
+                final ImageSize imageSize = new ImageSize();
+                imageSize.setSizeInPixels(in.readInt(), in.readInt());
+                imageSize.setSizeInMillipoints(in.readInt(), in.readInt());
+                imageSize.setBaselinePositionFromBottom(in.readInt());
+                imageSize.setResolution(in.readDouble(), in.readDouble());
+                info.setSize(imageSize);
+            }
+            final Map<?, ?> customObjects = (Map<?, ?>) in.readObject();
+            info.getCustomObjects().putAll(customObjects);
+            touch(file);
+            this.hits.incrementAndGet();
+            return info;
+        } catch (final IOException | ClassNotFoundException | ClassCastException e) {
+            log.warn("Discarding unreadable cache entry {}: {}", file, e.toString());
+            this.misses.incrementAndGet();
+            remove(file);
+            return null;
+        }
+    }
+
+    /**
+     * Persists an ImageInfo object. Errors are logged but not reported to the
+     * caller as the cache is only an optimization.
+     *
+     * @param info
+     *            the ImageInfo object
+     * @param src
+     *            the resolved Source of the image
+     * @throws IOException
+     *             if the validator cannot be determined
+     */
+    public void putImageInfo(final ImageInfo info, final Source src)
+            throws IOException {
+        if (info.getOriginalImage() != null) {
+            return; // The image itself cannot be persisted
+        }
+        final String validation = this.validator.getValidator(
+                info.getOriginalURI(), src);
+        if (validation == null) {
+            return;
+        }
+        final String key = createKey(info.getOriginalURI(), src, null);
+        final HashMap<Object, Object> customObjects = new HashMap<>();
+        for (final Map.Entry<Object, Object> entry : info.getCustomObjects()
+                .entrySet()) {
+            if (entry.getKey() instanceof Serializable
+                    && entry.getValue() instanceof Serializable) {
+                customObjects.put(entry.getKey(), entry.getValue());
+            }
+        }
+        final File tmp = File.createTempFile("image", TEMP_SUFFIX,
+                this.directory);
+        try {
+            try (final ObjectOutputStream out = new ObjectOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                writeHeader(out, key, validation);
+                out.writeUTF(info.getMimeType());
+                final ImageSize imageSize = info.getSize();
+                out.writeBoolean(imageSize != null);
+                if (imageSize != null) {
+                    out.writeInt(imageSize.getWidthPx());
+                    out.writeInt(imageSize.getHeightPx());
+                    out.writeInt(imageSize.getWidthMpt());
+                    out.writeInt(imageSize.getHeightMpt());
+                    out.writeInt(imageSize.getBaselinePositionFromBottom());
+                    out.writeDouble(imageSize.getDpiHorizontal());
+                    out.writeDouble(imageSize.getDpiVertical());
+                }
+                out.writeObject(customObjects);
+            }
+            store(tmp, key, INFO_SUFFIX);
+        } catch (final IOException ioe) {
+            // Includes NotSerializableException for nested objects
+            log.debug("Could not persist ImageInfo for {}: {}",
+                    info.getOriginalURI(), ioe.toString());
+        } finally {
+            delete(tmp);
+        }
+    }
+
+    /**
+     * Returns a persisted raw payload, i.e. the bytes a raw image loader has
+     * read from the image's source.
+     *
+     * @param info
+     *            the image's ImageInfo object
+     * @param flavor
+     *            the flavor of the raw image the payload was read for
+     * @param src
+     *            the resolved Source of the image
+     * @return the payload or null if raw payloads are disabled or there's no
+     *         valid entry
+     * @throws IOException
+     *             if the validator cannot be determined
+     */
+    public byte[] getRawPayload(final ImageInfo info, final ImageFlavor flavor,
+            final Source src) throws IOException {
+        if (!this.rawPayloadsEnabled) {
+            return null;
+        }
+        final String validation = this.validator.getValidator(
+                info.getOriginalURI(), src);
+        if (validation == null) {
+            return null;
+        }
+        final String key = createKey(info.getOriginalURI(), src, flavor);
+        final File file = lookup(key, RAW_SUFFIX);
+        if (file == null) {
+            this.misses.incrementAndGet();
+            return null;
+        }
+        try (final ObjectInputStream in = new ObjectInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (!readHeader(in, key, validation)) {
+                this.misses.incrementAndGet();
+                remove(file);
+                return null;
+            }
+            final byte[] payload = new byte[in.readInt()];
+            in.readFully(payload);
+            touch(file);
+            this.hits.incrementAndGet();
+            return payload;
+        } catch (final IOException e) {
+            log.warn("Discarding unreadable cache entry {}: {}", file, e.toString());
+            this.misses.incrementAndGet();
+            remove(file);
+            return null;
+        }
+    }
+
+    /**
+     * Persists a raw payload if raw payloads are enabled. Errors are logged
+     * but not reported to the caller as the cache is only an optimization.
+     *
+     * @param info
+     *            the image's ImageInfo object
+     * @param flavor
+     *            the flavor of the raw image the payload was read for
+     * @param src
+     *            the resolved Source of the image
+     * @param payload
+     *            the payload
+     * @throws IOException
+     *             if the validator cannot be determined
+     */
+    public void putRawPayload(final ImageInfo info, final ImageFlavor flavor,
+            final Source src, final byte[] payload) throws IOException {
+        if (!this.rawPayloadsEnabled || payload.length > this.maxSize) {
+            return;
+        }
+        final String validation = this.validator.getValidator(
+                info.getOriginalURI(), src);
+        if (validation == null) {
+            return;
+        }
+        final String key = createKey(info.getOriginalURI(), src, flavor);
+        final File tmp = File.createTempFile("image", TEMP_SUFFIX,
+                this.directory);
+        try {
+            try (final ObjectOutputStream out = new ObjectOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                writeHeader(out, key, validation);
+                out.writeInt(payload.length);
+                out.write(payload);
+            }
+            store(tmp, key, RAW_SUFFIX);
+        } catch (final IOException ioe) {
+            log.debug("Could not persist raw payload for {}: {}",
+                    info.getOriginalURI(), ioe.toString());
+        } finally {
+            delete(tmp);
+        }
+    }
+
+    /**
+     * Deletes all entries of the cache.
+     */
+    public synchronized void clear() {
+        for (final String name : this.index.keySet()) {
+            delete(new File(this.directory, name));
+        }
+        this.index.clear();
+        this.size = 0;
+    }
+
+    /**
+     * Returns the directory holding the cache files.
+     *
+     * @return the directory
+     */
+    public File getDirectory() {
+        return this.directory;
+    }
+
+    /**
+     * Returns the maximum number of bytes occupied by the cache files.
+     *
+     * @return the maximum size
+     */
+    public long getMaximumSize() {
+        return this.maxSize;
+    }
+
+    /**
+     * Returns the number of bytes currently occupied by the cache files.
+     *
+     * @return the size
+     */
+    public synchronized long getSize() {
+        return this.size;
+    }
+
+    /**
+     * Returns the number of entries (ImageInfo objects and raw payloads).
+     *
+     * @return the number of entries
+     */
+    public synchronized int getEntryCount() {
+        return this.index.size();
+    }
+
+    /**
+     * Returns the number of lookups that found a valid entry.
+     *
+     * @return the hit count
+     */
+    public long getHitCount() {
+        return this.hits.get();
+    }
+
+    /**
+     * Returns the number of lookups that found no valid entry.
+     *
+     * @return the miss count
+     */
+    public long getMissCount() {
+        return this.misses.get();
+    }
+
+    private static String createKey(final String uri, final Source src,
+            final ImageFlavor flavor) {
+        final StringBuilder sb = new StringBuilder(uri);
+        sb.append('\n').append(src.getSystemId());
+        if (flavor != null) {
+            sb.append('\n').append(flavor.getName());
+        }
+        return sb.toString();
+    }
+
+    private static String toFileName(final String key, final String suffix) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            return toHex(digest.digest(key.getBytes(UTF8))) + suffix;
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 not available", e);
+        }
+    }
+
+    /**
+     * Converts bytes to a lower-case hexadecimal string.
+     *
+     * @param data
+     *            the bytes
+     * @return the hexadecimal string
+     */
+    static String toHex(final byte[] data) {
+        final char[] chars = new char[data.length * 2];
+        for (int i = 0; i < data.length; i++) {
+            chars[2 * i] = HEX[(data[i] >> 4) & 0x0F];
+            chars[2 * i + 1] = HEX[data[i] & 0x0F];
+        }
+        return new String(chars);
+    }
+
+    private static void writeHeader(final ObjectOutputStream out,
+            final String key, final String validation) throws IOException {
+        out.writeInt(FORMAT_VERSION);
+        out.writeUTF(key);
+        out.writeUTF(validation);
+    }
+
+    private static boolean readHeader(final ObjectInputStream in,
+            final String key, final String validation) throws IOException {
+        return in.readInt() == FORMAT_VERSION && key.equals(in.readUTF())
+                && validation.equals(in.readUTF());
+    }
+
+    private File lookup(final String key, final String suffix) {
+        final String name = toFileName(key, suffix);
+        synchronized (this) {
+            // containsKey leaves the access order alone until the entry is
+            // known to be valid
+            if (!this.index.containsKey(name)) {
+                return null;
+            }
+        }
+        return new File(this.directory, name);
+    }
+
+    /**
+     * Marks a validated entry as recently used, also on disk so the LRU order
+     * survives a restart.
+     */
+    private void touch(final File file) {
+        synchronized (this) {
+            this.index.get(file.getName());
+        }
+        if (!file.setLastModified(System.currentTimeMillis())) {
+            log.debug("Could not update the access time of {}", file);
+        }
+    }
+
+    private void store(final File tmp, final String key, final String suffix)
+            throws IOException {
+        final long length = tmp.length();
+        if (length > this.maxSize) {
+            return;
+        }
+        final String name = toFileName(key, suffix);
+        synchronized (this) {
+            Files.move(tmp.toPath(), new File(this.directory, name).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+            final Long previous = this.index.put(name, length);
+            this.size += length - (previous != null ? previous : 0);
+            evict();
+        }
+    }
+
+    private synchronized void remove(final File file) {
+        final Long length = this.index.remove(file.getName());
+        if (length != null) {
+            this.size -= length;
+        }
+        delete(file);
+    }
+
+    private void evict() {
+        assert Thread.holdsLock(this);
+        final Iterator<Map.Entry<String, Long>> iter = this.index.entrySet()
+                .iterator();
+        while (this.size > this.maxSize && iter.hasNext()) {
+            final Map.Entry<String, Long> eldest = iter.next();
+            iter.remove();
+            this.size -= eldest.getValue();
+            delete(new File(this.directory, eldest.getKey()));
+        }
+    }
+
+    private static void delete(final File file) {
+        if (file.exists() && !file.delete()) {
+            log.debug("Could not delete {}", file);
+        }
+    }
+
+}
@@ -0,0 +1,365 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.loader.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.imageio.stream.ImageInputStream;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.apache.xmlgraphics.image.loader.util.MappedImageInputStream;
+
+/**
+ * A pool of the contents of local image files which can be shared by any
+ * number of image sessions, also across threads. The content of each file is
+ * held once, either in a byte array or in a memory mapping, and every session
+ * gets its own {@link ImageInputStream} on it with an independent position.
+ * <p>
+ * Entries are keyed by the resolved URI of the file and are only reused while
+ * the file's modification time and length are unchanged. Each stream handed
+ * out holds a reference on its entry until it is closed. Entries without
+ * references are evicted in least-recently-used order when the pool exceeds
+ * its maximum size, and when they have been idle for longer than the idle
+ * timeout. Eviction happens as part of the pool operations; there is no
+ * background thread.
+ * <p>
+ * A process-wide pool can be enabled by setting the system property
+ * <code>org.apache.xmlgraphics.image.loader.cache.SharedSourcePool.max-size</code>
+ * to the maximum size in bytes (see {@link #getDefaultPool()}).
+ */
+@Slf4j
+public class SharedSourcePool {
+
+    /** Default idle timeout in milliseconds (5 minutes). */
+    public static final long DEFAULT_IDLE_TIMEOUT = 5 * 60 * 1000;
+
+    private static final SharedSourcePool DEFAULT_POOL;
+
+    static {
+        final long maxSize = Long.getLong(
+                SharedSourcePool.class.getName() + ".max-size", 0).longValue();
+        DEFAULT_POOL = maxSize > 0 ? new SharedSourcePool(maxSize) : null;
+    }
+
+    private final long maximumSize;
+    private final TimeStampProvider timeStampProvider;
+    private volatile long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+
+    /** The entries in access order, least recently used first */
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f,
+            true);
+    private long size;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Creates a new pool.
+     *
+     * @param maximumSize
+     *            the maximum number of bytes held by the pool
+     */
+    public SharedSourcePool(final long maximumSize) {
+        this(maximumSize, new TimeStampProvider());
+    }
+
+    SharedSourcePool(final long maximumSize,
+            final TimeStampProvider timeStampProvider) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException(
+                    "maximumSize must be greater than 0");
+        }
+        this.maximumSize = maximumSize;
+        this.timeStampProvider = timeStampProvider;
+    }
+
+    /**
+     * Returns the process-wide pool configured through the system property
+     * <code>org.apache.xmlgraphics.image.loader.cache.SharedSourcePool.max-size</code>
+     * .
+     *
+     * @return the default pool or null if none is configured
+     */
+    public static SharedSourcePool getDefaultPool() {
+        return DEFAULT_POOL;
+    }
+
+    /**
+     * Sets the time after which unreferenced entries are evicted.
+     *
+     * @param idleTimeout
+     *            the idle timeout in milliseconds
+     */
+    public void setIdleTimeout(final long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Returns the time after which unreferenced entries are evicted.
+     *
+     * @return the idle timeout in milliseconds
+     */
+    public long getIdleTimeout() {
+        return this.idleTimeout;
+    }
+
+    /**
+     * Returns a new stream on the content of a local file, loading the file
+     * into the pool if necessary. The stream must be closed to release its
+     * reference on the pooled content.
+     *
+     * @param systemId
+     *            the resolved URI of the file (used as key)
+     * @param file
+     *            the file
+     * @param map
+     *            true if the file should be memory-mapped rather than read
+     *            into a byte array when it has to be loaded
+     * @return the stream or null if the file is too large to be pooled
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    public ImageInputStream acquire(final String systemId, final File file,
+            final boolean map) throws IOException {
+        final long length = file.length();
+        if (length > this.maximumSize || length > Integer.MAX_VALUE) {
+            return null;
+        }
+        final String validator = file.lastModified() + ":" + length;
+        synchronized (this) {
+            evictIdle(this.timeStampProvider.getTimeStamp());
+            final Entry entry = this.entries.get(systemId);
+            if (entry != null && entry.validator.equals(validator)) {
+                this.hits++;
+                return lease(entry);
+            }
+            this.misses++;
+        }
+        // Load outside the lock so other files can be served meanwhile
+        final ByteBuffer data = load(file, map);
+        synchronized (this) {
+            Entry entry = this.entries.get(systemId);
+            if (entry != null && entry.validator.equals(validator)) {
+                // Another session loaded the same file in the meantime
+                return lease(entry);
+            }
+            if (entry != null) {
+                // Stale: existing streams keep their data
+                remove(systemId, entry);
+            }
+            entry = new Entry(validator, data);
+            final ImageInputStream in = lease(entry);
+            this.entries.put(systemId, entry);
+            this.size += entry.size;
+            trimToSize();
+            log.debug("Pooled {} ({} bytes, mapped: {})", systemId,
+                    entry.size, map);
+            return in;
+        }
+    }
+
+    private static ByteBuffer load(final File file, final boolean map)
+            throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            if (map) {
+                return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0,
+                        raf.length());
+            }
+            final byte[] data = new byte[(int) raf.length()];
+            raf.readFully(data);
+            return ByteBuffer.wrap(data);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private ImageInputStream lease(final Entry entry) {
+        entry.refCount++;
+        return new PooledImageInputStream(entry);
+    }
+
+    private synchronized void release(final Entry entry) {
+        entry.refCount--;
+        entry.lastAccess = this.timeStampProvider.getTimeStamp();
+        trimToSize();
+    }
+
+    private void remove(final String key, final Entry entry) {
+        this.entries.remove(key);
+        this.size -= entry.size;
+    }
+
+    private void trimToSize() {
+        final Iterator<Map.Entry<String, Entry>> iter = this.entries
+                .entrySet().iterator();
+        while (this.size > this.maximumSize && iter.hasNext()) {
+            final Entry entry = iter.next().getValue();
+            if (entry.refCount == 0) {
+                iter.remove();
+                this.size -= entry.size;
+                this.evictions++;
+            }
+        }
+    }
+
+    private void evictIdle(final long now) {
+        final Iterator<Entry> iter = this.entries.values().iterator();
+        while (iter.hasNext()) {
+            final Entry entry = iter.next();
+            if (entry.refCount == 0
+                    && now - entry.lastAccess >= this.idleTimeout) {
+                iter.remove();
+                this.size -= entry.size;
+                this.evictions++;
+            }
+        }
+    }
+
+    /**
+     * Evicts all unreferenced entries that have been idle for longer than the
+     * idle timeout.
+     */
+    public synchronized void evictIdle() {
+        evictIdle(this.timeStampProvider.getTimeStamp());
+    }
+
+    /**
+     * Removes all entries from the pool. Streams that are still open remain
+     * usable.
+     */
+    public synchronized void clear() {
+        this.entries.clear();
+        this.size = 0;
+    }
+
+    /**
+     * Returns the number of bytes currently held by the pool.
+     *
+     * @return the size in bytes
+     */
+    public synchronized long getSize() {
+        return this.size;
+    }
+
+    /**
+     * Returns the maximum number of bytes held by the pool. The limit can be
+     * exceeded temporarily while all entries are referenced.
+     *
+     * @return the maximum size in bytes
+     */
+    public long getMaximumSize() {
+        return this.maximumSize;
+    }
+
+    /**
+     * Returns the number of files in the pool.
+     *
+     * @return the number of entries
+     */
+    public synchronized int getEntryCount() {
+        return this.entries.size();
+    }
+
+    /**
+     * Returns the number of streams served from pooled content.
+     *
+     * @return the number of hits
+     */
+    public synchronized long getHitCount() {
+        return this.hits;
+    }
+
+    /**
+     * Returns the number of times a file had to be loaded.
+     *
+     * @return the number of misses
+     */
+    public synchronized long getMissCount() {
+        return this.misses;
+    }
+
+    /**
+     * Returns the number of entries evicted because of the size limit or the
+     * idle timeout.
+     *
+     * @return the number of evictions
+     */
+    public synchronized long getEvictionCount() {
+        return this.evictions;
+    }
+
+    /**
+     * Returns the number of open streams on the content of a file.
+     *
+     * @param systemId
+     *            the resolved URI of the file
+     * @return the reference count (0 if the file is not pooled)
+     */
+    public synchronized int getReferenceCount(final String systemId) {
+        final Entry entry = this.entries.get(systemId);
+        return entry != null ? entry.refCount : 0;
+    }
+
+    private static final class Entry {
+
+        private final String validator;
+        private final ByteBuffer data;
+        private final long size;
+        private int refCount;
+        private long lastAccess;
+
+        Entry(final String validator, final ByteBuffer data) {
+            this.validator = validator;
+            this.data = data;
+            this.size = data.limit();
+        }
+    }
+
+    /**
+     * Stream on pooled content which releases its reference when closed (or
+     * finalized).
+     */
+    private final class PooledImageInputStream extends MappedImageInputStream {
+
+        private final Entry entry;
+
+        PooledImageInputStream(final Entry entry) {
+            super(entry.data.duplicate());
+            this.entry = entry;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void close() throws IOException {
+            // Fails on a second call, so the reference is released only once
+            super.close();
+            release(this.entry);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.loader.cache;
+
+import org.apache.xmlgraphics.image.loader.util.SoftMapCache;
+
+/**
+ * Image cache backend that holds its values through soft references. Entries
+ * are only discarded when the garbage collector runs short on memory. This is
+ * the legacy behaviour of the {@link ImageCache}.
+ */
+public class SoftImageCacheBackend implements ImageCacheBackend {
+
+    private final SoftMapCache cache = new SoftMapCache(true);
+
+    /** {@inheritDoc} */
+    @Override
+    public Object get(final Object key) {
+        return this.cache.get(key);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void put(final Object key, final Object value) {
+        this.cache.put(key, value);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Object remove(final Object key) {
+        return this.cache.remove(key);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void clear() {
+        this.cache.clear();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void doHouseKeeping() {
+        this.cache.doHouseKeeping();
+    }
+
+}
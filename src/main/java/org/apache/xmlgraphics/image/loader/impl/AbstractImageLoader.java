@@ -25,8 +25,10 @@ import java.util.Map;
 import org.apache.xmlgraphics.image.loader.Image;
 import org.apache.xmlgraphics.image.loader.ImageException;
 import org.apache.xmlgraphics.image.loader.ImageInfo;
+import org.apache.xmlgraphics.image.loader.ImageManager;
 import org.apache.xmlgraphics.image.loader.ImageProcessingHints;
 import org.apache.xmlgraphics.image.loader.ImageSessionContext;
+import org.apache.xmlgraphics.image.loader.cache.PersistentImageCache;
 import org.apache.xmlgraphics.image.loader.spi.ImageLoader;
 
 /**
@@ -65,4 +67,26 @@ public abstract class AbstractImageLoader implements ImageLoader {
         return b != null && b.booleanValue();
     }
 
+    /**
+     * Returns the persistent cache tier of the image cache of the
+     * ImageManager the image is loaded through.
+     *
+     * @param hints
+     *            a Map of hints that can be used by implementations to
+     *            customize the loading process (may be null).
+     * @return the persistent cache or null if there is none
+     */
+    protected PersistentImageCache getPersistentCache(
+            final Map<Object, Object> hints) {
+        if (hints == null) {
+            return null;
+        }
+        final ImageManager manager = (ImageManager) hints
+                .get(ImageProcessingHints.IMAGE_MANAGER);
+        if (manager == null || manager.getCache() == null) {
+            return null;
+        }
+        return manager.getCache().getPersistentCache();
+    }
+
 }
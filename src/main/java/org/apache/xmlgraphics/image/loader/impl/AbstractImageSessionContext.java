@@ -24,6 +24,7 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.net.MalformedURLException;
@@ -41,7 +42,9 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.IOUtils;
 import org.apache.xmlgraphics.image.loader.ImageSessionContext;
 import org.apache.xmlgraphics.image.loader.ImageSource;
+import org.apache.xmlgraphics.image.loader.cache.SharedSourcePool;
 import org.apache.xmlgraphics.image.loader.util.ImageUtil;
+import org.apache.xmlgraphics.image.loader.util.MappedImageInputStream;
 import org.apache.xmlgraphics.image.loader.util.SoftMapCache;
 
 /**
@@ -63,6 +66,66 @@ public abstract class AbstractImageSessionContext implements
         noSourceReuse = Boolean.valueOf(v).booleanValue();
     }
 
+    /** Default minimum size of local files that are memory-mapped (1 MB). */
+    public static final long DEFAULT_MAPPING_THRESHOLD = 1024 * 1024;
+
+    private static final long CONFIGURED_MAPPING_THRESHOLD = Long.getLong(
+            AbstractImageSessionContext.class.getName() + ".mapping-threshold",
+            DEFAULT_MAPPING_THRESHOLD).longValue();
+
+    private volatile long mappingThreshold = CONFIGURED_MAPPING_THRESHOLD;
+
+    /**
+     * Sets the minimum size of local files that are accessed through a
+     * memory mapping (see {@link MappedImageInputStream}) rather than through
+     * a file-backed ImageInputStream. Mapping avoids read system calls and
+     * buffer copies but has a fixed setup cost, so it only pays off for
+     * larger files. A negative value disables mapping. The default can be
+     * set with the system property
+     * <code>org.apache.xmlgraphics.image.loader.impl.AbstractImageSessionContext.mapping-threshold</code>
+     * .
+     *
+     * @param threshold
+     *            the threshold in bytes, or -1 to disable mapping
+     */
+    public void setMappingThreshold(final long threshold) {
+        this.mappingThreshold = threshold;
+    }
+
+    /**
+     * Returns the minimum size of local files that are memory-mapped.
+     *
+     * @return the threshold in bytes (negative if mapping is disabled)
+     */
+    public long getMappingThreshold() {
+        return this.mappingThreshold;
+    }
+
+    private volatile SharedSourcePool sourcePool = SharedSourcePool
+            .getDefaultPool();
+
+    /**
+     * Sets the pool through which local files are shared with other sessions.
+     * By default, the process-wide pool is used if one is configured (see
+     * {@link SharedSourcePool#getDefaultPool()}).
+     *
+     * @param pool
+     *            the pool or null to open local files for this session only
+     */
+    public void setSourcePool(final SharedSourcePool pool) {
+        this.sourcePool = pool;
+    }
+
+    /**
+     * Returns the pool through which local files are shared with other
+     * sessions.
+     *
+     * @return the pool or null if none is used
+     */
+    public SharedSourcePool getSourcePool() {
+        return this.sourcePool;
+    }
+
     /**
      * Attempts to resolve the given URI.
      * 
@@ -142,8 +205,8 @@ public abstract class AbstractImageSessionContext implements
                 try {
                     // We let the OS' file system cache do the caching for us
                     // --> lower Java memory consumption, probably no speed loss
-                    final ImageInputStream newInputStream = ImageIO
-                            .createImageInputStream(f);
+                    final ImageInputStream newInputStream = createFileImageInputStream(
+                            resolvedURI, f);
                     if (newInputStream == null) {
                         log.error("Unable to create ImageInputStream for local file "
                                 + f
@@ -191,10 +254,9 @@ public abstract class AbstractImageSessionContext implements
                 }
 
                 // Buffer and uncompress if necessary
-                try (final InputStream inStream = ImageUtil
-                        .autoDecorateInputStream(in)) {
-                    imageSource = new ImageSource(
-                            createImageInputStream(inStream),
+                in = ImageUtil.autoDecorateInputStream(in);
+                try {
+                    imageSource = new ImageSource(createImageInputStream(in),
                             source.getSystemId(), false);
                 } catch (final IOException ioe) {
                     log.error(
@@ -204,21 +266,61 @@ public abstract class AbstractImageSessionContext implements
                                     + ioe.getMessage() + ")", ioe);
                 }
             } finally {
-                IOUtils.closeQuietly(in);
+                // The ImageInputStream reads from "in" lazily, so only close
+                // it if no ImageSource could be built on top of it
+                if (imageSource == null) {
+                    IOUtils.closeQuietly(in);
+                }
             }
 
         }
         return imageSource;
     }
 
+    /**
+     * Creates an ImageInputStream for a local file. If a source pool is set,
+     * the stream is obtained from the pool. Files at least as large as the
+     * mapping threshold are memory-mapped.
+     *
+     * @param resolvedURI
+     *            the resolved URI of the file
+     * @param f
+     *            the file
+     * @return the ImageInputStream or null if none could be created
+     * @throws IOException
+     *             if an I/O error occurs
+     */
+    protected ImageInputStream createFileImageInputStream(
+            final String resolvedURI, final File f) throws IOException {
+        final long threshold = this.mappingThreshold;
+        final long length = f.length();
+        final boolean map = threshold >= 0 && length >= threshold;
+        final SharedSourcePool pool = this.sourcePool;
+        if (pool != null) {
+            final ImageInputStream pooled = pool.acquire(resolvedURI, f, map);
+            if (pooled != null) {
+                return pooled;
+            }
+        }
+        if (map && length <= Integer.MAX_VALUE) {
+            try {
+                return new MappedImageInputStream(f);
+            } catch (final IOException ioe) {
+                // Mapping can fail, e.g. when address space is exhausted
+                log.debug("Could not map {}, using stream access instead: {}",
+                        f, ioe.getMessage());
+            }
+        }
+        return ImageIO.createImageInputStream(f);
+    }
+
     protected ImageInputStream createImageInputStream(final InputStream in)
             throws IOException {
-        try (final ImageInputStream iin = ImageIO.createImageInputStream(in)) {
-            return (ImageInputStream) Proxy.newProxyInstance(
-                    ImageInputStream.class.getClassLoader(),
-                    new Class[] { ImageInputStream.class },
-                    new ObservingImageInputStreamInvocationHandler(iin, in));
-        }
+        final ImageInputStream iin = ImageIO.createImageInputStream(in);
+        return (ImageInputStream) Proxy.newProxyInstance(
+                ImageInputStream.class.getClassLoader(),
+                new Class[] { ImageInputStream.class },
+                new ObservingImageInputStreamInvocationHandler(iin, in));
     }
 
     private static class ObservingImageInputStreamInvocationHandler implements
@@ -237,15 +339,21 @@ public abstract class AbstractImageSessionContext implements
         @Override
         public Object invoke(final Object proxy, final Method method,
                 final Object[] args) throws Throwable {
-            if ("close".equals(method.getName())) {
-                try {
+            try {
+                if ("close".equals(method.getName())) {
+                    try {
+                        return method.invoke(this.iin, args);
+                    } finally {
+                        IOUtils.closeQuietly(this.in);
+                        this.in = null;
+                    }
+                } else {
                     return method.invoke(this.iin, args);
-                } finally {
-                    IOUtils.closeQuietly(this.in);
-                    this.in = null;
                 }
-            } else {
-                return method.invoke(this.iin, args);
+            } catch (final InvocationTargetException ite) {
+                // Rethrow the original exception (e.g. an IOException)
+                // instead of an UndeclaredThrowableException
+                throw ite.getCause();
             }
         }
 
@@ -295,11 +403,9 @@ public abstract class AbstractImageSessionContext implements
         }
     }
 
-    private final SoftMapCache sessionSources = new SoftMapCache(false); // no
-
-    // need
-    // for
-    // synchronization
+    // synchronized as images may be requested concurrently within a session
+    // (see ImageManager.preloadAll())
+    private final SoftMapCache sessionSources = new SoftMapCache(true);
 
     /** {@inheritDoc} */
     @Override
@@ -336,27 +442,26 @@ public abstract class AbstractImageSessionContext implements
     public void returnSource(final String uri, final Source src)
             throws IOException {
         // Safety check to make sure the Preloaders behave
-        try (final ImageInputStream in = ImageUtil.getImageInputStream(src)) {
-            try {
-                if (in != null && in.getStreamPosition() != 0) {
-                    in.close();
-                    throw new IllegalStateException(
-                            "ImageInputStream is not reset for: " + uri);
-                }
-            } catch (final IOException ioe) {
-                log.error("IOException", ioe);
-                // Ignore exception
-                ImageUtil.closeQuietly(src);
+        final ImageInputStream in = ImageUtil.getImageInputStream(src);
+        try {
+            if (in != null && in.getStreamPosition() != 0) {
+                in.close();
+                throw new IllegalStateException(
+                        "ImageInputStream is not reset for: " + uri);
             }
+        } catch (final IOException ioe) {
+            log.error("IOException", ioe);
+            // Ignore exception
+            ImageUtil.closeQuietly(src);
+        }
 
-            if (isReusable(src)) {
-                // Only return the Source if it's reusable
-                log.debug("Returning Source for " + uri);
-                this.sessionSources.put(uri, src);
-            } else {
-                // Otherwise, try to close if possible and forget about it
-                ImageUtil.closeQuietly(src);
-            }
+        if (isReusable(src)) {
+            // Only return the Source if it's reusable
+            log.debug("Returning Source for " + uri);
+            this.sessionSources.put(uri, src);
+        } else {
+            // Otherwise, try to close if possible and forget about it
+            ImageUtil.closeQuietly(src);
         }
     }
 
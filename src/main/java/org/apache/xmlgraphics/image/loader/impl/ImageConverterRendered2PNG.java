@@ -27,6 +27,7 @@ import org.apache.commons.io.output.ByteArrayOutputStream;
 import org.apache.xmlgraphics.image.loader.Image;
 import org.apache.xmlgraphics.image.loader.ImageException;
 import org.apache.xmlgraphics.image.loader.ImageFlavor;
+import org.apache.xmlgraphics.image.loader.ImageProcessingHints;
 import org.apache.xmlgraphics.image.writer.ImageWriter;
 import org.apache.xmlgraphics.image.writer.ImageWriterParams;
 import org.apache.xmlgraphics.image.writer.ImageWriterRegistry;
@@ -53,6 +54,13 @@ public class ImageConverterRendered2PNG extends AbstractImageConverter {
             final ImageWriterParams params = new ImageWriterParams();
             params.setResolution((int) Math.round(src.getSize()
                     .getDpiHorizontal()));
+            if (hints != null) {
+                final Object profile = hints
+                        .get(ImageProcessingHints.PNG_ENCODE_PROFILE);
+                if (profile != null) {
+                    params.setPNGEncodeProfile(profile.toString());
+                }
+            }
             writer.writeImage(rendered.getRenderedImage(), baout, params);
             return new ImageRawStream(src.getInfo(), getTargetFlavor(),
                     new ByteArrayInputStream(baout.toByteArray()));
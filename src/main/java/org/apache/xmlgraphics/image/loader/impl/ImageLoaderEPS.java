@@ -72,12 +72,11 @@ public class ImageLoaderEPS extends AbstractImageLoader {
         if (binaryHeader != null) {
             // Binary EPS: just extract the EPS part
             in.skip(binaryHeader.getPSStart());
-            in.close();
             in = new SubInputStream(in, binaryHeader.getPSLength(), true);
         }
 
+        // The raw image reads the stream later, so it must not be closed here
         final ImageRawEPS epsImage = new ImageRawEPS(info, in);
-        in.close();
         return epsImage;
     }
 
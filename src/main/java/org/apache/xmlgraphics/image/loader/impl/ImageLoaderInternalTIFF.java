@@ -28,7 +28,6 @@ import javax.xml.transform.Source;
 import lombok.extern.slf4j.Slf4j;
 
 import org.apache.xmlgraphics.image.codec.tiff.TIFFImage;
-import org.apache.xmlgraphics.image.codec.util.ImageInputStreamSeekableStreamAdapter;
 import org.apache.xmlgraphics.image.codec.util.SeekableStream;
 import org.apache.xmlgraphics.image.loader.Image;
 import org.apache.xmlgraphics.image.loader.ImageException;
@@ -36,6 +35,8 @@ import org.apache.xmlgraphics.image.loader.ImageFlavor;
 import org.apache.xmlgraphics.image.loader.ImageInfo;
 import org.apache.xmlgraphics.image.loader.ImageSessionContext;
 import org.apache.xmlgraphics.image.loader.util.ImageUtil;
+import org.apache.xmlgraphics.image.loader.util.MappedImageInputStream;
+import org.apache.xmlgraphics.image.rendered.SubsampledRed;
 
 /**
  * An ImageLoader implementation based on Commons' internal TIFF codec.
@@ -63,21 +64,28 @@ public class ImageLoaderInternalTIFF extends AbstractImageLoader {
                     throws ImageException, IOException {
 
         final Source src = session.needSource(info.getOriginalURI());
-        try (final ImageInputStream imgStream = ImageUtil
-                .needImageInputStream(src)) {
-
-            try (final SeekableStream seekStream = new ImageInputStreamSeekableStreamAdapter(
-                    imgStream)) {
-                try {
-                    final TIFFImage img = new TIFFImage(seekStream, null, 0);
-                    // TODO: This may ignore ICC Profiles stored in TIFF images.
-
-                    return new ImageRendered(info, img, null);
-                } catch (final RuntimeException e) {
-                    log.error("RuntimeException", e);
-                    throw new ImageException(
-                            "Could not load image with internal TIFF codec", e);
-                }
+        final ImageInputStream imgStream = ImageUtil.needImageInputStream(src);
+        boolean success = false;
+        try {
+            // TIFFImage reads tiles lazily, so the stream must stay open
+            // unless it is served independently from a memory mapping
+            final SeekableStream seekStream = ImageUtil
+                    .createSeekableStream(imgStream);
+            final TIFFImage img = new TIFFImage(seekStream, null, 0);
+            // TODO: This may ignore ICC Profiles stored in TIFF images.
+            success = true;
+            if (imgStream instanceof MappedImageInputStream) {
+                ImageUtil.closeQuietly(src);
+            }
+            return new ImageRendered(info, SubsampledRed.subsample(img,
+                    ImageUtil.getSourceSubsampling(hints)), null);
+        } catch (final RuntimeException e) {
+            log.error("RuntimeException", e);
+            throw new ImageException(
+                    "Could not load image with internal TIFF codec", e);
+        } finally {
+            if (!success) {
+                ImageUtil.closeQuietly(src);
             }
         }
     }
@@ -28,7 +28,6 @@ import javax.xml.transform.Source;
 
 import org.apache.xmlgraphics.image.codec.png.PNGDecodeParam;
 import org.apache.xmlgraphics.image.codec.png.PNGImageDecoder;
-import org.apache.xmlgraphics.image.codec.util.ImageInputStreamSeekableStreamAdapter;
 import org.apache.xmlgraphics.image.codec.util.SeekableStream;
 import org.apache.xmlgraphics.image.loader.Image;
 import org.apache.xmlgraphics.image.loader.ImageFlavor;
@@ -51,11 +50,13 @@ public class ImageLoaderPNG extends AbstractImageLoader {
         final Source src = session.needSource(info.getOriginalURI());
         try (ImageInputStream imgStream = ImageUtil.needImageInputStream(src)) {
 
-            try (SeekableStream seekStream = new ImageInputStreamSeekableStreamAdapter(
-                    imgStream)) {
+            try (SeekableStream seekStream = ImageUtil
+                    .createSeekableStream(imgStream)) {
 
+                final PNGDecodeParam param = new PNGDecodeParam();
+                param.setSubsampling(ImageUtil.getSourceSubsampling(hints));
                 final PNGImageDecoder decoder = new PNGImageDecoder(seekStream,
-                        new PNGDecodeParam());
+                        param);
                 final RenderedImage image = decoder.decodeAsRenderedImage();
 
                 // need transparency here?
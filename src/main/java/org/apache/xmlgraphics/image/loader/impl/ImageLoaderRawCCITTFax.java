@@ -85,7 +85,10 @@ JPEGConstants {
         TIFFDirectory dir;
 
         final Source src = session.needSource(info.getOriginalURI());
-        try (final ImageInputStream in = ImageUtil.needImageInputStream(src)) {
+        final ImageInputStream in = ImageUtil.needImageInputStream(src);
+        // The raw image reads the strip lazily, so the stream must stay open
+        boolean success = false;
+        try {
             in.mark();
             try {
                 final SeekableStream seekable = new SeekableStreamAdapter(in);
@@ -164,7 +167,12 @@ JPEGConstants {
                     compression);
             // Strip stream from source as we pass it on internally
             ImageUtil.removeStreams(src);
+            success = true;
             return rawImage;
+        } finally {
+            if (!success) {
+                ImageUtil.closeQuietly(src);
+            }
         }
     }
 
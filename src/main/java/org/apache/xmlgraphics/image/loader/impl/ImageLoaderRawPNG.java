@@ -21,19 +21,21 @@
 
 package org.apache.xmlgraphics.image.loader.impl;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.util.Map;
 
 import javax.imageio.stream.ImageInputStream;
 import javax.xml.transform.Source;
 
-import org.apache.xmlgraphics.image.codec.util.ImageInputStreamSeekableStreamAdapter;
+import org.apache.commons.io.IOUtils;
 import org.apache.xmlgraphics.image.codec.util.SeekableStream;
 import org.apache.xmlgraphics.image.loader.Image;
 import org.apache.xmlgraphics.image.loader.ImageException;
 import org.apache.xmlgraphics.image.loader.ImageFlavor;
 import org.apache.xmlgraphics.image.loader.ImageInfo;
 import org.apache.xmlgraphics.image.loader.ImageSessionContext;
+import org.apache.xmlgraphics.image.loader.cache.PersistentImageCache;
 import org.apache.xmlgraphics.image.loader.util.ImageUtil;
 import org.apache.xmlgraphics.util.MimeConstants;
 
@@ -63,15 +65,35 @@ public class ImageLoaderRawPNG extends AbstractImageLoader {
         }
 
         final Source src = session.needSource(info.getOriginalURI());
+        final PersistentImageCache persistent = getPersistentCache(hints);
+        if (persistent != null && persistent.isRawPayloadsEnabled()) {
+            byte[] payload;
+            try {
+                payload = persistent.getRawPayload(info, getTargetFlavor(),
+                        src);
+                if (payload == null) {
+                    payload = IOUtils.toByteArray(ImageUtil
+                            .needInputStream(src));
+                    persistent.putRawPayload(info, getTargetFlavor(), src,
+                            payload);
+                }
+            } finally {
+                ImageUtil.closeQuietly(src);
+            }
+            final PNGFile im = new PNGFile(new ByteArrayInputStream(payload));
+            return im.getImageRawPNG(info);
+        }
+
         try (final ImageInputStream in = ImageUtil.needImageInputStream(src)) {
             // Remove streams as we do things with them at some later time.
             ImageUtil.removeStreams(src);
-            try (final SeekableStream seekStream = new ImageInputStreamSeekableStreamAdapter(
-                    in)) {
-                final PNGFile im = new PNGFile(seekStream);
-                final ImageRawPNG irpng = im.getImageRawPNG(info);
-                return irpng;
-            }
+            // PNGFile reads the image completely, so the ImageInputStream is
+            // closed (once) right after
+            final SeekableStream seekStream = ImageUtil
+                    .createSeekableStream(in);
+            final PNGFile im = new PNGFile(seekStream);
+            final ImageRawPNG irpng = im.getImageRawPNG(info);
+            return irpng;
         }
     }
 
@@ -63,6 +63,34 @@ public class ImageRawJPEG extends ImageRawStream {
         this.invertImage = invertImage;
     }
 
+    /**
+     * Constructor for content provided by an InputStreamFactory, for example a
+     * memory-mapped file that can be read many times.
+     * 
+     * @param info
+     *            the image info object
+     * @param streamFactory
+     *            the factory providing the raw content
+     * @param sofType
+     *            the SOFn identifier
+     * @param colorSpace
+     *            the color space
+     * @param iccProfile
+     *            an ICC color profile or null if no profile is associated
+     * @param invertImage
+     *            true if the image should be inverted when painting it
+     */
+    public ImageRawJPEG(final ImageInfo info,
+            final InputStreamFactory streamFactory, final int sofType,
+            final ColorSpace colorSpace, final ICC_Profile iccProfile,
+            final boolean invertImage) {
+        super(info, ImageFlavor.RAW_JPEG, streamFactory);
+        this.sofType = sofType;
+        this.colorSpace = colorSpace;
+        this.iccProfile = iccProfile;
+        this.invertImage = invertImage;
+    }
+
     /**
      * Returns the SOFn identifier of the image which describes the coding
      * format of the image.
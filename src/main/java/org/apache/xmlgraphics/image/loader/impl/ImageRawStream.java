@@ -25,11 +25,15 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.xmlgraphics.image.loader.ImageFlavor;
 import org.apache.xmlgraphics.image.loader.ImageInfo;
 import org.apache.xmlgraphics.image.loader.MimeEnabledImageFlavor;
+import org.apache.xmlgraphics.image.loader.util.ByteBufferInputStream;
 
 /**
  * This class is an implementation of the Image interface exposing an
@@ -113,6 +117,15 @@ public class ImageRawStream extends AbstractImage {
         this.streamFactory = factory;
     }
 
+    /**
+     * Returns the InputStreamFactory currently used by this image.
+     * 
+     * @return the InputStreamFactory
+     */
+    public InputStreamFactory getInputStreamFactory() {
+        return this.streamFactory;
+    }
+
     /**
      * Returns a new InputStream to access the raw image.
      * 
@@ -132,6 +145,10 @@ public class ImageRawStream extends AbstractImage {
      *             if an I/O error occurs
      */
     public void writeTo(final OutputStream out) throws IOException {
+        if (this.streamFactory instanceof ByteBufferStreamFactory) {
+            ((ByteBufferStreamFactory) this.streamFactory).writeTo(out);
+            return;
+        }
         final InputStream in = createInputStream();
         try {
             IOUtils.copy(in, out);
@@ -189,7 +206,7 @@ public class ImageRawStream extends AbstractImage {
      * InputStream factory that can return a pre-constructed InputStream exactly
      * once.
      */
-    private static class SingleStreamFactory implements InputStreamFactory {
+    static class SingleStreamFactory implements InputStreamFactory {
 
         private InputStream in;
 
@@ -245,6 +262,85 @@ public class ImageRawStream extends AbstractImage {
             return new ByteArrayInputStream(this.data);
         }
 
+        /**
+         * Returns the number of bytes held by this factory.
+         * 
+         * @return the number of bytes
+         */
+        public int getByteCount() {
+            return this.data.length;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void close() {
+            // nop
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean isUsedOnceOnly() {
+            return false;
+        }
+
+    }
+
+    /**
+     * InputStream factory that wraps a ByteBuffer, for example a memory-mapped
+     * file. Streams are served directly from the buffer.
+     */
+    public static class ByteBufferStreamFactory implements InputStreamFactory {
+
+        private final ByteBuffer buffer;
+
+        /**
+         * Main constructor.
+         * 
+         * @param buffer
+         *            the buffer (its remaining bytes are used)
+         */
+        public ByteBufferStreamFactory(final ByteBuffer buffer) {
+            this.buffer = buffer.slice();
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public InputStream createInputStream() {
+            return new ByteBufferInputStream(this.buffer);
+        }
+
+        /**
+         * Returns the number of bytes held by this factory.
+         * 
+         * @return the number of bytes
+         */
+        public int getByteCount() {
+            return this.buffer.limit();
+        }
+
+        /**
+         * Writes the data to an OutputStream without creating an intermediate
+         * InputStream. If the OutputStream is a FileOutputStream the data is
+         * transferred through its channel.
+         * 
+         * @param out
+         *            the OutputStream
+         * @throws IOException
+         *             if an I/O error occurs
+         */
+        public void writeTo(final OutputStream out) throws IOException {
+            final ByteBuffer view = this.buffer.duplicate();
+            if (view.hasArray()) {
+                out.write(view.array(), view.arrayOffset(), view.remaining());
+                return;
+            }
+            final WritableByteChannel channel = out instanceof FileOutputStream ? ((FileOutputStream) out)
+                    .getChannel() : Channels.newChannel(out);
+            while (view.hasRemaining()) {
+                channel.write(view);
+            }
+        }
+
         /** {@inheritDoc} */
         @Override
         public void close() {
@@ -33,6 +33,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.SequenceInputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -115,6 +116,9 @@ class PNGFile implements PNGConstants {
                     throw new RuntimeException(msg);
                 }
             } while (true);
+            if (this.streamVec.isEmpty()) {
+                throw new ImageException("Corrupt PNG: no image data (IDAT)");
+            }
         } finally {
             IOUtils.closeQuietly(distream);
         }
@@ -122,89 +126,87 @@ class PNGFile implements PNGConstants {
 
     public ImageRawPNG getImageRawPNG(final ImageInfo info)
             throws ImageException, IOException {
-        try (final InputStream seqStream = new SequenceInputStream(
-                Collections.enumeration(this.streamVec))) {
-            switch (this.colorType) {
-            case PNG_COLOR_GRAY:
-                if (this.hasPalette) {
-                    throw new ImageException(
-                            "Corrupt PNG: color palette is not allowed!");
-                }
-                this.colorModel = new ComponentColorModel(
-                        ColorSpace.getInstance(ColorSpace.CS_GRAY), false,
-                        false, Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
-                break;
-            case PNG_COLOR_RGB:
-                // actually a check of the sRGB chunk would be necessary to
-                // confirm
-                // if it's really sRGB
-                this.colorModel = new ComponentColorModel(
-                        ColorSpace.getInstance(ColorSpace.CS_sRGB), false,
-                        false, Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
-                break;
-            case PNG_COLOR_PALETTE:
-                if (this.hasAlphaPalette) {
-                    this.colorModel = new IndexColorModel(this.bitDepth,
-                            this.paletteEntries, this.redPalette,
-                            this.greenPalette, this.bluePalette,
-                            this.alphaPalette);
-                } else {
-                    this.colorModel = new IndexColorModel(this.bitDepth,
-                            this.paletteEntries, this.redPalette,
-                            this.greenPalette, this.bluePalette);
-                }
-                break;
-            case PNG_COLOR_GRAY_ALPHA:
-                if (this.hasPalette) {
-                    throw new ImageException(
-                            "Corrupt PNG: color palette is not allowed!");
-                }
-                this.colorModel = new ComponentColorModel(
-                        ColorSpace.getInstance(ColorSpace.CS_GRAY), true,
-                        false, Transparency.TRANSLUCENT, DataBuffer.TYPE_BYTE);
-                break;
-            case PNG_COLOR_RGB_ALPHA:
-                // actually a check of the sRGB chunk would be necessary to
-                // confirm
-                // if it's really sRGB
-                this.colorModel = new ComponentColorModel(
-                        ColorSpace.getInstance(ColorSpace.CS_sRGB), true,
-                        false, Transparency.TRANSLUCENT, DataBuffer.TYPE_BYTE);
-                break;
-            default:
-                throw new ImageException("Unsupported color type: "
-                        + this.colorType);
+        final InputStream seqStream = new SequenceInputStream(
+                Collections.enumeration(this.streamVec));
+        switch (this.colorType) {
+        case PNG_COLOR_GRAY:
+            if (this.hasPalette) {
+                throw new ImageException(
+                        "Corrupt PNG: color palette is not allowed!");
             }
-            // the iccProfile is still null for now
-            final ImageRawPNG rawImage = new ImageRawPNG(info, seqStream,
-                    this.colorModel, this.bitDepth, this.iccProfile);
-            if (this.isTransparent) {
-                if (this.colorType == PNG_COLOR_GRAY) {
-                    rawImage.setGrayTransparentAlpha(this.grayTransparentAlpha);
-                } else if (this.colorType == PNG_COLOR_RGB) {
-                    rawImage.setRGBTransparentAlpha(this.redTransparentAlpha,
-                            this.greenTransparentAlpha,
-                            this.blueTransparentAlpha);
-                } else if (this.colorType == PNG_COLOR_PALETTE) {
-                    rawImage.setTransparent();
-                } else {
-                    //
-                }
+            this.colorModel = createOpaqueColorModel(ColorSpace
+                    .getInstance(ColorSpace.CS_GRAY));
+            break;
+        case PNG_COLOR_RGB:
+            // actually a check of the sRGB chunk would be necessary to
+            // confirm
+            // if it's really sRGB
+            this.colorModel = createOpaqueColorModel(ColorSpace
+                    .getInstance(ColorSpace.CS_sRGB));
+            break;
+        case PNG_COLOR_PALETTE:
+            if (this.hasAlphaPalette) {
+                this.colorModel = new IndexColorModel(this.bitDepth,
+                        this.paletteEntries, this.redPalette,
+                        this.greenPalette, this.bluePalette,
+                        this.alphaPalette);
+            } else {
+                this.colorModel = new IndexColorModel(this.bitDepth,
+                        this.paletteEntries, this.redPalette,
+                        this.greenPalette, this.bluePalette);
+            }
+            break;
+        case PNG_COLOR_GRAY_ALPHA:
+            if (this.hasPalette) {
+                throw new ImageException(
+                        "Corrupt PNG: color palette is not allowed!");
+            }
+            this.colorModel = new ComponentColorModel(
+                    ColorSpace.getInstance(ColorSpace.CS_GRAY), true,
+                    false, Transparency.TRANSLUCENT, DataBuffer.TYPE_BYTE);
+            break;
+        case PNG_COLOR_RGB_ALPHA:
+            // actually a check of the sRGB chunk would be necessary to
+            // confirm
+            // if it's really sRGB
+            this.colorModel = new ComponentColorModel(
+                    ColorSpace.getInstance(ColorSpace.CS_sRGB), true,
+                    false, Transparency.TRANSLUCENT, DataBuffer.TYPE_BYTE);
+            break;
+        default:
+            throw new ImageException("Unsupported color type: "
+                    + this.colorType);
+        }
+        // the iccProfile is still null for now
+        final ImageRawPNG rawImage = new ImageRawPNG(info, seqStream,
+                this.colorModel, this.bitDepth, this.iccProfile);
+        if (this.isTransparent) {
+            if (this.colorType == PNG_COLOR_GRAY) {
+                rawImage.setGrayTransparentAlpha(this.grayTransparentAlpha);
+            } else if (this.colorType == PNG_COLOR_RGB) {
+                rawImage.setRGBTransparentAlpha(this.redTransparentAlpha,
+                        this.greenTransparentAlpha,
+                        this.blueTransparentAlpha);
+            } else if (this.colorType == PNG_COLOR_PALETTE) {
+                rawImage.setTransparent();
+            } else {
+                //
             }
-            return rawImage;
         }
+        return rawImage;
     }
 
     private void parse_IHDR_chunk(final PNGChunk chunk) {
         chunk.getInt4(0);
         chunk.getInt4(4);
         this.bitDepth = chunk.getInt1(8);
-        if (this.bitDepth != 8) {
-            // this is a limitation of the current implementation
+        this.colorType = chunk.getInt1(9);
+        if (!isSupportedBitDepth(this.colorType, this.bitDepth)) {
+            // images with alpha channel are limited to 8 bits in the current
+            // implementation
             throw new RuntimeException("Unsupported bit depth: "
                     + this.bitDepth);
         }
-        this.colorType = chunk.getInt1(9);
         final int compressionMethod = chunk.getInt1(10);
         if (compressionMethod != 0) {
             throw new RuntimeException("Unsupported PNG compression method: "
@@ -223,6 +225,31 @@ class PNGFile implements PNGConstants {
         }
     }
 
+    private static boolean isSupportedBitDepth(final int colorType,
+            final int bitDepth) {
+        switch (colorType) {
+        case PNG_COLOR_GRAY:
+            return bitDepth == 1 || bitDepth == 2 || bitDepth == 4
+                    || bitDepth == 8 || bitDepth == 16;
+        case PNG_COLOR_PALETTE:
+            return bitDepth == 1 || bitDepth == 2 || bitDepth == 4
+                    || bitDepth == 8;
+        case PNG_COLOR_RGB:
+            return bitDepth == 8 || bitDepth == 16;
+        default:
+            return bitDepth == 8;
+        }
+    }
+
+    private ColorModel createOpaqueColorModel(final ColorSpace cs) {
+        final int[] bits = new int[cs.getNumComponents()];
+        Arrays.fill(bits, this.bitDepth);
+        return new ComponentColorModel(cs, bits, false, false,
+                Transparency.OPAQUE,
+                this.bitDepth == 16 ? DataBuffer.TYPE_USHORT
+                        : DataBuffer.TYPE_BYTE);
+    }
+
     private void parse_PLTE_chunk(final PNGChunk chunk) {
         this.paletteEntries = chunk.getLength() / 3;
         this.redPalette = new byte[this.paletteEntries];
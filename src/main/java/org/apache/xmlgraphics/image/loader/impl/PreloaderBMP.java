@@ -29,13 +29,16 @@ import org.apache.xmlgraphics.image.loader.ImageContext;
 import org.apache.xmlgraphics.image.loader.ImageException;
 import org.apache.xmlgraphics.image.loader.ImageInfo;
 import org.apache.xmlgraphics.image.loader.ImageSize;
+import org.apache.xmlgraphics.image.loader.spi.ImageSignature;
+import org.apache.xmlgraphics.image.loader.spi.SignatureAwareImagePreloader;
 import org.apache.xmlgraphics.image.loader.util.ImageUtil;
 import org.apache.xmlgraphics.util.UnitConv;
 
 /**
  * Image preloader for BMP images.
  */
-public class PreloaderBMP extends AbstractImagePreloader {
+public class PreloaderBMP extends AbstractImagePreloader
+        implements SignatureAwareImagePreloader {
 
     /** Length of the BMP header */
     protected static final int BMP_SIG_LENGTH = 2;
@@ -43,6 +46,15 @@ public class PreloaderBMP extends AbstractImagePreloader {
     /** offset to width */
     private static final int WIDTH_OFFSET = 18;
 
+    private static final ImageSignature[] SIGNATURES = { new ImageSignature(
+            new byte[] { (byte) 0x42, (byte) 0x4d }) };
+
+    /** {@inheritDoc} */
+    @Override
+    public ImageSignature[] getSignatures() {
+        return SIGNATURES.clone();
+    }
+
     /** {@inheritDoc} */
     @Override
     public ImageInfo preloadImage(final String uri, final Source src,
@@ -50,18 +62,17 @@ public class PreloaderBMP extends AbstractImagePreloader {
         if (!ImageUtil.hasImageInputStream(src)) {
             return null;
         }
-        try (ImageInputStream in = ImageUtil.needImageInputStream(src)) {
-            final byte[] header = getHeader(in, BMP_SIG_LENGTH);
-            final boolean supported = header[0] == (byte) 0x42
-                    && header[1] == (byte) 0x4d;
-
-            if (supported) {
-                final ImageInfo info = new ImageInfo(uri, "image/bmp");
-                info.setSize(determineSize(in, context));
-                return info;
-            } else {
-                return null;
-            }
+        final ImageInputStream in = ImageUtil.needImageInputStream(src);
+        final byte[] header = getHeader(in, BMP_SIG_LENGTH);
+        final boolean supported = header[0] == (byte) 0x42
+                && header[1] == (byte) 0x4d;
+
+        if (supported) {
+            final ImageInfo info = new ImageInfo(uri, "image/bmp");
+            info.setSize(determineSize(in, context));
+            return info;
+        } else {
+            return null;
         }
     }
 
@@ -29,13 +29,16 @@ import org.apache.xmlgraphics.image.loader.ImageContext;
 import org.apache.xmlgraphics.image.loader.ImageException;
 import org.apache.xmlgraphics.image.loader.ImageInfo;
 import org.apache.xmlgraphics.image.loader.ImageSize;
+import org.apache.xmlgraphics.image.loader.spi.ImageSignature;
+import org.apache.xmlgraphics.image.loader.spi.SignatureAwareImagePreloader;
 import org.apache.xmlgraphics.image.loader.util.ImageUtil;
 import org.apache.xmlgraphics.util.UnitConv;
 
 /**
  * Image preloader for EMF images.
  */
-public class PreloaderEMF extends AbstractImagePreloader {
+public class PreloaderEMF extends AbstractImagePreloader
+        implements SignatureAwareImagePreloader {
 
     /** Length of the EMF header */
     protected static final int EMF_SIG_LENGTH = 88;
@@ -47,6 +50,16 @@ public class PreloaderEMF extends AbstractImagePreloader {
     /** offset to horizontal resolution in pixel */
     private static final int HRES_PIXEL_OFFSET = 72;
 
+    private static final ImageSignature[] SIGNATURES = { new ImageSignature(
+            SIGNATURE_OFFSET, new byte[] { (byte) 0x20, (byte) 0x45,
+                    (byte) 0x4D, (byte) 0x46 }) };
+
+    /** {@inheritDoc} */
+    @Override
+    public ImageSignature[] getSignatures() {
+        return SIGNATURES.clone();
+    }
+
     /** {@inheritDoc} */
     @Override
     public ImageInfo preloadImage(final String uri, final Source src,
@@ -54,20 +67,19 @@ public class PreloaderEMF extends AbstractImagePreloader {
         if (!ImageUtil.hasImageInputStream(src)) {
             return null;
         }
-        try (ImageInputStream in = ImageUtil.needImageInputStream(src)) {
-            final byte[] header = getHeader(in, EMF_SIG_LENGTH);
-            final boolean supported = header[SIGNATURE_OFFSET + 0] == (byte) 0x20
-                    && header[SIGNATURE_OFFSET + 1] == (byte) 0x45
-                    && header[SIGNATURE_OFFSET + 2] == (byte) 0x4D
-                    && header[SIGNATURE_OFFSET + 3] == (byte) 0x46;
-
-            if (supported) {
-                final ImageInfo info = new ImageInfo(uri, "image/emf");
-                info.setSize(determineSize(in, context));
-                return info;
-            } else {
-                return null;
-            }
+        final ImageInputStream in = ImageUtil.needImageInputStream(src);
+        final byte[] header = getHeader(in, EMF_SIG_LENGTH);
+        final boolean supported = header[SIGNATURE_OFFSET + 0] == (byte) 0x20
+                && header[SIGNATURE_OFFSET + 1] == (byte) 0x45
+                && header[SIGNATURE_OFFSET + 2] == (byte) 0x4D
+                && header[SIGNATURE_OFFSET + 3] == (byte) 0x46;
+
+        if (supported) {
+            final ImageInfo info = new ImageInfo(uri, "image/emf");
+            info.setSize(determineSize(in, context));
+            return info;
+        } else {
+            return null;
         }
     }
 
@@ -21,6 +21,7 @@ package org.apache.xmlgraphics.image.loader.impl;
 
 import java.awt.geom.Rectangle2D;
 import java.io.IOException;
+import java.io.Serializable;
 import java.nio.ByteOrder;
 
 import javax.imageio.stream.ImageInputStream;
@@ -31,6 +32,8 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.xmlgraphics.image.loader.ImageContext;
 import org.apache.xmlgraphics.image.loader.ImageInfo;
 import org.apache.xmlgraphics.image.loader.ImageSize;
+import org.apache.xmlgraphics.image.loader.spi.ImageSignature;
+import org.apache.xmlgraphics.image.loader.spi.SignatureAwareImagePreloader;
 import org.apache.xmlgraphics.image.loader.util.ImageInputStreamAdapter;
 import org.apache.xmlgraphics.image.loader.util.ImageUtil;
 import org.apache.xmlgraphics.ps.DSCConstants;
@@ -46,7 +49,8 @@ import org.apache.xmlgraphics.util.MimeConstants;
  * Image preloader for EPS images (Encapsulated PostScript).
  */
 @Slf4j
-public class PreloaderEPS extends AbstractImagePreloader {
+public class PreloaderEPS extends AbstractImagePreloader
+        implements SignatureAwareImagePreloader {
 
     /**
      * Key for binary header object used in custom objects of the ImageInfo
@@ -56,6 +60,18 @@ public class PreloaderEPS extends AbstractImagePreloader {
     /** Key for bounding box used in custom objects of the ImageInfo class. */
     public static final Class<Rectangle2D> EPS_BOUNDING_BOX = Rectangle2D.class;
 
+    /** The binary header and the plain "%!PS" start of an EPS file */
+    private static final ImageSignature[] SIGNATURES = {
+            new ImageSignature(new byte[] { (byte) 0xC5, (byte) 0xD0,
+                    (byte) 0xD3, (byte) 0xC6 }),
+            new ImageSignature(new byte[] { '%', '!', 'P', 'S' }) };
+
+    /** {@inheritDoc} */
+    @Override
+    public ImageSignature[] getSignatures() {
+        return SIGNATURES.clone();
+    }
+
     /** {@inheritDoc} */
     @Override
     public ImageInfo preloadImage(final String uri, final Source src,
@@ -63,56 +79,55 @@ public class PreloaderEPS extends AbstractImagePreloader {
         if (!ImageUtil.hasImageInputStream(src)) {
             return null;
         }
-        try (final ImageInputStream in = ImageUtil.needImageInputStream(src)) {
-            in.mark();
-            final ByteOrder originalByteOrder = in.getByteOrder();
-            in.setByteOrder(ByteOrder.LITTLE_ENDIAN);
-            EPSBinaryFileHeader binaryHeader = null;
-            try {
-                long magic = in.readUnsignedInt();
-                magic &= 0xFFFFFFFFL; // Work-around for bug in Java 1.4.2
-                // Check if binary header
-                boolean supported = false;
-                if (magic == 0xC6D3D0C5L) {
-                    supported = true; // binary EPS
+        final ImageInputStream in = ImageUtil.needImageInputStream(src);
+        in.mark();
+        final ByteOrder originalByteOrder = in.getByteOrder();
+        in.setByteOrder(ByteOrder.LITTLE_ENDIAN);
+        EPSBinaryFileHeader binaryHeader = null;
+        try {
+            long magic = in.readUnsignedInt();
+            magic &= 0xFFFFFFFFL; // Work-around for bug in Java 1.4.2
+            // Check if binary header
+            boolean supported = false;
+            if (magic == 0xC6D3D0C5L) {
+                supported = true; // binary EPS
 
-                    binaryHeader = readBinaryFileHeader(in);
-                    in.reset();
-                    in.mark(); // Mark start of file again
-                    in.seek(binaryHeader.psStart);
+                binaryHeader = readBinaryFileHeader(in);
+                in.reset();
+                in.mark(); // Mark start of file again
+                in.seek(binaryHeader.psStart);
 
-                } else if (magic == 0x53502125L) { // "%!PS" in little endian
-                    supported = true; // ascii EPS
-                    in.reset();
-                    in.mark(); // Mark start of file again
-                } else {
-                    in.reset();
-                }
+            } else if (magic == 0x53502125L) { // "%!PS" in little endian
+                supported = true; // ascii EPS
+                in.reset();
+                in.mark(); // Mark start of file again
+            } else {
+                in.reset();
+            }
 
-                if (supported) {
-                    final ImageInfo info = new ImageInfo(uri,
-                            MimeConstants.MIME_EPS);
-                    final boolean success = determineSize(in, context, info);
-                    in.reset(); // Need to go back to start of file
-                    if (!success) {
-                        // No BoundingBox found, so probably no EPS
-                        return null;
-                    }
-                    if (in.getStreamPosition() != 0) {
-                        throw new IllegalStateException(
-                                "Need to be at the start of the file here");
-                    }
-                    if (binaryHeader != null) {
-                        info.getCustomObjects().put(EPS_BINARY_HEADER,
-                                binaryHeader);
-                    }
-                    return info;
-                } else {
+            if (supported) {
+                final ImageInfo info = new ImageInfo(uri,
+                        MimeConstants.MIME_EPS);
+                final boolean success = determineSize(in, context, info);
+                in.reset(); // Need to go back to start of file
+                if (!success) {
+                    // No BoundingBox found, so probably no EPS
                     return null;
                 }
-            } finally {
-                in.setByteOrder(originalByteOrder);
+                if (in.getStreamPosition() != 0) {
+                    throw new IllegalStateException(
+                            "Need to be at the start of the file here");
+                }
+                if (binaryHeader != null) {
+                    info.getCustomObjects().put(EPS_BINARY_HEADER,
+                            binaryHeader);
+                }
+                return info;
+            } else {
+                return null;
             }
+        } finally {
+            in.setByteOrder(originalByteOrder);
         }
     }
 
@@ -194,7 +209,9 @@ public class PreloaderEPS extends AbstractImagePreloader {
     /**
      * Holder class for various pointers to the contents of the EPS file.
      */
-    public static class EPSBinaryFileHeader {
+    public static class EPSBinaryFileHeader implements Serializable {
+
+        private static final long serialVersionUID = 1L;
 
         private long psStart = 0;
         private long psLength = 0;
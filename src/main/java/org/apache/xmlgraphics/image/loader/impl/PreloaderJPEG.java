@@ -28,6 +28,8 @@ import org.apache.xmlgraphics.image.loader.ImageContext;
 import org.apache.xmlgraphics.image.loader.ImageException;
 import org.apache.xmlgraphics.image.loader.ImageInfo;
 import org.apache.xmlgraphics.image.loader.ImageSize;
+import org.apache.xmlgraphics.image.loader.spi.ImageSignature;
+import org.apache.xmlgraphics.image.loader.spi.SignatureAwareImagePreloader;
 import org.apache.xmlgraphics.image.loader.util.ImageUtil;
 import org.apache.xmlgraphics.util.MimeConstants;
 import org.apache.xmlgraphics.util.UnitConv;
@@ -36,9 +38,17 @@ import org.apache.xmlgraphics.util.UnitConv;
  * Image preloader for JPEG images.
  */
 public class PreloaderJPEG extends AbstractImagePreloader implements
-        JPEGConstants {
+        SignatureAwareImagePreloader, JPEGConstants {
 
     private static final int JPG_SIG_LENGTH = 3;
+    private static final ImageSignature[] SIGNATURES = { new ImageSignature(
+            new byte[] { (byte) MARK, (byte) SOI, (byte) MARK }) };
+
+    /** {@inheritDoc} */
+    @Override
+    public ImageSignature[] getSignatures() {
+        return SIGNATURES.clone();
+    }
 
     /**
      * {@inheritDoc}
@@ -51,19 +61,18 @@ public class PreloaderJPEG extends AbstractImagePreloader implements
         if (!ImageUtil.hasImageInputStream(src)) {
             return null;
         }
-        try (ImageInputStream in = ImageUtil.needImageInputStream(src)) {
-            final byte[] header = getHeader(in, JPG_SIG_LENGTH);
-            final boolean supported = header[0] == (byte) MARK
-                    && header[1] == (byte) SOI && header[2] == (byte) MARK;
+        final ImageInputStream in = ImageUtil.needImageInputStream(src);
+        final byte[] header = getHeader(in, JPG_SIG_LENGTH);
+        final boolean supported = header[0] == (byte) MARK
+                && header[1] == (byte) SOI && header[2] == (byte) MARK;
 
-            if (supported) {
-                final ImageInfo info = new ImageInfo(uri,
-                        MimeConstants.MIME_JPEG);
-                info.setSize(determineSize(in, context));
-                return info;
-            } else {
-                return null;
-            }
+        if (supported) {
+            final ImageInfo info = new ImageInfo(uri,
+                    MimeConstants.MIME_JPEG);
+            info.setSize(determineSize(in, context));
+            return info;
+        } else {
+            return null;
         }
     }
 
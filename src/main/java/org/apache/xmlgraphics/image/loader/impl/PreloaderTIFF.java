@@ -36,8 +36,9 @@ import org.apache.xmlgraphics.image.loader.ImageException;
 import org.apache.xmlgraphics.image.loader.ImageInfo;
 import org.apache.xmlgraphics.image.loader.ImageSize;
 import org.apache.xmlgraphics.image.loader.SubImageNotFoundException;
+import org.apache.xmlgraphics.image.loader.spi.ImageSignature;
+import org.apache.xmlgraphics.image.loader.spi.SignatureAwareImagePreloader;
 import org.apache.xmlgraphics.image.loader.util.ImageUtil;
-import org.apache.xmlgraphics.image.loader.util.SeekableStreamAdapter;
 import org.apache.xmlgraphics.util.MimeConstants;
 import org.apache.xmlgraphics.util.UnitConv;
 
@@ -48,10 +49,22 @@ import org.apache.xmlgraphics.util.UnitConv;
  * Commons for access to the TIFF directory.
  */
 @Slf4j
-public class PreloaderTIFF extends AbstractImagePreloader {
+public class PreloaderTIFF extends AbstractImagePreloader
+        implements SignatureAwareImagePreloader {
 
     private static final int TIFF_SIG_LENGTH = 8;
 
+    /** Little endian ("II") and big endian ("MM") TIFF headers */
+    private static final ImageSignature[] SIGNATURES = {
+            new ImageSignature(new byte[] { 0x49, 0x49, 42, 0 }),
+            new ImageSignature(new byte[] { 0x4D, 0x4D, 0, 42 }) };
+
+    /** {@inheritDoc} */
+    @Override
+    public ImageSignature[] getSignatures() {
+        return SIGNATURES.clone();
+    }
+
     /**
      * {@inheritDoc}
      * 
@@ -63,34 +76,33 @@ public class PreloaderTIFF extends AbstractImagePreloader {
         if (!ImageUtil.hasImageInputStream(src)) {
             return null;
         }
-        try (final ImageInputStream in = ImageUtil.needImageInputStream(src)) {
-            final byte[] header = getHeader(in, TIFF_SIG_LENGTH);
-            boolean supported = false;
+        final ImageInputStream in = ImageUtil.needImageInputStream(src);
+        final byte[] header = getHeader(in, TIFF_SIG_LENGTH);
+        boolean supported = false;
 
-            // first 2 bytes = II (little endian encoding)
-            if (header[0] == (byte) 0x49 && header[1] == (byte) 0x49) {
+        // first 2 bytes = II (little endian encoding)
+        if (header[0] == (byte) 0x49 && header[1] == (byte) 0x49) {
 
-                // look for '42' in byte 3 and '0' in byte 4
-                if (header[2] == 42 && header[3] == 0) {
-                    supported = true;
-                }
+            // look for '42' in byte 3 and '0' in byte 4
+            if (header[2] == 42 && header[3] == 0) {
+                supported = true;
             }
+        }
 
-            // first 2 bytes == MM (big endian encoding)
-            if (header[0] == (byte) 0x4D && header[1] == (byte) 0x4D) {
+        // first 2 bytes == MM (big endian encoding)
+        if (header[0] == (byte) 0x4D && header[1] == (byte) 0x4D) {
 
-                // look for '42' in byte 4 and '0' in byte 3
-                if (header[2] == 0 && header[3] == 42) {
-                    supported = true;
-                }
+            // look for '42' in byte 4 and '0' in byte 3
+            if (header[2] == 0 && header[3] == 42) {
+                supported = true;
             }
+        }
 
-            if (supported) {
-                final ImageInfo info = createImageInfo(uri, in, context);
-                return info;
-            } else {
-                return null;
-            }
+        if (supported) {
+            final ImageInfo info = createImageInfo(uri, in, context);
+            return info;
+        } else {
+            return null;
         }
     }
 
@@ -99,7 +111,7 @@ public class PreloaderTIFF extends AbstractImagePreloader {
             throws IOException, ImageException {
         ImageInfo info = null;
         in.mark();
-        try (final SeekableStream seekable = new SeekableStreamAdapter(in)) {
+        try (final SeekableStream seekable = ImageUtil.createSeekableStream(in)) {
             try {
                 final int pageIndex = ImageUtil.needPageIndexFromURI(uri);
 
@@ -53,7 +53,6 @@ import javax.xml.transform.Source;
 
 import lombok.extern.slf4j.Slf4j;
 
-import org.apache.commons.io.IOUtils;
 import org.apache.xmlgraphics.image.loader.Image;
 import org.apache.xmlgraphics.image.loader.ImageException;
 import org.apache.xmlgraphics.image.loader.ImageFlavor;
@@ -126,6 +125,12 @@ public class ImageLoaderImageIO extends AbstractImageLoader {
                 try {
                     imgStream.mark();
                     final ImageReadParam param = reader.getDefaultReadParam();
+                    final int subsampling = ImageUtil
+                            .getSourceSubsampling(hints);
+                    if (subsampling > 1) {
+                        param.setSourceSubsampling(subsampling, subsampling,
+                                0, 0);
+                    }
                     reader.setInput(imgStream, false, ignoreMetadata);
                     final int pageIndex = ImageUtil.needPageIndexFromURI(info
                             .getOriginalURI());
@@ -151,7 +156,6 @@ public class ImageLoaderImageIO extends AbstractImageLoader {
                         break; // Quit early, we have the image
                     } catch (final IndexOutOfBoundsException indexe) {
                         log.error("IndexOutOfBoundsException", indexe);
-                        IOUtils.closeQuietly(imgStream);
                         throw new ImageException(
                                 "Page does not exist. Invalid image index: "
                                         + pageIndex);
@@ -161,7 +165,6 @@ public class ImageLoaderImageIO extends AbstractImageLoader {
                         // com.sun.imageio.plugins.wbmp.WBMPImageReader throw
                         // IllegalArgumentExceptions when they have trouble
                         // parsing the image.
-                        IOUtils.closeQuietly(imgStream);
                         throw new ImageException(
                                 "Error loading image using ImageIO codec", iae);
                     } catch (final IIOException iioe) {
@@ -191,16 +194,15 @@ public class ImageLoaderImageIO extends AbstractImageLoader {
                 }
             }
         } finally {
+            // also closes imgStream, which belongs to src
             ImageUtil.closeQuietly(src);
             // TODO Some codecs may do late reading.
         }
         if (firstException != null) {
-            IOUtils.closeQuietly(imgStream);
             throw new ImageException("Error while loading image: "
                     + firstException.getMessage(), firstException);
         }
         if (imageData == null) {
-            IOUtils.closeQuietly(imgStream);
             throw new ImageException("No ImageIO ImageReader found .");
         }
 
@@ -269,11 +271,9 @@ public class ImageLoaderImageIO extends AbstractImageLoader {
         }
 
         if (ImageFlavor.BUFFERED_IMAGE.equals(this.targetFlavor)) {
-            IOUtils.closeQuietly(imgStream);
             return new ImageBuffered(info, (BufferedImage) imageData,
                     transparentColor);
         } else {
-            IOUtils.closeQuietly(imgStream);
             return new ImageRendered(info, imageData, transparentColor);
         }
     }
@@ -58,73 +58,72 @@ public class PreloaderImageIO extends AbstractImagePreloader {
         if (!ImageUtil.hasImageInputStream(src)) {
             return null;
         }
-        try (ImageInputStream in = ImageUtil.needImageInputStream(src)) {
-            final Iterator<ImageReader> iter = ImageIO.getImageReaders(in);
-            if (!iter.hasNext()) {
-                return null;
-            }
-
-            IOException firstIOException = null;
-            IIOMetadata iiometa = null;
-            ImageSize size = null;
-            String mime = null;
-            while (iter.hasNext()) {
-                in.mark();
-
-                final ImageReader reader = iter.next();
-                try {
-                    reader.setInput(ImageUtil.ignoreFlushing(in), true, false);
-                    final int imageIndex = 0;
-                    iiometa = reader.getImageMetadata(imageIndex);
-                    size = new ImageSize();
-                    size.setSizeInPixels(reader.getWidth(imageIndex),
-                            reader.getHeight(imageIndex));
-                    mime = reader.getOriginatingProvider().getMIMETypes()[0];
-                    break;
-                } catch (final IOException ioe) {
-                    log.error("IOException", ioe);
-                    // remember the first exception, ignore all others and
-                    // continue
-                    if (firstIOException == null) {
-                        firstIOException = ioe;
-                    }
-                } finally {
-                    reader.dispose();
-                    in.reset();
-                }
-            }
+        final ImageInputStream in = ImageUtil.needImageInputStream(src);
+        final Iterator<ImageReader> iter = ImageIO.getImageReaders(in);
+        if (!iter.hasNext()) {
+            return null;
+        }
 
-            if (iiometa == null) {
+        IOException firstIOException = null;
+        IIOMetadata iiometa = null;
+        ImageSize size = null;
+        String mime = null;
+        while (iter.hasNext()) {
+            in.mark();
+
+            final ImageReader reader = iter.next();
+            try {
+                reader.setInput(ImageUtil.ignoreFlushing(in), true, false);
+                final int imageIndex = 0;
+                iiometa = reader.getImageMetadata(imageIndex);
+                size = new ImageSize();
+                size.setSizeInPixels(reader.getWidth(imageIndex),
+                        reader.getHeight(imageIndex));
+                mime = reader.getOriginatingProvider().getMIMETypes()[0];
+                break;
+            } catch (final IOException ioe) {
+                log.error("IOException", ioe);
+                // remember the first exception, ignore all others and
+                // continue
                 if (firstIOException == null) {
-                    throw new ImageException("Could not extract image metadata");
-                } else {
-                    throw new ImageException(
-                            "I/O error while extracting image metadata"
-                                    + (firstIOException.getMessage() != null ? ": "
-                                            + firstIOException.getMessage()
-                                            : ""), firstIOException);
+                    firstIOException = ioe;
                 }
+            } finally {
+                reader.dispose();
+                in.reset();
             }
+        }
 
-            // Resolution (first a default, then try to read the metadata)
-            size.setResolution(context.getSourceResolution());
-            ImageIOUtil.extractResolution(iiometa, size);
-            if (size.getWidthPx() <= 0 || size.getHeightPx() <= 0) {
-                // Watch out for a special case: a TGA image was erroneously
-                // identified
-                // as a WBMP image by a Sun ImageIO codec.
-                return null;
+        if (iiometa == null) {
+            if (firstIOException == null) {
+                throw new ImageException("Could not extract image metadata");
+            } else {
+                throw new ImageException(
+                        "I/O error while extracting image metadata"
+                                + (firstIOException.getMessage() != null ? ": "
+                                        + firstIOException.getMessage()
+                                        : ""), firstIOException);
             }
-            if (size.getWidthMpt() == 0) {
-                size.calcSizeFromPixels();
-            }
-
-            final ImageInfo info = new ImageInfo(uri, mime);
-            info.getCustomObjects().put(ImageIOUtil.IMAGEIO_METADATA, iiometa);
-            info.setSize(size);
+        }
 
-            return info;
+        // Resolution (first a default, then try to read the metadata)
+        size.setResolution(context.getSourceResolution());
+        ImageIOUtil.extractResolution(iiometa, size);
+        if (size.getWidthPx() <= 0 || size.getHeightPx() <= 0) {
+            // Watch out for a special case: a TGA image was erroneously
+            // identified
+            // as a WBMP image by a Sun ImageIO codec.
+            return null;
         }
+        if (size.getWidthMpt() == 0) {
+            size.calcSizeFromPixels();
+        }
+
+        final ImageInfo info = new ImageInfo(uri, mime);
+        info.getCustomObjects().put(ImageIOUtil.IMAGEIO_METADATA, iiometa);
+        info.setSize(size);
+
+        return info;
     }
 
     /** {@inheritDoc} */
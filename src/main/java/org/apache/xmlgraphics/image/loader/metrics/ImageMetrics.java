@@ -0,0 +1,426 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.loader.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.xmlgraphics.image.loader.Image;
+import org.apache.xmlgraphics.image.loader.ImageInfo;
+import org.apache.xmlgraphics.image.loader.ImageManager;
+import org.apache.xmlgraphics.image.loader.cache.BoundedImageCacheBackend;
+import org.apache.xmlgraphics.image.loader.cache.ImageCache;
+import org.apache.xmlgraphics.image.loader.cache.ImageCacheBackendListener;
+import org.apache.xmlgraphics.image.loader.cache.ImageCacheListener;
+import org.apache.xmlgraphics.image.loader.cache.ImageKey;
+import org.apache.xmlgraphics.image.loader.pipeline.ImageProviderPipeline;
+import org.apache.xmlgraphics.image.loader.spi.ImageConverter;
+import org.apache.xmlgraphics.image.loader.spi.ImageLoader;
+
+/**
+ * Thread-safe metrics registry for the image loading subsystem. It records
+ * counters, latency histograms for preloading, loading, each conversion step
+ * and each converter chain, and the bytes retained by the image cache per
+ * flavor. Use {@link #install(ImageManager)} to attach it to an ImageManager
+ * and, optionally, {@link #registerMBean(String)} to publish it through JMX.
+ */
+public class ImageMetrics implements ImageMetricsListener, ImageCacheListener,
+        ImageCacheBackendListener, ImageMetricsMXBean {
+
+    private static final String FAILED = "failed";
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    private final AtomicLong preloads = new AtomicLong();
+    private final AtomicLong preloadFailures = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong conversions = new AtomicLong();
+    private final AtomicLong imageInfoHits = new AtomicLong();
+    private final AtomicLong imageInfoMisses = new AtomicLong();
+    private final AtomicLong imageHits = new AtomicLong();
+    private final AtomicLong imageMisses = new AtomicLong();
+    private final AtomicLong invalidHits = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private final ConcurrentMap<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AtomicLong> retainedBytes = new ConcurrentHashMap<>();
+
+    /**
+     * Attaches this registry to an ImageManager: it becomes the manager's
+     * metrics listener and the listener of its image cache. If the cache uses
+     * a {@link BoundedImageCacheBackend}, the retained bytes and evictions are
+     * tracked, too. Any previously set listeners are replaced.
+     *
+     * @param manager
+     *            the image manager
+     */
+    public void install(final ImageManager manager) {
+        manager.setMetricsListener(this);
+        final ImageCache cache = manager.getCache();
+        if (cache != null) {
+            cache.setCacheListener(this);
+            if (cache.getImageBackend() instanceof BoundedImageCacheBackend) {
+                ((BoundedImageCacheBackend) cache.getImageBackend())
+                        .setListener(this);
+            }
+        }
+    }
+
+    /**
+     * Registers this registry with the platform MBean server.
+     *
+     * @param name
+     *            the object name, for example
+     *            "org.apache.xmlgraphics:type=ImageMetrics"
+     * @return the object name the MBean is registered under
+     * @throws JMException
+     *             if the registration fails
+     */
+    public ObjectName registerMBean(final String name) throws JMException {
+        final ObjectName objectName = new ObjectName(name);
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        server.registerMBean(this, objectName);
+        return objectName;
+    }
+
+    /**
+     * Removes an MBean registered with {@link #registerMBean(String)}.
+     *
+     * @param objectName
+     *            the object name
+     * @throws JMException
+     *             if the MBean cannot be unregistered
+     */
+    public void unregisterMBean(final ObjectName objectName)
+            throws JMException {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+    }
+
+    /**
+     * Returns the latency histogram for a key, creating it if necessary. See
+     * {@link ImageMetricsMXBean} for the key format.
+     *
+     * @param key
+     *            the latency key
+     * @return the histogram
+     */
+    public LatencyHistogram getLatency(final String key) {
+        LatencyHistogram histogram = this.latencies.get(key);
+        if (histogram == null) {
+            histogram = new LatencyHistogram();
+            final LatencyHistogram existing = this.latencies.putIfAbsent(key,
+                    histogram);
+            if (existing != null) {
+                histogram = existing;
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * Returns all latency histograms sorted by key.
+     *
+     * @return a map from latency key to histogram
+     */
+    public Map<String, LatencyHistogram> getLatencies() {
+        return Collections.unmodifiableMap(new TreeMap<>(this.latencies));
+    }
+
+    // ImageMetricsListener
+
+    /** {@inheritDoc} */
+    @Override
+    public void imagePreloaded(final String uri, final ImageInfo info,
+            final long nanos) {
+        this.preloads.incrementAndGet();
+        if (info == null) {
+            this.preloadFailures.incrementAndGet();
+        }
+        getLatency("preload:" + (info != null ? info.getMimeType() : FAILED))
+                .record(nanos);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void imageLoaded(final ImageLoader loader, final ImageInfo info,
+            final Image image, final long nanos) {
+        this.loads.incrementAndGet();
+        getLatency("load:" + name(loader) + ":" + info.getMimeType()).record(
+                nanos);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void imageConverted(final ImageConverter converter,
+            final Image source, final Image result, final long nanos) {
+        this.conversions.incrementAndGet();
+        getLatency("convert:" + name(converter) + ":"
+                + source.getFlavor().getName() + "->"
+                + result.getFlavor().getName()).record(nanos);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void pipelineExecuted(final ImageProviderPipeline pipeline,
+            final ImageInfo info, final Image image, final long nanos) {
+        final StringBuilder chain = new StringBuilder("pipeline:");
+        chain.append(pipeline.getImageLoader() != null ? name(pipeline
+                .getImageLoader()) : "-");
+        for (final ImageConverter converter : pipeline.getConverters()) {
+            chain.append("->").append(name(converter));
+        }
+        getLatency(chain.toString()).record(nanos);
+    }
+
+    private static String name(final Object obj) {
+        return obj.getClass().getSimpleName().length() > 0 ? obj.getClass()
+                .getSimpleName() : obj.getClass().getName();
+    }
+
+    // ImageCacheListener
+
+    /** {@inheritDoc} */
+    @Override
+    public void invalidHit(final String uri) {
+        this.invalidHits.incrementAndGet();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void cacheHitImageInfo(final String uri) {
+        this.imageInfoHits.incrementAndGet();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void cacheMissImageInfo(final String uri) {
+        this.imageInfoMisses.incrementAndGet();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void cacheHitImage(final ImageKey key) {
+        this.imageHits.incrementAndGet();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void cacheMissImage(final ImageKey key) {
+        this.imageMisses.incrementAndGet();
+    }
+
+    // ImageCacheBackendListener
+
+    /** {@inheritDoc} */
+    @Override
+    public void entryAdded(final Object key, final Object value,
+            final long weight) {
+        retained(value).addAndGet(weight);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void entryRemoved(final Object key, final Object value,
+            final long weight, final boolean evicted) {
+        retained(value).addAndGet(-weight);
+        if (evicted) {
+            this.evictions.incrementAndGet();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void entryRejected(final Object key, final Object value,
+            final long weight) {
+        this.evictions.incrementAndGet();
+    }
+
+    private AtomicLong retained(final Object value) {
+        final String flavor = value instanceof Image ? ((Image) value)
+                .getFlavor().getName() : "unknown";
+        AtomicLong bytes = this.retainedBytes.get(flavor);
+        if (bytes == null) {
+            bytes = new AtomicLong();
+            final AtomicLong existing = this.retainedBytes.putIfAbsent(flavor,
+                    bytes);
+            if (existing != null) {
+                bytes = existing;
+            }
+        }
+        return bytes;
+    }
+
+    // ImageMetricsMXBean
+
+    /** {@inheritDoc} */
+    @Override
+    public long getPreloadCount() {
+        return this.preloads.get();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getPreloadFailureCount() {
+        return this.preloadFailures.get();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getLoadCount() {
+        return this.loads.get();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getConversionCount() {
+        return this.conversions.get();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getImageInfoCacheHits() {
+        return this.imageInfoHits.get();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getImageInfoCacheMisses() {
+        return this.imageInfoMisses.get();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getImageCacheHits() {
+        return this.imageHits.get();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getImageCacheMisses() {
+        return this.imageMisses.get();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getInvalidHits() {
+        return this.invalidHits.get();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getEvictionCount() {
+        return this.evictions.get();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getRetainedBytes() {
+        long sum = 0;
+        for (final AtomicLong bytes : this.retainedBytes.values()) {
+            sum += bytes.get();
+        }
+        return sum;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Map<String, Long> getRetainedBytesByFlavor() {
+        final Map<String, Long> result = new TreeMap<>();
+        for (final Map.Entry<String, AtomicLong> entry : this.retainedBytes
+                .entrySet()) {
+            result.put(entry.getKey(), entry.getValue().get());
+        }
+        return result;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Map<String, Long> getLatencyCounts() {
+        final Map<String, Long> result = new TreeMap<>();
+        for (final Map.Entry<String, LatencyHistogram> entry : this.latencies
+                .entrySet()) {
+            result.put(entry.getKey(), entry.getValue().getCount());
+        }
+        return result;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Map<String, Double> getTotalLatencyMillis() {
+        final Map<String, Double> result = new TreeMap<>();
+        for (final Map.Entry<String, LatencyHistogram> entry : this.latencies
+                .entrySet()) {
+            result.put(entry.getKey(), entry.getValue().getTotalNanos()
+                    / NANOS_PER_MILLI);
+        }
+        return result;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Map<String, Double> getMeanLatencyMillis() {
+        final Map<String, Double> result = new TreeMap<>();
+        for (final Map.Entry<String, LatencyHistogram> entry : this.latencies
+                .entrySet()) {
+            result.put(entry.getKey(), entry.getValue().getMeanNanos()
+                    / NANOS_PER_MILLI);
+        }
+        return result;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Map<String, Double> getP99LatencyMillis() {
+        final Map<String, Double> result = new TreeMap<>();
+        for (final Map.Entry<String, LatencyHistogram> entry : this.latencies
+                .entrySet()) {
+            result.put(entry.getKey(), entry.getValue().getPercentileNanos(99)
+                    / NANOS_PER_MILLI);
+        }
+        return result;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void reset() {
+        this.preloads.set(0);
+        this.preloadFailures.set(0);
+        this.loads.set(0);
+        this.conversions.set(0);
+        this.imageInfoHits.set(0);
+        this.imageInfoMisses.set(0);
+        this.imageHits.set(0);
+        this.imageMisses.set(0);
+        this.invalidHits.set(0);
+        this.evictions.set(0);
+        for (final LatencyHistogram histogram : this.latencies.values()) {
+            histogram.reset();
+        }
+    }
+
+}
@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.loader.metrics;
+
+import java.util.EventListener;
+
+import org.apache.xmlgraphics.image.loader.Image;
+import org.apache.xmlgraphics.image.loader.ImageInfo;
+import org.apache.xmlgraphics.image.loader.pipeline.ImageProviderPipeline;
+import org.apache.xmlgraphics.image.loader.spi.ImageConverter;
+import org.apache.xmlgraphics.image.loader.spi.ImageLoader;
+
+/**
+ * Listener for timing events of the image loading subsystem. It is registered
+ * with {@link org.apache.xmlgraphics.image.loader.ImageManager#setMetricsListener}.
+ * Implementations must be thread-safe and fast as the methods are called
+ * synchronously from the threads loading images.
+ *
+ * @see ImageMetrics
+ */
+public interface ImageMetricsListener extends EventListener {
+
+    /**
+     * An image was preloaded (or preloading failed).
+     *
+     * @param uri
+     *            the original URI of the image
+     * @param info
+     *            the resulting ImageInfo or null if preloading failed
+     * @param nanos
+     *            the elapsed time in nanoseconds
+     */
+    void imagePreloaded(final String uri, final ImageInfo info,
+            final long nanos);
+
+    /**
+     * An image was loaded by an ImageLoader.
+     *
+     * @param loader
+     *            the ImageLoader
+     * @param info
+     *            the ImageInfo of the image
+     * @param image
+     *            the loaded image
+     * @param nanos
+     *            the elapsed time in nanoseconds
+     */
+    void imageLoaded(final ImageLoader loader, final ImageInfo info,
+            final Image image, final long nanos);
+
+    /**
+     * An image was converted by an ImageConverter.
+     *
+     * @param converter
+     *            the ImageConverter
+     * @param source
+     *            the image that was converted
+     * @param result
+     *            the converted image
+     * @param nanos
+     *            the elapsed time in nanoseconds
+     */
+    void imageConverted(final ImageConverter converter, final Image source,
+            final Image result, final long nanos);
+
+    /**
+     * A pipeline was executed completely, including cache lookups, loading and
+     * all conversions.
+     *
+     * @param pipeline
+     *            the pipeline
+     * @param info
+     *            the ImageInfo of the image
+     * @param image
+     *            the resulting image
+     * @param nanos
+     *            the elapsed time in nanoseconds
+     */
+    void pipelineExecuted(final ImageProviderPipeline pipeline,
+            final ImageInfo info, final Image image, final long nanos);
+
+}
@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.loader.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX management interface of {@link ImageMetrics}. Latency keys have the form
+ * "preload:&lt;mime&gt;", "load:&lt;loader&gt;:&lt;mime&gt;",
+ * "convert:&lt;converter&gt;:&lt;source flavor&gt;-&gt;&lt;target flavor&gt;"
+ * and "pipeline:&lt;loader&gt;[-&gt;&lt;converter&gt;...]".
+ */
+public interface ImageMetricsMXBean {
+
+    /**
+     * Returns the number of preloaded images, including failures.
+     *
+     * @return the preload count
+     */
+    long getPreloadCount();
+
+    /**
+     * Returns the number of failed preloads.
+     *
+     * @return the failure count
+     */
+    long getPreloadFailureCount();
+
+    /**
+     * Returns the number of images loaded by ImageLoaders.
+     *
+     * @return the load count
+     */
+    long getLoadCount();
+
+    /**
+     * Returns the number of conversion steps performed by ImageConverters.
+     *
+     * @return the conversion count
+     */
+    long getConversionCount();
+
+    /**
+     * Returns the number of ImageInfo cache hits.
+     *
+     * @return the hit count
+     */
+    long getImageInfoCacheHits();
+
+    /**
+     * Returns the number of ImageInfo cache misses.
+     *
+     * @return the miss count
+     */
+    long getImageInfoCacheMisses();
+
+    /**
+     * Returns the number of Image cache hits.
+     *
+     * @return the hit count
+     */
+    long getImageCacheHits();
+
+    /**
+     * Returns the number of Image cache misses.
+     *
+     * @return the miss count
+     */
+    long getImageCacheMisses();
+
+    /**
+     * Returns the number of requests for URIs known to be invalid.
+     *
+     * @return the invalid hit count
+     */
+    long getInvalidHits();
+
+    /**
+     * Returns the number of images evicted from (or rejected by) the image
+     * cache.
+     *
+     * @return the eviction count
+     */
+    long getEvictionCount();
+
+    /**
+     * Returns the estimated number of bytes retained by the image cache.
+     *
+     * @return the retained bytes
+     */
+    long getRetainedBytes();
+
+    /**
+     * Returns the estimated number of bytes retained by the image cache per
+     * image flavor.
+     *
+     * @return a map from flavor name to retained bytes
+     */
+    Map<String, Long> getRetainedBytesByFlavor();
+
+    /**
+     * Returns the number of recorded latencies per key.
+     *
+     * @return a map from latency key to count
+     */
+    Map<String, Long> getLatencyCounts();
+
+    /**
+     * Returns the total recorded latency per key.
+     *
+     * @return a map from latency key to the total time in milliseconds
+     */
+    Map<String, Double> getTotalLatencyMillis();
+
+    /**
+     * Returns the mean latency per key.
+     *
+     * @return a map from latency key to the mean time in milliseconds
+     */
+    Map<String, Double> getMeanLatencyMillis();
+
+    /**
+     * Returns the estimated 99th percentile of the latency per key.
+     *
+     * @return a map from latency key to the p99 time in milliseconds
+     */
+    Map<String, Double> getP99LatencyMillis();
+
+    /**
+     * Resets all counters and latencies. The retained bytes are not affected.
+     */
+    void reset();
+
+}
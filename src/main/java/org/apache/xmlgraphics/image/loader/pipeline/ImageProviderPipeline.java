@@ -37,10 +37,12 @@ import org.apache.xmlgraphics.image.loader.ImageInfo;
 import org.apache.xmlgraphics.image.loader.ImageSessionContext;
 import org.apache.xmlgraphics.image.loader.cache.ImageCache;
 import org.apache.xmlgraphics.image.loader.impl.ImageRawStream;
+import org.apache.xmlgraphics.image.loader.metrics.ImageMetricsListener;
 import org.apache.xmlgraphics.image.loader.spi.ImageConverter;
 import org.apache.xmlgraphics.image.loader.spi.ImageImplRegistry;
 import org.apache.xmlgraphics.image.loader.spi.ImageLoader;
 import org.apache.xmlgraphics.image.loader.util.Penalty;
+import org.apache.xmlgraphics.image.loader.util.ImageUtil;
 
 /**
  * Represents a pipeline of ImageConverters with an ImageLoader at the beginning
@@ -52,6 +54,7 @@ public class ImageProviderPipeline {
     private final ImageCache cache;
     private ImageLoader loader;
     private final List<ImageConverter> converters = new ArrayList<>();
+    private ImageMetricsListener metricsListener;
 
     /**
      * Main constructor.
@@ -139,7 +142,8 @@ public class ImageProviderPipeline {
         } else {
             hints = inHints;
         }
-        long start = System.currentTimeMillis();
+        final long pipelineStart = System.nanoTime();
+        long start = pipelineStart;
         Image img = null;
 
         // Remember the last image in the pipeline that is cacheable and cache
@@ -174,10 +178,14 @@ public class ImageProviderPipeline {
         if (img == null && this.loader != null) {
             // Load image
             img = this.loader.loadImage(info, hints, context);
+            duration = System.nanoTime() - start;
+            if (this.metricsListener != null && img != null) {
+                this.metricsListener.imageLoaded(this.loader, info, img,
+                        duration);
+            }
             if (log.isTraceEnabled()) {
-                duration = System.currentTimeMillis() - start;
                 log.trace("Image loading using {} took {} ms.", this.loader,
-                        duration);
+                        duration / 1000000);
             }
 
             // Caching
@@ -194,12 +202,17 @@ public class ImageProviderPipeline {
         if (converterCount > 0) {
             for (int i = startingPoint; i < converterCount; ++i) {
                 final ImageConverter converter = getConverter(i);
-                start = System.currentTimeMillis();
-                img = converter.convert(img, hints);
+                start = System.nanoTime();
+                final Image source = img;
+                img = converter.convert(source, hints);
+                duration = System.nanoTime() - start;
+                if (this.metricsListener != null) {
+                    this.metricsListener.imageConverted(converter, source, img,
+                            duration);
+                }
                 if (log.isTraceEnabled()) {
-                    duration = System.currentTimeMillis() - start;
                     log.trace("Image conversion using {} took {} ms.",
-                            converter, duration);
+                            converter, duration / 1000000);
                 }
 
                 // Caching
@@ -214,7 +227,10 @@ public class ImageProviderPipeline {
         // intermediate
         // results as it is expected that the cache hit ration would be rather
         // small.
-        if (this.cache != null && !entirelyInCache) {
+        // A subsampled image must not be handed out for later requests that
+        // need every pixel, so it isn't cached at all.
+        if (this.cache != null && !entirelyInCache
+                && ImageUtil.getSourceSubsampling(hints) == 1) {
             if (lastCacheableImage == null) {
                 // Try to make the Image cacheable
                 lastCacheableImage = forceCaching(img);
@@ -224,6 +240,10 @@ public class ImageProviderPipeline {
                 this.cache.putImage(lastCacheableImage);
             }
         }
+        if (this.metricsListener != null) {
+            this.metricsListener.pipelineExecuted(this, info, img,
+                    System.nanoTime() - pipelineStart);
+        }
         return img;
     }
 
@@ -289,6 +309,36 @@ public class ImageProviderPipeline {
         this.converters.add(converter);
     }
 
+    /**
+     * Returns the ImageLoader driving the pipeline.
+     *
+     * @return the image loader or null if the pipeline starts with an
+     *         original image
+     */
+    public ImageLoader getImageLoader() {
+        return this.loader;
+    }
+
+    /**
+     * Returns the ImageConverters of the pipeline in the order they are
+     * applied.
+     *
+     * @return an unmodifiable list of image converters
+     */
+    public List<ImageConverter> getConverters() {
+        return Collections.unmodifiableList(this.converters);
+    }
+
+    /**
+     * Sets the listener receiving the timings of the pipeline's steps.
+     *
+     * @param listener
+     *            the listener (or null for none)
+     */
+    public void setMetricsListener(final ImageMetricsListener listener) {
+        this.metricsListener = listener;
+    }
+
     /** {@inheritDoc} */
     @Override
     public String toString() {
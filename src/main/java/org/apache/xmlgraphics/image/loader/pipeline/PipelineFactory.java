@@ -22,10 +22,14 @@ package org.apache.xmlgraphics.image.loader.pipeline;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -56,6 +60,12 @@ public class PipelineFactory {
     /** Holds the EdgeDirectory for all image conversions */
     private DefaultEdgeDirectory converterEdgeDirectory;
 
+    /** Memoized pipeline plans (replaced when the registry changes) */
+    private volatile PlanCache planCache = new PlanCache(-1, -1);
+
+    private final AtomicLong planCacheHits = new AtomicLong();
+    private final AtomicLong planCacheMisses = new AtomicLong();
+
     /**
      * Main constructor.
      *
@@ -105,14 +115,29 @@ public class PipelineFactory {
      */
     public ImageProviderPipeline newImageConverterPipeline(
             final Image originalImage, final ImageFlavor targetFlavor) {
-        // Get snapshot to avoid concurrent modification problems
-        // (thread-safety)
-        final DefaultEdgeDirectory dir = getEdgeDirectory();
-        final ImageRepresentation destination = new ImageRepresentation(
+        final PlanKey key = new PlanKey(null, originalImage.getFlavor(),
                 targetFlavor);
-        final ImageProviderPipeline pipeline = findPipeline(dir,
-                originalImage.getFlavor(), destination);
-        return pipeline;
+        final PlanCache cache = getPlanCache();
+        PipelinePlan plan = lookupPlan(cache, key);
+        if (plan == null) {
+            // Get snapshot to avoid concurrent modification problems
+            // (thread-safety)
+            final DefaultEdgeDirectory dir = getEdgeDirectory();
+            final ImageRepresentation destination = new ImageRepresentation(
+                    targetFlavor);
+            final ImageConverter[] route = findRoute(dir,
+                    originalImage.getFlavor(), destination);
+            final List<ConverterRoute> routes = new ArrayList<>();
+            if (route != null) {
+                routes.add(new ConverterRoute(null, null, route));
+            }
+            plan = storePlan(cache, key, new PipelinePlan(
+                    new ArrayList<ImageLoaderFactory>(), null, routes));
+        }
+        if (plan.routes.length == 0) {
+            return null;
+        }
+        return newPipeline(plan.routes[0].converters);
     }
 
     /**
@@ -159,17 +184,31 @@ public class PipelineFactory {
     public ImageProviderPipeline[] determineCandidatePipelines(
             final ImageInfo imageInfo, final ImageFlavor targetFlavor) {
         final String originalMime = imageInfo.getMimeType();
-        final ImageImplRegistry registry = this.manager.getRegistry();
+        final PlanKey key = new PlanKey(originalMime, null, targetFlavor);
+        final PlanCache cache = getPlanCache();
+        PipelinePlan plan = lookupPlan(cache, key);
+        if (plan == null) {
+            plan = storePlan(cache, key,
+                    createPlan(originalMime, targetFlavor));
+        }
         final List<ImageProviderPipeline> candidates = new ArrayList<>();
 
-        // Get snapshot to avoid concurrent modification problems
-        // (thread-safety)
-        final DefaultEdgeDirectory dir = getEdgeDirectory();
-
-        ImageLoaderFactory[] loaderFactories = registry
-                .getImageLoaderFactories(imageInfo, targetFlavor);
-        if (loaderFactories != null) {
+        // Which loaders can be used directly depends on the actual image
+        final List<ImageLoaderFactory> supported = new ArrayList<>();
+        for (final ImageLoaderFactory factory : plan.compatibleFactories) {
+            if (factory.isSupported(imageInfo)) {
+                supported.add(factory);
+            }
+        }
+        if (!supported.isEmpty()) {
             // Directly load image and return it
+            final ImageLoaderFactory[] loaderFactories;
+            if (supported.size() == plan.compatibleFactories.size()) {
+                loaderFactories = plan.sortedFactories;
+            } else {
+                loaderFactories = this.manager.getRegistry()
+                        .sortImageLoaderFactories(supported, targetFlavor);
+            }
             ImageLoader loader;
             if (loaderFactories.length == 1) {
                 loader = loaderFactories[0].newImageLoader(targetFlavor);
@@ -184,38 +223,133 @@ public class PipelineFactory {
             }
             final ImageProviderPipeline pipeline = new ImageProviderPipeline(
                     this.manager.getCache(), loader);
+            pipeline.setMetricsListener(this.manager.getMetricsListener());
             candidates.add(pipeline);
         } else {
             // Need to use ImageConverters
             log.trace(
                     "No ImageLoaderFactory found that can load this format ({}) directly. Trying ImageConverters instead...",
                     targetFlavor);
+            for (final ConverterRoute route : plan.routes) {
+                final ImageProviderPipeline pipeline = newPipeline(route.converters);
+                pipeline.setImageLoader(route.loaderFactory
+                        .newImageLoader(route.loaderFlavor));
+                candidates.add(pipeline);
+            }
+        }
+        return candidates.toArray(new ImageProviderPipeline[candidates.size()]);
+    }
 
-            final ImageRepresentation destination = new ImageRepresentation(
-                    targetFlavor);
-            // Get Loader for originalMIME
-            // --> List of resulting flavors, possibly multiple loaders
-            loaderFactories = registry.getImageLoaderFactories(originalMime);
-            if (loaderFactories != null) {
-
-                // Find best pipeline -> best loader
-                for (final ImageLoaderFactory loaderFactory : loaderFactories) {
-                    final ImageFlavor[] flavors = loaderFactory
-                            .getSupportedFlavors(originalMime);
-                    for (final ImageFlavor flavor : flavors) {
-                        final ImageProviderPipeline pipeline = findPipeline(
-                                dir, flavor, destination);
-                        if (pipeline != null) {
-                            final ImageLoader loader = loaderFactory
-                                    .newImageLoader(flavor);
-                            pipeline.setImageLoader(loader);
-                            candidates.add(pipeline);
-                        }
+    /**
+     * Determines the loaders and converter routes that can produce the
+     * requested target flavor from images of the given MIME type. The result
+     * does not depend on the individual image, so it can be reused for all
+     * images of that MIME type.
+     */
+    private PipelinePlan createPlan(final String originalMime,
+            final ImageFlavor targetFlavor) {
+        final ImageImplRegistry registry = this.manager.getRegistry();
+
+        // Get snapshot to avoid concurrent modification problems
+        // (thread-safety)
+        final DefaultEdgeDirectory dir = getEdgeDirectory();
+
+        final List<ImageLoaderFactory> compatibleFactories = registry
+                .getCompatibleImageLoaderFactories(originalMime, targetFlavor);
+        final ImageLoaderFactory[] sortedFactories = registry
+                .sortImageLoaderFactories(compatibleFactories, targetFlavor);
+
+        final List<ConverterRoute> routes = new ArrayList<>();
+        final ImageRepresentation destination = new ImageRepresentation(
+                targetFlavor);
+        // Get Loader for originalMIME
+        // --> List of resulting flavors, possibly multiple loaders
+        final ImageLoaderFactory[] loaderFactories = registry
+                .getImageLoaderFactories(originalMime);
+        if (loaderFactories != null) {
+
+            // Find best pipeline -> best loader
+            for (final ImageLoaderFactory loaderFactory : loaderFactories) {
+                final ImageFlavor[] flavors = loaderFactory
+                        .getSupportedFlavors(originalMime);
+                for (final ImageFlavor flavor : flavors) {
+                    final ImageConverter[] converters = findRoute(dir,
+                            flavor, destination);
+                    if (converters != null) {
+                        routes.add(new ConverterRoute(loaderFactory, flavor,
+                                converters));
                     }
                 }
             }
         }
-        return candidates.toArray(new ImageProviderPipeline[candidates.size()]);
+        return new PipelinePlan(compatibleFactories, sortedFactories, routes);
+    }
+
+    /**
+     * Returns the plan cache for the current state of the registry. A plan
+     * is stored into the cache it was looked up in, so a plan built while
+     * the registry changes lands in the discarded cache.
+     */
+    private PlanCache getPlanCache() {
+        final ImageImplRegistry registry = this.manager.getRegistry();
+        PlanCache cache = this.planCache;
+        if (cache.converterVersion != registry.getImageConverterModifications()
+                || cache.loaderVersion != registry
+                        .getImageLoaderModifications()) {
+            // The registry has changed: discard all plans
+            cache = new PlanCache(registry.getImageConverterModifications(),
+                    registry.getImageLoaderModifications());
+            this.planCache = cache;
+        }
+        return cache;
+    }
+
+    private PipelinePlan lookupPlan(final PlanCache cache, final PlanKey key) {
+        final PipelinePlan plan = cache.plans.get(key);
+        if (plan != null) {
+            this.planCacheHits.incrementAndGet();
+        } else {
+            this.planCacheMisses.incrementAndGet();
+        }
+        return plan;
+    }
+
+    private PipelinePlan storePlan(final PlanCache cache, final PlanKey key,
+            final PipelinePlan plan) {
+        final PipelinePlan existing = cache.plans.putIfAbsent(key, plan);
+        return existing != null ? existing : plan;
+    }
+
+    /**
+     * Returns the number of pipeline requests that could be served from
+     * memoized pipeline plans.
+     *
+     * @return the number of plan cache hits
+     */
+    public long getPlanCacheHits() {
+        return this.planCacheHits.get();
+    }
+
+    /**
+     * Returns the number of pipeline requests for which the candidate loaders
+     * and converter routes had to be determined.
+     *
+     * @return the number of plan cache misses
+     */
+    public long getPlanCacheMisses() {
+        return this.planCacheMisses.get();
+    }
+
+    /**
+     * Returns the ratio of pipeline requests that could be served from
+     * memoized pipeline plans.
+     *
+     * @return the hit ratio (between 0 and 1, 0 if there were no requests)
+     */
+    public double getPlanCacheHitRatio() {
+        final long hits = getPlanCacheHits();
+        final long total = hits + getPlanCacheMisses();
+        return total == 0 ? 0 : (double) hits / total;
     }
 
     /** Compares two pipelines based on their conversion penalty. */
@@ -231,7 +365,7 @@ public class PipelineFactory {
 
     }
 
-    private ImageProviderPipeline findPipeline(final DefaultEdgeDirectory dir,
+    private ImageConverter[] findRoute(final DefaultEdgeDirectory dir,
             final ImageFlavor originFlavor,
             final ImageRepresentation destination) {
         final DijkstraAlgorithm dijkstra = new DijkstraAlgorithm(dir);
@@ -245,21 +379,121 @@ public class PipelineFactory {
             log.trace("No route found!");
             return null;
         } else {
-            final LinkedList<ImageConversionEdge> stops = new LinkedList<>();
+            final LinkedList<ImageConverter> stops = new LinkedList<>();
             while ((pred = dijkstra.getPredecessor(prev)) != null) {
                 final ImageConversionEdge edge = (ImageConversionEdge) dir
                         .getBestEdge(pred, prev);
-                stops.addFirst(edge);
+                stops.addFirst(edge.getImageConverter());
                 prev = pred;
             }
-            final ImageProviderPipeline pipeline = new ImageProviderPipeline(
-                    this.manager.getCache(), null);
-            final Iterator<ImageConversionEdge> iter = stops.iterator();
-            while (iter.hasNext()) {
-                final ImageConversionEdge edge = iter.next();
-                pipeline.addConverter(edge.getImageConverter());
+            return stops.toArray(new ImageConverter[stops.size()]);
+        }
+    }
+
+    private ImageProviderPipeline newPipeline(final ImageConverter[] converters) {
+        final ImageProviderPipeline pipeline = new ImageProviderPipeline(
+                this.manager.getCache(), null);
+        pipeline.setMetricsListener(this.manager.getMetricsListener());
+        for (final ImageConverter converter : converters) {
+            pipeline.addConverter(converter);
+        }
+        return pipeline;
+    }
+
+    /** Key for memoized pipeline plans. */
+    private static final class PlanKey {
+
+        private final String mime;
+        private final ImageFlavor sourceFlavor;
+        private final ImageFlavor targetFlavor;
+
+        PlanKey(final String mime, final ImageFlavor sourceFlavor,
+                final ImageFlavor targetFlavor) {
+            this.mime = mime;
+            this.sourceFlavor = sourceFlavor;
+            this.targetFlavor = targetFlavor;
+        }
+
+        @Override
+        public int hashCode() {
+            final int prime = 31;
+            int result = 1;
+            result = prime * result
+                    + (this.mime == null ? 0 : this.mime.hashCode());
+            result = prime
+                    * result
+                    + (this.sourceFlavor == null ? 0 : this.sourceFlavor
+                            .hashCode());
+            result = prime * result + this.targetFlavor.hashCode();
+            return result;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
             }
-            return pipeline;
+            if (!(obj instanceof PlanKey)) {
+                return false;
+            }
+            final PlanKey other = (PlanKey) obj;
+            return (this.mime == null ? other.mime == null : this.mime
+                    .equals(other.mime))
+                    && (this.sourceFlavor == null ? other.sourceFlavor == null
+                            : this.sourceFlavor.equals(other.sourceFlavor))
+                    && this.targetFlavor.equals(other.targetFlavor);
+        }
+    }
+
+    /**
+     * Immutable, precomputed set of loaders and converter routes for a MIME
+     * type (or source flavor) and a target flavor.
+     */
+    private static final class PipelinePlan {
+
+        /** Loader factories producing the target flavor directly */
+        private final List<ImageLoaderFactory> compatibleFactories;
+        /** The same factories ordered by penalty (null if there are none) */
+        private final ImageLoaderFactory[] sortedFactories;
+        /** Loader/converter combinations producing the target flavor */
+        private final ConverterRoute[] routes;
+
+        PipelinePlan(final List<ImageLoaderFactory> compatibleFactories,
+                final ImageLoaderFactory[] sortedFactories,
+                final List<ConverterRoute> routes) {
+            this.compatibleFactories = Collections
+                    .unmodifiableList(compatibleFactories);
+            this.sortedFactories = sortedFactories;
+            this.routes = routes.toArray(new ConverterRoute[routes.size()]);
+        }
+    }
+
+    /** A loader (optional) followed by a chain of converters. */
+    private static final class ConverterRoute {
+
+        private final ImageLoaderFactory loaderFactory;
+        private final ImageFlavor loaderFlavor;
+        private final ImageConverter[] converters;
+
+        ConverterRoute(final ImageLoaderFactory loaderFactory,
+                final ImageFlavor loaderFlavor,
+                final ImageConverter[] converters) {
+            this.loaderFactory = loaderFactory;
+            this.loaderFlavor = loaderFlavor;
+            this.converters = converters;
+        }
+    }
+
+    /** The plans valid for a particular state of the registry. */
+    private static final class PlanCache {
+
+        private final int converterVersion;
+        private final int loaderVersion;
+        private final ConcurrentMap<PlanKey, PipelinePlan> plans = new ConcurrentHashMap<>();
+
+        PlanCache(final int converterVersion, final int loaderVersion) {
+            this.converterVersion = converterVersion;
+            this.loaderVersion = loaderVersion;
         }
     }
 
@@ -56,6 +56,8 @@ public class ImageImplRegistry {
     private final List<PreloaderHolder> preloaders = new ArrayList<>();
     private int lastPreloaderIdentifier;
     private int lastPreloaderSort;
+    /** Signature index over the sorted preloaders (null: needs rebuilding) */
+    private volatile PreloaderIndex preloaderIndex;
 
     /** Holds the list of ImageLoaderFactories */
     private final Map<String, Map<ImageFlavor, List<ImageLoaderFactory>>> loaders = new HashMap<>();
@@ -65,6 +67,8 @@ public class ImageImplRegistry {
 
     private int converterModifications;
 
+    private int loaderModifications;
+
     /**
      * A Map (key: implementation classes) with additional penalties to
      * fine-tune the registry.
@@ -146,6 +150,7 @@ public class ImageImplRegistry {
         log.debug("Registered {} with priority {}", preloader.getClass()
                 .getName(), preloader.getPriority());
         this.preloaders.add(newPreloaderHolder(preloader));
+        this.preloaderIndex = null;
     }
 
     private synchronized PreloaderHolder newPreloaderHolder(
@@ -196,7 +201,28 @@ public class ImageImplRegistry {
             };
             Collections.sort(this.preloaders, comparator);
             this.lastPreloaderSort = this.lastPreloaderIdentifier;
+            this.preloaderIndex = null;
+        }
+    }
+
+    private PreloaderIndex getPreloaderIndex() {
+        PreloaderIndex index = this.preloaderIndex;
+        if (index == null) {
+            synchronized (this) {
+                sortPreloaders();
+                index = this.preloaderIndex;
+                if (index == null) {
+                    final List<ImagePreloader> sorted = new ArrayList<>(
+                            this.preloaders.size());
+                    for (final PreloaderHolder holder : this.preloaders) {
+                        sorted.add(holder.preloader);
+                    }
+                    index = new PreloaderIndex(sorted);
+                    this.preloaderIndex = index;
+                }
+            }
         }
+        return index;
     }
 
     /**
@@ -234,10 +260,23 @@ public class ImageImplRegistry {
                     log.debug("Registered {} : MIME = {}, Flavor = {}",
                             loaderFactory.getClass().getName(), mime, flavor);
                 }
+                this.loaderModifications++;
             }
         }
     }
 
+    /**
+     * Returns the number of modifications to the registered
+     * ImageLoaderFactory instances and to the additional penalties. This is
+     * used to detect changes in the registry that affect the choice of image
+     * loaders.
+     *
+     * @return the number of modifications
+     */
+    public int getImageLoaderModifications() {
+        return this.loaderModifications;
+    }
+
     /**
      * Returns the Collection of registered ImageConverter instances.
      *
@@ -299,11 +338,40 @@ public class ImageImplRegistry {
             @Override
             public void remove() {
                 iter.remove();
+                ImageImplRegistry.this.preloaderIndex = null;
             }
 
         };
     }
 
+    /**
+     * Returns the number of bytes from the start of an image file that are
+     * needed to evaluate the signatures of all registered
+     * {@link SignatureAwareImagePreloader}s.
+     *
+     * @return the header length (0 if no preloader declares a signature)
+     */
+    public int getPreloaderHeaderLength() {
+        return getPreloaderIndex().getHeaderLength();
+    }
+
+    /**
+     * Returns an iterator over the registered ImagePreloader instances which
+     * need to be asked for an image with the given header: the preloaders with
+     * a signature matching the header and all preloaders which don't declare a
+     * signature. The preloaders are returned in the same order as from
+     * {@link #getPreloaderIterator()}.
+     *
+     * @param header
+     *            the first bytes of the image file (see
+     *            {@link #getPreloaderHeaderLength()})
+     * @return an iterator over ImagePreloader instances
+     */
+    public Iterator<ImagePreloader> getPreloaderIterator(final byte[] header) {
+        return Collections.unmodifiableList(
+                getPreloaderIndex().getCandidates(header)).iterator();
+    }
+
     /**
      * Returns the best ImageLoaderFactory supporting the {@link ImageInfo} and
      * image flavor. If there are multiple ImageLoaderFactories the one with the
@@ -356,9 +424,32 @@ public class ImageImplRegistry {
      */
     public ImageLoaderFactory[] getImageLoaderFactories(
             final ImageInfo imageInfo, final ImageFlavor flavor) {
-        final String mime = imageInfo.getMimeType();
-        final Collection<ImageLoaderFactory> matches = new TreeSet<>(
-                new ImageLoaderFactoryComparator(flavor));
+        final List<ImageLoaderFactory> supported = new ArrayList<>();
+        for (final ImageLoaderFactory factory : getCompatibleImageLoaderFactories(
+                imageInfo.getMimeType(), flavor)) {
+            if (factory.isSupported(imageInfo)) {
+                supported.add(factory);
+            }
+        }
+        return sortImageLoaderFactories(supported, flavor);
+    }
+
+    /**
+     * Returns all {@link ImageLoaderFactory} instances that support the given
+     * MIME type and can generate the given image flavor, independent of
+     * whether they support a particular image of that MIME type (see
+     * {@link ImageLoaderFactory#isSupported(ImageInfo)}). The factories are
+     * returned in registration order.
+     *
+     * @param mime
+     *            the MIME type
+     * @param flavor
+     *            the target image flavor
+     * @return the list of image loader factories (may be empty)
+     */
+    public List<ImageLoaderFactory> getCompatibleImageLoaderFactories(
+            final String mime, final ImageFlavor flavor) {
+        final List<ImageLoaderFactory> compatible = new ArrayList<>();
         final Map<ImageFlavor, List<ImageLoaderFactory>> flavorMap = this.loaders
                 .get(mime);
         if (flavorMap != null) {
@@ -369,15 +460,33 @@ public class ImageImplRegistry {
                     final List<ImageLoaderFactory> factoryList = entry
                             .getValue();
                     if (factoryList != null) {
-                        for (final ImageLoaderFactory factory : factoryList) {
-                            if (factory.isSupported(imageInfo)) {
-                                matches.add(factory);
-                            }
-                        }
+                        compatible.addAll(factoryList);
                     }
                 }
             }
         }
+        return compatible;
+    }
+
+    /**
+     * Orders a collection of {@link ImageLoaderFactory} instances by the usage
+     * penalty of the image loaders they create for the given flavor. This is
+     * the order used by
+     * {@link #getImageLoaderFactories(ImageInfo, ImageFlavor)}.
+     *
+     * @param factories
+     *            the image loader factories
+     * @param flavor
+     *            the target image flavor
+     * @return the ordered array of image loader factories or null if the
+     *         collection is empty
+     */
+    public ImageLoaderFactory[] sortImageLoaderFactories(
+            final Collection<ImageLoaderFactory> factories,
+            final ImageFlavor flavor) {
+        final Collection<ImageLoaderFactory> matches = new TreeSet<>(
+                new ImageLoaderFactoryComparator(flavor));
+        matches.addAll(factories);
         if (matches.isEmpty()) {
             return null;
         } else {
@@ -458,6 +567,10 @@ public class ImageImplRegistry {
         }
         this.lastPreloaderSort = -1; // Force resort, just in case this was a
         // preloader
+        this.preloaderIndex = null;
+        // Penalties are part of the pipeline selection
+        this.converterModifications++;
+        this.loaderModifications++;
     }
 
     /**
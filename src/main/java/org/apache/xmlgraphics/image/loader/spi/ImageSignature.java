@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.loader.spi;
+
+import java.util.Arrays;
+
+/**
+ * Describes a "magic number", i.e. a fixed sequence of bytes at a fixed offset
+ * from the start of a file, which identifies an image format. Instances of this
+ * class are immutable.
+ *
+ * @see SignatureAwareImagePreloader
+ */
+public final class ImageSignature {
+
+    private final int offset;
+    private final byte[] magic;
+
+    /**
+     * Creates a new signature located at the start of the file.
+     *
+     * @param magic
+     *            the magic bytes
+     */
+    public ImageSignature(final byte[] magic) {
+        this(0, magic);
+    }
+
+    /**
+     * Creates a new signature.
+     *
+     * @param offset
+     *            the offset of the magic bytes from the start of the file
+     * @param magic
+     *            the magic bytes
+     */
+    public ImageSignature(final int offset, final byte[] magic) {
+        if (offset < 0) {
+            throw new IllegalArgumentException("offset must not be negative");
+        }
+        if (magic == null || magic.length == 0) {
+            throw new IllegalArgumentException(
+                    "magic must contain at least one byte");
+        }
+        this.offset = offset;
+        this.magic = magic.clone();
+    }
+
+    /**
+     * Returns the offset of the magic bytes from the start of the file.
+     *
+     * @return the offset
+     */
+    public int getOffset() {
+        return this.offset;
+    }
+
+    /**
+     * Returns the number of magic bytes.
+     *
+     * @return the length of the signature
+     */
+    public int getLength() {
+        return this.magic.length;
+    }
+
+    /**
+     * Returns the number of header bytes needed to evaluate this signature.
+     *
+     * @return the offset plus the length of the signature
+     */
+    public int getEnd() {
+        return this.offset + this.magic.length;
+    }
+
+    /**
+     * Returns one of the magic bytes.
+     *
+     * @param index
+     *            the index of the byte (0 to getLength() - 1)
+     * @return the magic byte
+     */
+    public byte getByte(final int index) {
+        return this.magic[index];
+    }
+
+    /**
+     * Indicates whether the given file header matches this signature.
+     *
+     * @param header
+     *            the first bytes of the file
+     * @return true if the header contains the magic bytes at the right offset
+     */
+    public boolean matches(final byte[] header) {
+        if (header.length < getEnd()) {
+            return false;
+        }
+        for (int i = 0; i < this.magic.length; i++) {
+            if (header[this.offset + i] != this.magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof ImageSignature)) {
+            return false;
+        }
+        final ImageSignature other = (ImageSignature) obj;
+        return this.offset == other.offset
+                && Arrays.equals(this.magic, other.magic);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int hashCode() {
+        return 31 * this.offset + Arrays.hashCode(this.magic);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("ImageSignature[");
+        sb.append(this.offset).append(':');
+        for (final byte b : this.magic) {
+            sb.append(' ').append(Integer.toHexString(b & 0xFF));
+        }
+        return sb.append(']').toString();
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.loader.spi;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable dispatch index over a priority-ordered list of preloaders. The
+ * signatures declared by {@link SignatureAwareImagePreloader}s are stored in
+ * one prefix trie per signature offset, so a file header can be matched
+ * against all of them in a single pass over its bytes.
+ */
+final class PreloaderIndex {
+
+    private final ImagePreloader[] preloaders;
+    /** Preloaders (by index) which have to be asked regardless of the header */
+    private final BitSet unsigned = new BitSet();
+    /** Trie roots by signature offset */
+    private final int[] offsets;
+    private final Node[] roots;
+    private final int headerLength;
+
+    /**
+     * Creates a new index.
+     *
+     * @param sortedPreloaders
+     *            the preloaders in the order they shall be asked
+     */
+    PreloaderIndex(final List<ImagePreloader> sortedPreloaders) {
+        this.preloaders = sortedPreloaders
+                .toArray(new ImagePreloader[sortedPreloaders.size()]);
+        final Map<Integer, Node> tries = new TreeMap<>();
+        int maxEnd = 0;
+        for (int p = 0; p < this.preloaders.length; p++) {
+            ImageSignature[] signatures = null;
+            if (this.preloaders[p] instanceof SignatureAwareImagePreloader) {
+                signatures = ((SignatureAwareImagePreloader) this.preloaders[p])
+                        .getSignatures();
+            }
+            if (signatures == null || signatures.length == 0) {
+                this.unsigned.set(p);
+                continue;
+            }
+            for (final ImageSignature sig : signatures) {
+                Node node = tries.get(sig.getOffset());
+                if (node == null) {
+                    node = new Node();
+                    tries.put(sig.getOffset(), node);
+                }
+                for (int i = 0; i < sig.getLength(); i++) {
+                    node = node.getOrCreateChild(sig.getByte(i));
+                }
+                node.terminals.set(p);
+                maxEnd = Math.max(maxEnd, sig.getEnd());
+            }
+        }
+        this.offsets = new int[tries.size()];
+        this.roots = new Node[tries.size()];
+        int i = 0;
+        for (final Map.Entry<Integer, Node> entry : tries.entrySet()) {
+            this.offsets[i] = entry.getKey();
+            this.roots[i] = entry.getValue();
+            i++;
+        }
+        this.headerLength = maxEnd;
+    }
+
+    /**
+     * Returns the number of header bytes needed to evaluate all signatures.
+     *
+     * @return the header length (0 if no preloader declares a signature)
+     */
+    int getHeaderLength() {
+        return this.headerLength;
+    }
+
+    /**
+     * Returns the preloaders that have to be asked for a file with the given
+     * header, in priority order: all preloaders with a matching signature plus
+     * all preloaders without signatures.
+     *
+     * @param header
+     *            the first bytes of the file (may be shorter than
+     *            {@link #getHeaderLength()})
+     * @return the candidate preloaders
+     */
+    List<ImagePreloader> getCandidates(final byte[] header) {
+        final BitSet matches = (BitSet) this.unsigned.clone();
+        for (int r = 0; r < this.roots.length; r++) {
+            Node node = this.roots[r];
+            for (int pos = this.offsets[r]; pos < header.length
+                    && node != null; pos++) {
+                node = node.getChild(header[pos]);
+                if (node != null) {
+                    matches.or(node.terminals);
+                }
+            }
+        }
+        final List<ImagePreloader> candidates = new ArrayList<>(
+                matches.cardinality());
+        for (int p = matches.nextSetBit(0); p >= 0; p = matches
+                .nextSetBit(p + 1)) {
+            candidates.add(this.preloaders[p]);
+        }
+        return candidates;
+    }
+
+    /** Trie node. Children are indexed by the unsigned byte value. */
+    private static final class Node {
+
+        private Node[] children;
+        /** Preloaders (by index) whose signature ends at this node */
+        private final BitSet terminals = new BitSet();
+
+        Node getChild(final byte b) {
+            return this.children != null ? this.children[b & 0xFF] : null;
+        }
+
+        Node getOrCreateChild(final byte b) {
+            if (this.children == null) {
+                this.children = new Node[256];
+            }
+            Node child = this.children[b & 0xFF];
+            if (child == null) {
+                child = new Node();
+                this.children[b & 0xFF] = child;
+            }
+            return child;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.loader.spi;
+
+/**
+ * Optional extension of {@link ImagePreloader} for preloaders that only handle
+ * formats which can be identified by a "magic number" in the file header. The
+ * {@link ImageImplRegistry} builds an index over the declared signatures, so
+ * the image's header has to be read only once per preload and preloaders whose
+ * signatures don't match are not even asked. Preloaders that don't implement
+ * this interface (or return no signatures) are always asked.
+ * <p>
+ * The signatures must be a necessary condition: if none of them matches,
+ * {@link #preloadImage(String, javax.xml.transform.Source,
+ * org.apache.xmlgraphics.image.loader.ImageContext)} must return null. The
+ * signatures are only evaluated for sources that provide an
+ * {@link javax.imageio.stream.ImageInputStream}.
+ */
+public interface SignatureAwareImagePreloader extends ImagePreloader {
+
+    /**
+     * Returns the signatures of the image formats this preloader supports. The
+     * return value must not change over the lifetime of the preloader.
+     *
+     * @return the signatures (null or an empty array if the preloader cannot
+     *         be restricted to a set of signatures)
+     */
+    ImageSignature[] getSignatures();
+}
@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.loader.util;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An InputStream reading the remaining bytes of a ByteBuffer. The methods
+ * <code>mark()</code> and <code>reset()</code> are supported.
+ */
+public class ByteBufferInputStream extends InputStream {
+
+    private final ByteBuffer buffer;
+    private int markPosition;
+
+    /**
+     * Creates a new ByteBufferInputStream.
+     *
+     * @param buffer
+     *            the buffer (a view is used, so the buffer's own position is
+     *            not changed)
+     */
+    public ByteBufferInputStream(final ByteBuffer buffer) {
+        this.buffer = buffer.slice();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int read() {
+        if (!this.buffer.hasRemaining()) {
+            return -1;
+        }
+        return this.buffer.get() & 0xff;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int read(final byte[] b, final int off, final int len) {
+        if (off < 0 || len < 0 || off + len > b.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len == 0) {
+            return 0;
+        }
+        final int n = Math.min(len, this.buffer.remaining());
+        if (n == 0) {
+            return -1;
+        }
+        this.buffer.get(b, off, n);
+        return n;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long skip(final long n) {
+        if (n <= 0) {
+            return 0;
+        }
+        final int skipped = (int) Math.min(n, this.buffer.remaining());
+        this.buffer.position(this.buffer.position() + skipped);
+        return skipped;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int available() {
+        return this.buffer.remaining();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void mark(final int readLimit) {
+        this.markPosition = this.buffer.position();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void reset() {
+        this.buffer.position(this.markPosition);
+    }
+}
@@ -41,8 +41,10 @@ import javax.xml.transform.stream.StreamSource;
 import lombok.extern.slf4j.Slf4j;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.xmlgraphics.image.codec.util.SeekableStream;
 import org.apache.xmlgraphics.image.loader.ImageProcessingHints;
 import org.apache.xmlgraphics.image.loader.ImageSessionContext;
+import org.apache.xmlgraphics.image.loader.ImageSize;
 import org.apache.xmlgraphics.image.loader.ImageSource;
 import org.xml.sax.InputSource;
 
@@ -145,9 +147,8 @@ public final class ImageUtil {
      */
     public static boolean hasInputStream(final Source src) throws IOException {
         if (src instanceof StreamSource) {
-            try (final InputStream in = ((StreamSource) src).getInputStream()) {
-                return in != null;
-            }
+            final InputStream in = ((StreamSource) src).getInputStream();
+            return in != null;
         } else if (src instanceof ImageSource) {
             return hasImageInputStream(src);
         } else if (src instanceof SAXSource) {
@@ -169,9 +170,8 @@ public final class ImageUtil {
      */
     public static boolean hasReader(final Source src) throws IOException {
         if (src instanceof StreamSource) {
-            try (final Reader reader = ((StreamSource) src).getReader()) {
-                return reader != null;
-            }
+            final Reader reader = ((StreamSource) src).getReader();
+            return reader != null;
         } else if (src instanceof SAXSource) {
             final InputSource is = ((SAXSource) src).getInputSource();
             if (is != null) {
@@ -192,11 +192,10 @@ public final class ImageUtil {
     public static boolean hasImageInputStream(final Source src)
             throws IOException {
         if (src instanceof ImageSource) {
-            try (final ImageInputStream in = ((ImageSource) src)
-                    .getImageInputStream()) {
-                if (in != null) {
-                    return true;
-                }
+            final ImageInputStream in = ((ImageSource) src)
+                    .getImageInputStream();
+            if (in != null) {
+                return true;
             }
         }
         return false;
@@ -263,6 +262,63 @@ public final class ImageUtil {
         }
     }
 
+    /**
+     * Reads the first bytes of an image from an ImageInputStream without
+     * changing the stream position. If the stream is shorter than the
+     * requested size, the missing bytes are set to 0.
+     *
+     * @param in
+     *            the ImageInputStream (positioned at the start of the image)
+     * @param size
+     *            the number of bytes to read
+     * @return the header bytes
+     * @throws IOException
+     *             if an I/O error occurs
+     */
+    public static byte[] readHeader(final ImageInputStream in, final int size)
+            throws IOException {
+        final byte[] header = new byte[size];
+        in.mark();
+        try {
+            int offset = 0;
+            while (offset < size) {
+                final int read = in.read(header, offset, size - offset);
+                if (read < 0) {
+                    break;
+                }
+                offset += read;
+            }
+        } finally {
+            in.reset();
+        }
+        return header;
+    }
+
+    /**
+     * Creates a SeekableStream for an ImageInputStream, starting at the
+     * stream's current position. For a {@link MappedImageInputStream} the
+     * SeekableStream reads directly from the mapping and has its own
+     * position; otherwise it is an adapter sharing the position of the
+     * ImageInputStream. Closing the SeekableStream does not close the
+     * ImageInputStream.
+     *
+     * @param in
+     *            the ImageInputStream
+     * @return the SeekableStream
+     * @throws IOException
+     *             if an I/O error occurs
+     */
+    public static SeekableStream createSeekableStream(final ImageInputStream in)
+            throws IOException {
+        if (in instanceof MappedImageInputStream) {
+            final SeekableStream seekable = ((MappedImageInputStream) in)
+                    .createSeekableStream();
+            seekable.seek(in.getStreamPosition());
+            return seekable;
+        }
+        return new SeekableStreamAdapter(in);
+    }
+
     /**
      * Decorates an ImageInputStream so the flush*() methods are ignored and
      * have no effect. The decoration is implemented using a dynamic proxy.
@@ -378,6 +434,48 @@ public final class ImageUtil {
         return hints;
     }
 
+    /**
+     * Returns the source subsampling factor requested through the
+     * {@link ImageProcessingHints#SOURCE_SUBSAMPLING} hint.
+     *
+     * @param hints
+     *            the hints (may be null)
+     * @return the subsampling factor, 1 if no (valid) factor is given
+     */
+    public static int getSourceSubsampling(final Map<Object, Object> hints) {
+        if (hints != null) {
+            final Object value = hints
+                    .get(ImageProcessingHints.SOURCE_SUBSAMPLING);
+            if (value instanceof Number) {
+                return Math.max(1, ((Number) value).intValue());
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Calculates the largest subsampling factor that keeps the resolution of
+     * an image at or above the target resolution, assuming it is rendered at
+     * its intrinsic size.
+     *
+     * @param size
+     *            the intrinsic size of the image
+     * @param targetResolution
+     *            the target resolution (in dpi)
+     * @return the subsampling factor (1 if the image must not be subsampled)
+     */
+    public static int getSubsampling(final ImageSize size,
+            final double targetResolution) {
+        if (size == null || targetResolution <= 0) {
+            return 1;
+        }
+        final double dpi = Math.min(size.getDpiHorizontal(),
+                size.getDpiVertical());
+        final int factor = (int) Math.floor(dpi / targetResolution);
+        return Math.max(1, Math.min(factor,
+                Math.min(size.getWidthPx(), size.getHeightPx())));
+    }
+
     private static final String PAGE_INDICATOR = "page=";
 
     /**
@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.loader.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import javax.imageio.stream.ImageInputStreamImpl;
+
+import org.apache.xmlgraphics.image.codec.util.ByteBufferSeekableStream;
+import org.apache.xmlgraphics.image.codec.util.SeekableStream;
+
+/**
+ * An ImageInputStream over a memory-mapped file. All reads are served from
+ * the mapping, i.e. straight from the operating system's page cache, without
+ * any read system calls or intermediate buffers.
+ * <p>
+ * Loaders can access the mapped data directly through {@link #getBuffer()} or
+ * {@link #createSeekableStream()} instead of copying it through the stream.
+ * <p>
+ * Note: Java offers no way to unmap a file explicitly. The mapping is
+ * released when the buffer is garbage-collected, so on some platforms
+ * (notably Windows) the file cannot be deleted or replaced until then.
+ */
+public class MappedImageInputStream extends ImageInputStreamImpl {
+
+    private ByteBuffer buffer;
+    private final long length;
+
+    /**
+     * Maps a file read-only.
+     *
+     * @param file
+     *            the file to map
+     * @throws IOException
+     *             if the file cannot be mapped, including when it is larger
+     *             than 2 GB
+     */
+    public MappedImageInputStream(final File file) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = raf.getChannel();
+            final long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File too large to be mapped: " + file);
+            }
+            // The mapping stays valid after the channel is closed
+            this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            this.length = size;
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Creates a stream over the remaining bytes of a ByteBuffer. Position 0 of
+     * the stream corresponds to the current position of the buffer.
+     *
+     * @param buffer
+     *            the buffer
+     */
+    public MappedImageInputStream(final ByteBuffer buffer) {
+        this.buffer = buffer.slice();
+        this.length = this.buffer.limit();
+    }
+
+    /**
+     * Returns a read-only view of the complete data, positioned at 0. The view
+     * is independent of this stream's position and remains usable after the
+     * stream has been closed.
+     *
+     * @return the data as a ByteBuffer
+     * @throws IOException
+     *             if the stream has been closed
+     */
+    public ByteBuffer getBuffer() throws IOException {
+        checkClosed();
+        final ByteBuffer view = this.buffer.asReadOnlyBuffer();
+        view.clear();
+        return view;
+    }
+
+    /**
+     * Creates a SeekableStream over the complete data. The SeekableStream has
+     * its own position and does not have to be closed.
+     *
+     * @return a new SeekableStream
+     * @throws IOException
+     *             if the stream has been closed
+     */
+    public SeekableStream createSeekableStream() throws IOException {
+        return new ByteBufferSeekableStream(getBuffer());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int read() throws IOException {
+        checkClosed();
+        this.bitOffset = 0;
+        if (this.streamPos >= this.length) {
+            return -1;
+        }
+        return this.buffer.get((int) this.streamPos++) & 0xff;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int read(final byte[] b, final int off, final int len)
+            throws IOException {
+        checkClosed();
+        if (b == null) {
+            throw new NullPointerException();
+        }
+        if (off < 0 || len < 0 || off + len > b.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        this.bitOffset = 0;
+        if (len == 0) {
+            return 0;
+        }
+        final long remaining = this.length - this.streamPos;
+        if (remaining <= 0) {
+            return -1;
+        }
+        final int n = (int) Math.min(len, remaining);
+        this.buffer.position((int) this.streamPos);
+        this.buffer.get(b, off, n);
+        this.streamPos += n;
+        return n;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long length() {
+        return this.length;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean isCached() {
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean isCachedMemory() {
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void close() throws IOException {
+        super.close();
+        this.buffer = null;
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.rendered;
+
+import java.awt.Rectangle;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+
+/**
+ * Subsamples an image by an integer factor: only every n-th pixel of every
+ * n-th row of the source is kept, starting with the top left pixel. Source
+ * tiles are only requested for the rows that are kept, so with a stripped or
+ * tiled source whose strips or tiles are not much taller than the factor most
+ * of them are never decoded. The last row of source tiles used is kept so
+ * that consecutive tiles of this image don't request it again.
+ */
+public class SubsampledRed extends AbstractRed {
+
+    /** The minimum height of the tiles of this image in rows. */
+    private static final int MIN_TILE_HEIGHT = 16;
+
+    private final int factor;
+
+    private int cachedTileY = Integer.MIN_VALUE;
+    private int cachedTileX0;
+    private int cachedTileX1;
+    private Raster[] cachedTiles;
+
+    /**
+     * Wraps an image in a <code>SubsampledRed</code> unless the factor is 1.
+     *
+     * @param src
+     *            the source image
+     * @param factor
+     *            the subsampling factor (positive)
+     * @return the subsampled image
+     */
+    public static RenderedImage subsample(final RenderedImage src,
+            final int factor) {
+        if (factor == 1) {
+            return src;
+        }
+        return new SubsampledRed(RenderedImageCachableRed.wrap(src), factor);
+    }
+
+    /**
+     * Main constructor.
+     *
+     * @param src
+     *            the source image
+     * @param factor
+     *            the subsampling factor (positive)
+     */
+    public SubsampledRed(final CachableRed src, final int factor) {
+        super(); // We _must_ call init...
+        if (factor <= 0) {
+            throw new IllegalArgumentException(
+                    "Subsampling factor must be greater than 0: " + factor);
+        }
+        this.factor = factor;
+        final Rectangle srcBounds = src.getBounds();
+        final Rectangle bounds = new Rectangle(srcBounds.x, srcBounds.y,
+                (srcBounds.width + factor - 1) / factor,
+                (srcBounds.height + factor - 1) / factor);
+        final int tileHeight = Math.min(bounds.height, Math.max(
+                MIN_TILE_HEIGHT, src.getTileHeight() / factor));
+        final SampleModel sm = src.getSampleModel()
+                .createCompatibleSampleModel(bounds.width, tileHeight);
+        init(src, bounds, src.getColorModel(), sm, bounds.x, bounds.y, null);
+    }
+
+    /**
+     * fetch the source image for this node.
+     */
+    public CachableRed getSource() {
+        return (CachableRed) getSources().get(0);
+    }
+
+    /**
+     * Returns the subsampling factor.
+     *
+     * @return the subsampling factor
+     */
+    public int getFactor() {
+        return this.factor;
+    }
+
+    @Override
+    public Object getProperty(final String name) {
+        return getSource().getProperty(name);
+    }
+
+    @Override
+    public String[] getPropertyNames() {
+        return getSource().getPropertyNames();
+    }
+
+    @Override
+    public synchronized WritableRaster copyData(final WritableRaster wr) {
+        final Rectangle r = wr.getBounds().intersection(this.bounds);
+        if (r.isEmpty()) {
+            return wr;
+        }
+        final CachableRed src = getSource();
+        final int n = this.factor;
+        final int bands = wr.getNumBands();
+        final int srcTileWidth = src.getTileWidth();
+        final int srcTileHeight = src.getTileHeight();
+        final int srcGridX = src.getTileGridXOffset();
+        final int srcGridY = src.getTileGridYOffset();
+        final int srcX0 = this.bounds.x + (r.x - this.bounds.x) * n;
+        final int srcX1 = this.bounds.x + (r.x + r.width - 1 - this.bounds.x)
+                * n;
+        final int tx0 = tileIndex(srcX0, srcGridX, srcTileWidth);
+        final int tx1 = tileIndex(srcX1, srcGridX, srcTileWidth);
+
+        final int[] row = new int[r.width * bands];
+        int[] srcRow = null;
+        for (int y = r.y; y < r.y + r.height; y++) {
+            final int srcY = this.bounds.y + (y - this.bounds.y) * n;
+            final Raster[] tiles = getSourceTiles(
+                    tileIndex(srcY, srcGridY, srcTileHeight), tx0, tx1);
+            int x = r.x;
+            for (final Raster tile : tiles) {
+                // Output columns whose source column lies in this tile
+                final int tileEnd = tile.getMinX() + tile.getWidth();
+                final int first = x;
+                while (x < r.x + r.width
+                        && this.bounds.x + (x - this.bounds.x) * n < tileEnd) {
+                    x++;
+                }
+                if (x == first) {
+                    continue;
+                }
+                final int sx0 = this.bounds.x + (first - this.bounds.x) * n;
+                final int sw = (x - first - 1) * n + 1;
+                if (srcRow == null || srcRow.length < sw * bands) {
+                    srcRow = new int[sw * bands];
+                }
+                tile.getPixels(sx0, srcY, sw, 1, srcRow);
+                int d = (first - r.x) * bands;
+                for (int s = 0; s < sw * bands; s += n * bands) {
+                    for (int b = 0; b < bands; b++) {
+                        row[d++] = srcRow[s + b];
+                    }
+                }
+            }
+            wr.setPixels(r.x, y, r.width, 1, row);
+        }
+        return wr;
+    }
+
+    private Raster[] getSourceTiles(final int tileY, final int tx0,
+            final int tx1) {
+        if (tileY != this.cachedTileY || tx0 != this.cachedTileX0
+                || tx1 != this.cachedTileX1) {
+            final CachableRed src = getSource();
+            this.cachedTiles = new Raster[tx1 - tx0 + 1];
+            for (int tx = tx0; tx <= tx1; tx++) {
+                this.cachedTiles[tx - tx0] = src.getTile(tx, tileY);
+            }
+            this.cachedTileY = tileY;
+            this.cachedTileX0 = tx0;
+            this.cachedTileX1 = tx1;
+        }
+        return this.cachedTiles;
+    }
+
+    private static int tileIndex(final int pos, final int gridOffset,
+            final int tileSize) {
+        final int p = pos - gridOffset;
+        // We need to round to -infinity...
+        if (p >= 0) {
+            return p / tileSize;
+        } else {
+            return (p - tileSize + 1) / tileSize;
+        }
+    }
+}
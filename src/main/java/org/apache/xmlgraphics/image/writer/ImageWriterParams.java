@@ -27,10 +27,17 @@ package org.apache.xmlgraphics.image.writer;
  */
 public class ImageWriterParams {
 
+    /** PNG encoding profile: best compression (the default). */
+    public static final String PNG_ENCODE_PROFILE_DEFAULT = "default";
+
+    /** PNG encoding profile: fast filtering and compression. */
+    public static final String PNG_ENCODE_PROFILE_SPEED = "speed";
+
     private Integer resolution;
     private Float jpegQuality;
     private Boolean jpegForceBaseline;
     private String compressionMethod;
+    private String pngEncodeProfile;
 
     /**
      * Default constructor.
@@ -67,6 +74,14 @@ public class ImageWriterParams {
         return this.compressionMethod;
     }
 
+    /**
+     * @return the PNG encoding profile ({@link #PNG_ENCODE_PROFILE_DEFAULT} or
+     *         {@link #PNG_ENCODE_PROFILE_SPEED}), or null if undefined
+     */
+    public String getPNGEncodeProfile() {
+        return this.pngEncodeProfile;
+    }
+
     /**
      * Sets the target resolution of the bitmap image to be written.
      * 
@@ -99,4 +114,16 @@ public class ImageWriterParams {
     public void setCompressionMethod(final String method) {
         this.compressionMethod = method;
     }
+
+    /**
+     * Sets the profile used for encoding PNG images, trading file size for
+     * encoding speed.
+     *
+     * @param profile
+     *            {@link #PNG_ENCODE_PROFILE_DEFAULT} or
+     *            {@link #PNG_ENCODE_PROFILE_SPEED}
+     */
+    public void setPNGEncodeProfile(final String profile) {
+        this.pngEncodeProfile = profile;
+    }
 }
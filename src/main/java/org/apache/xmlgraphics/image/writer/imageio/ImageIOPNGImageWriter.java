@@ -19,6 +19,12 @@
 
 package org.apache.xmlgraphics.image.writer.imageio;
 
+import java.awt.image.RenderedImage;
+
+import javax.imageio.ImageWriteParam;
+
+import org.apache.xmlgraphics.image.writer.ImageWriterParams;
+
 /**
  * ImageWriter that encodes PNG images using Image I/O.
  *
@@ -34,4 +40,21 @@ public class ImageIOPNGImageWriter extends ImageIOImageWriter {
         super("image/png");
     }
 
+    /** {@inheritDoc} */
+    @Override
+    protected ImageWriteParam getDefaultWriteParam(
+            final javax.imageio.ImageWriter iiowriter,
+            final RenderedImage image, final ImageWriterParams params) {
+        final ImageWriteParam param = super.getDefaultWriteParam(iiowriter,
+                image, params);
+        if (params != null
+                && ImageWriterParams.PNG_ENCODE_PROFILE_SPEED.equals(params
+                        .getPNGEncodeProfile()) && param.canWriteCompressed()) {
+            // The JDK writer maps the quality to deflate level 9 - 9 * quality
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(8f / 9f);
+        }
+        return param;
+    }
+
 }
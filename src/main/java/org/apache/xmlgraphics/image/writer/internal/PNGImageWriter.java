@@ -23,6 +23,7 @@ import java.awt.image.RenderedImage;
 import java.io.IOException;
 import java.io.OutputStream;
 
+import org.apache.xmlgraphics.image.codec.png.PNGEncodeParam;
 import org.apache.xmlgraphics.image.codec.png.PNGImageEncoder;
 import org.apache.xmlgraphics.image.writer.AbstractImageWriter;
 import org.apache.xmlgraphics.image.writer.ImageWriterParams;
@@ -46,7 +47,15 @@ public class PNGImageWriter extends AbstractImageWriter {
     @Override
     public void writeImage(final RenderedImage image, final OutputStream out,
             final ImageWriterParams params) throws IOException {
-        final PNGImageEncoder encoder = new PNGImageEncoder(out, null);
+        PNGEncodeParam param = null;
+        if (params != null && params.getPNGEncodeProfile() != null) {
+            param = PNGEncodeParam.getDefaultEncodeParam(image);
+            if (ImageWriterParams.PNG_ENCODE_PROFILE_SPEED.equals(params
+                    .getPNGEncodeProfile())) {
+                param.setEncodeProfile(PNGEncodeParam.PROFILE_SPEED);
+            }
+        }
+        final PNGImageEncoder encoder = new PNGImageEncoder(out, param);
         encoder.encode(image);
     }
 
@@ -202,6 +202,7 @@ public abstract class AbstractPSDocumentGraphics2D extends PSGraphics2D {
             return; // ignore
         }
         // Finish page
+        closeGraphicsStateScope();
         writePageTrailer();
         this.pagePending = false;
     }
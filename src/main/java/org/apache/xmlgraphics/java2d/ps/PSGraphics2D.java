@@ -36,8 +36,11 @@ import java.awt.Stroke;
 import java.awt.TexturePaint;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Area;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Line2D;
 import java.awt.geom.PathIterator;
 import java.awt.geom.Rectangle2D;
+import java.awt.geom.RoundRectangle2D;
 import java.awt.image.BufferedImage;
 import java.awt.image.ImageObserver;
 import java.awt.image.RenderedImage;
@@ -81,6 +84,9 @@ public class PSGraphics2D extends AbstractGraphics2D {
     /** Disable or enable clipping */
     protected boolean clippingDisabled = false;
 
+    /** Whether the clip test falls back to an exact test with Area */
+    protected boolean exactClipTest = true;
+
     /** Fallback text handler */
 
     protected TextHandler fallbackTextHandler = new StrokingTextHandler();
@@ -93,6 +99,44 @@ public class PSGraphics2D extends AbstractGraphics2D {
      */
     protected Color currentColour = new Color(0, 0, 0);
 
+    /*
+     * State tracking mode. Only the fields of the root instance are used, so
+     * all copies created from it share one graphics state scope.
+     */
+    private boolean stateTracking;
+    private boolean scopeOpen;
+    private AffineTransform scopeTransform;
+    private Shape scopeClip;
+
+    /** The last clip analyzed by shouldBeClipped, kept on the root instance */
+    private ClipInfo clipInfo;
+
+    /**
+     * What shouldBeClipped knows about a clip shape. The clip returned by
+     * getClip() is a new object every time, so instances are matched by
+     * content.
+     */
+    private static final class ClipInfo {
+
+        private final Shape clip;
+        private final Rectangle2D bounds;
+        private final boolean rectangular;
+        private Area area;
+
+        private ClipInfo(final Shape clip) {
+            this.clip = clip;
+            this.bounds = clip.getBounds2D();
+            this.rectangular = isRectangle(clip, this.bounds);
+        }
+
+        private Area getArea() {
+            if (this.area == null) {
+                this.area = new Area(this.clip);
+            }
+            return this.area;
+        }
+    }
+
     /**
      * Create a new Graphics2D that generates PostScript code.
      * 
@@ -130,6 +174,7 @@ public class PSGraphics2D extends AbstractGraphics2D {
         this.rootG2D = g.rootG2D != null ? g.rootG2D : g;
         setPSGenerator(g.gen);
         this.clippingDisabled = g.clippingDisabled;
+        this.exactClipTest = g.exactClipTest;
         // this.fallbackTextHandler is not copied
         // TODO The customTextHandler should probably not be passed over just
         // like that
@@ -195,6 +240,189 @@ public class PSGraphics2D extends AbstractGraphics2D {
      * RenderingHintsKeyExt.VALUE_AVOID_TILE_PAINTING_ON); }
      */
 
+    /**
+     * Enables or disables state tracking. By default every shape is painted in
+     * its own graphics state scope (gsave/grestore) which repeats the
+     * transformation matrix and the clip. With state tracking enabled
+     * consecutive shapes with the same transformation and clip share one
+     * scope, and only changes to the color and stroke are written.
+     * <p>
+     * While state tracking is enabled the graphics state of the
+     * {@link PSGenerator} may be left inside an open scope after a painting
+     * operation. Call {@link #closeGraphicsStateScope()} before writing to the
+     * generator directly.
+     * <p>
+     * At language level 2 and above rectangles are then filled with
+     * <code>rectfill</code> rather than through
+     * {@link #doDrawing(boolean, boolean, boolean)}.
+     * <p>
+     * The setting applies to this instance and all copies created from the
+     * same root instance.
+     *
+     * @param b
+     *            true to enable state tracking
+     * @throws IOException
+     *             In case of an I/O problem while closing the current scope
+     */
+    public void setStateTracking(final boolean b) throws IOException {
+        final PSGraphics2D root = getRoot();
+        if (!b) {
+            root.closeGraphicsStateScope();
+        }
+        root.stateTracking = b;
+    }
+
+    /**
+     * Indicates whether state tracking is enabled. See
+     * {@link #setStateTracking(boolean)}.
+     *
+     * @return true if state tracking is enabled
+     */
+    public boolean isStateTracking() {
+        return getRoot().stateTracking;
+    }
+
+    /**
+     * Closes the graphics state scope left open by painting operations in
+     * state tracking mode, if any. The {@link PSGenerator} is then back in the
+     * graphics state it was in before the first of these operations.
+     *
+     * @throws IOException
+     *             In case of an I/O problem
+     */
+    public void closeGraphicsStateScope() throws IOException {
+        final PSGraphics2D root = getRoot();
+        if (root.scopeOpen) {
+            root.scopeOpen = false;
+            root.scopeTransform = null;
+            root.scopeClip = null;
+            this.gen.restoreGraphicsState();
+        }
+    }
+
+    private PSGraphics2D getRoot() {
+        return this.rootG2D != null ? this.rootG2D : this;
+    }
+
+    /**
+     * Sets up the transformation matrix and the clip for painting a shape.
+     * Without state tracking this opens a new graphics state scope which has
+     * to be closed with {@link #endPainting(boolean)}.
+     */
+    private void beginPainting(final Shape s) throws IOException {
+        final AffineTransform trans = getTransform();
+        final Shape imclip = getClip();
+        if (!isStateTracking()) {
+            this.gen.saveGraphicsState();
+            if (!trans.isIdentity()) {
+                this.gen.concatMatrix(trans);
+            }
+            if (shouldBeClipped(imclip, s)) {
+                writeClip(imclip);
+            }
+            return;
+        }
+
+        final PSGraphics2D root = getRoot();
+        if (root.scopeOpen && trans.equals(root.scopeTransform)) {
+            if (root.scopeClip != null) {
+                if (isSameShape(root.scopeClip, imclip)) {
+                    return;
+                }
+            } else if (!isClipNeeded(imclip, s)) {
+                return;
+            } else {
+                // The clip can still be narrowed down inside the scope
+                writeClip(imclip);
+                root.scopeClip = imclip;
+                return;
+            }
+        }
+        closeGraphicsStateScope();
+        this.gen.saveGraphicsState();
+        if (!trans.isIdentity()) {
+            this.gen.concatMatrix(trans);
+        }
+        root.scopeOpen = true;
+        root.scopeTransform = trans;
+        if (isClipNeeded(imclip, s)) {
+            writeClip(imclip);
+            root.scopeClip = imclip;
+        }
+    }
+
+    /**
+     * Finishes painting a shape started with {@link #beginPainting(Shape)}.
+     *
+     * @param dirty
+     *            true if the graphics state was changed in a way the
+     *            {@link org.apache.xmlgraphics.ps.PSState} does not record
+     */
+    private void endPainting(final boolean dirty) throws IOException {
+        if (!isStateTracking()) {
+            this.gen.restoreGraphicsState();
+        } else if (dirty) {
+            closeGraphicsStateScope();
+        }
+    }
+
+    private boolean isClipNeeded(final Shape clip, final Shape s) {
+        return !this.clippingDisabled && shouldBeClipped(clip, s);
+    }
+
+    private static boolean isSameShape(final Shape a, final Shape b) {
+        if (a == b) {
+            return true;
+        } else if (a == null || b == null) {
+            return false;
+        }
+        final PathIterator ia = a.getPathIterator(null);
+        final PathIterator ib = b.getPathIterator(null);
+        if (ia.getWindingRule() != ib.getWindingRule()) {
+            return false;
+        }
+        final double[] ca = new double[6];
+        final double[] cb = new double[6];
+        while (!ia.isDone() && !ib.isDone()) {
+            final int type = ia.currentSegment(ca);
+            if (type != ib.currentSegment(cb)) {
+                return false;
+            }
+            for (int i = 0; i < 6; ++i) {
+                if (ca[i] != cb[i]) {
+                    return false;
+                }
+            }
+            ia.next();
+            ib.next();
+        }
+        return ia.isDone() && ib.isDone();
+    }
+
+    /**
+     * Controls whether {@link #shouldBeClipped(Shape, Shape)} may fall back to
+     * an exact, but expensive, test with {@link Area} when the shape's bounds
+     * are not inside the clip. Without the fallback a clip is written
+     * whenever the cheap tests cannot show that it is superfluous. Enabled by
+     * default.
+     *
+     * @param b
+     *            true to enable the exact test
+     */
+    public void setExactClipTest(final boolean b) {
+        this.exactClipTest = b;
+    }
+
+    /**
+     * Indicates whether {@link #shouldBeClipped(Shape, Shape)} may use an
+     * exact test. See {@link #setExactClipTest(boolean)}.
+     *
+     * @return true if the exact test is enabled (the default)
+     */
+    public boolean isExactClipTest() {
+        return this.exactClipTest;
+    }
+
     /**
      * Disable clipping on each draw command.
      *
@@ -288,6 +516,7 @@ public class PSGraphics2D extends AbstractGraphics2D {
         g.dispose();
 
         try {
+            closeGraphicsStateScope();
             final AffineTransform at = getTransform();
             this.gen.saveGraphicsState();
             this.gen.concatMatrix(at);
@@ -388,6 +617,13 @@ public class PSGraphics2D extends AbstractGraphics2D {
      */
     @Override
     public void dispose() {
+        if (this.rootG2D == null && this.gen != null) {
+            try {
+                closeGraphicsStateScope();
+            } catch (final IOException ioe) {
+                log.error("IOException", ioe);
+            }
+        }
         this.gen = null;
         this.fallbackTextHandler = null;
         this.customTextHandler = null;
@@ -430,29 +666,17 @@ public class PSGraphics2D extends AbstractGraphics2D {
             final int type = iter.currentSegment(vals);
             switch (type) {
             case PathIterator.SEG_CUBICTO:
-                this.gen.writeln(this.gen.formatDouble(vals[0]) + " "
-                        + this.gen.formatDouble(vals[1]) + " "
-                        + this.gen.formatDouble(vals[2]) + " "
-                        + this.gen.formatDouble(vals[3]) + " "
-                        + this.gen.formatDouble(vals[4]) + " "
-                        + this.gen.formatDouble(vals[5]) + " "
-                        + this.gen.mapCommand("curveto"));
+                this.gen.curveto(vals[0], vals[1], vals[2], vals[3], vals[4],
+                        vals[5]);
                 break;
             case PathIterator.SEG_LINETO:
-                this.gen.writeln(this.gen.formatDouble(vals[0]) + " "
-                        + this.gen.formatDouble(vals[1]) + " "
-                        + this.gen.mapCommand("lineto"));
+                this.gen.lineto(vals[0], vals[1]);
                 break;
             case PathIterator.SEG_MOVETO:
-                this.gen.writeln(this.gen.formatDouble(vals[0]) + " "
-                        + this.gen.formatDouble(vals[1]) + " "
-                        + this.gen.mapCommand("moveto"));
+                this.gen.moveto(vals[0], vals[1]);
                 break;
             case PathIterator.SEG_QUADTO:
-                this.gen.writeln(this.gen.formatDouble(vals[0]) + " "
-                        + this.gen.formatDouble(vals[1]) + " "
-                        + this.gen.formatDouble(vals[2]) + " "
-                        + this.gen.formatDouble(vals[3]) + " QT");
+                this.gen.quadto(vals[0], vals[1], vals[2], vals[3]);
                 break;
             case PathIterator.SEG_CLOSE:
                 this.gen.writeln(this.gen.mapCommand("closepath"));
@@ -485,34 +709,60 @@ public class PSGraphics2D extends AbstractGraphics2D {
     public void draw(final Shape s) {
         preparePainting();
         try {
-            this.gen.saveGraphicsState();
-
-            final AffineTransform trans = getTransform();
-            final boolean newTransform = !trans.isIdentity();
-
-            if (newTransform) {
-                this.gen.concatMatrix(trans);
-            }
-            final Shape imclip = getClip();
-            if (shouldBeClipped(imclip, s)) {
-                writeClip(imclip);
-            }
+            // A line has no area, its outline decides whether it is clipped
+            final Stroke stroke = getStroke();
+            beginPainting(getStrokeOutline(s, stroke));
             establishColor(getColor());
 
             applyPaint(getPaint(), false);
-            applyStroke(getStroke());
+            applyStroke(stroke);
 
             this.gen.writeln(this.gen.mapCommand("newpath"));
             processShape(s);
             doDrawing(false, true, false);
-            this.gen.restoreGraphicsState();
+            endPainting(false);
         } catch (final IOException ioe) {
             log.error("IOException", ioe);
         }
     }
 
     /**
-     * Determines if a shape interacts with a clipping region.
+     * Returns the shape to test against the clip when the given shape is
+     * stroked. The stroked outline is only built if there is a clip and the
+     * bounds of the shape, grown by the largest extent of the stroke, do not
+     * already lie inside it.
+     */
+    private Shape getStrokeOutline(final Shape s, final Stroke stroke) {
+        if (!(stroke instanceof BasicStroke)) {
+            return s;
+        }
+        final Shape clip = getClip();
+        if (clip == null) {
+            return s;
+        }
+        final BasicStroke bs = (BasicStroke) stroke;
+        double extent = 1;
+        if (bs.getLineJoin() == BasicStroke.JOIN_MITER) {
+            extent = Math.max(extent, bs.getMiterLimit());
+        }
+        if (bs.getEndCap() == BasicStroke.CAP_SQUARE) {
+            extent = Math.max(extent, Math.sqrt(2));
+        }
+        final double pad = bs.getLineWidth() / 2 * extent;
+        final Rectangle2D bounds = s.getBounds2D();
+        final Rectangle2D grown = new Rectangle2D.Double(bounds.getX() - pad,
+                bounds.getY() - pad, bounds.getWidth() + 2 * pad,
+                bounds.getHeight() + 2 * pad);
+        return clip.contains(grown) ? grown : stroke.createStrokedShape(s);
+    }
+
+    /**
+     * Determines if a shape interacts with a clipping region. The bounds of
+     * the shape are checked against the clip first, which decides the common
+     * cases of a shape inside or outside a rectangular clip. Only if that is
+     * inconclusive, and {@link #isExactClipTest()} is enabled, the shapes are
+     * intersected as {@link Area}s. The analysis of the last clip is kept, so
+     * painting many shapes with the same clip does not repeat it.
      * 
      * @param clip
      *            Shape defining the clipping region
@@ -524,12 +774,84 @@ public class PSGraphics2D extends AbstractGraphics2D {
         if (clip == null || s == null) {
             return false;
         }
+        final PSGraphics2D root = getRoot();
+        ClipInfo info = root.clipInfo;
+        if (info == null || !isSameShape(info.clip, clip)) {
+            info = new ClipInfo(clip);
+            root.clipInfo = info;
+        }
+
+        final Rectangle2D bounds = s.getBounds2D();
+        if (!info.bounds.intersects(bounds)) {
+            return true;
+        } else if (info.rectangular ? info.bounds.contains(bounds) : clip
+                .contains(bounds)) {
+            return false;
+        } else if (info.rectangular && hasTightBounds(s)) {
+            return true;
+        } else if (!this.exactClipTest) {
+            return true;
+        }
         final Area as = new Area(s);
-        final Area imclip = new Area(clip);
+        final Area imclip = (Area) info.getArea().clone();
         imclip.intersect(as);
         return !imclip.equals(as);
     }
 
+    /**
+     * Indicates whether getBounds2D() of the shape is its exact extent. For
+     * other shapes the control points of curves may lie outside the shape.
+     */
+    private static boolean hasTightBounds(final Shape s) {
+        return s instanceof Rectangle2D || s instanceof Line2D
+                || s instanceof Ellipse2D || s instanceof RoundRectangle2D;
+    }
+
+    /**
+     * Indicates whether a shape is an axis-aligned rectangle, that is a single
+     * polygon visiting the corners of its bounds.
+     */
+    private static boolean isRectangle(final Shape s, final Rectangle2D bounds) {
+        final PathIterator iter = s.getPathIterator(null);
+        final double[] coords = new double[6];
+        double lastX = 0;
+        double lastY = 0;
+        int corners = 0;
+        int points = 0;
+        while (!iter.isDone()) {
+            final int type = iter.currentSegment(coords);
+            if (type == PathIterator.SEG_CLOSE) {
+                iter.next();
+                break;
+            } else if (type == PathIterator.SEG_MOVETO ? points > 0
+                    : type != PathIterator.SEG_LINETO) {
+                return false;
+            }
+            final double x = coords[0];
+            final double y = coords[1];
+            final int corner;
+            if (x == bounds.getMinX()) {
+                corner = y == bounds.getMinY() ? 1 : y == bounds.getMaxY() ? 2
+                        : 0;
+            } else if (x == bounds.getMaxX()) {
+                corner = y == bounds.getMinY() ? 4 : y == bounds.getMaxY() ? 8
+                        : 0;
+            } else {
+                corner = 0;
+            }
+            if (corner == 0 || points > 4 || points > 0 && x != lastX
+                    && y != lastY) {
+                return false;
+            }
+            corners |= corner;
+            lastX = x;
+            lastY = y;
+            ++points;
+            iter.next();
+        }
+        return iter.isDone() && corners == 15;
+    }
+
     /**
      * Establishes a clipping region
      * 
@@ -694,6 +1016,7 @@ public class PSGraphics2D extends AbstractGraphics2D {
             final AffineTransform xform) {
         preparePainting();
         try {
+            closeGraphicsStateScope();
             final AffineTransform at = getTransform();
             this.gen.saveGraphicsState();
             this.gen.concatMatrix(at);
@@ -789,6 +1112,7 @@ public class PSGraphics2D extends AbstractGraphics2D {
     public void drawString(final String s, final float x, final float y) {
         try {
             if (this.customTextHandler != null && !this.textAsShapes) {
+                closeGraphicsStateScope();
                 this.customTextHandler.drawString(this, s, x, y);
             } else {
                 this.fallbackTextHandler.drawString(this, s, x, y);
@@ -818,34 +1142,34 @@ public class PSGraphics2D extends AbstractGraphics2D {
     public void fill(final Shape s) {
         preparePainting();
         try {
-            this.gen.saveGraphicsState();
-
-            final AffineTransform trans = getTransform();
-            final boolean newTransform = !trans.isIdentity();
-
-            if (newTransform) {
-                this.gen.concatMatrix(trans);
-            }
-            final Shape imclip = getClip();
-            if (shouldBeClipped(imclip, s)) {
-                writeClip(imclip);
-            }
-
+            beginPainting(s);
             establishColor(getColor());
 
-            applyPaint(getPaint(), true);
+            final Paint paint = getPaint();
+            applyPaint(paint, true);
 
-            this.gen.writeln(this.gen.mapCommand("newpath"));
-            final int windingRule = processShape(s);
-            doDrawing(true, false, windingRule == PathIterator.WIND_EVEN_ODD);
-            this.gen.restoreGraphicsState();
+            if (s instanceof Rectangle2D && isStateTracking()
+                    && this.gen.getPSLevel() >= 2) {
+                // A single operator, no path construction needed
+                final Rectangle2D r = (Rectangle2D) s;
+                this.gen.rectfill(r.getX(), r.getY(), r.getWidth(),
+                        r.getHeight());
+            } else {
+                this.gen.writeln(this.gen.mapCommand("newpath"));
+                final int windingRule = processShape(s);
+                doDrawing(true, false,
+                        windingRule == PathIterator.WIND_EVEN_ODD);
+            }
+            // A pattern replaces the color behind the PSState's back
+            endPainting(paint instanceof TexturePaint);
         } catch (final IOException ioe) {
             log.error("IOException", ioe);
         }
     }
 
     /**
-     * Commits a painting operation.
+     * Commits a painting operation. With state tracking enabled, rectangle
+     * fills bypass this method (see {@link #setStateTracking(boolean)}).
      * 
      * @param fill
      *            filling
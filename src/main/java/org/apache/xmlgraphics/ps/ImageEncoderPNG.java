@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.ps;
+
+import java.awt.image.ColorModel;
+import java.awt.image.IndexColorModel;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.xmlgraphics.image.loader.impl.ImageRawPNG;
+
+/**
+ * ImageEncoder implementation for PNG images. The concatenated IDAT data of
+ * the PNG file already is a zlib stream whose rows carry PNG filter tags, so
+ * at PostScript language level 3 it can be copied into the page unchanged and
+ * decoded by <code>/FlateDecode</code> with the PNG predictors instead of
+ * being decoded and re-compressed.
+ * <p>
+ * Only images without an alpha channel and with at most 8 bits per sample
+ * can be passed through, see {@link #canEncode(ImageRawPNG, int)}. Typical
+ * use:
+ * </p>
+ *
+ * <pre>
+ * if (ImageEncoderPNG.canEncode(png, gen.getPSLevel())) {
+ *     PSImageUtils.writeImage(new ImageEncoderPNG(png), dim, desc, targetRect,
+ *             png.getColorModel(), gen);
+ * }
+ * </pre>
+ */
+public class ImageEncoderPNG implements ImageEncoder {
+
+    private final ImageRawPNG image;
+    private final int numColors;
+    private final int bitsPerComponent;
+    private final int columns;
+
+    /**
+     * Main constructor.
+     *
+     * @param image
+     *            the PNG image
+     * @throws IllegalArgumentException
+     *             if the image cannot be passed through (see
+     *             {@link #canEncode(ImageRawPNG, int)})
+     */
+    public ImageEncoderPNG(final ImageRawPNG image) {
+        if (!canEncode(image, 3)) {
+            throw new IllegalArgumentException(
+                    "PNG image cannot be passed through to PostScript: "
+                            + image.getColorModel() + ", bit depth "
+                            + image.getBitDepth());
+        }
+        this.image = image;
+        final ColorModel cm = image.getColorModel();
+        this.numColors = cm instanceof IndexColorModel ? 1 : cm
+                .getNumComponents();
+        this.bitsPerComponent = image.getBitDepth();
+        this.columns = image.getSize().getWidthPx();
+    }
+
+    /**
+     * Indicates whether the IDAT data of the given PNG image can be passed
+     * through unchanged. This requires PostScript language level 3 (for
+     * <code>/FlateDecode</code>), a color model without alpha channel
+     * (gray, RGB or indexed without tRNS palette transparency) and at most 8 bits per sample since PostScript
+     * image dictionaries don't accept 16 bit samples.
+     *
+     * @param image
+     *            the PNG image
+     * @param psLevel
+     *            the PostScript language level of the target
+     * @return true if {@link ImageEncoderPNG} can be used for the image
+     */
+    public static boolean canEncode(final ImageRawPNG image, final int psLevel) {
+        if (psLevel < 3) {
+            return false;
+        }
+        final ColorModel cm = image.getColorModel();
+        if (cm instanceof IndexColorModel) {
+            // a tRNS chunk gives the palette an alpha channel
+            return !cm.hasAlpha() && image.getBitDepth() <= 8;
+        }
+        final int numComponents = cm.getNumComponents();
+        return !cm.hasAlpha() && (numComponents == 1 || numComponents == 3)
+                && image.getBitDepth() <= 8;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void writeTo(final OutputStream out) throws IOException {
+        this.image.writeTo(out);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String getImplicitFilter() {
+        // Predictor 15: the PNG filter type is given per row
+        return "<< /Predictor 15 /Columns " + this.columns + " /Colors "
+                + this.numColors + " /BitsPerComponent "
+                + this.bitsPerComponent + " >> /FlateDecode";
+    }
+
+}
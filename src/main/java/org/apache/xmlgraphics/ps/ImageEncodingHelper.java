@@ -22,13 +22,17 @@ package org.apache.xmlgraphics.ps;
 import java.awt.color.ColorSpace;
 import java.awt.image.ColorModel;
 import java.awt.image.ComponentColorModel;
+import java.awt.image.ComponentSampleModel;
 import java.awt.image.DataBuffer;
 import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
 import java.awt.image.IndexColorModel;
-import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.MultiPixelPackedSampleModel;
 import java.awt.image.Raster;
 import java.awt.image.RenderedImage;
 import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
 import java.io.IOException;
 import java.io.OutputStream;
 
@@ -45,9 +49,9 @@ public class ImageEncodingHelper {
 
     private final RenderedImage image;
     private ColorModel encodedColorModel;
-    private boolean firstTileDump;
+    /** Copies the native samples; null if the image has to be converted */
+    private RowEncoder nativeEncoder;
     private final boolean enableCMYK;
-    private boolean isBGR;
 
     /**
      * Main constructor
@@ -127,7 +131,9 @@ public class ImageEncodingHelper {
     }
 
     /**
-     * Writes a RenderedImage to an OutputStream by converting it to RGB.
+     * Writes a RenderedImage to an OutputStream by converting it to RGB. The
+     * image is read one row of tiles at a time and written one scanline at a
+     * time, so the whole raster is never copied.
      * 
      * @param image
      *            the image
@@ -138,46 +144,91 @@ public class ImageEncodingHelper {
      */
     public static void encodeRenderedImageAsRGB(final RenderedImage image,
             final OutputStream out) throws IOException {
-        final Raster raster = image.getData();
-        Object data;
-        final int nbands = raster.getNumBands();
-        final int dataType = raster.getDataBuffer().getDataType();
-        switch (dataType) {
-        case DataBuffer.TYPE_BYTE:
-            data = new byte[nbands];
-            break;
-        case DataBuffer.TYPE_USHORT:
-            data = new short[nbands];
-            break;
-        case DataBuffer.TYPE_INT:
-            data = new int[nbands];
-            break;
-        case DataBuffer.TYPE_FLOAT:
-            data = new float[nbands];
-            break;
-        case DataBuffer.TYPE_DOUBLE:
-            data = new double[nbands];
-            break;
-        default:
-            throw new IllegalArgumentException("Unknown data buffer type: "
-                    + dataType);
+        writeScanlines(image, createRGBEncoder(image), out);
+    }
+
+    /**
+     * Writes the scanlines of an image. The tiles are fetched one row at a
+     * time and each scanline is assembled from the tiles of that row, so only
+     * one row of tiles and one scanline are held in memory.
+     */
+    private static void writeScanlines(final RenderedImage image,
+            final RowEncoder encoder, final OutputStream out)
+            throws IOException {
+        final int minX = image.getMinX();
+        final int minY = image.getMinY();
+        final int maxX = minX + image.getWidth();
+        final int maxY = minY + image.getHeight();
+        final int lineLength = (int) (((long) image.getWidth()
+                * encoder.bitsPerPixel + 7) / 8);
+        final byte[] line = new byte[lineLength];
+        final Raster[] tiles = new Raster[image.getNumXTiles()];
+        final int minTileX = image.getMinTileX();
+        final int minTileY = image.getMinTileY();
+        for (int ty = minTileY; ty < minTileY + image.getNumYTiles(); ty++) {
+            for (int i = 0; i < tiles.length; i++) {
+                tiles[i] = image.getTile(minTileX + i, ty);
+            }
+            final int y0 = Math.max(minY, tiles[0].getMinY());
+            final int y1 = Math.min(maxY,
+                    tiles[0].getMinY() + tiles[0].getHeight());
+            for (int y = y0; y < y1; y++) {
+                for (final Raster tile : tiles) {
+                    final int x0 = Math.max(minX, tile.getMinX());
+                    final int x1 = Math.min(maxX,
+                            tile.getMinX() + tile.getWidth());
+                    if (x1 > x0) {
+                        encoder.encode(tile, x0, y, x1 - x0, line, x0 - minX);
+                    }
+                }
+                out.write(line);
+            }
         }
+    }
 
-        final ColorModel colorModel = image.getColorModel();
-        final int w = image.getWidth();
-        final int h = image.getHeight();
-        final byte[] buf = new byte[w * 3];
-        for (int y = 0; y < h; y++) {
-            int idx = -1;
-            for (int x = 0; x < w; x++) {
-                final int rgb = colorModel.getRGB(raster.getDataElements(x, y,
-                        data));
-                buf[++idx] = (byte) (rgb >> 16);
-                buf[++idx] = (byte) (rgb >> 8);
-                buf[++idx] = (byte) rgb;
+    /**
+     * Selects the RGB conversion for the layout of an image. The common
+     * layouts are read straight from the data buffers; anything else goes
+     * through the color model pixel by pixel.
+     */
+    private static RowEncoder createRGBEncoder(final RenderedImage image) {
+        final ColorModel cm = image.getColorModel();
+        final SampleModel sm = image.getSampleModel();
+        final int dataType = sm.getDataType();
+        final boolean sRGB = cm.getColorSpace().isCS_sRGB();
+        if (cm instanceof DirectColorModel
+                && sm instanceof SinglePixelPackedSampleModel
+                && dataType == DataBuffer.TYPE_INT && sRGB
+                && !cm.isAlphaPremultiplied()) {
+            final DirectColorModel dcm = (DirectColorModel) cm;
+            if (is8BitMask(dcm.getRedMask()) && is8BitMask(dcm.getGreenMask())
+                    && is8BitMask(dcm.getBlueMask())) {
+                return new PackedIntRGBEncoder(dcm);
+            }
+        } else if (cm instanceof ComponentColorModel
+                && sm instanceof ComponentSampleModel
+                && dataType == DataBuffer.TYPE_BYTE) {
+            if (sRGB && cm.getNumColorComponents() == 3
+                    && !cm.isAlphaPremultiplied() && is8BitPerComponent(cm)) {
+                return new ComponentRGBEncoder();
+            } else if (sm.getNumBands() == 1 && cm.getPixelSize() == 8) {
+                return new LookupRGBEncoder(cm);
+            }
+        } else if (cm instanceof IndexColorModel
+                && dataType == DataBuffer.TYPE_BYTE) {
+            if (sm instanceof MultiPixelPackedSampleModel) {
+                return new LookupRGBEncoder(cm);
+            } else if (sm instanceof ComponentSampleModel
+                    && sm.getNumBands() == 1 && cm.getPixelSize() <= 8) {
+                return new LookupRGBEncoder(cm);
             }
-            out.write(buf);
         }
+        return new GenericRGBEncoder(cm);
+    }
+
+    private static boolean is8BitMask(final int mask) {
+        return mask != 0
+                && mask >>> Integer.numberOfTrailingZeros(mask) == 0xff;
     }
 
     /**
@@ -247,29 +298,6 @@ public class ImageEncodingHelper {
         }
     }
 
-    private boolean optimizedWriteTo(final OutputStream out) throws IOException {
-        if (this.firstTileDump) {
-            final Raster raster = this.image.getTile(0, 0);
-            final DataBuffer buffer = raster.getDataBuffer();
-            if (buffer instanceof DataBufferByte) {
-                final byte[] bytes = ((DataBufferByte) buffer).getData();
-                // see determineEncodingColorModel() to see why we permute B and
-                // R here
-                if (this.isBGR) {
-                    for (int i = 0; i < bytes.length; i += 3) {
-                        out.write(bytes[i + 2]);
-                        out.write(bytes[i + 1]);
-                        out.write(bytes[i]);
-                    }
-                } else {
-                    out.write(bytes);
-                }
-                return true;
-            }
-        }
-        return false;
-    }
-
     /**
      * Indicates whether the image consists of multiple tiles.
      * 
@@ -282,77 +310,57 @@ public class ImageEncodingHelper {
     }
 
     /**
-     * Determines the color model used for encoding the image.
+     * Determines the color model used for encoding the image. The native color
+     * model is kept for byte images whose samples can be copied as they are:
+     * 8 bit gray, RGB and (if enabled) CMYK, and indexed images. Everything
+     * else is converted to RGB.
      */
     protected void determineEncodedColorModel() {
-        this.firstTileDump = false;
+        this.nativeEncoder = null;
         this.encodedColorModel = DEFAULT_RGB_COLOR_MODEL;
 
         final ColorModel cm = this.image.getColorModel();
-        final ColorSpace cs = cm.getColorSpace();
-
+        final SampleModel sm = this.image.getSampleModel();
+        if (cm.getTransferType() != DataBuffer.TYPE_BYTE
+                || sm.getDataType() != DataBuffer.TYPE_BYTE) {
+            return;
+        }
         final int numComponents = cm.getNumComponents();
 
-        if (!isMultiTile()) {
-            if (numComponents == 1 && cs.getType() == ColorSpace.TYPE_GRAY) {
-                if (cm.getTransferType() == DataBuffer.TYPE_BYTE) {
-                    this.firstTileDump = true;
-                    this.encodedColorModel = cm;
-                }
-            } else if (cm instanceof IndexColorModel) {
-                if (cm.getTransferType() == DataBuffer.TYPE_BYTE) {
-                    this.firstTileDump = true;
-                    this.encodedColorModel = cm;
-                }
-            } else if (cm instanceof ComponentColorModel
+        if (cm instanceof IndexColorModel) {
+            if (sm instanceof MultiPixelPackedSampleModel
+                    && ((MultiPixelPackedSampleModel) sm).getPixelBitStride() == cm
+                            .getPixelSize()) {
+                this.nativeEncoder = new PackedCopyEncoder(cm.getPixelSize());
+            } else if (sm instanceof ComponentSampleModel
+                    && sm.getNumBands() == 1 && cm.getPixelSize() == 8) {
+                this.nativeEncoder = new ComponentCopyEncoder(1);
+            }
+        } else if (cm instanceof ComponentColorModel
+                && sm instanceof ComponentSampleModel
+                && is8BitPerComponent(cm)) {
+            final int type = cm.getColorSpace().getType();
+            if (numComponents == 1 && type == ColorSpace.TYPE_GRAY
+                    || !cm.hasAlpha()
                     && (numComponents == 3 || this.enableCMYK
-                            && numComponents == 4) && !cm.hasAlpha()) {
-                final Raster raster = this.image.getTile(0, 0);
-                final DataBuffer buffer = raster.getDataBuffer();
-                final SampleModel sampleModel = raster.getSampleModel();
-                if (sampleModel instanceof PixelInterleavedSampleModel) {
-                    PixelInterleavedSampleModel piSampleModel;
-                    piSampleModel = (PixelInterleavedSampleModel) sampleModel;
-                    final int[] offsets = piSampleModel.getBandOffsets();
-                    for (int i = 0; i < offsets.length; ++i) {
-                        if (offsets[i] != i
-                                && offsets[i] != offsets.length - 1 - i) {
-                            // Don't encode directly as samples are not next to
-                            // each other
-                            // i.e. offsets are not 012 (RGB) or 0123 (CMYK)
-                            // let also pass 210 BGR and 3210 (KYMC); 3210 will
-                            // be skipped below
-                            // if 210 (BGR) the B and R bytes will be permuted
-                            // later in optimizeWriteTo()
-                            return;
-                        }
-                    }
-                    // check if we are in a BGR case; this is added here as a
-                    // workaround for bug fix
-                    // http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=6549882
-                    // that causes some PNG
-                    // images to be loaded as BGR with the consequence that
-                    // performance was being impacted
-                    this.isBGR = false;
-                    if (offsets.length == 3 && offsets[0] == 2
-                            && offsets[1] == 1 && offsets[2] == 0) {
-                        this.isBGR = true;
-                    }
-                    // make sure we did not get here due to a KMYC image
-                    if (offsets.length == 4 && offsets[0] == 3
-                            && offsets[1] == 2 && offsets[2] == 1
-                            && offsets[3] == 0) {
-                        return;
-                    }
-                }
-                if (cm.getTransferType() == DataBuffer.TYPE_BYTE
-                        && buffer.getOffset() == 0 && buffer.getNumBanks() == 1) {
-                    this.firstTileDump = true;
-                    this.encodedColorModel = cm;
-                }
+                            && numComponents == 4)) {
+                // The samples are written in band order, so BGR or KYMC
+                // layouts are reordered while copying.
+                this.nativeEncoder = new ComponentCopyEncoder(numComponents);
             }
         }
+        if (this.nativeEncoder != null) {
+            this.encodedColorModel = cm;
+        }
+    }
 
+    private static boolean is8BitPerComponent(final ColorModel cm) {
+        for (final int size : cm.getComponentSize()) {
+            if (size != 8) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
@@ -364,12 +372,11 @@ public class ImageEncodingHelper {
      *             if an I/O error occurs
      */
     public void encode(final OutputStream out) throws IOException {
-        if (!isConverted()) {
-            if (optimizedWriteTo(out)) {
-                return;
-            }
+        if (this.nativeEncoder != null) {
+            writeScanlines(this.image, this.nativeEncoder, out);
+        } else {
+            writeRGBTo(out);
         }
-        writeRGBTo(out);
     }
 
     /**
@@ -449,4 +456,295 @@ public class ImageEncodingHelper {
 
     }
 
+    /**
+     * Encodes a segment of a scanline. The segment lies within one tile; its
+     * coordinates are given in image space.
+     */
+    private abstract static class RowEncoder {
+
+        /** The number of bits per pixel in the encoded scanline */
+        final int bitsPerPixel;
+
+        RowEncoder(final int bitsPerPixel) {
+            this.bitsPerPixel = bitsPerPixel;
+        }
+
+        /**
+         * Encodes pixels of one scanline of a tile.
+         * 
+         * @param tile
+         *            the tile holding the pixels
+         * @param x
+         *            the x coordinate of the first pixel
+         * @param y
+         *            the y coordinate of the scanline
+         * @param width
+         *            the number of pixels
+         * @param line
+         *            the encoded scanline
+         * @param pos
+         *            the index of the first pixel within the scanline
+         */
+        abstract void encode(Raster tile, int x, int y, int width,
+                byte[] line, int pos);
+    }
+
+    /**
+     * Copies the bands of a byte {@link ComponentSampleModel}, interleaved in
+     * band order.
+     */
+    private static final class ComponentCopyEncoder extends RowEncoder {
+
+        private final int numBands;
+
+        ComponentCopyEncoder(final int numBands) {
+            super(numBands * 8);
+            this.numBands = numBands;
+        }
+
+        @Override
+        void encode(final Raster tile, final int x, final int y,
+                final int width, final byte[] line, final int pos) {
+            final ComponentSampleModel sm = (ComponentSampleModel) tile
+                    .getSampleModel();
+            final DataBuffer db = tile.getDataBuffer();
+            final byte[][] banks = ((DataBufferByte) db).getBankData();
+            final int[] bankIndices = sm.getBankIndices();
+            final int[] bandOffsets = sm.getBandOffsets();
+            final int pixelStride = sm.getPixelStride();
+            final int sx = x - tile.getSampleModelTranslateX();
+            final int sy = y - tile.getSampleModelTranslateY();
+            final int n = this.numBands;
+            if (pixelStride == n && isContiguous(bankIndices, bandOffsets)) {
+                System.arraycopy(banks[bankIndices[0]], sm.getOffset(sx, sy, 0)
+                        + db.getOffsets()[bankIndices[0]], line, pos * n,
+                        width * n);
+                return;
+            }
+            for (int b = 0; b < n; b++) {
+                final byte[] data = banks[bankIndices[b]];
+                int src = sm.getOffset(sx, sy, b)
+                        + db.getOffsets()[bankIndices[b]];
+                int dst = pos * n + b;
+                for (int i = 0; i < width; i++) {
+                    line[dst] = data[src];
+                    src += pixelStride;
+                    dst += n;
+                }
+            }
+        }
+
+        private static boolean isContiguous(final int[] bankIndices,
+                final int[] bandOffsets) {
+            for (int b = 1; b < bandOffsets.length; b++) {
+                if (bankIndices[b] != bankIndices[0]
+                        || bandOffsets[b] != bandOffsets[0] + b) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Copies the samples of a byte {@link MultiPixelPackedSampleModel}. Rows
+     * start on a byte boundary, as PostScript expects.
+     */
+    private static final class PackedCopyEncoder extends RowEncoder {
+
+        PackedCopyEncoder(final int bitsPerPixel) {
+            super(bitsPerPixel);
+        }
+
+        @Override
+        void encode(final Raster tile, final int x, final int y,
+                final int width, final byte[] line, final int pos) {
+            final MultiPixelPackedSampleModel sm = (MultiPixelPackedSampleModel) tile
+                    .getSampleModel();
+            final DataBuffer db = tile.getDataBuffer();
+            final byte[] data = ((DataBufferByte) db).getData();
+            final int bits = this.bitsPerPixel;
+            final int sx = x - tile.getSampleModelTranslateX();
+            final int sy = y - tile.getSampleModelTranslateY();
+            final int src = sm.getOffset(sx, sy) + db.getOffset();
+            final int srcBit = sm.getBitOffset(sx);
+            final int dstBit = pos * bits;
+            if (srcBit == 0 && dstBit % 8 == 0) {
+                System.arraycopy(data, src, line, dstBit / 8,
+                        (width * bits + 7) / 8);
+                return;
+            }
+            final int mask = (1 << bits) - 1;
+            for (int i = 0; i < width; i++) {
+                final int s = srcBit + i * bits;
+                final int d = dstBit + i * bits;
+                final int sample = data[src + s / 8] >> 8 - bits - s % 8 & mask;
+                final int shift = 8 - bits - d % 8;
+                line[d / 8] = (byte) (line[d / 8] & ~(mask << shift) | sample << shift);
+            }
+        }
+    }
+
+    /** Converts INT_RGB, INT_ARGB, INT_BGR and similar packed int pixels. */
+    private static final class PackedIntRGBEncoder extends RowEncoder {
+
+        private final int redShift;
+        private final int greenShift;
+        private final int blueShift;
+
+        PackedIntRGBEncoder(final DirectColorModel cm) {
+            super(24);
+            this.redShift = Integer.numberOfTrailingZeros(cm.getRedMask());
+            this.greenShift = Integer.numberOfTrailingZeros(cm.getGreenMask());
+            this.blueShift = Integer.numberOfTrailingZeros(cm.getBlueMask());
+        }
+
+        @Override
+        void encode(final Raster tile, final int x, final int y,
+                final int width, final byte[] line, final int pos) {
+            final SinglePixelPackedSampleModel sm = (SinglePixelPackedSampleModel) tile
+                    .getSampleModel();
+            final DataBufferInt db = (DataBufferInt) tile.getDataBuffer();
+            final int[] data = db.getData();
+            int src = sm.getOffset(x - tile.getSampleModelTranslateX(), y
+                    - tile.getSampleModelTranslateY())
+                    + db.getOffset();
+            int dst = pos * 3;
+            for (int i = 0; i < width; i++) {
+                final int p = data[src++];
+                line[dst++] = (byte) (p >> this.redShift);
+                line[dst++] = (byte) (p >> this.greenShift);
+                line[dst++] = (byte) (p >> this.blueShift);
+            }
+        }
+    }
+
+    /**
+     * Converts 8 bit sRGB samples of a byte {@link ComponentSampleModel}, such
+     * as 3BYTE_BGR or 4BYTE_ABGR. An alpha band is skipped.
+     */
+    private static final class ComponentRGBEncoder extends RowEncoder {
+
+        ComponentRGBEncoder() {
+            super(24);
+        }
+
+        @Override
+        void encode(final Raster tile, final int x, final int y,
+                final int width, final byte[] line, final int pos) {
+            final ComponentSampleModel sm = (ComponentSampleModel) tile
+                    .getSampleModel();
+            final DataBuffer db = tile.getDataBuffer();
+            final byte[][] banks = ((DataBufferByte) db).getBankData();
+            final int[] bankIndices = sm.getBankIndices();
+            final int[] dbOffsets = db.getOffsets();
+            final byte[] red = banks[bankIndices[0]];
+            final byte[] green = banks[bankIndices[1]];
+            final byte[] blue = banks[bankIndices[2]];
+            final int pixelStride = sm.getPixelStride();
+            final int sx = x - tile.getSampleModelTranslateX();
+            final int sy = y - tile.getSampleModelTranslateY();
+            int r = sm.getOffset(sx, sy, 0) + dbOffsets[bankIndices[0]];
+            int g = sm.getOffset(sx, sy, 1) + dbOffsets[bankIndices[1]];
+            int b = sm.getOffset(sx, sy, 2) + dbOffsets[bankIndices[2]];
+            int dst = pos * 3;
+            for (int i = 0; i < width; i++) {
+                line[dst++] = red[r];
+                line[dst++] = green[g];
+                line[dst++] = blue[b];
+                r += pixelStride;
+                g += pixelStride;
+                b += pixelStride;
+            }
+        }
+    }
+
+    /**
+     * Converts single band byte samples (gray or indexed, packed or not)
+     * through a table holding the RGB value of every possible sample.
+     */
+    private static final class LookupRGBEncoder extends RowEncoder {
+
+        private final byte[] table;
+
+        LookupRGBEncoder(final ColorModel cm) {
+            super(24);
+            // Samples beyond the range of the pixel size are left black
+            this.table = new byte[256 * 3];
+            final int size = 1 << Math.min(8, cm.getPixelSize());
+            final byte[] pixel = new byte[1];
+            for (int i = 0; i < size; i++) {
+                pixel[0] = (byte) i;
+                final int rgb = cm.getRGB(pixel);
+                this.table[i * 3] = (byte) (rgb >> 16);
+                this.table[i * 3 + 1] = (byte) (rgb >> 8);
+                this.table[i * 3 + 2] = (byte) rgb;
+            }
+        }
+
+        @Override
+        void encode(final Raster tile, final int x, final int y,
+                final int width, final byte[] line, final int pos) {
+            final SampleModel sm = tile.getSampleModel();
+            final DataBufferByte db = (DataBufferByte) tile.getDataBuffer();
+            final int sx = x - tile.getSampleModelTranslateX();
+            final int sy = y - tile.getSampleModelTranslateY();
+            final byte[] lut = this.table;
+            int dst = pos * 3;
+            if (sm instanceof MultiPixelPackedSampleModel) {
+                final MultiPixelPackedSampleModel mpp = (MultiPixelPackedSampleModel) sm;
+                final byte[] data = db.getData();
+                final int bits = mpp.getPixelBitStride();
+                final int mask = (1 << bits) - 1;
+                final int src = mpp.getOffset(sx, sy) + db.getOffset();
+                int bit = mpp.getBitOffset(sx);
+                for (int i = 0; i < width; i++) {
+                    final int t = (data[src + bit / 8] >> 8 - bits - bit % 8 & mask) * 3;
+                    line[dst++] = lut[t];
+                    line[dst++] = lut[t + 1];
+                    line[dst++] = lut[t + 2];
+                    bit += bits;
+                }
+            } else {
+                final ComponentSampleModel csm = (ComponentSampleModel) sm;
+                final int bank = csm.getBankIndices()[0];
+                final byte[] data = db.getData(bank);
+                final int pixelStride = csm.getPixelStride();
+                int src = csm.getOffset(sx, sy, 0) + db.getOffsets()[bank];
+                for (int i = 0; i < width; i++) {
+                    final int t = (data[src] & 0xff) * 3;
+                    line[dst++] = lut[t];
+                    line[dst++] = lut[t + 1];
+                    line[dst++] = lut[t + 2];
+                    src += pixelStride;
+                }
+            }
+        }
+    }
+
+    /** Converts any other layout through the color model, pixel by pixel. */
+    private static final class GenericRGBEncoder extends RowEncoder {
+
+        private final ColorModel colorModel;
+        private Object pixel;
+
+        GenericRGBEncoder(final ColorModel colorModel) {
+            super(24);
+            this.colorModel = colorModel;
+        }
+
+        @Override
+        void encode(final Raster tile, final int x, final int y,
+                final int width, final byte[] line, final int pos) {
+            int dst = pos * 3;
+            for (int i = 0; i < width; i++) {
+                this.pixel = tile.getDataElements(x + i, y, this.pixel);
+                final int rgb = this.colorModel.getRGB(this.pixel);
+                line[dst++] = (byte) (rgb >> 16);
+                line[dst++] = (byte) (rgb >> 8);
+                line[dst++] = (byte) rgb;
+            }
+        }
+    }
+
 }
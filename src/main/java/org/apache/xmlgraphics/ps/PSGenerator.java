@@ -23,6 +23,7 @@ import java.awt.Color;
 import java.awt.color.ColorSpace;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Rectangle2D;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -45,6 +46,15 @@ import org.apache.xmlgraphics.util.DoubleFormatUtil;
  * This class is used to output PostScript code to an OutputStream. This class
  * assumes that the {@link PSProcSets#STD_PROCSET} has been added to the
  * PostScript file.
+ * <p>
+ * The numeric operators ({@link #moveto(double, double)},
+ * {@link #lineto(double, double)}, {@link #curveto}, {@link #rectfill},
+ * {@link #writeNumber(double)} and friends) format their operands straight
+ * into an internal byte buffer which is only handed on to the OutputStream
+ * once it passes a fill threshold or some other output is written. Call
+ * {@link #flush()} before writing to the OutputStream passed to the
+ * constructor directly; the stream returned by {@link #getOutputStream()}
+ * takes care of that itself.
  *
  * @version $Id: PSGenerator.java 1353183 2012-06-23 19:17:31Z gadams $
  */
@@ -61,7 +71,17 @@ public class PSGenerator implements PSCommandMap {
 
     private static final String IDENTITY_H = "Identity-H";
 
+    /** Size of the buffer the numeric operators are formatted into. */
+    private static final int BUFFER_SIZE = 4096;
+
+    /**
+     * Fill level at which the numeric operators pass the buffered bytes on to
+     * the OutputStream.
+     */
+    private static final int FLUSH_THRESHOLD = BUFFER_SIZE - 512;
+
     private final OutputStream out;
+    private final OutputStream outView;
     private int psLevel = DEFAULT_LANGUAGE_LEVEL;
     private boolean commentsEnabled = true;
     private boolean compactMode = true;
@@ -74,6 +94,12 @@ public class PSGenerator implements PSCommandMap {
 
     private final StringBuilder tempBuffer = new StringBuilder(256);
 
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    private int count;
+
+    private final double[] matrix = new double[6];
+
     private boolean identityHEmbedded;
 
     private PSResource procsetCIDInitResource;
@@ -88,6 +114,26 @@ public class PSGenerator implements PSCommandMap {
      */
     public PSGenerator(final OutputStream out) {
         this.out = out;
+        this.outView = new FilterOutputStream(out) {
+
+            @Override
+            public void write(final int b) throws IOException {
+                flushBuffer();
+                this.out.write(b);
+            }
+
+            @Override
+            public void write(final byte[] b, final int off, final int len)
+                    throws IOException {
+                flushBuffer();
+                this.out.write(b, off, len);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                PSGenerator.this.flush();
+            }
+        };
         resetGraphicsState();
     }
 
@@ -145,12 +191,14 @@ public class PSGenerator implements PSCommandMap {
     }
 
     /**
-     * Returns the OutputStream the PSGenerator writes to.
+     * Returns the OutputStream the PSGenerator writes to. Writing to the
+     * returned stream first passes on any output still buffered by this
+     * instance, so the two can be used alternately.
      * 
      * @return the OutputStream
      */
     public OutputStream getOutputStream() {
-        return this.out;
+        return this.outView;
     }
 
     /**
@@ -192,7 +240,8 @@ public class PSGenerator implements PSCommandMap {
      *             In case of an I/O problem
      */
     public final void newLine() throws IOException {
-        this.out.write(LF);
+        put(LF);
+        flushBuffer();
     }
 
     /**
@@ -236,7 +285,8 @@ public class PSGenerator implements PSCommandMap {
          * RuntimeException("PostScript command exceeded limit of 255 characters"
          * ); }
          */
-        this.out.write(cmd.getBytes("US-ASCII"));
+        put(cmd);
+        flushBuffer();
     }
 
     /**
@@ -248,7 +298,10 @@ public class PSGenerator implements PSCommandMap {
      *             in case of an I/O problem
      */
     public void write(final int n) throws IOException {
-        write(Integer.toString(n));
+        this.doubleBuffer.setLength(0);
+        this.doubleBuffer.append(n);
+        put(this.doubleBuffer);
+        flushBuffer();
     }
 
     /**
@@ -298,6 +351,7 @@ public class PSGenerator implements PSCommandMap {
      *                In case of an I/O problem
      */
     public void writeByteArr(final byte[] cmd) throws IOException {
+        flushBuffer();
         this.out.write(cmd);
         newLine();
     }
@@ -309,9 +363,190 @@ public class PSGenerator implements PSCommandMap {
      *                In case of an I/O problem
      */
     public void flush() throws IOException {
+        flushBuffer();
         this.out.flush();
     }
 
+    /**
+     * Writes a number to the stream in the format used by
+     * {@link #formatDouble(double)}, without creating any intermediate
+     * objects. Like the other numeric operators the output is buffered.
+     *
+     * @param value
+     *            the number to write
+     * @throws IOException
+     *             In case of an I/O problem
+     */
+    public void writeNumber(final double value) throws IOException {
+        putNumber(value);
+        if (this.count >= FLUSH_THRESHOLD) {
+            flushBuffer();
+        }
+    }
+
+    /**
+     * Writes a "moveto" command.
+     *
+     * @param x
+     *            the x coordinate
+     * @param y
+     *            the y coordinate
+     * @throws IOException
+     *             In case of an I/O problem
+     */
+    public void moveto(final double x, final double y) throws IOException {
+        putNumbers(x, y);
+        endOperator(mapCommand("moveto"));
+    }
+
+    /**
+     * Writes a "lineto" command.
+     *
+     * @param x
+     *            the x coordinate
+     * @param y
+     *            the y coordinate
+     * @throws IOException
+     *             In case of an I/O problem
+     */
+    public void lineto(final double x, final double y) throws IOException {
+        putNumbers(x, y);
+        endOperator(mapCommand("lineto"));
+    }
+
+    /**
+     * Writes a "curveto" command.
+     *
+     * @param x1
+     *            the x coordinate of the first control point
+     * @param y1
+     *            the y coordinate of the first control point
+     * @param x2
+     *            the x coordinate of the second control point
+     * @param y2
+     *            the y coordinate of the second control point
+     * @param x3
+     *            the x coordinate of the end point
+     * @param y3
+     *            the y coordinate of the end point
+     * @throws IOException
+     *             In case of an I/O problem
+     */
+    public void curveto(final double x1, final double y1, final double x2,
+            final double y2, final double x3, final double y3)
+            throws IOException {
+        putNumbers(x1, y1);
+        put(' ');
+        putNumbers(x2, y2);
+        put(' ');
+        putNumbers(x3, y3);
+        endOperator(mapCommand("curveto"));
+    }
+
+    /**
+     * Appends a quadratic curve to the current path using the "QT" procedure
+     * of the {@link PSProcSets#STD_PROCSET}.
+     *
+     * @param x1
+     *            the x coordinate of the control point
+     * @param y1
+     *            the y coordinate of the control point
+     * @param x2
+     *            the x coordinate of the end point
+     * @param y2
+     *            the y coordinate of the end point
+     * @throws IOException
+     *             In case of an I/O problem
+     */
+    public void quadto(final double x1, final double y1, final double x2,
+            final double y2) throws IOException {
+        putNumbers(x1, y1);
+        put(' ');
+        putNumbers(x2, y2);
+        endOperator("QT");
+    }
+
+    /**
+     * Fills a rectangle with the "rectfill" command (PostScript level 2).
+     * The current path is left unchanged.
+     *
+     * @param x
+     *            lower left corner
+     * @param y
+     *            lower left corner
+     * @param w
+     *            width
+     * @param h
+     *            height
+     * @throws IOException
+     *             In case of an I/O problem
+     */
+    public void rectfill(final double x, final double y, final double w,
+            final double h) throws IOException {
+        putNumbers(x, y);
+        put(' ');
+        putNumbers(w, h);
+        endOperator(mapCommand("rectfill"));
+    }
+
+    private void putNumbers(final double a, final double b)
+            throws IOException {
+        putNumber(a);
+        put(' ');
+        putNumber(b);
+    }
+
+    private void putNumber(final double value) throws IOException {
+        this.doubleBuffer.setLength(0);
+        DoubleFormatUtil.formatDouble(value, 3, 3, this.doubleBuffer);
+        put(this.doubleBuffer);
+    }
+
+    private void putNumber5(final double value) throws IOException {
+        this.doubleBuffer.setLength(0);
+        DoubleFormatUtil.formatDouble(value, 5, 5, this.doubleBuffer);
+        put(this.doubleBuffer);
+    }
+
+    private void endOperator(final String command) throws IOException {
+        put(' ');
+        put(command);
+        put(LF);
+        if (this.count >= FLUSH_THRESHOLD) {
+            flushBuffer();
+        }
+    }
+
+    private void put(final char c) throws IOException {
+        if (this.count == BUFFER_SIZE) {
+            flushBuffer();
+        }
+        this.buffer[this.count++] = (byte) (c < 128 ? c : '?');
+    }
+
+    /**
+     * Encodes the characters into the buffer the way String.getBytes does for
+     * US-ASCII: every character outside that range, including a surrogate
+     * pair, becomes a single '?'.
+     */
+    private void put(final CharSequence s) throws IOException {
+        for (int i = 0, len = s.length(); i < len; ++i) {
+            final char c = s.charAt(i);
+            if (Character.isHighSurrogate(c) && i + 1 < len
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                ++i;
+            }
+            put(c);
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (this.count > 0) {
+            this.out.write(this.buffer, 0, this.count);
+            this.count = 0;
+        }
+    }
+
     /**
      * Escapes a character conforming to the rules established in the PostScript
      * Language Reference (Search for "Literal Text Strings").
@@ -622,7 +857,16 @@ public class PSGenerator implements PSCommandMap {
      */
     public void concatMatrix(final AffineTransform at) throws IOException {
         getCurrentState().concatMatrix(at);
-        writeln(formatMatrix(at) + " " + mapCommand("concat"));
+        at.getMatrix(this.matrix);
+        put('[');
+        for (int i = 0; i < this.matrix.length; ++i) {
+            if (i > 0) {
+                put(' ');
+            }
+            putNumber5(this.matrix[i]);
+        }
+        put(']');
+        endOperator(mapCommand("concat"));
     }
 
     /**
@@ -655,8 +899,10 @@ public class PSGenerator implements PSCommandMap {
      */
     public void defineRect(final double x, final double y, final double w,
             final double h) throws IOException {
-        writeln(formatDouble(x) + " " + formatDouble(y) + " " + formatDouble(w)
-                + " " + formatDouble(h) + " re");
+        putNumbers(x, y);
+        put(' ');
+        putNumbers(w, h);
+        endOperator("re");
     }
 
     /**
@@ -25,9 +25,11 @@ import java.io.InputStream;
 /**
  * This class applies a ASCII85 decoding to the stream.
  * <p>
- * The class is derived from InputStream instead of FilteredInputStream because
- * we can use the read(byte[], int, int) method from InputStream which simply
- * delegates to read(). This makes the implementation easier.
+ * Complete tuples are decoded in bulk by {@link #read(byte[], int, int)}. If
+ * the underlying stream supports {@link InputStream#mark(int)}, it is read in
+ * blocks and repositioned just after the EOD marker once it is reached (which
+ * replaces any mark set on it); otherwise it is read one byte at a time so
+ * nothing after the EOD marker is consumed.
  * <p>
  * The filter is described in chapter 3.13.3 of the PostScript Language
  * Reference (third edition).
@@ -36,16 +38,26 @@ import java.io.InputStream;
  */
 public class ASCII85InputStream extends InputStream implements ASCII85Constants {
 
+    private static final int BUFFER_SIZE = 4096;
+
     private final InputStream in;
     private boolean eodReached = false;
     private final int[] b = new int[4]; // decoded
     private int bSize = 0;
     private int bIndex = 0;
 
+    /** Whether the underlying stream is read ahead in blocks */
+    private final boolean readAhead;
+    private final byte[] inBuffer;
+    private int inPos;
+    private int inLimit;
+
     /** @see java.io.FilterInputStream **/
     public ASCII85InputStream(final InputStream in) {
         super();
         this.in = in;
+        this.readAhead = in.markSupported();
+        this.inBuffer = this.readAhead ? new byte[BUFFER_SIZE] : null;
     }
 
     /** @see java.io.FilterInputStream **/
@@ -64,16 +76,126 @@ public class ASCII85InputStream extends InputStream implements ASCII85Constants
                 return -1;
             }
         }
-        int result = this.b[this.bIndex];
-        result = result < 0 ? 256 + result : result;
-        this.bIndex++;
-        return result;
+        return this.b[this.bIndex++] & 0xff;
+    }
+
+    /** @see java.io.FilterInputStream **/
+    @Override
+    public int read(final byte[] buf, final int off, final int len)
+            throws IOException {
+        if (off < 0 || len < 0 || len > buf.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len == 0) {
+            return 0;
+        }
+        int n = 0;
+        while (n < len) {
+            if (this.bIndex < this.bSize) {
+                final int m = Math.min(this.bSize - this.bIndex, len - n);
+                for (int i = 0; i < m; i++) {
+                    buf[off + n++] = (byte) this.b[this.bIndex++];
+                }
+            } else if (this.eodReached) {
+                break;
+            } else {
+                n += decodeTuples(buf, off + n, len - n);
+                if (n < len) {
+                    // whitespace, EOD, an error or a tuple split across
+                    // blocks: take the careful path for one tuple
+                    readNextTuple();
+                }
+            }
+        }
+        return n == 0 ? -1 : n;
+    }
+
+    /**
+     * Decodes the complete tuples available in the read-ahead buffer straight
+     * into the caller's array. Stops at the first character that needs the
+     * careful path.
+     *
+     * @return the number of bytes decoded, a multiple of 4
+     */
+    private int decodeTuples(final byte[] buf, final int off, final int len) {
+        final byte[] src = this.inBuffer;
+        final int limit = this.inLimit;
+        final int end = off + (len & ~3);
+        int p = this.inPos;
+        int o = off;
+        decode: while (o < end && p < limit) {
+            if (src[p] == ZERO) {
+                buf[o++] = 0;
+                buf[o++] = 0;
+                buf[o++] = 0;
+                buf[o++] = 0;
+                p++;
+                continue;
+            }
+            if (limit - p < 5) {
+                break;
+            }
+            long tuple = 0;
+            for (int i = 0; i < 5; i++) {
+                final int c = src[p + i] - START;
+                if (c < 0 || c > END - START) {
+                    break decode;
+                }
+                tuple = tuple * 85 + c;
+            }
+            if (tuple > 0xffffffffL) {
+                break;
+            }
+            buf[o++] = (byte) (tuple >> 24);
+            buf[o++] = (byte) (tuple >> 16);
+            buf[o++] = (byte) (tuple >> 8);
+            buf[o++] = (byte) tuple;
+            p += 5;
+        }
+        this.inPos = p;
+        return o - off;
+    }
+
+    private int nextByte() throws IOException {
+        if (!this.readAhead) {
+            return this.in.read();
+        }
+        if (this.inPos == this.inLimit) {
+            this.in.mark(BUFFER_SIZE);
+            final int n = this.in.read(this.inBuffer, 0, BUFFER_SIZE);
+            this.inPos = 0;
+            this.inLimit = Math.max(n, 0);
+            if (n <= 0) {
+                return -1;
+            }
+        }
+        return this.inBuffer[this.inPos++] & 0xff;
+    }
+
+    /** Gives back the bytes read ahead beyond the current position. */
+    private void unreadAhead() throws IOException {
+        if (this.readAhead && this.inLimit > 0) {
+            this.in.reset();
+            long skip = this.inPos;
+            while (skip > 0) {
+                long skipped = this.in.skip(skip);
+                if (skipped <= 0) {
+                    if (this.in.read() < 0) {
+                        break;
+                    }
+                    skipped = 1;
+                }
+                skip -= skipped;
+            }
+            this.inPos = 0;
+            this.inLimit = 0;
+        }
     }
 
     private int filteredRead() throws IOException {
         int buf;
         while (true) {
-            buf = this.in.read();
+            buf = nextByte();
             switch (buf) {
             case 0: // null
             case 9: // tab
@@ -96,13 +218,14 @@ public class ASCII85InputStream extends InputStream implements ASCII85Constants
     }
 
     private void handleEOD() throws IOException {
-        final int buf = this.in.read();
+        final int buf = nextByte();
         if (buf != EOD[1]) {
             throw new IOException("'>' expected after '~' (EOD)");
         }
         this.eodReached = true;
         this.bSize = 0;
         this.bIndex = 0;
+        unreadAhead();
     }
 
     private void readNextTuple() throws IOException {
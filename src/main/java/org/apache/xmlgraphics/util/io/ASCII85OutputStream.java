@@ -23,23 +23,30 @@ import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 
-import lombok.extern.slf4j.Slf4j;
-
 /**
- * This class applies a ASCII85 encoding to the stream.
+ * This class applies a ASCII85 encoding to the stream. The encoded characters
+ * are collected in an internal buffer, which is written to the underlying
+ * stream when it is full and when the stream is flushed.
  *
  * @version $Id: ASCII85OutputStream.java 1345683 2012-06-03 14:50:33Z gadams $
  */
-@Slf4j
 public class ASCII85OutputStream extends FilterOutputStream implements
         ASCII85Constants, Finalizable {
 
-    private static final boolean DEBUG = false;
+    /** The maximum number of characters on a line */
+    private static final int LINE_LENGTH = 80;
+
+    private static final int BUFFER_SIZE = 4096;
 
     private int pos = 0;
     private long buffer = 0;
     private int posinline = 0;
 
+    /** The base 85 digits of the last converted word */
+    private final byte[] digits = new byte[5];
+    private final byte[] outBuffer = new byte[BUFFER_SIZE];
+    private int count;
+
     /** @see java.io.FilterOutputStream **/
     public ASCII85OutputStream(final OutputStream out) {
         super(out);
@@ -60,130 +67,129 @@ public class ASCII85OutputStream extends FilterOutputStream implements
         this.pos++;
 
         if (this.pos > 3) {
-            checkedWrite(convertWord(this.buffer));
+            writeWord(this.buffer);
             this.buffer = 0;
             this.pos = 0;
         }
     }
 
-    /*
-     * UNUSED ATM private void checkedWrite(int b) throws IOException { if
-     * (posinline == 80) { out.write(EOL); bw++; posinline = 0; }
-     * checkedWrite(b); posinline++; bw++; }
-     */
-
-    private void checkedWrite(final byte[] buf) throws IOException {
-        checkedWrite(buf, buf.length, false);
-    }
-
-    private void checkedWrite(final byte[] buf, final boolean nosplit)
+    /** @see java.io.FilterOutputStream **/
+    @Override
+    public void write(final byte[] b, final int off, final int len)
             throws IOException {
-        checkedWrite(buf, buf.length, nosplit);
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        final int end = off + len;
+        int i = off;
+        // complete a word started by a previous write
+        while (this.pos != 0 && i < end) {
+            write(b[i++]);
+        }
+        for (; end - i >= 4; i += 4) {
+            writeWord((b[i] & 0xffL) << 24 | (b[i + 1] & 0xff) << 16
+                    | (b[i + 2] & 0xff) << 8 | b[i + 3] & 0xff);
+        }
+        while (i < end) {
+            write(b[i++]);
+        }
     }
 
-    private void checkedWrite(final byte[] buf, final int len)
-            throws IOException {
-        checkedWrite(buf, len, false);
+    /**
+     * Encodes a 32 bit word as 5 base 85 digits, or as the 'z' character for
+     * a value of 0.
+     */
+    private void writeWord(final long word) throws IOException {
+        if (this.count > BUFFER_SIZE - 6) {
+            flushBuffer();
+        }
+        if (word == 0) {
+            put(ZERO);
+        } else if (this.posinline <= LINE_LENGTH - 5) {
+            convertWord(word);
+            System.arraycopy(this.digits, 0, this.outBuffer, this.count, 5);
+            this.count += 5;
+            this.posinline += 5;
+        } else {
+            convertWord(word);
+            for (final byte digit : this.digits) {
+                put(digit);
+            }
+        }
     }
 
-    private void checkedWrite(final byte[] buf, final int len,
-            final boolean nosplit) throws IOException {
-        if (this.posinline + len > 80) {
-            final int firstpart = nosplit ? 0 : len
-                    - (this.posinline + len - 80);
-            if (firstpart > 0) {
-                this.out.write(buf, 0, firstpart);
-            }
-            this.out.write(EOL);
-            final int rest = len - firstpart;
-            if (rest > 0) {
-                this.out.write(buf, firstpart, rest);
-            }
-            this.posinline = rest;
-        } else {
-            this.out.write(buf, 0, len);
-            this.posinline += len;
+    /**
+     * Adds a character to the buffer, starting a new line when the current
+     * one is full. The buffer must have room for the character and an EOL.
+     */
+    private void put(final int c) {
+        if (this.posinline == LINE_LENGTH) {
+            this.outBuffer[this.count++] = EOL;
+            this.posinline = 0;
         }
+        this.outBuffer[this.count++] = (byte) c;
+        this.posinline++;
     }
 
     /**
      * This converts a 32 bit value (4 bytes) into 5 bytes using base 85. each
      * byte in the result starts with zero at the '!' character so the resulting
-     * base85 number fits into printable ascii chars
+     * base85 number fits into printable ascii chars. The result is left in
+     * {@link #digits}.
      *
      * @param word
      *            the 32 bit unsigned (hence the long datatype) word
-     * @return 5 bytes (or a single byte of the 'z' character for word values of
-     *         0)
      */
-    private byte[] convertWord(long word) {
-        word = word & 0xffffffff;
+    private void convertWord(final long word) {
+        this.digits[4] = (byte) (word % 85 + START);
+        // the quotient fits in an int, which divides faster
+        int rest = (int) (word / 85);
+        for (int i = 3; i > 0; i--) {
+            this.digits[i] = (byte) (rest % 85 + START);
+            rest /= 85;
+        }
+        this.digits[0] = (byte) (rest + START);
+    }
 
-        if (word == 0) {
-            return ZERO_ARRAY;
-        } else {
-            if (word < 0) {
-                word = -word;
-            }
-            final byte c1 = (byte) (word / POW85[0] & 0xFF);
-            final byte c2 = (byte) ((word - c1 * POW85[0]) / POW85[1] & 0xFF);
-            final byte c3 = (byte) ((word - c1 * POW85[0] - c2 * POW85[1])
-                    / POW85[2] & 0xFF);
-            final byte c4 = (byte) ((word - c1 * POW85[0] - c2 * POW85[1] - c3
-                    * POW85[2])
-                    / POW85[3] & 0xFF);
-            final byte c5 = (byte) (word - c1 * POW85[0] - c2 * POW85[1] - c3
-                    * POW85[2] - c4 * POW85[3] & 0xFF);
-
-            final byte[] ret = { (byte) (c1 + START), (byte) (c2 + START),
-                    (byte) (c3 + START), (byte) (c4 + START),
-                    (byte) (c5 + START) };
-
-            if (DEBUG) {
-                for (final byte element : ret) {
-                    if (element < 33 || element > 117) {
-                        log.info("Illegal char value " + element);
-                    }
-                }
-            }
-            return ret;
+    private void flushBuffer() throws IOException {
+        if (this.count > 0) {
+            this.out.write(this.outBuffer, 0, this.count);
+            this.count = 0;
         }
     }
 
+    /** @see java.io.FilterOutputStream **/
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        this.out.flush();
+    }
+
     /** @see Finalizable **/
     @Override
     public void finalizeStream() throws IOException {
+        if (this.count > BUFFER_SIZE - 10) {
+            flushBuffer();
+        }
         // now take care of the trailing few bytes.
         // with n leftover bytes, we append 0 bytes to make a full group of 4
         // then convert like normal (except not applying the special zero rule)
         // and write out the first n+1 bytes from the result
         if (this.pos > 0) {
-            final int rest = this.pos;
-            /*
-             * byte[] lastdata = new byte[4]; int i = 0; for (int j = 0; j < 4;
-             * j++) { if (j < rest) { lastdata[j] = data[++i]; } else {
-             * lastdata[j] = 0; } }
-             * 
-             * long val = ((lastdata[0] << 24) & 0xff000000L) + ((lastdata[1] <<
-             * 16) & 0xff0000L) + ((lastdata[2] << 8) & 0xff00L) + (lastdata[3]
-             * & 0xffL);
-             */
-
-            byte[] conv;
-            // special rule for handling zeros at the end
-            if (this.buffer != 0) {
-                conv = convertWord(this.buffer);
-            } else {
-                conv = new byte[5];
-                for (int j = 0; j < 5; j++) {
-                    conv[j] = (byte) '!';
-                }
+            convertWord(this.buffer);
+            for (int i = 0; i <= this.pos; i++) {
+                put(this.digits[i]);
             }
-            // assert rest+1 <= 5
-            checkedWrite(conv, rest + 1);
         }
-        // finally write the two character end of data marker
-        checkedWrite(EOD, true);
+        // finally write the two character end of data marker, which is never
+        // split across lines
+        if (this.posinline + EOD.length > LINE_LENGTH) {
+            this.outBuffer[this.count++] = EOL;
+            this.posinline = 0;
+        }
+        System.arraycopy(EOD, 0, this.outBuffer, this.count, EOD.length);
+        this.count += EOD.length;
+        this.posinline += EOD.length;
 
         flush();
         if (this.out instanceof Finalizable) {
@@ -24,7 +24,9 @@ import java.io.IOException;
 import java.io.OutputStream;
 
 /**
- * This class applies a ASCII Hex encoding to the stream.
+ * This class applies a ASCII Hex encoding to the stream. The encoded
+ * characters are collected in an internal buffer, which is written to the
+ * underlying stream when it is full and when the stream is flushed.
  *
  * @version $Id: ASCIIHexOutputStream.java 1345683 2012-06-03 14:50:33Z gadams $
  */
@@ -33,13 +35,19 @@ public class ASCIIHexOutputStream extends FilterOutputStream implements
 
     private static final int EOL = 0x0A; // "\n"
     private static final int EOD = 0x3E; // ">"
-    private static final int ZERO = 0x30; // "0"
-    private static final int NINE = 0x39; // "9"
-    private static final int A = 0x41; // "A"
-    private static final int ADIFF = A - NINE - 1;
+    private static final byte[] DIGITS = { '0', '1', '2', '3', '4', '5', '6',
+            '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F' };
+
+    /** The number of bytes encoded on a line (80 characters) */
+    private static final int BYTES_PER_LINE = 40;
+
+    private static final int BUFFER_SIZE = 4096;
 
     private int posinline = 0;
 
+    private final byte[] outBuffer = new byte[BUFFER_SIZE];
+    private int count;
+
     /** @see java.io.FilterOutputStream **/
     public ASCIIHexOutputStream(final OutputStream out) {
         super(out);
@@ -48,38 +56,69 @@ public class ASCIIHexOutputStream extends FilterOutputStream implements
     /** @see java.io.FilterOutputStream **/
     @Override
     public void write(final int inB) throws IOException {
-        final int b = inB & 0xFF;
-
-        int digit1 = ((b & 0xF0) >> 4) + ZERO;
-        if (digit1 > NINE) {
-            digit1 += ADIFF;
+        if (this.count > BUFFER_SIZE - 3) {
+            flushBuffer();
         }
-        this.out.write(digit1);
+        put(inB);
+    }
 
-        int digit2 = (b & 0x0F) + ZERO;
-        if (digit2 > NINE) {
-            digit2 += ADIFF;
+    /** @see java.io.FilterOutputStream **/
+    @Override
+    public void write(final byte[] b, final int off, final int len)
+            throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
         }
-        this.out.write(digit2);
+        for (int i = off; i < off + len; i++) {
+            if (this.count > BUFFER_SIZE - 3) {
+                flushBuffer();
+            }
+            put(b[i]);
+        }
+    }
 
+    /**
+     * Adds the two digits of a byte to the buffer, followed by an EOL at the
+     * end of a line. The buffer must have room for three characters.
+     */
+    private void put(final int b) {
+        this.outBuffer[this.count++] = DIGITS[b >> 4 & 0x0F];
+        this.outBuffer[this.count++] = DIGITS[b & 0x0F];
         this.posinline++;
         checkLineWrap();
     }
 
-    private void checkLineWrap() throws IOException {
+    private void checkLineWrap() {
         // Maximum line length is 80 characters
-        if (this.posinline >= 40) {
-            this.out.write(EOL);
+        if (this.posinline >= BYTES_PER_LINE) {
+            this.outBuffer[this.count++] = EOL;
             this.posinline = 0;
         }
     }
 
+    private void flushBuffer() throws IOException {
+        if (this.count > 0) {
+            this.out.write(this.outBuffer, 0, this.count);
+            this.count = 0;
+        }
+    }
+
+    /** @see java.io.FilterOutputStream **/
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        this.out.flush();
+    }
+
     /** @see Finalizable **/
     @Override
     public void finalizeStream() throws IOException {
+        if (this.count > BUFFER_SIZE - 2) {
+            flushBuffer();
+        }
         checkLineWrap();
         // Write closing character ">"
-        super.write(EOD);
+        this.outBuffer[this.count++] = EOD;
 
         flush();
         if (this.out instanceof Finalizable) {
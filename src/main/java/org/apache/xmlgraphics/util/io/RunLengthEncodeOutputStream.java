@@ -34,18 +34,24 @@ import java.io.OutputStream;
 public class RunLengthEncodeOutputStream extends FilterOutputStream implements
 Finalizable {
 
-    private static final int MAX_SEQUENCE_COUNT = 127;
+    /** The maximum length of a literal or repeated run */
+    private static final int MAX_RUN_LENGTH = 128;
     private static final int END_OF_DATA = 128;
     private static final int BYTE_MAX = 256;
 
-    private static final int NOT_IDENTIFY_SEQUENCE = 0;
-    private static final int START_SEQUENCE = 1;
-    private static final int IN_SEQUENCE = 2;
-    private static final int NOT_IN_SEQUENCE = 3;
+    private static final int BUFFER_SIZE = 4096;
 
-    private int runCount = 0;
-    private int isSequence = NOT_IDENTIFY_SEQUENCE;
-    private final byte[] runBuffer = new byte[MAX_SEQUENCE_COUNT + 1];
+    /** Bytes waiting to be written as a literal run */
+    private final byte[] literal = new byte[MAX_RUN_LENGTH];
+    private int literalCount;
+    /** The byte of the current repeated run */
+    private byte runByte;
+    /** The length of the current repeated run, 0 outside a run */
+    private int runLength;
+
+    private final byte[] outBuffer = new byte[BUFFER_SIZE];
+    private int count;
+    private final byte[] single = new byte[1];
 
     /** @see java.io.FilterOutputStream **/
     public RunLengthEncodeOutputStream(final OutputStream out) {
@@ -54,117 +60,106 @@ Finalizable {
 
     /** @see java.io.FilterOutputStream **/
     public void write(final byte b) throws java.io.IOException {
-        this.runBuffer[this.runCount] = b;
-
-        switch (this.runCount) {
-        case 0:
-            this.runCount = 0;
-            this.isSequence = NOT_IDENTIFY_SEQUENCE;
-            this.runCount++;
-            break;
-        case 1:
-            if (this.runBuffer[this.runCount] != this.runBuffer[this.runCount - 1]) {
-                this.isSequence = NOT_IN_SEQUENCE;
-            }
-            this.runCount++;
-            break;
-        case 2:
-            if (this.runBuffer[this.runCount] != this.runBuffer[this.runCount - 1]) {
-                this.isSequence = NOT_IN_SEQUENCE;
-            } else {
-                if (this.isSequence == NOT_IN_SEQUENCE) {
-                    this.isSequence = START_SEQUENCE;
-                } else {
-                    this.isSequence = IN_SEQUENCE;
-                }
-            }
-            this.runCount++;
-            break;
-        case MAX_SEQUENCE_COUNT:
-            if (this.isSequence == IN_SEQUENCE) {
-                this.out.write(BYTE_MAX - (MAX_SEQUENCE_COUNT - 1));
-                this.out.write(this.runBuffer[this.runCount - 1]);
-                this.runBuffer[0] = this.runBuffer[this.runCount];
-                this.runCount = 1;
-            } else {
-                this.out.write(MAX_SEQUENCE_COUNT);
-                this.out.write(this.runBuffer, 0, this.runCount + 1);
-                this.runCount = 0;
-            }
-            this.isSequence = NOT_IDENTIFY_SEQUENCE;
-            break;
-        default:
-            switch (this.isSequence) {
-            case NOT_IN_SEQUENCE:
-                if (this.runBuffer[this.runCount] == this.runBuffer[this.runCount - 1]) {
-                    this.isSequence = START_SEQUENCE;
-                }
-                this.runCount++;
-                break;
-            case START_SEQUENCE:
-                if (this.runBuffer[this.runCount] == this.runBuffer[this.runCount - 1]) {
-                    this.out.write(this.runCount - 3);
-                    this.out.write(this.runBuffer, 0, this.runCount - 2);
-                    this.runBuffer[0] = this.runBuffer[this.runCount];
-                    this.runBuffer[1] = this.runBuffer[this.runCount];
-                    this.runBuffer[2] = this.runBuffer[this.runCount];
-                    this.runCount = 3;
-                    this.isSequence = IN_SEQUENCE;
-                    break;
-                } else {
-                    this.isSequence = NOT_IN_SEQUENCE;
-                    this.runCount++;
-                    break;
+        this.single[0] = b;
+        write(this.single, 0, 1);
+    }
+
+    /** @see java.io.FilterOutputStream **/
+    @Override
+    public void write(final int b) throws IOException {
+        write((byte) b);
+    }
+
+    /**
+     * Encodes a block of bytes. Three or more equal bytes are written as a
+     * repeated run, anything else as literal runs.
+     *
+     * @see java.io.FilterOutputStream
+     */
+    @Override
+    public void write(final byte[] b, final int off, final int len)
+            throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        final int end = off + len;
+        int i = off;
+        while (i < end) {
+            if (this.runLength > 0) {
+                final byte r = this.runByte;
+                int n = this.runLength;
+                while (i < end && b[i] == r && n < MAX_RUN_LENGTH) {
+                    n++;
+                    i++;
                 }
-            case IN_SEQUENCE:
-            default:
-                if (this.runBuffer[this.runCount] != this.runBuffer[this.runCount - 1]) {
-                    this.out.write(BYTE_MAX - (this.runCount - 1));
-                    this.out.write(this.runBuffer[this.runCount - 1]);
-                    this.runBuffer[0] = this.runBuffer[this.runCount];
-                    this.runCount = 1;
-                    this.isSequence = NOT_IDENTIFY_SEQUENCE;
-                    break;
+                this.runLength = n;
+                if (i < end) {
+                    writeRun();
                 }
-                this.runCount++;
-                break;
+                continue;
+            }
+            final byte c = b[i++];
+            final int n = this.literalCount;
+            this.literal[n] = c;
+            this.literalCount = n + 1;
+            if (n >= 2 && this.literal[n - 1] == c && this.literal[n - 2] == c) {
+                this.literalCount = n - 2;
+                writeLiteral();
+                this.runByte = c;
+                this.runLength = 3;
+            } else if (n + 1 == MAX_RUN_LENGTH) {
+                writeLiteral();
             }
         }
     }
 
-    /** @see java.io.FilterOutputStream **/
-    @Override
-    public void write(final byte[] b) throws IOException {
+    private void writeRun() throws IOException {
+        if (this.count > BUFFER_SIZE - 2) {
+            flushBuffer();
+        }
+        this.outBuffer[this.count++] = (byte) (BYTE_MAX + 1 - this.runLength);
+        this.outBuffer[this.count++] = this.runByte;
+        this.runLength = 0;
+    }
 
-        for (final byte element : b) {
-            this.write(element);
+    private void writeLiteral() throws IOException {
+        final int n = this.literalCount;
+        if (n > 0) {
+            if (this.count > BUFFER_SIZE - 1 - n) {
+                flushBuffer();
+            }
+            this.outBuffer[this.count++] = (byte) (n - 1);
+            System.arraycopy(this.literal, 0, this.outBuffer, this.count, n);
+            this.count += n;
+            this.literalCount = 0;
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (this.count > 0) {
+            this.out.write(this.outBuffer, 0, this.count);
+            this.count = 0;
         }
     }
 
     /** @see java.io.FilterOutputStream **/
     @Override
-    public void write(final byte[] b, final int off, final int len)
-            throws IOException {
-
-        for (int i = 0; i < len; ++i) {
-            this.write(b[off + i]);
-        }
+    public void flush() throws IOException {
+        flushBuffer();
+        this.out.flush();
     }
 
     /** @see Finalizable **/
     @Override
     public void finalizeStream() throws IOException {
-        switch (this.isSequence) {
-        case IN_SEQUENCE:
-            this.out.write(BYTE_MAX - (this.runCount - 1));
-            this.out.write(this.runBuffer[this.runCount - 1]);
-            break;
-        default:
-            this.out.write(this.runCount - 1);
-            this.out.write(this.runBuffer, 0, this.runCount);
+        if (this.runLength > 0) {
+            writeRun();
         }
-
-        this.out.write(END_OF_DATA);
+        writeLiteral();
+        if (this.count == BUFFER_SIZE) {
+            flushBuffer();
+        }
+        this.outBuffer[this.count++] = (byte) END_OF_DATA;
 
         flush();
         if (this.out instanceof Finalizable) {
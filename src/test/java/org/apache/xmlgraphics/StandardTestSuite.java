@@ -32,7 +32,9 @@ import org.apache.xmlgraphics.util.ServiceTest;
 import org.apache.xmlgraphics.util.UnitConvTestCase;
 import org.apache.xmlgraphics.util.io.ASCII85InputStreamTestCase;
 import org.apache.xmlgraphics.util.io.ASCII85OutputStreamTestCase;
+import org.apache.xmlgraphics.util.io.ASCIIHexOutputStreamTestCase;
 import org.apache.xmlgraphics.util.io.Base64Test;
+import org.apache.xmlgraphics.util.io.RunLengthEncodeOutputStreamTestCase;
 
 /**
  * Test suite for basic functionality of XML Graphics Commons.
@@ -51,6 +53,8 @@ public class StandardTestSuite {
         suite.addTest(new TestSuite(Base64Test.class));
         suite.addTest(new TestSuite(ASCII85InputStreamTestCase.class));
         suite.addTest(new TestSuite(ASCII85OutputStreamTestCase.class));
+        suite.addTest(new TestSuite(ASCIIHexOutputStreamTestCase.class));
+        suite.addTest(new TestSuite(RunLengthEncodeOutputStreamTestCase.class));
         suite.addTest(new TestSuite(PNGEncoderTest.class));
         suite.addTest(new TestSuite(ServiceTest.class));
         suite.addTest(new TestSuite(ClasspathResourceTest.class));
@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.codec.png;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+/**
+ * Tests the row-band tiling of {@link PNGImageDecoder}.
+ */
+public class PNGDecoderTest extends TestCase {
+
+    private static BufferedImage createImage(final int type) {
+        final BufferedImage image = new BufferedImage(83, 67, type);
+        final Random random = new Random(7);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, random.nextInt(4) << 30 | x * 3 << 16
+                        | y * 3 << 8 | random.nextInt(256));
+            }
+        }
+        return image;
+    }
+
+    private static byte[] encode(final BufferedImage image,
+            final boolean interlace) throws IOException {
+        final PNGEncodeParam param = PNGEncodeParam
+                .getDefaultEncodeParam(image);
+        param.setInterlacing(interlace);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new PNGImageEncoder(out, param).encode(image);
+        return out.toByteArray();
+    }
+
+    private static RenderedImage decode(final byte[] png,
+            final PNGDecodeParam param) throws IOException {
+        return new PNGImageDecoder(new ByteArrayInputStream(png), param)
+                .decodeAsRenderedImage(0);
+    }
+
+    private static void assertSamePixels(final BufferedImage expected,
+            final Raster actual) {
+        final Raster raster = expected.getRaster();
+        final int width = expected.getWidth();
+        final int[] e = new int[width * raster.getNumBands()];
+        final int[] a = new int[e.length];
+        final int minY = Math.max(0, actual.getMinY());
+        final int maxY = Math.min(expected.getHeight(), actual.getMinY()
+                + actual.getHeight());
+        for (int y = minY; y < maxY; y++) {
+            raster.getPixels(0, y, width, 1, e);
+            actual.getPixels(0, y, width, 1, a);
+            for (int i = 0; i < e.length; i++) {
+                assertEquals("row " + y, e[i], a[i]);
+            }
+        }
+    }
+
+    @Test
+    public void testRandomTileAccess() throws IOException {
+        checkRandomTileAccess(BufferedImage.TYPE_4BYTE_ABGR);
+        checkRandomTileAccess(BufferedImage.TYPE_BYTE_BINARY);
+        checkRandomTileAccess(BufferedImage.TYPE_USHORT_GRAY);
+    }
+
+    private void checkRandomTileAccess(final int type) throws IOException {
+        final BufferedImage image = createImage(type);
+        final PNGDecodeParam param = new PNGDecodeParam();
+        param.setTileHeight(10);
+        param.setTileCacheSize(2);
+        final RenderedImage decoded = decode(encode(image, false), param);
+
+        assertEquals(10, decoded.getTileHeight());
+        assertEquals(1, decoded.getNumXTiles());
+        assertEquals(7, decoded.getNumYTiles());
+        final int[] order = { 3, 0, 6, 6, 2, 5, 1, 4, 0 };
+        for (final int tileY : order) {
+            final Raster tile = decoded.getTile(0, tileY);
+            assertEquals(tileY * 10, tile.getMinY());
+            assertSamePixels(image, tile);
+        }
+        assertSamePixels(image, decoded.getData());
+        try {
+            decoded.getTile(0, 7);
+            fail("Tile outside the image");
+        } catch (final IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testDefaultTiling() throws IOException {
+        final BufferedImage image = createImage(BufferedImage.TYPE_3BYTE_BGR);
+        final RenderedImage decoded = decode(encode(image, false), null);
+        // A small image fits in a single band
+        assertEquals(1, decoded.getNumYTiles());
+        assertSamePixels(image, decoded.getTile(0, 0));
+    }
+
+    @Test
+    public void testInterlacedImageIsSingleTile() throws IOException {
+        final BufferedImage image = createImage(BufferedImage.TYPE_4BYTE_ABGR);
+        final PNGDecodeParam param = new PNGDecodeParam();
+        param.setTileHeight(10);
+        final RenderedImage decoded = decode(encode(image, true), param);
+        assertEquals(1, decoded.getNumYTiles());
+        assertSamePixels(image, decoded.getTile(0, 0));
+    }
+
+    @Test
+    public void testSubsampling() throws IOException {
+        checkSubsampling(BufferedImage.TYPE_4BYTE_ABGR, false);
+        checkSubsampling(BufferedImage.TYPE_BYTE_BINARY, false);
+        checkSubsampling(BufferedImage.TYPE_USHORT_GRAY, false);
+        checkSubsampling(BufferedImage.TYPE_4BYTE_ABGR, true);
+        checkSubsampling(BufferedImage.TYPE_BYTE_BINARY, true);
+    }
+
+    private void checkSubsampling(final int type, final boolean interlace)
+            throws IOException {
+        final BufferedImage image = createImage(type);
+        final byte[] png = encode(image, interlace);
+        for (final int s : new int[] { 2, 3, 5, 8 }) {
+            final PNGDecodeParam param = new PNGDecodeParam();
+            param.setSubsampling(s);
+            param.setTileHeight(4);
+            final RenderedImage decoded = decode(png, param);
+            final int width = (image.getWidth() + s - 1) / s;
+            final int height = (image.getHeight() + s - 1) / s;
+            assertEquals(width, decoded.getWidth());
+            assertEquals(height, decoded.getHeight());
+
+            final BufferedImage expected = new BufferedImage(width, height,
+                    type);
+            final Raster src = image.getRaster();
+            final int[] pixel = new int[src.getNumBands()];
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    expected.getRaster().setPixel(x, y,
+                            src.getPixel(x * s, y * s, pixel));
+                }
+            }
+            assertSamePixels(expected, decoded.getData());
+        }
+    }
+}
@@ -21,18 +21,35 @@ package org.apache.xmlgraphics.image.codec.png;
 
 import java.awt.Color;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
 import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
 
 import junit.framework.TestCase;
 
+import org.apache.xmlgraphics.image.rendered.AbstractRed;
+import org.apache.xmlgraphics.image.rendered.CachableRed;
 import org.junit.Test;
 
 /**
@@ -114,6 +131,228 @@ public class PNGEncoderTest extends TestCase {
         }
     }
 
+    @Test
+    public void testParallelDeflate() throws Exception {
+        checkParallelDeflate(false);
+    }
+
+    @Test
+    public void testParallelDeflateInterlaced() throws Exception {
+        checkParallelDeflate(true);
+    }
+
+    private void checkParallelDeflate(final boolean interlace)
+            throws Exception {
+        final BufferedImage image = createTestImage(301, 203);
+
+        final PNGEncodeParam serialParam = PNGEncodeParam
+                .getDefaultEncodeParam(image);
+        serialParam.setInterlacing(interlace);
+        final byte[] serial = encode(image, serialParam);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            final PNGEncodeParam[] params = new PNGEncodeParam[3];
+            params[0] = PNGEncodeParam.getDefaultEncodeParam(image);
+            params[0].setDeflateThreads(4);
+            params[0].setDeflateBlockSize(5000);
+            params[1] = PNGEncodeParam.getDefaultEncodeParam(image);
+            params[1].setDeflateExecutor(executor);
+            params[1].setDeflateBlockSize(100);
+            params[2] = PNGEncodeParam.getDefaultEncodeParam(image);
+            params[2].setDeflateThreads(2);
+            for (final PNGEncodeParam param : params) {
+                assertTrue(param.isParallelDeflate());
+                param.setInterlacing(interlace);
+                final byte[] parallel = encode(image, param);
+
+                // Same scanline data, in a single valid zlib stream
+                assertTrue(Arrays.equals(inflateIDAT(serial),
+                        inflateIDAT(parallel)));
+
+                assertTrue(checkIdentical(image, decode(parallel)));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testEncodeProfiles() throws Exception {
+        final BufferedImage image = createTestImage(97, 61);
+        final List<PNGEncodeParam> params = new ArrayList<PNGEncodeParam>();
+        for (int filter = PNGEncodeParam.PNG_FILTER_NONE;
+                filter <= PNGEncodeParam.PNG_FILTER_PAETH; filter++) {
+            final PNGEncodeParam param = PNGEncodeParam
+                    .getDefaultEncodeParam(image);
+            param.setFixedFilter(filter);
+            params.add(param);
+
+            // Every row uses the fixed filter
+            final byte[] rows = inflateIDAT(encode(image, param));
+            final int rowLength = 1 + image.getWidth() * 3;
+            assertEquals(image.getHeight() * rowLength, rows.length);
+            for (int row = 0; row < image.getHeight(); row++) {
+                assertEquals(filter, rows[row * rowLength]);
+            }
+        }
+        for (int strategy = PNGEncodeParam.STRATEGY_DEFAULT;
+                strategy <= PNGEncodeParam.STRATEGY_RLE; strategy++) {
+            final PNGEncodeParam param = PNGEncodeParam
+                    .getDefaultEncodeParam(image);
+            param.setCompressionStrategy(strategy);
+            param.setCompressionLevel(strategy * 2);
+            params.add(param);
+        }
+        PNGEncodeParam param = PNGEncodeParam.getDefaultEncodeParam(image);
+        param.setFilterSelection(PNGEncodeParam.FILTER_SELECTION_SAMPLED);
+        param.setFilterSampleInterval(3);
+        params.add(param);
+        param = PNGEncodeParam.getDefaultEncodeParam(image);
+        param.setEncodeProfile(PNGEncodeParam.PROFILE_SPEED);
+        params.add(param);
+        param = PNGEncodeParam.getDefaultEncodeParam(image);
+        param.setEncodeProfile(PNGEncodeParam.PROFILE_SPEED);
+        param.setDeflateThreads(2);
+        param.setDeflateBlockSize(1000);
+        params.add(param);
+
+        for (final PNGEncodeParam p : params) {
+            assertTrue(checkIdentical(image, decode(encode(image, p))));
+        }
+    }
+
+    @Test
+    public void testTiledImageIsStreamed() throws Exception {
+        final ColorModel cm = new DirectColorModel(32, 0xff0000, 0xff00, 0xff,
+                0xff000000);
+        final Rectangle bounds = new Rectangle(-7, 11, 203, 97);
+        final TestRed red = new TestRed(bounds, cm, cm
+                .createCompatibleSampleModel(64, 24));
+
+        final BufferedImage copy = new BufferedImage(bounds.width,
+                bounds.height, BufferedImage.TYPE_INT_ARGB);
+        copy.setData(red.getData().createTranslatedChild(0, 0));
+        red.tileRequests = 0;
+        red.dataRequests = 0;
+
+        final byte[] expected = encode(copy,
+                PNGEncodeParam.getDefaultEncodeParam(copy));
+        final byte[] actual = encode(red,
+                PNGEncodeParam.getDefaultEncodeParam(red));
+        assertTrue(Arrays.equals(expected, actual));
+        assertEquals(red.getNumXTiles() * red.getNumYTiles(),
+                red.tileRequests);
+        assertEquals(0, red.dataRequests);
+    }
+
+    /** A computed, tiled image with a tile grid offset. */
+    private static final class TestRed extends AbstractRed {
+
+        private int tileRequests;
+        private int dataRequests;
+
+        TestRed(final Rectangle bounds, final ColorModel cm,
+                final SampleModel sm) {
+            super((CachableRed) null, bounds, cm, sm, -20, 5, null);
+        }
+
+        @Override
+        public Raster getTile(final int tileX, final int tileY) {
+            this.tileRequests++;
+            return super.getTile(tileX, tileY);
+        }
+
+        @Override
+        public Raster getData(final Rectangle rect) {
+            this.dataRequests++;
+            return super.getData(rect);
+        }
+
+        @Override
+        public WritableRaster copyData(final WritableRaster wr) {
+            final Rectangle r = wr.getBounds().intersection(getBounds());
+            for (int y = r.y; y < r.y + r.height; y++) {
+                for (int x = r.x; x < r.x + r.width; x++) {
+                    wr.setPixel(x, y, new int[] { x * 3 & 0xff, y * 5 & 0xff,
+                            x * y & 0xff, 255 - (x + y & 0x7f) });
+                }
+            }
+            return wr;
+        }
+    }
+
+    private static BufferedImage createTestImage(final int width,
+            final int height) {
+        final BufferedImage image = new BufferedImage(width, height,
+                BufferedImage.TYPE_INT_RGB);
+        final Random random = new Random(42);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                final int noise = random.nextInt(16);
+                image.setRGB(x, y, (x + noise) << 16 | (y + noise) << 8
+                        | (x ^ y) & 0xff);
+            }
+        }
+        return image;
+    }
+
+    private static BufferedImage decode(final byte[] png) throws IOException {
+        final RenderedImage decoded = new PNGImageDecoder(
+                new ByteArrayInputStream(png), new PNGDecodeParam())
+                .decodeAsRenderedImage(0);
+        final BufferedImage decodedImage = new BufferedImage(
+                decoded.getWidth(), decoded.getHeight(),
+                BufferedImage.TYPE_INT_RGB);
+        final Graphics2D g = decodedImage.createGraphics();
+        g.drawRenderedImage(decoded, new AffineTransform());
+        g.dispose();
+        return decodedImage;
+    }
+
+    private static byte[] encode(final RenderedImage image,
+            final PNGEncodeParam param) throws IOException {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        new PNGImageEncoder(bos, param).encode(image);
+        return bos.toByteArray();
+    }
+
+    private static byte[] inflateIDAT(final byte[] png) throws IOException,
+            DataFormatException {
+        final DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(png));
+        in.skipBytes(8);
+        final ByteArrayOutputStream idat = new ByteArrayOutputStream();
+        while (true) {
+            final int length = in.readInt();
+            final byte[] type = new byte[4];
+            in.readFully(type);
+            final byte[] data = new byte[length];
+            in.readFully(data);
+            in.readInt();
+            final String name = new String(type, "US-ASCII");
+            if ("IDAT".equals(name)) {
+                idat.write(data);
+            } else if ("IEND".equals(name)) {
+                break;
+            }
+        }
+        final Inflater inflater = new Inflater();
+        inflater.setInput(idat.toByteArray());
+        final ByteArrayOutputStream result = new ByteArrayOutputStream();
+        final byte[] buf = new byte[4096];
+        while (!inflater.finished()) {
+            final int n = inflater.inflate(buf);
+            if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                fail("Truncated zlib stream");
+            }
+            result.write(buf, 0, n);
+        }
+        assertEquals(0, inflater.getRemaining());
+        inflater.end();
+        return result.toByteArray();
+    }
+
     /**
      * Template method for building the PNG output stream. This gives a chance
      * to sub-classes (e.g., Base64PNGEncoderTest) to add an additional
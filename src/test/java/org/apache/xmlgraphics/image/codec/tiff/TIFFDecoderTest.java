@@ -0,0 +1,327 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.codec.tiff;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+
+import junit.framework.TestCase;
+
+import org.apache.xmlgraphics.image.codec.util.ByteBufferSeekableStream;
+import org.apache.xmlgraphics.image.codec.util.MemoryCacheSeekableStream;
+import org.apache.xmlgraphics.image.codec.util.SeekableStream;
+import org.apache.xmlgraphics.image.rendered.SubsampledRed;
+import org.junit.Test;
+
+/**
+ * Tests decoding with {@link TIFFImageDecoder} and {@link TIFFImage}.
+ */
+public class TIFFDecoderTest extends TestCase {
+
+    private static BufferedImage createImage(final int width,
+            final int height, final int type) {
+        final BufferedImage image = new BufferedImage(width, height, type);
+        final Random random = new Random(7);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, x * 3 << 16 | y * 3 << 8
+                        | random.nextInt(256));
+            }
+        }
+        return image;
+    }
+
+    private static SeekableStream encode(final RenderedImage image,
+            final TIFFEncodeParam param) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new TIFFImageEncoder(out, param).encode(image);
+        return new ByteBufferSeekableStream(ByteBuffer.wrap(out.toByteArray()));
+    }
+
+    private static void assertSamePixels(final Raster expected,
+            final Raster actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        final int width = expected.getWidth();
+        final int[] e = new int[width * expected.getNumBands()];
+        final int[] a = new int[e.length];
+        for (int y = 0; y < expected.getHeight(); y++) {
+            expected.getPixels(0, y, width, 1, e);
+            actual.getPixels(actual.getMinX(), actual.getMinY() + y, width, 1,
+                    a);
+            for (int i = 0; i < e.length; i++) {
+                assertEquals("row " + y, e[i], a[i]);
+            }
+        }
+    }
+
+    private static Raster subsample(final BufferedImage image, final int s) {
+        final BufferedImage expected = new BufferedImage(
+                (image.getWidth() + s - 1) / s,
+                (image.getHeight() + s - 1) / s, image.getType());
+        final Raster src = image.getRaster();
+        final int[] pixel = new int[src.getNumBands()];
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                expected.getRaster().setPixel(x, y,
+                        src.getPixel(x * s, y * s, pixel));
+            }
+        }
+        return expected.getRaster();
+    }
+
+    @Test
+    public void testSubsampling() throws IOException {
+        checkSubsampling(BufferedImage.TYPE_3BYTE_BGR, false);
+        checkSubsampling(BufferedImage.TYPE_BYTE_GRAY, true);
+        checkSubsampling(BufferedImage.TYPE_BYTE_BINARY, false);
+    }
+
+    private void checkSubsampling(final int type, final boolean tiled)
+            throws IOException {
+        // The encoder only writes complete tiles
+        final BufferedImage image = tiled ? createImage(96, 64, type)
+                : createImage(83, 67, type);
+        final TIFFEncodeParam encodeParam = new TIFFEncodeParam();
+        encodeParam.setWriteTiled(tiled);
+        encodeParam.setTileSize(tiled ? 32 : 0, tiled ? 16 : 3);
+        for (final int s : new int[] { 1, 2, 5, 9 }) {
+            final TIFFDecodeParam param = new TIFFDecodeParam();
+            param.setSubsampling(s);
+            final RenderedImage decoded = new TIFFImageDecoder(encode(image,
+                    encodeParam), param).decodeAsRenderedImage(0);
+            assertSamePixels(subsample(image, s), decoded.getData());
+        }
+    }
+
+    @Test
+    public void testSubsamplingSkipsStrips() throws IOException {
+        final BufferedImage image = createImage(83, 67,
+                BufferedImage.TYPE_BYTE_GRAY);
+        final TIFFEncodeParam encodeParam = new TIFFEncodeParam();
+        encodeParam.setTileSize(0, 2);
+        final int[] decodedStrips = new int[1];
+        final TIFFImage tiff = new TIFFImage(encode(image, encodeParam), null,
+                0) {
+
+            @Override
+            public synchronized Raster getTile(final int tileX,
+                    final int tileY) {
+                decodedStrips[0]++;
+                return super.getTile(tileX, tileY);
+            }
+        };
+        final RenderedImage decoded = SubsampledRed.subsample(tiff, 8);
+        assertSamePixels(subsample(image, 8), decoded.getData());
+        // One strip of two rows for every eighth row
+        assertEquals(9, decodedStrips[0]);
+    }
+
+    @Test
+    public void testConcurrentTiles() throws Exception {
+        final BufferedImage image = createImage(83, 66,
+                BufferedImage.TYPE_3BYTE_BGR);
+        final TIFFEncodeParam encodeParam = new TIFFEncodeParam();
+        encodeParam.setTileSize(0, 3);
+        for (final int compression : new int[] {
+                TIFFEncodeParam.COMPRESSION_NONE,
+                TIFFEncodeParam.COMPRESSION_PACKBITS,
+                TIFFEncodeParam.COMPRESSION_DEFLATE }) {
+            encodeParam.setCompression(compression);
+            final SeekableStream mapped = encode(image, encodeParam);
+            checkConcurrentTiles(image, mapped);
+            // A stream without positional reads of its own
+            final byte[] bytes = new byte[(int) ((ByteBufferSeekableStream) mapped)
+                    .length()];
+            mapped.seek(0);
+            mapped.readFully(bytes);
+            checkConcurrentTiles(image, new MemoryCacheSeekableStream(
+                    new ByteArrayInputStream(bytes)));
+        }
+    }
+
+    private void checkConcurrentTiles(final BufferedImage image,
+            final SeekableStream stream) throws Exception {
+        final TIFFImage tiff = new TIFFImage(stream, null, 0);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<Raster>> strips = new ArrayList<Future<Raster>>();
+            for (int round = 0; round < 4; round++) {
+                for (int y = 0; y < tiff.getNumYTiles(); y++) {
+                    final int tileY = y;
+                    strips.add(executor.submit(new Callable<Raster>() {
+                        public Raster call() {
+                            return tiff.getTile(0, tileY);
+                        }
+                    }));
+                }
+            }
+            for (int i = 0; i < strips.size(); i++) {
+                final Raster strip = strips.get(i).get();
+                assertSamePixels(image.getData(strip.getBounds())
+                        .createTranslatedChild(0, 0), strip);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testTileCache() throws IOException {
+        final BufferedImage image = createImage(83, 64,
+                BufferedImage.TYPE_BYTE_GRAY);
+        final TIFFEncodeParam encodeParam = new TIFFEncodeParam();
+        encodeParam.setTileSize(0, 8);
+        final SeekableStream stream = encode(image, encodeParam);
+
+        TIFFImage tiff = new TIFFImage(stream, null, 0);
+        assertNotSame(tiff.getTile(0, 1), tiff.getTile(0, 1));
+
+        final TIFFDecodeParam param = new TIFFDecodeParam();
+        param.setTileCacheSize(2);
+        tiff = new TIFFImage(stream, param, 0);
+        final Raster first = tiff.getTile(0, 0);
+        final Raster second = tiff.getTile(0, 1);
+        assertSame(first, tiff.getTile(0, 0));
+        tiff.getTile(0, 2);
+        // The least recently used strip has been dropped
+        assertNotSame(second, tiff.getTile(0, 1));
+        assertSamePixels(image.getData(second.getBounds())
+                .createTranslatedChild(0, 0), second);
+
+        try {
+            param.setTileCacheSize(-1);
+            fail("Negative cache size accepted");
+        } catch (final IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testWhiteIsZeroBilevel() throws IOException {
+        // An uncompressed 8x2 bilevel image with PhotometricInterpretation 0
+        final short[][] fields = { { 256, 8 }, { 257, 2 }, { 258, 1 },
+                { 259, 1 }, { 262, 0 }, { 273, 122 }, { 277, 1 }, { 278, 2 },
+                { 279, 2 } };
+        final ByteBuffer file = ByteBuffer.allocate(124).order(
+                ByteOrder.LITTLE_ENDIAN);
+        file.put((byte) 'I').put((byte) 'I').putShort((short) 42).putInt(8);
+        file.putShort((short) fields.length);
+        for (final short[] field : fields) {
+            // SHORT values, left-justified in the value field
+            file.putShort(field[0]).putShort((short) 3).putInt(1)
+                    .putShort(field[1]).putShort((short) 0);
+        }
+        file.putInt(0);
+        file.put((byte) 0x0F).put((byte) 0xF0);
+        file.flip();
+
+        final TIFFImage tiff = new TIFFImage(new ByteBufferSeekableStream(
+                file), null, 0);
+        final Raster raster = tiff.getTile(0, 0);
+        for (int y = 0; y < 2; y++) {
+            for (int x = 0; x < 8; x++) {
+                final boolean black = x < 4 == (y == 1);
+                assertEquals(black ? 0xff000000 : 0xffffffff, tiff
+                        .getColorModel().getRGB(raster.getSample(x, y, 0)));
+            }
+        }
+    }
+
+    @Test
+    public void testGroup4() throws IOException {
+        final InputStream in = getClass().getResourceAsStream(
+                "/images/tiff_group4.tif");
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            final byte[] buf = new byte[4096];
+            int n;
+            while ((n = in.read(buf)) != -1) {
+                out.write(buf, 0, n);
+            }
+        } finally {
+            in.close();
+        }
+        final byte[] file = out.toByteArray();
+        final SeekableStream stream = new ByteBufferSeekableStream(
+                ByteBuffer.wrap(file));
+
+        // A single strip in fill order 1, black is 0
+        final TIFFImage tiff = new TIFFImage(stream, null, 0);
+        assertEquals(1560, tiff.getWidth());
+        assertEquals(189, tiff.getHeight());
+        final byte[] rows = ((DataBufferByte) tiff.getTile(0, 0)
+                .getDataBuffer()).getData();
+        // Checksum of the rows produced by the bit-by-bit decoder the
+        // table-driven one replaced
+        final CRC32 crc = new CRC32();
+        crc.update(rows, 0, 195 * 189);
+        assertEquals(0xc870d87aL, crc.getValue());
+
+        final TIFFDirectory dir = new TIFFDirectory(stream, 0);
+        final int offset = (int) dir.getField(
+                TIFFImageDecoder.TIFF_STRIP_OFFSETS).getAsLong(0);
+        final int length = (int) dir.getField(
+                TIFFImageDecoder.TIFF_STRIP_BYTE_COUNTS).getAsLong(0);
+        final byte[] data = Arrays.copyOfRange(file, offset, offset + length);
+        final byte[] reversed = new byte[length];
+        for (int i = 0; i < length; i++) {
+            reversed[i] = (byte) (Integer.reverse(data[i]) >>> 24);
+        }
+
+        // The decoder can be reused and reverses fill order 2 itself
+        final TIFFFaxDecoder decoder = new TIFFFaxDecoder(1, 1560, 189);
+        for (int i = 0; i < 2; i++) {
+            final byte[] decoded = new byte[195 * 189];
+            decoder.decodeT6(decoded, data, 0, 189, 0);
+            assertTrue(Arrays.equals(Arrays.copyOf(rows, decoded.length),
+                    decoded));
+        }
+        final byte[] decoded = new byte[195 * 189];
+        new TIFFFaxDecoder(2, 1560, 189).decodeT6(decoded, reversed, 0, 189,
+                0);
+        assertTrue(Arrays.equals(Arrays.copyOf(rows, decoded.length), decoded));
+
+        try {
+            decoder.decodeT6(new byte[195 * 189],
+                    Arrays.copyOf(data, length / 2), 0, 189, 0);
+            fail("Truncated data decoded");
+        } catch (final RuntimeException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,359 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.codec.tiff;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import junit.framework.TestCase;
+
+import org.apache.xmlgraphics.image.codec.util.ByteBufferSeekableStream;
+import org.junit.Test;
+
+/**
+ * Tests encoding with {@link TIFFImageEncoder}, {@link TIFFLZWEncoder} and
+ * {@link TIFFFaxEncoder} by decoding the output again.
+ */
+public class TIFFEncoderTest extends TestCase {
+
+    private static BufferedImage createImage(final int width,
+            final int height, final int type, final boolean noisy) {
+        final BufferedImage image = new BufferedImage(width, height, type);
+        final Random random = new Random(11);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, noisy ? random.nextInt() : x * 2 << 16
+                        | y * 3 << 8 | (x + y) / 4);
+            }
+        }
+        return image;
+    }
+
+    private static byte[] encode(final BufferedImage image,
+            final TIFFEncodeParam param) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new TIFFImageEncoder(out, param).encode(image);
+        return out.toByteArray();
+    }
+
+    private static TIFFImage decode(final byte[] tiff) throws IOException {
+        return new TIFFImage(new ByteBufferSeekableStream(ByteBuffer.wrap(tiff)),
+                null, 0);
+    }
+
+    private static void assertRoundTrip(final BufferedImage image,
+            final TIFFEncodeParam param) throws IOException {
+        final Raster decoded = decode(encode(image, param)).getData();
+        final Raster expected = image.getRaster();
+        final int width = image.getWidth();
+        final int[] e = new int[width * expected.getNumBands()];
+        final int[] a = new int[e.length];
+        for (int y = 0; y < image.getHeight(); y++) {
+            expected.getPixels(0, y, width, 1, e);
+            decoded.getPixels(0, y, width, 1, a);
+            assertTrue("row " + y, Arrays.equals(e, a));
+        }
+    }
+
+    @Test
+    public void testLZWEncoder() {
+        final Random random = new Random(3);
+        final TIFFLZWEncoder encoder = new TIFFLZWEncoder();
+        for (final int length : new int[] { 1, 2, 300, 5000, 100000 }) {
+            for (int noise = 2; noise <= 256; noise *= 8) {
+                final byte[] data = new byte[length];
+                for (int i = 0; i < length; i++) {
+                    data[i] = (byte) random.nextInt(noise);
+                }
+                final byte[] compressed = new byte[TIFFLZWEncoder
+                        .getMaxEncodedLength(length)];
+                final int count = encoder.encode(data, 0, length, compressed);
+
+                final byte[] decoded = new byte[length];
+                new TIFFLZWDecoder(length, 1, 1).decode(
+                        Arrays.copyOf(compressed, count), decoded, 1);
+                assertTrue("length " + length + ", noise " + noise,
+                        Arrays.equals(data, decoded));
+            }
+        }
+    }
+
+    @Test
+    public void testLZW() throws IOException {
+        final TIFFEncodeParam param = new TIFFEncodeParam();
+        param.setCompression(TIFFEncodeParam.COMPRESSION_LZW);
+        assertRoundTrip(createImage(83, 67, BufferedImage.TYPE_BYTE_BINARY,
+                false), param);
+        assertRoundTrip(createImage(83, 67, BufferedImage.TYPE_BYTE_GRAY,
+                false), param);
+        // One large strip of noise makes the string table fill up repeatedly
+        param.setTileSize(0, 200);
+        assertRoundTrip(createImage(300, 200, BufferedImage.TYPE_3BYTE_BGR,
+                true), param);
+    }
+
+    @Test
+    public void testPredictor() throws IOException {
+        final BufferedImage image = createImage(83, 67,
+                BufferedImage.TYPE_3BYTE_BGR, false);
+        for (final int compression : new int[] {
+                TIFFEncodeParam.COMPRESSION_LZW,
+                TIFFEncodeParam.COMPRESSION_DEFLATE }) {
+            final TIFFEncodeParam param = new TIFFEncodeParam();
+            param.setCompression(compression);
+            final int plainSize = encode(image, param).length;
+            param.setPredictor(TIFFEncodeParam.PREDICTOR_HORIZONTAL_DIFFERENCING);
+            final byte[] tiff = encode(image, param);
+            assertTrue(tiff.length < plainSize);
+
+            final TIFFDirectory dir = new TIFFDirectory(
+                    new ByteBufferSeekableStream(ByteBuffer.wrap(tiff)), 0);
+            assertEquals(2, dir.getField(TIFFImageDecoder.TIFF_PREDICTOR)
+                    .getAsInt(0));
+            assertRoundTrip(image, param);
+        }
+
+        final TIFFEncodeParam param = new TIFFEncodeParam();
+        param.setCompression(TIFFEncodeParam.COMPRESSION_LZW);
+        param.setPredictor(TIFFEncodeParam.PREDICTOR_HORIZONTAL_DIFFERENCING);
+        try {
+            encode(createImage(8, 8, BufferedImage.TYPE_BYTE_BINARY, false),
+                    param);
+            fail("Predictor accepted for 1-bit samples");
+        } catch (final RuntimeException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testParallelStrips() throws IOException {
+        final BufferedImage image = createImage(97, 131,
+                BufferedImage.TYPE_3BYTE_BGR, false);
+        final ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            for (final int compression : new int[] {
+                    TIFFEncodeParam.COMPRESSION_PACKBITS,
+                    TIFFEncodeParam.COMPRESSION_LZW,
+                    TIFFEncodeParam.COMPRESSION_DEFLATE }) {
+                final TIFFEncodeParam param = new TIFFEncodeParam();
+                param.setCompression(compression);
+                param.setPredictor(TIFFEncodeParam.PREDICTOR_HORIZONTAL_DIFFERENCING);
+                param.setTileSize(0, 4);
+                final byte[] sequential = encode(image, param);
+                param.setExecutor(executor);
+                assertTrue(Arrays.equals(sequential, encode(image, param)));
+                assertRoundTrip(image, param);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testParallelStripsFailure() throws IOException {
+        // The second strip cannot be read, while the first one is queued
+        final BufferedImage image = new BufferedImage(16, 16,
+                BufferedImage.TYPE_3BYTE_BGR) {
+            private int strips;
+
+            @Override
+            public Raster getData(final Rectangle rect) {
+                if (++this.strips > 1) {
+                    throw new IllegalStateException("Raster not available");
+                }
+                return super.getData(rect);
+            }
+        };
+        final List<Runnable> queued = new ArrayList<Runnable>();
+        final TIFFEncodeParam param = new TIFFEncodeParam();
+        param.setCompression(TIFFEncodeParam.COMPRESSION_DEFLATE);
+        param.setTileSize(0, 4);
+        param.setExecutor(new Executor() {
+            public void execute(final Runnable command) {
+                queued.add(command);
+            }
+        });
+        try {
+            encode(image, param);
+            fail("Raster failure ignored");
+        } catch (final IllegalStateException e) {
+            // expected
+        }
+        assertEquals(1, queued.size());
+        assertTrue(((Future<?>) queued.get(0)).isCancelled());
+    }
+
+    /**
+     * Creates a bilevel image with text-like blocks, isolated pixels, rows
+     * of alternating pixels and, if the image is wide enough, runs longer
+     * than 2560 pixels.
+     */
+    private static BufferedImage createBilevelImage(final int width,
+            final int height, final ColorModel colorModel) {
+        final BufferedImage image = colorModel == null ? new BufferedImage(
+                width, height, BufferedImage.TYPE_BYTE_BINARY)
+                : new BufferedImage((IndexColorModel) colorModel,
+                        colorModel.createCompatibleWritableRaster(width,
+                                height), false, null);
+        final Random random = new Random(5);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                final boolean black;
+                if (y % 16 < 3) {
+                    black = false;
+                } else if (y % 16 == 15) {
+                    // A change at every pixel
+                    black = (x + y / 16 & 1) == 0;
+                } else if (y % 16 < 6) {
+                    black = x > width / 3 && x < width - 7;
+                } else {
+                    black = (x / 5 + y / 16) % 3 == 0 ^ random.nextInt(40) == 0;
+                }
+                image.setRGB(x, y, black ? 0xff000000 : 0xffffffff);
+            }
+        }
+        return image;
+    }
+
+    private static void assertSameColours(final BufferedImage image,
+            final TIFFImage decoded) {
+        final Raster raster = decoded.getData();
+        final ColorModel colorModel = decoded.getColorModel();
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                assertEquals("pixel " + x + "," + y, image.getRGB(x, y),
+                        colorModel.getRGB(raster.getSample(x, y, 0)));
+            }
+        }
+    }
+
+    private static byte[] getStrip(final byte[] tiff) throws IOException {
+        final TIFFDirectory dir = new TIFFDirectory(
+                new ByteBufferSeekableStream(ByteBuffer.wrap(tiff)), 0);
+        final int offset = (int) dir.getField(
+                TIFFImageDecoder.TIFF_STRIP_OFFSETS).getAsLong(0);
+        final int length = (int) dir.getField(
+                TIFFImageDecoder.TIFF_STRIP_BYTE_COUNTS).getAsLong(0);
+        return Arrays.copyOfRange(tiff, offset, offset + length);
+    }
+
+    @Test
+    public void testCCITT() throws IOException {
+        final byte[] grey = { (byte) 255, 0 };
+        final ColorModel whiteIsZero = new IndexColorModel(1, 2, grey, grey,
+                grey);
+        for (final int compression : new int[] {
+                TIFFEncodeParam.COMPRESSION_GROUP3_1D,
+                TIFFEncodeParam.COMPRESSION_GROUP3_2D,
+                TIFFEncodeParam.COMPRESSION_GROUP4 }) {
+            final TIFFEncodeParam param = new TIFFEncodeParam();
+            param.setCompression(compression);
+            for (final BufferedImage image : new BufferedImage[] {
+                    createBilevelImage(203, 57, null),
+                    createBilevelImage(203, 57, whiteIsZero),
+                    createBilevelImage(1, 33, null),
+                    createBilevelImage(6000, 19, null) }) {
+                final byte[] tiff = encode(image, param);
+                assertSameColours(image, decode(tiff));
+
+                // A single WhiteIsZero strip, as expected for raw embedding
+                final TIFFDirectory dir = new TIFFDirectory(
+                        new ByteBufferSeekableStream(ByteBuffer.wrap(tiff)), 0);
+                assertEquals(compression, dir.getField(
+                        TIFFImageDecoder.TIFF_COMPRESSION).getAsInt(0));
+                assertEquals(0, dir.getField(
+                        TIFFImageDecoder.TIFF_PHOTOMETRIC_INTERPRETATION)
+                        .getAsInt(0));
+                assertEquals(1, dir.getField(
+                        TIFFImageDecoder.TIFF_STRIP_OFFSETS).getCount());
+            }
+        }
+
+        // A real fax page: re-encoding gives back the original strip
+        final InputStream in = getClass().getResourceAsStream(
+                "/images/tiff_group4.tif");
+        final ByteArrayOutputStream file = new ByteArrayOutputStream();
+        try {
+            final byte[] buf = new byte[4096];
+            int n;
+            while ((n = in.read(buf)) != -1) {
+                file.write(buf, 0, n);
+            }
+        } finally {
+            in.close();
+        }
+        final byte[] original = file.toByteArray();
+        final TIFFImage fax = decode(original);
+        final BufferedImage page = new BufferedImage(fax.getColorModel(),
+                (WritableRaster) fax.getData(), false, null);
+        final TIFFEncodeParam param = new TIFFEncodeParam();
+        param.setCompression(TIFFEncodeParam.COMPRESSION_GROUP4);
+        final byte[] g4 = encode(page, param);
+        assertTrue(Arrays.equals(getStrip(original), getStrip(g4)));
+        param.setCompression(TIFFEncodeParam.COMPRESSION_PACKBITS);
+        assertTrue(g4.length * 2 < encode(page, param).length);
+
+        param.setCompression(TIFFEncodeParam.COMPRESSION_GROUP4);
+        try {
+            encode(createImage(8, 8, BufferedImage.TYPE_BYTE_GRAY, false),
+                    param);
+            fail("CCITT compression accepted for 8-bit samples");
+        } catch (final RuntimeException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testCCITTStrips() throws IOException {
+        final BufferedImage image = createBilevelImage(203, 131, null);
+        final ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            for (final int compression : new int[] {
+                    TIFFEncodeParam.COMPRESSION_GROUP3_2D,
+                    TIFFEncodeParam.COMPRESSION_GROUP4 }) {
+                final TIFFEncodeParam param = new TIFFEncodeParam();
+                param.setCompression(compression);
+                param.setTileSize(0, 10);
+                final byte[] sequential = encode(image, param);
+                assertSameColours(image, decode(sequential));
+                param.setExecutor(executor);
+                assertTrue(Arrays.equals(sequential, encode(image, param)));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -26,8 +26,10 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import javax.imageio.stream.ImageInputStream;
 import javax.xml.transform.Source;
@@ -87,6 +89,29 @@ public class ImageLoaderTestCase extends TestCase {
         sessionContext.checkAllStreamsClosed();
     }
 
+    @Test
+    public void testPNGSubsampled() throws ImageException, IOException {
+        final String uri = "asf-logo.png";
+
+        final MyImageSessionContext sessionContext = createImageSessionContext();
+        final ImageManager manager = this.imageContext.getImageManager();
+
+        final ImageInfo info = manager.preloadImage(uri, sessionContext);
+        final Map<Object, Object> hints = new HashMap<>();
+        hints.put(ImageProcessingHints.TARGET_RESOLUTION,
+                info.getSize().getDpiHorizontal() / 3);
+        hints.put(ImageProcessingHints.ALLOW_SUBSAMPLING, Boolean.TRUE);
+        final Image img = manager.getImage(info, ImageFlavor.RENDERED_IMAGE,
+                hints, sessionContext);
+        final ImageRendered imgRed = (ImageRendered) img;
+        assertEquals(57, imgRed.getRenderedImage().getWidth());
+        assertEquals(17, imgRed.getRenderedImage().getHeight());
+        // The intrinsic size is unchanged
+        assertEquals(126734, imgRed.getInfo().getSize().getWidthMpt());
+
+        sessionContext.checkAllStreamsClosed();
+    }
+
     @Test
     public void testGIF() throws ImageException, IOException {
         final String uri = "bgimg72dpi.gif";
@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.loader;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.transform.Source;
+import javax.xml.transform.stream.StreamSource;
+
+import junit.framework.TestCase;
+
+import org.apache.xmlgraphics.image.loader.cache.ImageCacheStatistics;
+import org.junit.Test;
+
+/**
+ * Tests the asynchronous methods of {@link ImageManager}.
+ */
+public class ImageManagerAsyncTestCase extends TestCase {
+
+    private final MockImageContext imageContext = MockImageContext
+            .getInstance();
+    private final AtomicInteger preloadCount = new AtomicInteger();
+    private ImageManager manager;
+    private ImageSessionContext session;
+    private ExecutorService executor;
+
+    /** {@inheritDoc} */
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.manager = new ImageManager(this.imageContext) {
+            @Override
+            public ImageInfo preloadImage(final String uri, final Source src)
+                    throws ImageException {
+                ImageManagerAsyncTestCase.this.preloadCount.incrementAndGet();
+                if (uri.startsWith("broken")) {
+                    throw new ImageException("Unsupported format: " + uri);
+                }
+                return new ImageInfo(uri, "image/png");
+            }
+        };
+        this.session = new MockImageSessionContext(this.imageContext) {
+            @Override
+            public Source needSource(final String uri)
+                    throws FileNotFoundException {
+                if (uri.startsWith("missing")) {
+                    throw new FileNotFoundException("Image not found: " + uri);
+                }
+                return new StreamSource(new ByteArrayInputStream(new byte[0]),
+                        uri);
+            }
+
+            @Override
+            public void returnSource(final String uri, final Source src) {
+                // nop
+            }
+        };
+        this.executor = Executors.newFixedThreadPool(4);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void tearDown() throws Exception {
+        this.executor.shutdownNow();
+        super.tearDown();
+    }
+
+    @Test
+    public void testPreloadAll() throws Exception {
+        final List<String> uris = Arrays.asList("a.png", "b.png", "c.png",
+                "a.png", "d.png");
+        final Map<String, Future<ImageInfo>> futures = this.manager
+                .preloadAll(uris, this.session, this.executor);
+        assertEquals(4, futures.size());
+        for (final Map.Entry<String, Future<ImageInfo>> entry : futures
+                .entrySet()) {
+            assertEquals(entry.getKey(), entry.getValue().get()
+                    .getOriginalURI());
+        }
+        assertEquals(4, this.preloadCount.get());
+
+        // All ImageInfos must now be served from the cache
+        final ImageCacheStatistics statistics = new ImageCacheStatistics(false);
+        this.manager.getCache().setCacheListener(statistics);
+        for (final String uri : uris) {
+            assertNotNull(this.manager.getImageInfo(uri, this.session));
+        }
+        assertEquals(5, statistics.getImageInfoCacheHits());
+        assertEquals(0, statistics.getImageInfoCacheMisses());
+        assertEquals(4, this.preloadCount.get());
+    }
+
+    @Test
+    public void testPreloadAllWithoutExecutor() throws Exception {
+        assertNull(this.manager.getExecutor());
+        final Map<String, Future<ImageInfo>> futures = this.manager
+                .preloadAll(Arrays.asList("e.png", "f.png"), this.session);
+        for (final Future<ImageInfo> future : futures.values()) {
+            assertTrue(future.isDone());
+        }
+        assertEquals("f.png", futures.get("f.png").get().getOriginalURI());
+    }
+
+    @Test
+    public void testAsyncErrors() throws Exception {
+        final Future<ImageInfo> missing = this.manager.getImageInfoAsync(
+                "missing.png", this.session, this.executor);
+        try {
+            missing.get();
+            fail("Expected FileNotFoundException");
+        } catch (final ExecutionException ee) {
+            assertTrue(ee.getCause() instanceof FileNotFoundException);
+        }
+        final Future<Image> broken = this.manager.getImageAsync("broken.png",
+                new ImageFlavor[] { ImageFlavor.RENDERED_IMAGE }, null,
+                this.session, this.executor);
+        try {
+            broken.get();
+            fail("Expected ImageException");
+        } catch (final ExecutionException ee) {
+            assertTrue(ee.getCause() instanceof ImageException);
+        }
+    }
+
+}
@@ -221,4 +221,43 @@ public class PipelineFactoryTestCase extends TestCase {
         // penalty.
     }
 
+    /**
+     * Tests that pipeline plans are memoized per MIME type and target flavor
+     * and discarded when the registry changes.
+     */
+    @Test
+    public void testPlanCache() {
+        final MockImageContext imageContext = MockImageContext
+                .newSafeInstance();
+        final ImageManager manager = imageContext.getImageManager();
+        final PipelineFactory pFactory = new PipelineFactory(manager);
+        assertEquals(0.0, pFactory.getPlanCacheHitRatio(), 0.0);
+
+        final ImageInfo imageInfo1 = new ImageInfo("test1:tiff", "image/tiff");
+        final ImageInfo imageInfo2 = new ImageInfo("test2:tiff", "image/tiff");
+        final ImageFlavor targetFlavor = ImageFlavor.GRAPHICS2D;
+
+        final ImageProviderPipeline pipeline1 = pFactory
+                .newImageConverterPipeline(imageInfo1, targetFlavor);
+        assertEquals(0, pFactory.getPlanCacheHits());
+        assertEquals(1, pFactory.getPlanCacheMisses());
+        final ImageProviderPipeline pipeline2 = pFactory
+                .newImageConverterPipeline(imageInfo2, targetFlavor);
+        assertEquals(1, pFactory.getPlanCacheHits());
+        assertEquals(0.5, pFactory.getPlanCacheHitRatio(), 0.0001);
+        // The plan is shared, the pipelines are not
+        assertNotSame(pipeline1, pipeline2);
+        assertEquals(pipeline1.toString().replaceAll("@\\w+", ""), pipeline2
+                .toString().replaceAll("@\\w+", ""));
+        assertEquals(1010, pipeline2.getConversionPenalty());
+
+        // A new loader invalidates the plans
+        manager.getRegistry().registerLoaderFactory(
+                new MockImageLoaderFactoryTIFF());
+        final ImageProviderPipeline pipeline3 = pFactory
+                .newImageConverterPipeline(imageInfo1, targetFlavor);
+        assertEquals(2, pFactory.getPlanCacheMisses());
+        assertEquals(10, pipeline3.getConversionPenalty());
+    }
+
 }
@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.loader.cache;
+
+import java.awt.image.BufferedImage;
+
+import junit.framework.TestCase;
+
+import org.apache.xmlgraphics.image.loader.ImageFlavor;
+import org.apache.xmlgraphics.image.loader.ImageInfo;
+import org.apache.xmlgraphics.image.loader.impl.ImageBuffered;
+import org.junit.Test;
+
+/**
+ * Tests {@link BoundedImageCacheBackend}.
+ */
+public class BoundedImageCacheBackendTestCase extends TestCase {
+
+    /** Weight of an image created by {@link #createImage(String)} */
+    private static final long IMAGE_WEIGHT = 100 * 100
+            + DefaultImageWeigher.ENTRY_OVERHEAD;
+
+    private static ImageBuffered createImage(final String uri) {
+        final BufferedImage bi = new BufferedImage(100, 100,
+                BufferedImage.TYPE_BYTE_GRAY);
+        return new ImageBuffered(new ImageInfo(uri, "image/png"), bi, null);
+    }
+
+    private static ImageKey key(final String uri) {
+        return new ImageKey(uri, ImageFlavor.BUFFERED_IMAGE);
+    }
+
+    private static void put(final ImageCacheBackend backend, final String uri) {
+        backend.put(key(uri), createImage(uri));
+    }
+
+    @Test
+    public void testWeigher() {
+        assertEquals(IMAGE_WEIGHT,
+                new DefaultImageWeigher().weigh(createImage("a")));
+    }
+
+    @Test
+    public void testLRUEviction() {
+        final BoundedImageCacheBackend backend = new BoundedImageCacheBackend(
+                3 * IMAGE_WEIGHT);
+        put(backend, "a");
+        put(backend, "b");
+        put(backend, "c");
+        assertEquals(3, backend.size());
+        assertEquals(3 * IMAGE_WEIGHT, backend.getWeightedSize());
+
+        // "a" becomes the most recently used entry, "b" is evicted next
+        assertNotNull(backend.get(key("a")));
+        put(backend, "d");
+        assertEquals(3, backend.size());
+        assertNull(backend.get(key("b")));
+        assertNotNull(backend.get(key("a")));
+        assertNotNull(backend.get(key("c")));
+        assertNotNull(backend.get(key("d")));
+        assertEquals(1, backend.getEvictionCount());
+    }
+
+    @Test
+    public void testOversizedEntryIsRejected() {
+        final BoundedImageCacheBackend backend = new BoundedImageCacheBackend(
+                IMAGE_WEIGHT - 1);
+        put(backend, "a");
+        assertEquals(0, backend.size());
+        assertNull(backend.get(key("a")));
+        assertEquals(0, backend.getWeightedSize());
+    }
+
+    @Test
+    public void testTinyLFUKeepsFrequentEntries() {
+        final BoundedImageCacheBackend backend = new BoundedImageCacheBackend(
+                4 * IMAGE_WEIGHT,
+                BoundedImageCacheBackend.EvictionOrder.W_TINY_LFU);
+        put(backend, "hot1");
+        put(backend, "hot2");
+        for (int i = 0; i < 5; i++) {
+            assertNotNull(backend.get(key("hot1")));
+            assertNotNull(backend.get(key("hot2")));
+        }
+        // A scan of images used only once must not flush the popular ones
+        for (int i = 0; i < 20; i++) {
+            put(backend, "scan" + i);
+            assertTrue(backend.getWeightedSize() <= 4 * IMAGE_WEIGHT);
+        }
+        assertNotNull(backend.get(key("hot1")));
+        assertNotNull(backend.get(key("hot2")));
+        // The most recent entry always stays in the admission window
+        assertNotNull(backend.get(key("scan19")));
+    }
+
+    @Test
+    public void testRemoveAndClear() {
+        final BoundedImageCacheBackend backend = new BoundedImageCacheBackend(
+                10 * IMAGE_WEIGHT);
+        put(backend, "a");
+        put(backend, "b");
+        assertNotNull(backend.remove(key("a")));
+        assertNull(backend.remove(key("a")));
+        assertEquals(IMAGE_WEIGHT, backend.getWeightedSize());
+        backend.clear();
+        assertEquals(0, backend.size());
+        assertEquals(0, backend.getWeightedSize());
+    }
+
+    @Test
+    public void testImageCacheWithBoundedBackend() {
+        final ImageCache cache = new ImageCache(new BoundedImageCacheBackend(
+                IMAGE_WEIGHT));
+        final ImageBuffered img1 = createImage("a");
+        cache.putImage(img1);
+        assertSame(img1, cache.getImage("a", ImageFlavor.BUFFERED_IMAGE));
+        cache.putImage(createImage("b"));
+        assertNull(cache.getImage("a", ImageFlavor.BUFFERED_IMAGE));
+        assertNotNull(cache.getImage("b", ImageFlavor.BUFFERED_IMAGE));
+    }
+
+}
@@ -19,8 +19,18 @@
 
 package org.apache.xmlgraphics.image.loader.cache;
 
+import java.io.ByteArrayInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.transform.Source;
+import javax.xml.transform.stream.StreamSource;
 
 import junit.framework.TestCase;
 import lombok.extern.slf4j.Slf4j;
@@ -31,6 +41,7 @@ import org.apache.xmlgraphics.image.loader.ImageInfo;
 import org.apache.xmlgraphics.image.loader.ImageManager;
 import org.apache.xmlgraphics.image.loader.ImageSessionContext;
 import org.apache.xmlgraphics.image.loader.MockImageContext;
+import org.apache.xmlgraphics.image.loader.MockImageSessionContext;
 import org.apache.xmlgraphics.image.loader.impl.ImageBuffered;
 import org.junit.Test;
 
@@ -218,4 +229,86 @@ public class ImageCacheTestCase extends TestCase {
         }
         imageCache.doHouseKeeping();
     }
+
+    /**
+     * Tests that concurrent requests for the same URI only preload the image
+     * once and that all callers get the same ImageInfo instance.
+     *
+     * @throws Exception
+     *             if an error occurs
+     */
+    @Test
+    public void testConcurrentImageInfoPreloading() throws Exception {
+        final int threadCount = 64;
+        final int uriCount = 8;
+        final ConcurrentMap<String, AtomicInteger> preloadCounts = new ConcurrentHashMap<>();
+        final ImageManager countingManager = new ImageManager(
+                this.imageContext) {
+            @Override
+            public ImageInfo preloadImage(final String uri, final Source src) {
+                AtomicInteger count = new AtomicInteger();
+                final AtomicInteger existing = preloadCounts.putIfAbsent(uri,
+                        count);
+                if (existing != null) {
+                    count = existing;
+                }
+                count.incrementAndGet();
+                try {
+                    Thread.sleep(20); // simulate I/O
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return new ImageInfo(uri, "image/png");
+            }
+        };
+        final ImageSessionContext session = new MockImageSessionContext(
+                this.imageContext) {
+            @Override
+            public Source needSource(final String uri) {
+                return new StreamSource(new ByteArrayInputStream(new byte[0]),
+                        uri);
+            }
+
+            @Override
+            public void returnSource(final String uri, final Source src) {
+                // nop
+            }
+        };
+        final ImageCache cache = countingManager.getCache();
+        final CountDownLatch start = new CountDownLatch(1);
+        final ImageInfo[] results = new ImageInfo[threadCount];
+        final List<Throwable> errors = new ArrayList<>();
+        final Thread[] threads = new Thread[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            final int index = i;
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        results[index] = cache.needImageInfo("image"
+                                + index % uriCount + ".png", session,
+                                countingManager);
+                    } catch (final Throwable t) {
+                        synchronized (errors) {
+                            errors.add(t);
+                        }
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        start.countDown();
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue("Errors: " + errors, errors.isEmpty());
+        assertEquals(uriCount, preloadCounts.size());
+        for (final AtomicInteger count : preloadCounts.values()) {
+            assertEquals(1, count.get());
+        }
+        for (int i = 0; i < threadCount; i++) {
+            assertSame(results[i % uriCount], results[i]);
+        }
+    }
 }
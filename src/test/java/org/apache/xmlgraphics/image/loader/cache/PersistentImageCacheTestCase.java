@@ -0,0 +1,193 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.loader.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.xmlgraphics.image.loader.ImageFlavor;
+import org.apache.xmlgraphics.image.loader.ImageInfo;
+import org.apache.xmlgraphics.image.loader.ImageManager;
+import org.apache.xmlgraphics.image.loader.ImageSessionContext;
+import org.apache.xmlgraphics.image.loader.MockImageContext;
+import org.apache.xmlgraphics.image.loader.impl.DefaultImageSessionContext;
+import org.apache.xmlgraphics.image.loader.impl.ImageRawJPEG;
+import org.apache.xmlgraphics.image.loader.spi.ImageImplRegistry;
+import org.apache.xmlgraphics.util.MimeConstants;
+import org.junit.Test;
+
+/**
+ * Tests for {@link PersistentImageCache}.
+ */
+public class PersistentImageCacheTestCase extends TestCase {
+
+    private static final File IMAGE_DIR = new File("src/test/resources/images");
+
+    private final MockImageContext imageContext = MockImageContext
+            .getInstance();
+    private File cacheDir;
+    private File imageDir;
+
+    @Override
+    protected void setUp() throws Exception {
+        final File base = File.createTempFile("persistent-image-cache", "");
+        base.delete();
+        this.cacheDir = new File(base, "cache");
+        this.imageDir = new File(base, "images");
+        FileUtils.copyFileToDirectory(new File(IMAGE_DIR, "no-resolution.tif"),
+                this.imageDir);
+        FileUtils.copyFileToDirectory(new File(IMAGE_DIR, "bgimg300dpi.jpg"),
+                this.imageDir);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        FileUtils.deleteDirectory(this.cacheDir.getParentFile());
+    }
+
+    /** Simulates a JVM restart: fresh in-memory caches, same directory. */
+    private ImageManager newManager(final PersistentImageCache persistent) {
+        final ImageCache cache = new ImageCache();
+        cache.setPersistentCache(persistent);
+        return new ImageManager(ImageImplRegistry.getDefaultInstance(),
+                this.imageContext, cache);
+    }
+
+    private ImageSessionContext newSession() {
+        return new DefaultImageSessionContext(this.imageContext, this.imageDir);
+    }
+
+    @Test
+    public void testImageInfoSurvivesRestart() throws Exception {
+        final String uri = "no-resolution.tif";
+        PersistentImageCache persistent = new PersistentImageCache(
+                this.cacheDir, 1024 * 1024);
+        final ImageInfo original = newManager(persistent).getImageInfo(uri,
+                newSession());
+        assertEquals(0, persistent.getHitCount());
+        assertEquals(1, persistent.getEntryCount());
+
+        persistent = new PersistentImageCache(this.cacheDir, 1024 * 1024);
+        assertEquals(1, persistent.getEntryCount());
+        final ImageInfo info = newManager(persistent).getImageInfo(uri,
+                newSession());
+        assertEquals(1, persistent.getHitCount());
+        assertNotSame(original, info);
+        assertEquals(uri, info.getOriginalURI());
+        assertEquals(MimeConstants.MIME_TIFF, info.getMimeType());
+        assertEquals(original.getSize().getWidthPx(), info.getSize()
+                .getWidthPx());
+        assertEquals(original.getSize().getHeightMpt(), info.getSize()
+                .getHeightMpt());
+        assertEquals(original.getSize().getDpiHorizontal(), info.getSize()
+                .getDpiHorizontal(), 0.0);
+        assertEquals(original.getCustomObjects(), info.getCustomObjects());
+    }
+
+    @Test
+    public void testChangedImageIsNotReused() throws Exception {
+        final String uri = "no-resolution.tif";
+        final PersistentImageCache persistent = new PersistentImageCache(
+                this.cacheDir, 1024 * 1024);
+        newManager(persistent).getImageInfo(uri, newSession());
+
+        final File file = new File(this.imageDir, uri);
+        assertTrue(file.setLastModified(file.lastModified() - 10000));
+        newManager(persistent).getImageInfo(uri, newSession());
+        assertEquals(0, persistent.getHitCount());
+        assertEquals(2, persistent.getMissCount());
+        assertEquals(1, persistent.getEntryCount());
+    }
+
+    @Test
+    public void testHitRecordsAccess() throws Exception {
+        final String uri = "no-resolution.tif";
+        final PersistentImageCache persistent = new PersistentImageCache(
+                this.cacheDir, 1024 * 1024);
+        newManager(persistent).getImageInfo(uri, newSession());
+        final File[] entries = this.cacheDir.listFiles();
+        assertEquals(1, entries.length);
+        final long old = entries[0].lastModified() - 100000;
+        assertTrue(entries[0].setLastModified(old));
+
+        newManager(persistent).getImageInfo(uri, newSession());
+        assertEquals(1, persistent.getHitCount());
+        assertTrue(entries[0].lastModified() > old);
+    }
+
+    @Test
+    public void testSizeCap() throws Exception {
+        PersistentImageCache persistent = new PersistentImageCache(
+                this.cacheDir, 1024 * 1024);
+        final ImageManager manager = newManager(persistent);
+        manager.getImageInfo("no-resolution.tif", newSession());
+        final long entrySize = persistent.getSize();
+        assertTrue(entrySize > 0);
+
+        // Room for one ImageInfo only: the least recently used one goes
+        persistent = new PersistentImageCache(this.cacheDir, entrySize + 10);
+        newManager(persistent).getImageInfo("bgimg300dpi.jpg", newSession());
+        assertEquals(1, persistent.getEntryCount());
+        assertTrue(persistent.getSize() <= persistent.getMaximumSize());
+        newManager(persistent).getImageInfo("bgimg300dpi.jpg", newSession());
+        assertEquals(1, persistent.getHitCount());
+    }
+
+    @Test
+    public void testRawPayload() throws Exception {
+        final String uri = "bgimg300dpi.jpg";
+        final byte[] expected = FileUtils.readFileToByteArray(new File(
+                this.imageDir, uri));
+        for (int run = 0; run < 2; run++) {
+            final PersistentImageCache persistent = new PersistentImageCache(
+                    this.cacheDir, 1024 * 1024);
+            persistent.setRawPayloadsEnabled(true);
+            final ImageManager manager = newManager(persistent);
+            final ImageSessionContext session = newSession();
+            final ImageInfo info = manager.getImageInfo(uri, session);
+            final ImageRawJPEG raw = (ImageRawJPEG) manager.getImage(info,
+                    ImageFlavor.RAW_JPEG, session);
+            assertEquals(run == 0 ? 0 : 2, persistent.getHitCount());
+            assertEquals(3, raw.getColorSpace().getNumComponents());
+            // The payload is in memory, so the image can be read again
+            assertTrue(raw.isCacheable());
+            assertPayload(expected, raw.createInputStream());
+            assertPayload(expected, raw.createInputStream());
+        }
+    }
+
+    private static void assertPayload(final byte[] expected,
+            final InputStream in) throws IOException {
+        try {
+            final byte[] actual = IOUtils.toByteArray(in);
+            assertEquals(expected.length, actual.length);
+            for (int i = 0; i < expected.length; i++) {
+                assertEquals(expected[i], actual[i]);
+            }
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.loader.cache;
+
+import java.io.File;
+import java.util.Arrays;
+
+import javax.imageio.stream.ImageInputStream;
+import javax.xml.transform.Source;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.xmlgraphics.image.loader.ImageInfo;
+import org.apache.xmlgraphics.image.loader.ImageManager;
+import org.apache.xmlgraphics.image.loader.MockImageContext;
+import org.apache.xmlgraphics.image.loader.impl.DefaultImageSessionContext;
+import org.apache.xmlgraphics.image.loader.util.ImageUtil;
+import org.apache.xmlgraphics.util.MimeConstants;
+import org.junit.Test;
+
+/**
+ * Tests for {@link SharedSourcePool}.
+ */
+public class SharedSourcePoolTestCase extends TestCase {
+
+    private static final File IMAGE_DIR = new File("src/test/resources/images");
+
+    private final MockImageContext imageContext = MockImageContext
+            .getInstance();
+
+    private static String uri(final File f) {
+        return f.toURI().toASCIIString();
+    }
+
+    @Test
+    public void testSharedContent() throws Exception {
+        final SharedSourcePool pool = new SharedSourcePool(1024 * 1024);
+        final File file = new File(IMAGE_DIR, "asf-logo.png");
+        final byte[] expected = FileUtils.readFileToByteArray(file);
+
+        final ImageInputStream in1 = pool.acquire(uri(file), file, false);
+        final ImageInputStream in2 = pool.acquire(uri(file), file, true);
+        assertEquals(1, pool.getMissCount());
+        assertEquals(1, pool.getHitCount());
+        assertEquals(2, pool.getReferenceCount(uri(file)));
+        assertEquals(expected.length, pool.getSize());
+
+        // Positions are independent
+        final byte[] actual = new byte[expected.length];
+        in1.readFully(actual);
+        assertTrue(Arrays.equals(expected, actual));
+        assertEquals(0, in2.getStreamPosition());
+        assertEquals(expected[0] & 0xff, in2.read());
+
+        in1.close();
+        assertEquals(1, pool.getReferenceCount(uri(file)));
+        in2.close();
+        assertEquals(0, pool.getReferenceCount(uri(file)));
+        assertEquals(1, pool.getEntryCount());
+    }
+
+    @Test
+    public void testSizeLimitAndIdleEviction() throws Exception {
+        final File logo = new File(IMAGE_DIR, "asf-logo.png");
+        final File jpeg = new File(IMAGE_DIR, "bgimg300dpi.jpg");
+        final MockTimeStampProvider time = new MockTimeStampProvider(1000);
+        final SharedSourcePool pool = new SharedSourcePool(
+                Math.max(logo.length(), jpeg.length()) + 1, time);
+        pool.setIdleTimeout(500);
+
+        final ImageInputStream logoIn = pool.acquire(uri(logo), logo, false);
+        // Over the limit, but the first entry is still referenced
+        final ImageInputStream jpegIn = pool.acquire(uri(jpeg), jpeg, false);
+        assertEquals(2, pool.getEntryCount());
+        assertEquals(0, pool.getEvictionCount());
+
+        logoIn.close();
+        assertEquals(1, pool.getEntryCount());
+        assertEquals(1, pool.getEvictionCount());
+        assertEquals(jpeg.length(), pool.getSize());
+
+        jpegIn.close();
+        time.setTimeStamp(1400);
+        pool.evictIdle();
+        assertEquals(1, pool.getEntryCount());
+        time.setTimeStamp(1500);
+        pool.evictIdle();
+        assertEquals(0, pool.getEntryCount());
+        assertEquals(0, pool.getSize());
+
+        // Files larger than the pool are not pooled
+        assertNull(new SharedSourcePool(10).acquire(uri(logo), logo, false));
+    }
+
+    @Test
+    public void testStaleEntryIsReplaced() throws Exception {
+        final File base = File.createTempFile("shared-source-pool", ".png");
+        try {
+            FileUtils.copyFile(new File(IMAGE_DIR, "asf-logo.png"), base);
+            final SharedSourcePool pool = new SharedSourcePool(1024 * 1024);
+            final ImageInputStream in = pool.acquire(uri(base), base, false);
+            final int first = in.read();
+
+            FileUtils.writeByteArrayToFile(base, new byte[] { 1, 2, 3 });
+            base.setLastModified(base.lastModified() + 2000);
+            final ImageInputStream fresh = pool.acquire(uri(base), base, false);
+            assertEquals(2, pool.getMissCount());
+            assertEquals(1, fresh.read());
+            assertEquals(3, pool.getSize());
+
+            // The old stream still sees the old content
+            in.seek(0);
+            assertEquals(first, in.read());
+            in.close();
+            fresh.close();
+        } finally {
+            base.delete();
+        }
+    }
+
+    @Test
+    public void testSessionsShareSources() throws Exception {
+        final SharedSourcePool pool = new SharedSourcePool(16 * 1024 * 1024);
+        final ImageManager manager = new ImageManager(this.imageContext);
+        for (int i = 0; i < 3; i++) {
+            final DefaultImageSessionContext session = new DefaultImageSessionContext(
+                    this.imageContext, IMAGE_DIR);
+            session.setSourcePool(pool);
+            final Source src = session.newSource("bgimg300dpi.jpg");
+            assertTrue(ImageUtil.hasImageInputStream(src));
+            ImageUtil.closeQuietly(src);
+        }
+        assertEquals(1, pool.getMissCount());
+        assertEquals(2, pool.getHitCount());
+
+        final DefaultImageSessionContext session = new DefaultImageSessionContext(
+                this.imageContext, IMAGE_DIR);
+        session.setSourcePool(pool);
+        final ImageInfo info = manager.getImageInfo("bgimg300dpi.jpg", session);
+        assertEquals(MimeConstants.MIME_JPEG, info.getMimeType());
+    }
+}
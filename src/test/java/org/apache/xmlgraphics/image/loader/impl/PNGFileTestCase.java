@@ -23,11 +23,17 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.awt.image.BufferedImage;
 import java.awt.image.ColorModel;
 import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
 import java.awt.image.IndexColorModel;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 
+import org.apache.xmlgraphics.image.codec.png.PNGEncodeParam;
+import org.apache.xmlgraphics.image.codec.png.PNGImageEncoder;
 import org.apache.xmlgraphics.image.loader.ImageContext;
 import org.apache.xmlgraphics.image.loader.ImageException;
 import org.apache.xmlgraphics.image.loader.ImageInfo;
@@ -86,6 +92,37 @@ public class PNGFileTestCase implements PNGConstants {
         }
     }
 
+    @Test
+    public void testBitDepths() throws Exception {
+        final BufferedImage gray16 = new BufferedImage(5, 3,
+                BufferedImage.TYPE_USHORT_GRAY);
+        ColorModel cm = loadPNG(gray16, 16).getColorModel();
+        assertTrue(cm instanceof ComponentColorModel);
+        assertEquals(16, cm.getComponentSize(0));
+        assertEquals(DataBuffer.TYPE_USHORT, cm.getTransferType());
+
+        final byte[] map = new byte[16];
+        final BufferedImage indexed4 = new BufferedImage(5, 3,
+                BufferedImage.TYPE_BYTE_BINARY, new IndexColorModel(4, 16,
+                        map, map, map));
+        cm = loadPNG(indexed4, 4).getColorModel();
+        assertTrue(cm instanceof IndexColorModel);
+        assertEquals(4, cm.getPixelSize());
+    }
+
+    private ImageRawPNG loadPNG(final BufferedImage img,
+            final int expectedBitDepth) throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new PNGImageEncoder(out, PNGEncodeParam.getDefaultEncodeParam(img))
+                .encode(img);
+        final PNGFile png = new PNGFile(new ByteArrayInputStream(
+                out.toByteArray()));
+        final ImageRawPNG raw = png.getImageRawPNG(new ImageInfo("test.png",
+                MimeConstants.MIME_PNG));
+        assertEquals(expectedBitDepth, raw.getBitDepth());
+        return raw;
+    }
+
     private void testColorTypePNG(final String imageName, final int colorType)
             throws ImageException, IOException {
         testColorTypePNG(imageName, colorType, false);
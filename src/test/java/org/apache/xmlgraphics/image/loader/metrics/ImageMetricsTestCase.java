@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.loader.metrics;
+
+import java.io.File;
+
+import javax.management.ObjectName;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.xmlgraphics.image.loader.ImageException;
+import org.apache.xmlgraphics.image.loader.ImageFlavor;
+import org.apache.xmlgraphics.image.loader.ImageInfo;
+import org.apache.xmlgraphics.image.loader.ImageManager;
+import org.apache.xmlgraphics.image.loader.ImageSessionContext;
+import org.apache.xmlgraphics.image.loader.MockImageContext;
+import org.apache.xmlgraphics.image.loader.cache.BoundedImageCacheBackend;
+import org.apache.xmlgraphics.image.loader.cache.ImageCache;
+import org.apache.xmlgraphics.image.loader.impl.DefaultImageSessionContext;
+import org.apache.xmlgraphics.image.loader.spi.ImageImplRegistry;
+import org.junit.Test;
+
+/**
+ * Tests for {@link ImageMetrics} and {@link LatencyHistogram}.
+ */
+public class ImageMetricsTestCase extends TestCase {
+
+    private static final File IMAGE_DIR = new File("src/test/resources/images");
+
+    private final MockImageContext imageContext = MockImageContext
+            .getInstance();
+
+    private ImageSessionContext newSession() {
+        return new DefaultImageSessionContext(this.imageContext, IMAGE_DIR);
+    }
+
+    @Test
+    public void testHistogramBuckets() {
+        for (long v = 0; v < 100000; v += 7) {
+            final int index = LatencyHistogram.bucketIndex(v);
+            assertTrue(v <= LatencyHistogram.upperBound(index));
+            if (index > 0) {
+                assertTrue(v > LatencyHistogram.upperBound(index - 1));
+            }
+        }
+        assertTrue(LatencyHistogram.bucketIndex(Long.MAX_VALUE) < 256);
+    }
+
+    @Test
+    public void testHistogramPercentiles() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1000000, histogram.getMaxNanos());
+        assertEquals(500500.0, histogram.getMeanNanos(), 0.001);
+        final long p50 = histogram.getPercentileNanos(50);
+        assertTrue("p50=" + p50, p50 >= 500000 && p50 <= 500000 * 5 / 4);
+        final long p99 = histogram.getPercentileNanos(99);
+        assertTrue("p99=" + p99, p99 >= 990000 && p99 <= 1000000);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentileNanos(99));
+    }
+
+    @Test
+    public void testInstalledMetrics() throws Exception {
+        final BoundedImageCacheBackend backend = new BoundedImageCacheBackend(
+                64 * 1024 * 1024);
+        final ImageManager manager = new ImageManager(
+                ImageImplRegistry.getDefaultInstance(), this.imageContext,
+                new ImageCache(backend));
+        final ImageMetrics metrics = new ImageMetrics();
+        metrics.install(manager);
+
+        final ImageSessionContext session = newSession();
+        final ImageInfo info = manager.getImageInfo("asf-logo.png", session);
+        manager.getImageInfo("asf-logo.png", session);
+        assertEquals(1, metrics.getPreloadCount());
+        assertEquals(1, metrics.getImageInfoCacheMisses());
+        assertTrue(metrics.getImageInfoCacheHits() >= 1);
+        assertEquals(1, metrics.getLatency("preload:image/png").getCount());
+
+        manager.getImage(info, ImageFlavor.RENDERED_IMAGE, session);
+        assertTrue(metrics.getLoadCount() >= 1);
+        assertTrue(metrics.getRetainedBytes() > 0);
+        boolean pipelineSeen = false;
+        for (final String key : metrics.getLatencies().keySet()) {
+            if (key.startsWith("pipeline:")) {
+                pipelineSeen = true;
+            }
+        }
+        assertTrue(metrics.getLatencies().toString(), pipelineSeen);
+
+        final File junk = File.createTempFile("metrics", ".bin");
+        try {
+            FileUtils.writeStringToFile(junk, "not an image");
+            manager.getImageInfo(junk.toURI().toASCIIString(), session);
+            fail("Expected an ImageException");
+        } catch (final ImageException ie) {
+            // expected
+        } finally {
+            junk.delete();
+        }
+        assertEquals(1, metrics.getPreloadFailureCount());
+
+        backend.clear();
+        assertEquals(0, metrics.getRetainedBytes());
+
+        metrics.reset();
+        assertEquals(0, metrics.getPreloadCount());
+        for (final Long count : metrics.getLatencyCounts().values()) {
+            assertEquals(0, count.longValue());
+        }
+    }
+
+    @Test
+    public void testMBeanRegistration() throws Exception {
+        final ImageMetrics metrics = new ImageMetrics();
+        final ObjectName name = metrics
+                .registerMBean("org.apache.xmlgraphics.test:type=ImageMetrics");
+        try {
+            assertNotNull(name);
+        } finally {
+            metrics.unregisterMBean(name);
+        }
+    }
+}
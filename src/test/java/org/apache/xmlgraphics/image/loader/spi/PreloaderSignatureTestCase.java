@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.loader.spi;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+import javax.imageio.stream.FileImageInputStream;
+import javax.imageio.stream.ImageInputStream;
+import javax.xml.transform.Source;
+
+import junit.framework.TestCase;
+
+import org.apache.xmlgraphics.image.loader.ImageContext;
+import org.apache.xmlgraphics.image.loader.ImageInfo;
+import org.apache.xmlgraphics.image.loader.ImageManager;
+import org.apache.xmlgraphics.image.loader.ImageSource;
+import org.apache.xmlgraphics.image.loader.MockImageContext;
+import org.apache.xmlgraphics.image.loader.util.Penalty;
+import org.apache.xmlgraphics.util.MimeConstants;
+import org.junit.Test;
+
+/**
+ * Tests the signature-based dispatch of {@link ImagePreloader}s.
+ */
+public class PreloaderSignatureTestCase extends TestCase {
+
+    private static final File IMAGE_DIR = new File(
+            "src/test/resources/images");
+
+    @Test
+    public void testSignatureMatching() {
+        final ImageSignature sig = new ImageSignature(2, new byte[] { 'A',
+                'B' });
+        assertEquals(4, sig.getEnd());
+        assertTrue(sig.matches(new byte[] { 0, 0, 'A', 'B', 0 }));
+        assertFalse(sig.matches(new byte[] { 'A', 'B', 0, 0 }));
+        assertFalse(sig.matches(new byte[] { 0, 0, 'A' }));
+    }
+
+    @Test
+    public void testDispatch() {
+        final ImageImplRegistry registry = new ImageImplRegistry(false);
+        final MockPreloader unsigned = new MockPreloader("unsigned", 2000);
+        final MockPreloader abc = new MockPreloader("abc", 1000,
+                new ImageSignature(new byte[] { 'A', 'B', 'C' }));
+        final MockPreloader ab = new MockPreloader("ab", 500,
+                new ImageSignature(new byte[] { 'A', 'B' }));
+        final MockPreloader shifted = new MockPreloader("shifted", 100,
+                new ImageSignature(4, new byte[] { 'X' }));
+        registry.registerPreloader(unsigned);
+        registry.registerPreloader(abc);
+        registry.registerPreloader(ab);
+        registry.registerPreloader(shifted);
+        assertEquals(5, registry.getPreloaderHeaderLength());
+
+        assertEquals("ab abc unsigned",
+                names(registry.getPreloaderIterator("ABC".getBytes())));
+        assertEquals("ab unsigned",
+                names(registry.getPreloaderIterator("ABD".getBytes())));
+        assertEquals("shifted ab unsigned",
+                names(registry.getPreloaderIterator("AB??X".getBytes())));
+        assertEquals("unsigned",
+                names(registry.getPreloaderIterator("ZZZZZ".getBytes())));
+
+        // Registrations and penalties are reflected in the index
+        final MockPreloader late = new MockPreloader("late", 1) {
+        };
+        registry.registerPreloader(late);
+        registry.setAdditionalPenalty(late.getClass().getName(),
+                Penalty.toPenalty(5000));
+        assertEquals("ab abc unsigned late",
+                names(registry.getPreloaderIterator("ABC".getBytes())));
+    }
+
+    @Test
+    public void testPreloadWithSharedHeader() throws Exception {
+        final ImageContext context = MockImageContext.getInstance();
+        final ImageManager manager = new ImageManager(context);
+        assertPreload(manager, "bgimg72dpi.gif", MimeConstants.MIME_GIF);
+        assertPreload(manager, "bgimg300dpi.jpg", MimeConstants.MIME_JPEG);
+        assertPreload(manager, "no-resolution.tif", MimeConstants.MIME_TIFF);
+        assertPreload(manager, "bgimg300dpi.bmp", "image/bmp");
+        assertPreload(manager, "img.emf", "image/emf");
+        assertPreload(manager, "barcode.eps", MimeConstants.MIME_EPS);
+        // No signature: handled by the ImageIO preloader
+        assertPreload(manager, "asf-logo.png", MimeConstants.MIME_PNG);
+    }
+
+    private void assertPreload(final ImageManager manager,
+            final String name, final String mime) throws Exception {
+        final File file = new File(IMAGE_DIR, name);
+        final ImageInputStream in = new FileImageInputStream(file);
+        try {
+            final ImageSource src = new ImageSource(in, file.toURI()
+                    .toASCIIString(), true);
+            final ImageInfo info = manager.preloadImage(name, src);
+            assertEquals(name, mime, info.getMimeType());
+            assertTrue(name, info.getSize().getWidthPx() > 0);
+            assertEquals(name, 0, in.getStreamPosition());
+        } finally {
+            in.close();
+        }
+    }
+
+    private static String names(final Iterator<ImagePreloader> iter) {
+        final StringBuilder sb = new StringBuilder();
+        while (iter.hasNext()) {
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            sb.append(iter.next().toString());
+        }
+        return sb.toString();
+    }
+
+    private static class MockPreloader implements SignatureAwareImagePreloader {
+
+        private final String name;
+        private final int priority;
+        private final ImageSignature[] signatures;
+
+        MockPreloader(final String name, final int priority,
+                final ImageSignature... signatures) {
+            this.name = name;
+            this.priority = priority;
+            this.signatures = signatures;
+        }
+
+        @Override
+        public ImageInfo preloadImage(final String originalURI,
+                final Source src, final ImageContext context)
+                throws IOException {
+            return null;
+        }
+
+        @Override
+        public int getPriority() {
+            return this.priority;
+        }
+
+        @Override
+        public ImageSignature[] getSignatures() {
+            return this.signatures;
+        }
+
+        @Override
+        public String toString() {
+            return this.name;
+        }
+    }
+}
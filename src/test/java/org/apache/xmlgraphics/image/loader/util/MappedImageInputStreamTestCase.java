@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.loader.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import javax.imageio.stream.ImageInputStream;
+import javax.xml.transform.Source;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.xmlgraphics.image.codec.util.SeekableStream;
+import org.apache.xmlgraphics.image.loader.Image;
+import org.apache.xmlgraphics.image.loader.ImageFlavor;
+import org.apache.xmlgraphics.image.loader.ImageInfo;
+import org.apache.xmlgraphics.image.loader.ImageManager;
+import org.apache.xmlgraphics.image.loader.MockImageContext;
+import org.apache.xmlgraphics.image.loader.impl.DefaultImageSessionContext;
+import org.apache.xmlgraphics.image.loader.impl.ImageLoaderInternalTIFF;
+import org.apache.xmlgraphics.image.loader.impl.ImageRawJPEG;
+import org.apache.xmlgraphics.image.loader.impl.ImageRawStream;
+import org.apache.xmlgraphics.image.loader.impl.ImageRendered;
+import org.junit.Test;
+
+/**
+ * Tests for {@link MappedImageInputStream} and its use for local files.
+ */
+public class MappedImageInputStreamTestCase extends TestCase {
+
+    private static final File IMAGE_DIR = new File("src/test/resources/images");
+
+    private final MockImageContext imageContext = MockImageContext
+            .getInstance();
+
+    private DefaultImageSessionContext newSession(final long threshold) {
+        final DefaultImageSessionContext session = new DefaultImageSessionContext(
+                this.imageContext, IMAGE_DIR);
+        session.setMappingThreshold(threshold);
+        return session;
+    }
+
+    @Test
+    public void testReadAndSeek() throws Exception {
+        final File file = new File(IMAGE_DIR, "no-resolution.tif");
+        final byte[] expected = FileUtils.readFileToByteArray(file);
+        final MappedImageInputStream in = new MappedImageInputStream(file);
+        try {
+            assertEquals(expected.length, in.length());
+            final byte[] actual = new byte[expected.length];
+            in.readFully(actual);
+            assertTrue(Arrays.equals(expected, actual));
+            assertEquals(-1, in.read());
+            assertEquals(-1, in.read(new byte[4], 0, 4));
+
+            in.seek(4);
+            in.mark();
+            assertEquals(expected[4] & 0xff, in.read());
+            in.reset();
+            assertEquals(4, in.getStreamPosition());
+
+            // The SeekableStream starts at the current position but has its
+            // own file pointer
+            final SeekableStream seekable = ImageUtil.createSeekableStream(in);
+            assertEquals(4, seekable.getFilePointer());
+            seekable.seek(0);
+            assertEquals(expected[0] & 0xff, seekable.read());
+            assertEquals(4, in.getStreamPosition());
+        } finally {
+            in.close();
+        }
+        try {
+            in.read();
+            fail("Expected an IOException on a closed stream");
+        } catch (final IOException ioe) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testByteBufferViews() throws Exception {
+        final ByteBuffer buffer = ByteBuffer.wrap(new byte[] { 9, 1, 2, 3, 4 });
+        buffer.position(1);
+        final MappedImageInputStream in = new MappedImageInputStream(buffer);
+        assertEquals(4, in.length());
+        assertEquals(0x01020304, in.readInt());
+        assertEquals(1, buffer.position());
+        final ByteBuffer view = in.getBuffer();
+        assertEquals(0, view.position());
+        assertEquals(4, view.remaining());
+        assertTrue(view.isReadOnly());
+        final ByteBufferInputStream bin = new ByteBufferInputStream(view);
+        assertEquals(1, bin.read());
+        assertEquals(3, bin.available());
+        assertEquals(0, view.position());
+        in.close();
+    }
+
+    @Test
+    public void testSessionMapsLargeFiles() throws Exception {
+        Source src = newSession(0).newSource("no-resolution.tif");
+        ImageInputStream in = ImageUtil.needImageInputStream(src);
+        assertTrue(in instanceof MappedImageInputStream);
+        ImageUtil.closeQuietly(src);
+
+        src = newSession(-1).newSource("no-resolution.tif");
+        in = ImageUtil.needImageInputStream(src);
+        assertFalse(in instanceof MappedImageInputStream);
+        ImageUtil.closeQuietly(src);
+
+        src = newSession(Long.MAX_VALUE).newSource("no-resolution.tif");
+        in = ImageUtil.needImageInputStream(src);
+        assertFalse(in instanceof MappedImageInputStream);
+        ImageUtil.closeQuietly(src);
+    }
+
+    @Test
+    public void testMappedRawJPEG() throws Exception {
+        final ImageManager manager = new ImageManager(this.imageContext);
+        final DefaultImageSessionContext session = newSession(0);
+        final ImageInfo info = manager.getImageInfo("bgimg300dpi.jpg",
+                session);
+        final Image img = manager.getImage(info, ImageFlavor.RAW_JPEG,
+                session);
+        assertTrue(img instanceof ImageRawJPEG);
+        final ImageRawJPEG jpeg = (ImageRawJPEG) img;
+        assertTrue(jpeg.getInputStreamFactory() instanceof ImageRawStream.ByteBufferStreamFactory);
+        assertTrue(jpeg.isCacheable());
+
+        final byte[] expected = FileUtils.readFileToByteArray(new File(
+                IMAGE_DIR, "bgimg300dpi.jpg"));
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        jpeg.writeTo(out);
+        assertTrue(Arrays.equals(expected, out.toByteArray()));
+        // The content can be read more than once
+        assertTrue(Arrays.equals(expected,
+                IOUtils.toByteArray(jpeg.createInputStream())));
+    }
+
+    @Test
+    public void testMappedTIFF() throws Exception {
+        final ImageManager manager = new ImageManager(this.imageContext);
+        final DefaultImageSessionContext session = newSession(0);
+        final ImageInfo info = manager.getImageInfo("no-resolution.tif",
+                session);
+        final ImageRendered img = (ImageRendered) new ImageLoaderInternalTIFF()
+                .loadImage(info, null, session);
+        // Tiles are decoded after loading, i.e. after the Source is closed
+        assertEquals(info.getSize().getWidthPx(), img.getRenderedImage()
+                .getData().getWidth());
+    }
+}
@@ -0,0 +1,474 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.java2d.ps;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Area;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.GeneralPath;
+import java.awt.geom.Line2D;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Path2D;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.xmlgraphics.java2d.GraphicContext;
+import org.apache.xmlgraphics.java2d.color.ColorSpaces;
+import org.apache.xmlgraphics.java2d.color.DeviceCMYKColorSpace;
+import org.junit.Test;
+
+/**
+ * Checks that the state tracking mode of {@link PSGraphics2D} produces the
+ * same rendering as the default mode. Both outputs are painted with a small
+ * interpreter for the PostScript subset PSGraphics2D generates and compared
+ * pixel by pixel.
+ */
+public class PSGraphics2DStateTrackingTestCase extends TestCase {
+
+    private static final int WIDTH = 400;
+    private static final int HEIGHT = 200;
+
+    private interface Scene {
+        void paint(Graphics2D g2d);
+    }
+
+    /** The scene of examples/java/java2d/ps/EPSExample1. */
+    private static final Scene EXAMPLE1 = new Scene() {
+        @Override
+        public void paint(final Graphics2D g2d) {
+            g2d.drawRect(0, 0, 400, 200);
+            final Graphics2D copy = (Graphics2D) g2d.create();
+            final int c = 12;
+            for (int i = 0; i < c; ++i) {
+                final float f = (i + 1) / (float) c;
+                copy.setColor(new Color(0.0f, 1 - f, 0.0f));
+                copy.fillRect(70, 90, 50, 50);
+                copy.rotate(-2 * Math.PI / c, 70, 90);
+            }
+            copy.dispose();
+            g2d.rotate(-0.25);
+            g2d.setColor(Color.RED);
+            g2d.setFont(new Font("sans-serif", Font.PLAIN, 36));
+            g2d.drawString("Hello world!", 140, 140);
+            g2d.setColor(Color.RED.darker());
+            g2d.setFont(new Font("serif", Font.PLAIN, 36));
+            g2d.drawString("Hello world!", 140, 180);
+        }
+    };
+
+    /** The scene of examples/java/java2d/ps/EPSColorsExample. */
+    private static final Scene COLORS = new Scene() {
+        @Override
+        public void paint(final Graphics2D g2d) {
+            g2d.drawRect(0, 0, 400, 200);
+            g2d.setFont(new Font("sans-serif", Font.BOLD, 14));
+            g2d.drawString("Color usage example:", 10, 20);
+            final Color colRGB = new Color(255, 204, 0);
+            g2d.setColor(colRGB);
+            g2d.fillRect(10, 30, 40, 40);
+            final DeviceCMYKColorSpace cmykCS = ColorSpaces
+                    .getDeviceCMYKColorSpace();
+            g2d.setColor(DeviceCMYKColorSpace.createCMYKColor(cmykCS
+                    .fromRGB(colRGB.getColorComponents(null))));
+            g2d.fillRect(60, 30, 40, 40);
+        }
+    };
+
+    /** Many small primitives with changing strokes, clips and transforms. */
+    private static final Scene CHART = new Scene() {
+        @Override
+        public void paint(final Graphics2D g2d) {
+            g2d.setClip(new Rectangle(20, 20, 360, 160));
+            for (int i = 0; i < 300; ++i) {
+                if (i == 100) {
+                    g2d.translate(5, 5);
+                } else if (i == 200) {
+                    g2d.clip(new Ellipse2D.Double(40, 20, 300, 170));
+                }
+                final double x = i * 1.5;
+                final double y = 100 + 90 * Math.sin(i / 10.0);
+                g2d.setColor(i % 3 == 0 ? Color.RED : Color.BLUE);
+                g2d.setStroke(new BasicStroke(i % 5 == 0 ? 2f : 0.5f,
+                        BasicStroke.CAP_ROUND, BasicStroke.JOIN_BEVEL, 10,
+                        i % 7 == 0 ? new float[] { 3, 2 } : null, 0));
+                g2d.draw(new Line2D.Double(x, y, x + 1.5, y + 10));
+                g2d.fill(new Ellipse2D.Double(x - 2, y - 2, 4, 4));
+                if (i % 50 == 0) {
+                    final Graphics2D child = (Graphics2D) g2d.create();
+                    child.rotate(0.3, x, y);
+                    child.setColor(Color.GREEN);
+                    child.fillRect((int) x, (int) y, 30, 8);
+                    child.dispose();
+                }
+            }
+        }
+    };
+
+    @Test
+    public void testExamples() throws IOException {
+        assertSameRendering(EXAMPLE1);
+        assertSameRendering(COLORS);
+    }
+
+    @Test
+    public void testChart() throws IOException {
+        final String[] ps = assertSameRendering(CHART);
+        // One scope per transform and clip, instead of one per primitive
+        assertEquals(606, count(ps[0], "GS"));
+        assertTrue(count(ps[1], "GS") < 20);
+        assertTrue(ps[1].length() < ps[0].length() * 2 / 3);
+    }
+
+    @Test
+    public void testScopeClosed() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final EPSDocumentGraphics2D g2d = createGraphics(out);
+        g2d.setStateTracking(true);
+        g2d.fillRect(10, 10, 10, 10);
+        g2d.fillRect(20, 10, 10, 10);
+        assertEquals(1, count(out.toString("US-ASCII"), "GS"));
+        assertEquals(0, count(out.toString("US-ASCII"), "GR"));
+        g2d.closeGraphicsStateScope();
+        g2d.closeGraphicsStateScope();
+        assertEquals(1, count(out.toString("US-ASCII"), "GR"));
+        g2d.setStateTracking(false);
+        g2d.fillRect(30, 10, 10, 10);
+        g2d.finish();
+        final String ps = out.toString("US-ASCII");
+        assertEquals(count(ps, "GS"), count(ps, "GR"));
+    }
+
+    private static String[] assertSameRendering(final Scene scene)
+            throws IOException {
+        final String plain = generate(scene, false);
+        final String tracked = generate(scene, true);
+        final BufferedImage expected = render(plain);
+        final BufferedImage actual = render(tracked);
+        int painted = 0;
+        for (int y = 0; y < HEIGHT; ++y) {
+            for (int x = 0; x < WIDTH; ++x) {
+                assertEquals("pixel " + x + "," + y, expected.getRGB(x, y),
+                        actual.getRGB(x, y));
+                if (expected.getRGB(x, y) != Color.WHITE.getRGB()) {
+                    ++painted;
+                }
+            }
+        }
+        assertTrue(painted > 1000);
+        assertEquals(count(tracked, "GS"), count(tracked, "GR"));
+        return new String[] { plain, tracked };
+    }
+
+    private static EPSDocumentGraphics2D createGraphics(
+            final ByteArrayOutputStream out) throws IOException {
+        final EPSDocumentGraphics2D g2d = new EPSDocumentGraphics2D(false);
+        g2d.setGraphicContext(new GraphicContext());
+        g2d.setupDocument(out, WIDTH, HEIGHT);
+        return g2d;
+    }
+
+    private static String generate(final Scene scene, final boolean tracking)
+            throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final EPSDocumentGraphics2D g2d = createGraphics(out);
+        g2d.setStateTracking(tracking);
+        scene.paint(g2d);
+        g2d.finish();
+        final String ps = out.toString("US-ASCII");
+        return ps.substring(ps.indexOf("%%EndPageSetup"),
+                ps.indexOf("%%Trailer"));
+    }
+
+    private static int count(final String ps, final String op) {
+        int n = 0;
+        for (final String line : ps.split("\n")) {
+            for (final String token : line.split(" ")) {
+                if (token.equals(op)) {
+                    ++n;
+                }
+            }
+        }
+        return n;
+    }
+
+    /** The graphics state of the interpreter. */
+    private static final class State {
+        private AffineTransform ctm = new AffineTransform();
+        private Color color = Color.BLACK;
+        private float lineWidth = 1;
+        private int cap = BasicStroke.CAP_BUTT;
+        private int join = BasicStroke.JOIN_MITER;
+        private float miterLimit = 10;
+        private float[] dash;
+        private float phase;
+        private List<Shape> clips = new ArrayList<>();
+
+        private State copy() {
+            final State s = new State();
+            s.ctm = new AffineTransform(this.ctm);
+            s.color = this.color;
+            s.lineWidth = this.lineWidth;
+            s.cap = this.cap;
+            s.join = this.join;
+            s.miterLimit = this.miterLimit;
+            s.dash = this.dash;
+            s.phase = this.phase;
+            s.clips = new ArrayList<>(this.clips);
+            return s;
+        }
+    }
+
+    /**
+     * Paints the page content with Java2D. Paths are built in device space,
+     * the way a PostScript interpreter does.
+     */
+    private static BufferedImage render(final String ps) {
+        final BufferedImage image = new BufferedImage(WIDTH, HEIGHT,
+                BufferedImage.TYPE_INT_RGB);
+        final Graphics2D bg = image.createGraphics();
+        bg.setColor(Color.WHITE);
+        bg.fillRect(0, 0, WIDTH, HEIGHT);
+        bg.dispose();
+
+        final Deque<Object> stack = new ArrayDeque<>();
+        final Deque<State> saved = new ArrayDeque<>();
+        final Object mark = new Object();
+        State state = new State();
+        Path2D path = new GeneralPath();
+        for (final String line : ps.split("\n")) {
+            if (line.startsWith("%")) {
+                continue;
+            }
+            final String spaced = line.replace("[", " [ ").replace("]",
+                    " ] ");
+            for (final String token : spaced.trim().split("\\s+")) {
+                if (token.isEmpty()) {
+                    continue;
+                }
+                final char c = token.charAt(0);
+                if (c >= '0' && c <= '9' || c == '-' || c == '.') {
+                    stack.push(Double.valueOf(token));
+                    continue;
+                }
+                switch (token) {
+                case "[":
+                    stack.push(mark);
+                    break;
+                case "]": {
+                    final List<Double> values = new ArrayList<>();
+                    Object o;
+                    while ((o = stack.pop()) != mark) {
+                        values.add(0, (Double) o);
+                    }
+                    final double[] array = new double[values.size()];
+                    for (int i = 0; i < array.length; ++i) {
+                        array[i] = values.get(i);
+                    }
+                    stack.push(array);
+                    break;
+                }
+                case "GS":
+                    saved.push(state);
+                    state = state.copy();
+                    break;
+                case "GR":
+                    state = saved.pop();
+                    break;
+                case "CT":
+                    state.ctm.concatenate(new AffineTransform(
+                            (double[]) stack.pop()));
+                    break;
+                case "N":
+                    path = new GeneralPath();
+                    break;
+                case "M": {
+                    final double[] p = pop(stack, 2);
+                    final Point2D d = state.ctm.transform(new Point2D.Double(
+                            p[0], p[1]), null);
+                    path.moveTo(d.getX(), d.getY());
+                    break;
+                }
+                case "L": {
+                    final double[] p = pop(stack, 2);
+                    final Point2D d = state.ctm.transform(new Point2D.Double(
+                            p[0], p[1]), null);
+                    path.lineTo(d.getX(), d.getY());
+                    break;
+                }
+                case "C": {
+                    final double[] p = pop(stack, 6);
+                    state.ctm.transform(p, 0, p, 0, 3);
+                    path.curveTo(p[0], p[1], p[2], p[3], p[4], p[5]);
+                    break;
+                }
+                case "QT": {
+                    final double[] p = pop(stack, 4);
+                    state.ctm.transform(p, 0, p, 0, 2);
+                    path.quadTo(p[0], p[1], p[2], p[3]);
+                    break;
+                }
+                case "cp":
+                    path.closePath();
+                    break;
+                case "re":
+                    appendRect(path, state.ctm, pop(stack, 4));
+                    break;
+                case "rectfill": {
+                    final Path2D rect = new GeneralPath();
+                    appendRect(rect, state.ctm, pop(stack, 4));
+                    paint(image, state, rect, true);
+                    break;
+                }
+                case "f":
+                    path.setWindingRule(Path2D.WIND_NON_ZERO);
+                    paint(image, state, path, true);
+                    path = new GeneralPath();
+                    break;
+                case "eofill":
+                    path.setWindingRule(Path2D.WIND_EVEN_ODD);
+                    paint(image, state, path, true);
+                    path = new GeneralPath();
+                    break;
+                case "S":
+                    paint(image, state, path, false);
+                    path = new GeneralPath();
+                    break;
+                case "clip":
+                    path.setWindingRule(Path2D.WIND_NON_ZERO);
+                    state.clips.add((Shape) path.clone());
+                    break;
+                case "GC": {
+                    final float g = (float) pop(stack, 1)[0];
+                    state.color = new Color(g, g, g);
+                    break;
+                }
+                case "RC": {
+                    final double[] p = pop(stack, 3);
+                    state.color = new Color((float) p[0], (float) p[1],
+                            (float) p[2]);
+                    break;
+                }
+                case "CC": {
+                    final double[] p = pop(stack, 4);
+                    final float k = (float) (1 - p[3]);
+                    state.color = new Color((float) (1 - p[0]) * k,
+                            (float) (1 - p[1]) * k, (float) (1 - p[2]) * k);
+                    break;
+                }
+                case "LW":
+                    state.lineWidth = (float) pop(stack, 1)[0];
+                    break;
+                case "setlinecap":
+                    state.cap = (int) pop(stack, 1)[0];
+                    break;
+                case "LJ":
+                    state.join = (int) pop(stack, 1)[0];
+                    break;
+                case "ML":
+                    state.miterLimit = (float) pop(stack, 1)[0];
+                    break;
+                case "setdash": {
+                    state.phase = (float) pop(stack, 1)[0];
+                    final double[] array = (double[]) stack.pop();
+                    state.dash = null;
+                    if (array.length > 0) {
+                        state.dash = new float[array.length];
+                        for (int i = 0; i < array.length; ++i) {
+                            state.dash[i] = (float) array[i];
+                        }
+                    }
+                    break;
+                }
+                default:
+                    fail("Unexpected operator: " + token);
+                }
+            }
+        }
+        assertTrue(stack.isEmpty());
+        assertTrue(saved.isEmpty());
+        return image;
+    }
+
+    private static double[] pop(final Deque<Object> stack, final int n) {
+        final double[] values = new double[n];
+        for (int i = n - 1; i >= 0; --i) {
+            values[i] = (Double) stack.pop();
+        }
+        return values;
+    }
+
+    private static void appendRect(final Path2D path,
+            final AffineTransform ctm, final double[] r) {
+        final double[] p = { r[0], r[1], r[0] + r[2], r[1], r[0] + r[2],
+                r[1] + r[3], r[0], r[1] + r[3] };
+        ctm.transform(p, 0, p, 0, 4);
+        path.moveTo(p[0], p[1]);
+        path.lineTo(p[2], p[3]);
+        path.lineTo(p[4], p[5]);
+        path.lineTo(p[6], p[7]);
+        path.closePath();
+    }
+
+    private static void paint(final BufferedImage image, final State state,
+            final Shape path, final boolean fill) {
+        Shape shape = path;
+        if (!fill) {
+            // The line width applies in user space
+            try {
+                final Shape user = state.ctm.createInverse()
+                        .createTransformedShape(path);
+                final BasicStroke stroke = new BasicStroke(state.lineWidth,
+                        state.cap, state.join, Math.max(1, state.miterLimit),
+                        state.dash, state.phase);
+                shape = state.ctm.createTransformedShape(stroke
+                        .createStrokedShape(user));
+            } catch (final NoninvertibleTransformException e) {
+                fail(e.getMessage());
+            }
+        }
+        // Java2D's own clipping rasterizes shapes differently, so all
+        // primitives are filled the same way, with the clip already applied
+        final Area area = new Area(shape);
+        for (final Shape clip : state.clips) {
+            area.intersect(new Area(clip));
+        }
+        final Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                RenderingHints.VALUE_ANTIALIAS_OFF);
+        g.setColor(state.color);
+        g.fill(area);
+        g.dispose();
+    }
+}
@@ -20,14 +20,26 @@
 package org.apache.xmlgraphics.java2d.ps;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyDouble;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.awt.BasicStroke;
 import java.awt.Rectangle;
+import java.awt.Shape;
 import java.awt.geom.AffineTransform;
+import java.awt.geom.Area;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.GeneralPath;
+import java.awt.geom.Line2D;
+import java.awt.geom.Rectangle2D;
 import java.io.IOException;
+import java.util.Random;
 
 import org.apache.xmlgraphics.java2d.GraphicContext;
 import org.apache.xmlgraphics.ps.PSGenerator;
@@ -62,4 +74,93 @@ public class PSGraphics2DTestCase {
         this.gfx2d.draw(new Rectangle(10, 10, 100, 100));
         verify(this.gen, times(1)).concatMatrix(this.TRANSFORM);
     }
+
+    @Test
+    public void drawClipsStrokeOutline() throws IOException {
+        this.gfx2d.setClip(new Rectangle(0, 0, 100, 100));
+        // Inside the clip, decided from the grown bounds of the line
+        this.gfx2d.setStroke(new BasicStroke(2));
+        this.gfx2d.draw(new Line2D.Double(10, 50, 90, 50));
+        // The miter allowance leaves the clip, the stroked outline does not
+        this.gfx2d.setStroke(new BasicStroke(30, BasicStroke.CAP_BUTT,
+                BasicStroke.JOIN_MITER));
+        this.gfx2d.draw(new Line2D.Double(10, 50, 90, 50));
+        verify(this.gen, never()).mapCommand("clip");
+        // The line lies inside the clip, but its stroke does not
+        this.gfx2d.draw(new Line2D.Double(10, 95, 90, 95));
+        verify(this.gen, times(1)).mapCommand("clip");
+    }
+
+    @Test
+    public void fill() throws IOException {
+        when(this.gen.getPSLevel()).thenReturn(3);
+        // By default every fill goes through doDrawing()
+        this.gfx2d.fill(new Rectangle(10, 10, 100, 100));
+        verify(this.gen, never()).rectfill(anyDouble(), anyDouble(),
+                anyDouble(), anyDouble());
+        verify(this.gen, times(1)).mapCommand("fill");
+        this.gfx2d.setStateTracking(true);
+        this.gfx2d.fill(new Rectangle(10, 10, 100, 100));
+        verify(this.gen, times(1)).rectfill(10, 10, 100, 100);
+        this.gfx2d.fill(new Ellipse2D.Double(0, 0, 10, 10));
+        verify(this.gen, times(1)).moveto(10, 5);
+        verify(this.gen, times(4)).curveto(anyDouble(), anyDouble(),
+                anyDouble(), anyDouble(), anyDouble(), anyDouble());
+    }
+
+    @Test
+    public void shouldBeClipped() {
+        final Shape rect = new GeneralPath(new Rectangle(0, 0, 100, 100));
+        assertFalse(this.gfx2d.shouldBeClipped(rect, new Rectangle(10, 10, 20,
+                20)));
+        assertTrue(this.gfx2d.shouldBeClipped(rect, new Rectangle(90, 10, 20,
+                20)));
+        assertTrue(this.gfx2d.shouldBeClipped(rect, new Rectangle(200, 10, 20,
+                20)));
+        assertFalse(this.gfx2d.shouldBeClipped(rect, new Ellipse2D.Double(0,
+                0, 100, 100)));
+        assertFalse(this.gfx2d.shouldBeClipped(null, rect));
+
+        // The bounds of the triangle are not inside the circle, the triangle is
+        final Shape circle = new Ellipse2D.Double(0, 0, 100, 100);
+        final GeneralPath triangle = new GeneralPath();
+        triangle.moveTo(50, 2);
+        triangle.lineTo(52, 2);
+        triangle.lineTo(2, 52);
+        triangle.closePath();
+        assertFalse(this.gfx2d.shouldBeClipped(circle, triangle));
+        this.gfx2d.setExactClipTest(false);
+        assertTrue(this.gfx2d.shouldBeClipped(circle, triangle));
+    }
+
+    @Test
+    public void shouldBeClippedLikeArea() {
+        final Random random = new Random(1);
+        final Shape[] clips = { new Rectangle(50, 50, 300, 200),
+                new Ellipse2D.Double(50, 50, 300, 200),
+                AffineTransform.getRotateInstance(0.1)
+                        .createTransformedShape(new Rectangle(50, 50, 300, 200)) };
+        for (final Shape clip : clips) {
+            for (int i = 0; i < 500; ++i) {
+                final double x = random.nextInt(400);
+                final double y = random.nextInt(300);
+                final double w = 1 + random.nextInt(60);
+                final double h = 1 + random.nextInt(60);
+                final Shape s = i % 2 == 0 ? new Rectangle2D.Double(x, y, w,
+                        h) : new Ellipse2D.Double(x, y, w, h);
+                final Area as = new Area(s);
+                final Area ac = new Area(clip);
+                ac.intersect(as);
+                final boolean expected = !ac.equals(as);
+                // A new but equal clip each time, like getClip() returns
+                final Shape copy = new GeneralPath(clip);
+                this.gfx2d.setExactClipTest(true);
+                assertEquals(expected, this.gfx2d.shouldBeClipped(copy, s));
+                this.gfx2d.setExactClipTest(false);
+                if (expected) {
+                    assertTrue(this.gfx2d.shouldBeClipped(copy, s));
+                }
+            }
+        }
+    }
 }
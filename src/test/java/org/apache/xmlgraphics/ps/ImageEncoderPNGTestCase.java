@@ -0,0 +1,299 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.ps;
+
+import java.awt.Dimension;
+import java.awt.color.ColorSpace;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import junit.framework.TestCase;
+
+import org.apache.xmlgraphics.image.codec.png.PNGEncodeParam;
+import org.apache.xmlgraphics.image.codec.png.PNGImageEncoder;
+import org.apache.xmlgraphics.image.loader.ImageInfo;
+import org.apache.xmlgraphics.image.loader.ImageSize;
+import org.apache.xmlgraphics.image.loader.impl.ImageRawPNG;
+import org.apache.xmlgraphics.util.MimeConstants;
+import org.junit.Test;
+
+public class ImageEncoderPNGTestCase extends TestCase {
+
+    private static final int WIDTH = 37;
+    private static final int HEIGHT = 23;
+
+    @Test
+    public void testGray() throws Exception {
+        final BufferedImage img = new BufferedImage(WIDTH, HEIGHT,
+                BufferedImage.TYPE_BYTE_GRAY);
+        fillRandom(img);
+        final ColorModel cm = new ComponentColorModel(
+                ColorSpace.getInstance(ColorSpace.CS_GRAY), false, false,
+                ColorModel.OPAQUE, DataBuffer.TYPE_BYTE);
+        checkPassThrough(img, cm, 8, 1, getBytes(img));
+    }
+
+    @Test
+    public void testRGB() throws Exception {
+        final BufferedImage img = new BufferedImage(WIDTH, HEIGHT,
+                BufferedImage.TYPE_INT_RGB);
+        final byte[] expected = new byte[WIDTH * HEIGHT * 3];
+        final Random rand = new Random(42);
+        int i = 0;
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                final int rgb = rand.nextInt() & 0xffffff;
+                img.setRGB(x, y, rgb);
+                expected[i++] = (byte) (rgb >> 16);
+                expected[i++] = (byte) (rgb >> 8);
+                expected[i++] = (byte) rgb;
+            }
+        }
+        final ColorModel cm = new ComponentColorModel(
+                ColorSpace.getInstance(ColorSpace.CS_sRGB), false, false,
+                ColorModel.OPAQUE, DataBuffer.TYPE_BYTE);
+        checkPassThrough(img, cm, 8, 3, expected);
+    }
+
+    @Test
+    public void testIndexed() throws Exception {
+        final byte[] map = new byte[16];
+        for (int i = 0; i < map.length; i++) {
+            map[i] = (byte) (i * 17);
+        }
+        final IndexColorModel icm = new IndexColorModel(4, 16, map, map,
+                map);
+        final BufferedImage img = new BufferedImage(WIDTH, HEIGHT,
+                BufferedImage.TYPE_BYTE_BINARY, icm);
+        // set the samples one by one so the row padding stays zero
+        final Random rand = new Random(42);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                img.getRaster().setSample(x, y, 0, rand.nextInt(16));
+            }
+        }
+        checkPassThrough(img, icm, 4, 1, getBytes(img));
+    }
+
+    @Test
+    public void testCanEncode() {
+        final IndexColorModel icm = new IndexColorModel(8, 2, new byte[2],
+                new byte[2], new byte[2]);
+        assertTrue(ImageEncoderPNG.canEncode(createImage(icm, 8), 3));
+        assertFalse(ImageEncoderPNG.canEncode(createImage(icm, 8), 2));
+        final ColorModel rgba = new ComponentColorModel(
+                ColorSpace.getInstance(ColorSpace.CS_sRGB), true, false,
+                ColorModel.TRANSLUCENT, DataBuffer.TYPE_BYTE);
+        assertFalse(ImageEncoderPNG.canEncode(createImage(rgba, 8), 3));
+        final ColorModel gray16 = new ComponentColorModel(
+                ColorSpace.getInstance(ColorSpace.CS_GRAY),
+                new int[] { 16 }, false, false, ColorModel.OPAQUE,
+                DataBuffer.TYPE_USHORT);
+        assertFalse(ImageEncoderPNG.canEncode(createImage(gray16, 16), 3));
+        try {
+            new ImageEncoderPNG(createImage(rgba, 8));
+            fail("IllegalArgumentException expected");
+        } catch (final IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testIndexedWithTransparency() {
+        // palette with a tRNS chunk, built the way PNGFile builds it
+        final IndexColorModel icm = new IndexColorModel(8, 2, new byte[2],
+                new byte[2], new byte[2], new byte[] { 0, (byte) 255 });
+        assertFalse(ImageEncoderPNG.canEncode(createImage(icm, 8), 3));
+        try {
+            new ImageEncoderPNG(createImage(icm, 8));
+            fail("IllegalArgumentException expected");
+        } catch (final IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testWriteImage() throws Exception {
+        final BufferedImage img = new BufferedImage(WIDTH, HEIGHT,
+                BufferedImage.TYPE_BYTE_GRAY);
+        fillRandom(img);
+        final ColorModel cm = new ComponentColorModel(
+                ColorSpace.getInstance(ColorSpace.CS_GRAY), false, false,
+                ColorModel.OPAQUE, DataBuffer.TYPE_BYTE);
+        final ImageRawPNG png = createImage(cm, 8,
+                extractIDAT(encodePNG(img)));
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final PSGenerator gen = new PSGenerator(out);
+        PSImageUtils.writeImage(new ImageEncoderPNG(png), new Dimension(
+                WIDTH, HEIGHT), "test", new Rectangle2D.Double(0, 0, WIDTH,
+                HEIGHT), cm, gen);
+        final String ps = out.toString("US-ASCII");
+        assertTrue(ps.contains("/Data RawData << /Predictor 15 /Columns 37"
+                + " /Colors 1 /BitsPerComponent 8 >> /FlateDecode filter def"));
+        assertTrue(ps.contains("/BitsPerComponent 8"));
+    }
+
+    private void checkPassThrough(final BufferedImage img,
+            final ColorModel cm, final int bitDepth, final int colors,
+            final byte[] expected) throws IOException, DataFormatException {
+        final byte[] idat = extractIDAT(encodePNG(img));
+        final ImageRawPNG png = createImage(cm, bitDepth, idat);
+        assertTrue(ImageEncoderPNG.canEncode(png, 3));
+        final ImageEncoderPNG encoder = new ImageEncoderPNG(png);
+        assertEquals("<< /Predictor 15 /Columns " + WIDTH + " /Colors "
+                + colors + " /BitsPerComponent " + bitDepth
+                + " >> /FlateDecode", encoder.getImplicitFilter());
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encoder.writeTo(out);
+        final byte[] written = out.toByteArray();
+        assertTrue(Arrays.equals(idat, written));
+
+        // Decode the way /FlateDecode with the PNG predictors would
+        final int bitsPerPixel = colors * bitDepth;
+        assertTrue(Arrays.equals(expected, unpredict(inflate(written),
+                (WIDTH * bitsPerPixel + 7) / 8, Math.max(1,
+                        bitsPerPixel / 8))));
+    }
+
+    private static ImageRawPNG createImage(final ColorModel cm,
+            final int bitDepth) {
+        return createImage(cm, bitDepth, new byte[0]);
+    }
+
+    private static ImageRawPNG createImage(final ColorModel cm,
+            final int bitDepth, final byte[] idat) {
+        final ImageInfo info = new ImageInfo("test.png",
+                MimeConstants.MIME_PNG);
+        info.setSize(new ImageSize(WIDTH, HEIGHT, 72));
+        return new ImageRawPNG(info, new ByteArrayInputStream(idat), cm,
+                bitDepth, null);
+    }
+
+    private static void fillRandom(final BufferedImage img) {
+        new Random(42).nextBytes(getBytes(img));
+    }
+
+    private static byte[] getBytes(final BufferedImage img) {
+        return ((DataBufferByte) img.getRaster().getDataBuffer()).getData();
+    }
+
+    private static byte[] encodePNG(final BufferedImage img)
+            throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final PNGImageEncoder encoder = new PNGImageEncoder(out,
+                PNGEncodeParam.getDefaultEncodeParam(img));
+        encoder.encode(img);
+        return out.toByteArray();
+    }
+
+    private static byte[] extractIDAT(final byte[] png) throws IOException {
+        final DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(png));
+        final ByteArrayOutputStream idat = new ByteArrayOutputStream();
+        in.readLong();
+        while (true) {
+            final int length = in.readInt();
+            final byte[] type = new byte[4];
+            in.readFully(type);
+            final byte[] data = new byte[length];
+            in.readFully(data);
+            in.readInt();
+            final String chunkType = new String(type, "US-ASCII");
+            if ("IDAT".equals(chunkType)) {
+                idat.write(data);
+            } else if ("IEND".equals(chunkType)) {
+                return idat.toByteArray();
+            }
+        }
+    }
+
+    private static byte[] inflate(final byte[] data)
+            throws DataFormatException {
+        final Inflater inflater = new Inflater();
+        inflater.setInput(data);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buf = new byte[4096];
+        while (!inflater.finished()) {
+            final int n = inflater.inflate(buf);
+            if (n == 0 && inflater.needsInput()) {
+                fail("truncated zlib stream");
+            }
+            out.write(buf, 0, n);
+        }
+        inflater.end();
+        return out.toByteArray();
+    }
+
+    private static byte[] unpredict(final byte[] filtered,
+            final int rowBytes, final int bpp) {
+        final int rows = filtered.length / (rowBytes + 1);
+        final byte[] result = new byte[rows * rowBytes];
+        for (int y = 0; y < rows; y++) {
+            final int type = filtered[y * (rowBytes + 1)];
+            final int src = y * (rowBytes + 1) + 1;
+            final int dst = y * rowBytes;
+            for (int i = 0; i < rowBytes; i++) {
+                final int a = i >= bpp ? result[dst + i - bpp] & 0xff : 0;
+                final int b = y > 0 ? result[dst - rowBytes + i] & 0xff : 0;
+                final int c = y > 0 && i >= bpp ? result[dst - rowBytes + i
+                        - bpp] & 0xff : 0;
+                int pred;
+                switch (type) {
+                case 0:
+                    pred = 0;
+                    break;
+                case 1:
+                    pred = a;
+                    break;
+                case 2:
+                    pred = b;
+                    break;
+                case 3:
+                    pred = (a + b) / 2;
+                    break;
+                default:
+                    final int p = a + b - c;
+                    final int pa = Math.abs(p - a);
+                    final int pb = Math.abs(p - b);
+                    final int pc = Math.abs(p - c);
+                    pred = pa <= pb && pa <= pc ? a : pb <= pc ? b : c;
+                    break;
+                }
+                result[dst + i] = (byte) (filtered[src + i] + pred);
+            }
+        }
+        return result;
+    }
+
+}
@@ -21,14 +21,22 @@ package org.apache.xmlgraphics.ps;
 
 import java.awt.Color;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.WritableRaster;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.Random;
 
 import junit.framework.TestCase;
 
 import org.apache.commons.io.output.ByteArrayOutputStream;
+import org.apache.xmlgraphics.image.rendered.AbstractRed;
+import org.apache.xmlgraphics.image.rendered.CachableRed;
 import org.junit.Test;
 
 public class ImageEncodingHelperTestCase extends TestCase {
@@ -85,4 +93,159 @@ public class ImageEncodingHelperTestCase extends TestCase {
         }
     }
 
+    private static final int[] IMAGE_TYPES = { BufferedImage.TYPE_INT_RGB,
+            BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_INT_ARGB_PRE,
+            BufferedImage.TYPE_INT_BGR, BufferedImage.TYPE_3BYTE_BGR,
+            BufferedImage.TYPE_4BYTE_ABGR, BufferedImage.TYPE_4BYTE_ABGR_PRE,
+            BufferedImage.TYPE_USHORT_565_RGB, BufferedImage.TYPE_BYTE_GRAY,
+            BufferedImage.TYPE_USHORT_GRAY, BufferedImage.TYPE_BYTE_BINARY,
+            BufferedImage.TYPE_BYTE_INDEXED };
+
+    private static BufferedImage createImage(final int type, final int width,
+            final int height) {
+        final BufferedImage image = new BufferedImage(width, height, type);
+        final Random random = new Random(type);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+        return image;
+    }
+
+    private static byte[] expectedRGB(final BufferedImage image) {
+        final byte[] rgb = new byte[image.getWidth() * image.getHeight() * 3];
+        int i = 0;
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                final int pixel = image.getRGB(x, y);
+                rgb[i++] = (byte) (pixel >> 16);
+                rgb[i++] = (byte) (pixel >> 8);
+                rgb[i++] = (byte) pixel;
+            }
+        }
+        return rgb;
+    }
+
+    /** The samples of all bands, packed into rows starting on a byte */
+    private static byte[] expectedSamples(final BufferedImage image,
+            final int bits) {
+        final Raster raster = image.getRaster();
+        final int bands = raster.getNumBands();
+        final int lineLength = (image.getWidth() * bands * bits + 7) / 8;
+        final byte[] samples = new byte[lineLength * image.getHeight()];
+        for (int y = 0; y < image.getHeight(); y++) {
+            int bit = y * lineLength * 8;
+            for (int x = 0; x < image.getWidth(); x++) {
+                for (int b = 0; b < bands; b++, bit += bits) {
+                    samples[bit / 8] |= raster.getSample(x, y, b) << 8 - bits
+                            - bit % 8;
+                }
+            }
+        }
+        return samples;
+    }
+
+    private static byte[] encode(final RenderedImage image)
+            throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new ImageEncodingHelper(image).encode(out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Tests the conversion to RGB of the common layouts and of sub-images,
+     * whose data does not start at the beginning of the buffer.
+     * 
+     * @throws IOException
+     */
+    @Test
+    public void testEncodeAsRGB() throws IOException {
+        for (final int type : IMAGE_TYPES) {
+            final BufferedImage image = createImage(type, 45, 31);
+            final BufferedImage sub = image.getSubimage(3, 5, 29, 17);
+            for (final BufferedImage img : new BufferedImage[] { image, sub }) {
+                final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                ImageEncodingHelper.encodeRenderedImageAsRGB(img, out);
+                assertTrue("type " + type,
+                        Arrays.equals(expectedRGB(img), out.toByteArray()));
+            }
+        }
+    }
+
+    /**
+     * Tests that images which are not converted are written with their own
+     * samples, in band order.
+     * 
+     * @throws IOException
+     */
+    @Test
+    public void testEncodeNative() throws IOException {
+        final int[] types = { BufferedImage.TYPE_3BYTE_BGR,
+                BufferedImage.TYPE_BYTE_GRAY, BufferedImage.TYPE_BYTE_BINARY,
+                BufferedImage.TYPE_BYTE_INDEXED };
+        for (final int type : types) {
+            final BufferedImage image = createImage(type, 45, 31);
+            final BufferedImage sub = image.getSubimage(3, 5, 29, 17);
+            for (final BufferedImage img : new BufferedImage[] { image, sub }) {
+                final ImageEncodingHelper helper = new ImageEncodingHelper(img);
+                assertFalse("type " + type, helper.isConverted());
+                final int bits = img.getColorModel() instanceof IndexColorModel ? img
+                        .getColorModel().getPixelSize() : 8;
+                assertTrue("type " + type, Arrays.equals(
+                        expectedSamples(img, bits), encode(img)));
+            }
+        }
+    }
+
+    /**
+     * Tests that a tiled image is streamed tile by tile, without requesting
+     * its whole raster, and encodes like the same image in a single tile.
+     * 
+     * @throws IOException
+     */
+    @Test
+    public void testTiledImage() throws IOException {
+        for (final int type : IMAGE_TYPES) {
+            final BufferedImage image = createImage(type, 45, 31);
+            final TiledImage tiled = new TiledImage(image);
+            assertTrue(tiled.getNumXTiles() > 1 && tiled.getNumYTiles() > 1);
+            assertEquals(new ImageEncodingHelper(image).isConverted(),
+                    new ImageEncodingHelper(tiled).isConverted());
+            assertTrue("type " + type,
+                    Arrays.equals(encode(image), encode(tiled)));
+            assertEquals(0, tiled.dataRequests);
+        }
+    }
+
+    /** Serves a BufferedImage in small tiles, with a tile grid offset. */
+    private static final class TiledImage extends AbstractRed {
+
+        private final BufferedImage source;
+        private int dataRequests;
+
+        TiledImage(final BufferedImage source) {
+            super((CachableRed) null, new Rectangle(-3, 4, source.getWidth(),
+                    source.getHeight()), source.getColorModel(), source
+                    .getSampleModel().createCompatibleSampleModel(7, 5), -6,
+                    2, null);
+            this.source = source;
+        }
+
+        @Override
+        public Raster getData(final Rectangle rect) {
+            this.dataRequests++;
+            return super.getData(rect);
+        }
+
+        @Override
+        public WritableRaster copyData(final WritableRaster wr) {
+            final Rectangle r = wr.getBounds().intersection(getBounds());
+            wr.setPixels(r.x, r.y, r.width, r.height, this.source.getRaster()
+                    .getPixels(r.x - getMinX(), r.y - getMinY(), r.width,
+                            r.height, (int[]) null));
+            return wr;
+        }
+    }
+
 }
@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.ps;
+
+import java.awt.geom.AffineTransform;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+/**
+ * Tests the numeric operators of {@link PSGenerator}.
+ */
+public class PSGeneratorTestCase extends TestCase {
+
+    @Test
+    public void testOperators() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final PSGenerator gen = new PSGenerator(out);
+        gen.moveto(10, 20.5);
+        gen.lineto(-0.0004, 1.23456);
+        gen.curveto(1, 2, 3, 4, 5, 6);
+        gen.quadto(1, 2, 3, 4);
+        gen.defineRect(0, 0, 595.2756, 841.8898);
+        gen.rectfill(1, 2, 3, 4);
+        gen.concatMatrix(new AffineTransform(1, 0, 0, -1, 0.123456, 792));
+        gen.writeNumber(1e20);
+        gen.flush();
+        assertEquals("10 20.5 M\n0 1.235 L\n1 2 3 4 5 6 C\n1 2 3 4 QT\n"
+                + "0 0 595.276 841.89 re\n1 2 3 4 rectfill\n"
+                + "[1 0 0 -1 0.12346 792] CT\n100000000000000000000",
+                out.toString("US-ASCII"));
+
+        out.reset();
+        gen.setCompactMode(false);
+        gen.moveto(1, 2);
+        gen.writeln("closepath");
+        assertEquals("1 2 moveto\nclosepath\n", out.toString("US-ASCII"));
+    }
+
+    @Test
+    public void testSameAsFormatDouble() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final PSGenerator gen = new PSGenerator(out);
+        final StringBuilder expected = new StringBuilder();
+        final Random random = new Random(42);
+        for (int i = 0; i < 5000; ++i) {
+            final double x = (random.nextDouble() - 0.5)
+                    * Math.pow(10, random.nextInt(12) - 4);
+            final double y = random.nextInt(2000) / 8.0;
+            gen.lineto(x, y);
+            expected.append(gen.formatDouble(x)).append(' ')
+                    .append(gen.formatDouble(y)).append(" L\n");
+        }
+        gen.flush();
+        assertEquals(expected.toString(), out.toString("US-ASCII"));
+    }
+
+    @Test
+    public void testBuffering() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final PSGenerator gen = new PSGenerator(out);
+        gen.moveto(1, 2);
+        assertEquals(0, out.size());
+
+        // Other output and the stream view pass the buffered bytes on first
+        gen.getOutputStream().write('%');
+        assertEquals("1 2 M\n%", out.toString("US-ASCII"));
+        gen.lineto(3, 4);
+        gen.writeln("\u00e4\ud83d\ude00");
+        assertEquals("1 2 M\n%3 4 L\n??\n", out.toString("US-ASCII"));
+
+        // The buffer is written out once it passes the threshold
+        out.reset();
+        for (int i = 0; i < 1000 && out.size() == 0; ++i) {
+            gen.lineto(i, i);
+        }
+        assertTrue(out.size() > 0);
+        assertTrue(out.size() <= 4096);
+    }
+}
@@ -20,9 +20,12 @@
 package org.apache.xmlgraphics.util.io;
 
 import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
 
 import junit.framework.TestCase;
 import lombok.extern.slf4j.Slf4j;
@@ -71,8 +74,9 @@ public class ASCII85InputStreamTestCase extends TestCase {
         try (final ByteArrayOutputStream baout = new ByteArrayOutputStream()) {
             try (final OutputStream out = new ASCII85OutputStream(baout)) {
                 out.write(data, 0, len);
-                return new String(baout.toByteArray(), "US-ASCII");
             }
+            // the EOD marker is only written when the stream is closed
+            return new String(baout.toByteArray(), "US-ASCII");
         }
     }
 
@@ -176,4 +180,63 @@ public class ASCII85InputStreamTestCase extends TestCase {
         innerTestDecode(getFullASCIIRange());
     }
 
+    /**
+     * Tests block reads of a long stream with line breaks and zero tuples,
+     * read ahead from a stream supporting mark/reset and byte by byte from one
+     * that does not.
+     * 
+     * @throws IOException
+     */
+    @Test
+    public void testBlockReads() throws IOException {
+        final Random random = new Random(85);
+        final byte[] data = new byte[20001];
+        random.nextBytes(data);
+        Arrays.fill(data, 1000, 1100, (byte) 0);
+        final byte[] encoded = encode(data, data.length).getBytes("US-ASCII");
+        for (final boolean markSupported : new boolean[] { true, false }) {
+            final InputStream decoder = new ASCII85InputStream(source(encoded,
+                    markSupported));
+            final ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+            final byte[] buf = new byte[100];
+            int n;
+            while ((n = decoder.read(buf, 0, random.nextInt(buf.length) + 1)) != -1) {
+                decoded.write(buf, 0, n);
+            }
+            assertTrue(Arrays.equals(data, decoded.toByteArray()));
+            assertEquals(-1, decoder.read());
+        }
+    }
+
+    /**
+     * Tests that the underlying stream is left just after the EOD marker.
+     * 
+     * @throws IOException
+     */
+    @Test
+    public void testPositionAfterEOD() throws IOException {
+        final byte[] encoded = (encode(getChunk(65), 65) + "rest")
+                .getBytes("US-ASCII");
+        for (final boolean markSupported : new boolean[] { true, false }) {
+            final InputStream in = source(encoded, markSupported);
+            assertEquals(HexUtil.toHex(getChunk(65)),
+                    HexUtil.toHex(IOUtils.toByteArray(new ASCII85InputStream(in))));
+            assertEquals("rest", IOUtils.toString(in, "US-ASCII"));
+        }
+    }
+
+    private static InputStream source(final byte[] data,
+            final boolean markSupported) {
+        final InputStream in = new ByteArrayInputStream(data);
+        if (markSupported) {
+            return in;
+        }
+        return new FilterInputStream(in) {
+            @Override
+            public boolean markSupported() {
+                return false;
+            }
+        };
+    }
+
 }
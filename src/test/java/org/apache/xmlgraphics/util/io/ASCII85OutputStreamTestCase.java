@@ -21,6 +21,8 @@ package org.apache.xmlgraphics.util.io;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
 
 import junit.framework.TestCase;
 
@@ -57,8 +59,9 @@ public class ASCII85OutputStreamTestCase extends TestCase {
         try (final ByteArrayOutputStream baout = new ByteArrayOutputStream()) {
             try (final OutputStream out = new ASCII85OutputStream(baout)) {
                 out.write(data, 0, len);
-                return new String(baout.toByteArray(), "US-ASCII");
             }
+            // the EOD marker is only written when the stream is closed
+            return new String(baout.toByteArray(), "US-ASCII");
         }
     }
 
@@ -104,4 +107,38 @@ public class ASCII85OutputStreamTestCase extends TestCase {
 
     }
 
+    /**
+     * Tests that block writes split at arbitrary places give the same output
+     * as writing one byte at a time.
+     * 
+     * @throws IOException
+     */
+    @Test
+    public void testBlockWrites() throws IOException {
+        final Random random = new Random(85);
+        final byte[] data = new byte[10000];
+        random.nextBytes(data);
+        // runs of zeros for the 'z' shortcut
+        Arrays.fill(data, 100, 150, (byte) 0);
+        Arrays.fill(data, 4003, 4011, (byte) 0);
+        for (final int len : new int[] { 0, 1, 5, 63, 997, data.length }) {
+            final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            try (final OutputStream out = new ASCII85OutputStream(expected)) {
+                for (int i = 0; i < len; i++) {
+                    out.write(data[i]);
+                }
+            }
+            final ByteArrayOutputStream actual = new ByteArrayOutputStream();
+            try (final OutputStream out = new ASCII85OutputStream(actual)) {
+                for (int off = 0; off < len;) {
+                    final int n = Math.min(len - off, random.nextInt(20));
+                    out.write(data, off, n);
+                    off += n;
+                }
+            }
+            assertTrue(Arrays.equals(expected.toByteArray(),
+                    actual.toByteArray()));
+        }
+    }
+
 }
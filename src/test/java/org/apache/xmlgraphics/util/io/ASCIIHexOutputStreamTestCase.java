@@ -0,0 +1,70 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.util.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.io.output.ByteArrayOutputStream;
+import org.junit.Test;
+
+/**
+ * Test case for ASCIIHexOutputStream
+ */
+public class ASCIIHexOutputStreamTestCase extends TestCase {
+
+    private static String encode(final int len, final boolean block)
+            throws IOException {
+        final ByteArrayOutputStream baout = new ByteArrayOutputStream();
+        try (final OutputStream out = new ASCIIHexOutputStream(baout)) {
+            if (block) {
+                out.write(ASCII85OutputStreamTestCase.DATA, 0, len);
+            } else {
+                for (int i = 0; i < len; i++) {
+                    out.write(ASCII85OutputStreamTestCase.DATA[i]);
+                }
+            }
+        }
+        return new String(baout.toByteArray(), "US-ASCII");
+    }
+
+    /**
+     * Tests the output of ASCIIHex, which is wrapped every 80 characters.
+     * 
+     * @throws IOException
+     */
+    @Test
+    public void testOutput() throws IOException {
+        assertEquals(">", encode(0, true));
+        assertEquals("000102>", encode(3, true));
+        final StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            expected.append(String.format("%02X", i));
+            if (i % 40 == 39) {
+                expected.append('\n');
+            }
+        }
+        expected.append('>');
+        assertEquals(expected.toString(), encode(100, true));
+        assertEquals(expected.toString(), encode(100, false));
+    }
+}
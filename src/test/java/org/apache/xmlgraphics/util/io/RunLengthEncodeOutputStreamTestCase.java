@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.util.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.io.output.ByteArrayOutputStream;
+import org.junit.Test;
+
+/**
+ * Test case for RunLengthEncodeOutputStream
+ */
+public class RunLengthEncodeOutputStreamTestCase extends TestCase {
+
+    private static byte[] encode(final byte[] data, final Random chunks)
+            throws IOException {
+        final ByteArrayOutputStream baout = new ByteArrayOutputStream();
+        try (final OutputStream out = new RunLengthEncodeOutputStream(baout)) {
+            for (int off = 0; off < data.length;) {
+                if (chunks == null) {
+                    out.write(data[off++]);
+                } else {
+                    final int n = Math.min(data.length - off,
+                            chunks.nextInt(300));
+                    out.write(data, off, n);
+                    off += n;
+                }
+            }
+        }
+        return baout.toByteArray();
+    }
+
+    /** Decodes as described for the RunLengthDecode filter in the PLRM. */
+    private static byte[] decode(final byte[] encoded) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int i = 0;
+        while (true) {
+            final int length = encoded[i++] & 0xff;
+            if (length == 128) {
+                break;
+            } else if (length < 128) {
+                out.write(encoded, i, length + 1);
+                i += length + 1;
+            } else {
+                for (int j = 0; j < 257 - length; j++) {
+                    out.write(encoded[i]);
+                }
+                i++;
+            }
+        }
+        assertEquals("data after EOD", encoded.length, i);
+        return out.toByteArray();
+    }
+
+    /**
+     * Tests the encoding of literal and repeated runs, written in blocks and
+     * one byte at a time.
+     * 
+     * @throws IOException
+     */
+    @Test
+    public void testRoundTrip() throws IOException {
+        final Random random = new Random(128);
+        final ByteArrayOutputStream baout = new ByteArrayOutputStream();
+        for (int i = 0; i < 500; i++) {
+            final int length = random.nextInt(i % 2 == 0 ? 5 : 300) + 1;
+            final int value = random.nextInt(256);
+            for (int j = 0; j < length; j++) {
+                baout.write(i % 3 == 0 ? random.nextInt(4) : value);
+            }
+        }
+        final byte[] data = baout.toByteArray();
+        assertTrue(Arrays.equals(data, decode(encode(data, random))));
+        assertTrue(Arrays.equals(data, decode(encode(data, null))));
+    }
+
+    /**
+     * Tests the exact encoding of short inputs.
+     * 
+     * @throws IOException
+     */
+    @Test
+    public void testOutput() throws IOException {
+        assertTrue(Arrays.equals(new byte[] { (byte) 128 },
+                encode(new byte[0], null)));
+        assertTrue(Arrays.equals(new byte[] { 1, 7, 7, (byte) 254, 9,
+                (byte) 128 }, encode(new byte[] { 7, 7, 9, 9, 9 }, null)));
+        final byte[] run = new byte[300];
+        assertTrue(Arrays.equals(new byte[] { (byte) 129, 0, (byte) 129, 0,
+                (byte) 213, 0, (byte) 128 }, encode(run, null)));
+    }
+}